@@ -0,0 +1,178 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * A single message of the binary wire protocol:
+ * <pre>
+ *     varint length | type (1 byte) | sender UUID (16 bytes) | UTF-8 body
+ * </pre>
+ * The length is an unsigned LEB128 varint covering everything after it. The sender UUID is
+ * all zeros for messages generated by the server. The body of a {@link #COMPRESSED} frame is
+ * deflated frames rather than text; see {@link FrameReader} and {@link FrameCompressor}.
+ */
+public class BinaryFrame {
+
+    public static final byte CHAT = 1;
+    public static final byte NOTICE = 2;
+    public static final byte COMMAND = 3;
+    public static final byte QUIT = 4;
+    public static final byte PING = 5;
+    public static final byte PONG = 6;
+    public static final byte RECONNECT = 7;
+    public static final byte ROSTER = 8;
+    public static final byte DIRECT = 9;
+    public static final byte COMPRESSED = 10;
+    static final int HEADER_LENGTH = 1 + 16;
+    static final int MAX_FRAME_LENGTH = HEADER_LENGTH + 64 * 1024;
+    private final byte type;
+    private final UUID senderId;
+    private final String body;
+
+    /**
+     * Constructs a new frame.
+     *
+     * @param type     the message type.
+     * @param senderId the UUID of the sending client.
+     * @param body     the message text.
+     */
+    public BinaryFrame(byte type, UUID senderId, String body) {
+        this.type = type;
+        this.senderId = senderId;
+        this.body = body;
+    }
+
+    /**
+     * @return the message type.
+     */
+    public byte getType() {
+        return type;
+    }
+
+    /**
+     * @return the UUID of the sending client, all zeros for server messages.
+     */
+    public UUID getSenderId() {
+        return senderId;
+    }
+
+    /**
+     * @return the message text.
+     */
+    public String getBody() {
+        return body;
+    }
+
+    /**
+     * Writes the frame, length prefix included, with a single write call.
+     *
+     * @param out the stream to write to.
+     * @throws IOException if writing fails.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        ByteBuffer buffer = encode();
+        out.write(buffer.array(), 0, buffer.limit());
+    }
+
+    /**
+     * Encodes the frame, length prefix included.
+     *
+     * @return a buffer backed by an array, holding the frame from index 0 to its limit.
+     */
+    public ByteBuffer encode() {
+        byte[] bodyBytes = body.getBytes(StandardCharsets.UTF_8);
+        int length = HEADER_LENGTH + bodyBytes.length;
+        ByteBuffer buffer = ByteBuffer.allocate(5 + length);
+
+        writeVarint(buffer, length);
+        buffer.put(type);
+        buffer.putLong(senderId.getMostSignificantBits());
+        buffer.putLong(senderId.getLeastSignificantBits());
+        buffer.put(bodyBytes);
+
+        return buffer.flip();
+    }
+
+    /**
+     * Reads the next frame from the stream, blocking until it is complete.
+     *
+     * @param in the stream to read from, preferably buffered.
+     * @return the frame, or null if the stream ended between frames.
+     * @throws IOException if reading fails or the stream does not contain a valid frame.
+     */
+    public static BinaryFrame readFrom(InputStream in) throws IOException {
+        byte[] frame = readFrameBytes(in);
+        return frame == null ? null : decode(frame, 0, frame.length);
+    }
+
+    /**
+     * Reads the bytes of the next frame after its length prefix, blocking until they are complete.
+     *
+     * @param in the stream to read from, preferably buffered.
+     * @return the type, sender UUID and body of the frame, or null if the stream ended between frames.
+     * @throws IOException if reading fails or the stream does not contain a valid frame.
+     */
+    static byte[] readFrameBytes(InputStream in) throws IOException {
+        int length = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.read();
+            if (b == -1) {
+                if (shift == 0) {
+                    return null;
+                }
+                throw new EOFException("Connection closed inside a frame");
+            }
+            if (shift > 28) {
+                throw new ProtocolException("Malformed frame length");
+            }
+            length |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                break;
+            }
+        }
+        if (length < HEADER_LENGTH || length > MAX_FRAME_LENGTH) {
+            throw new ProtocolException("Invalid frame length: " + length);
+        }
+
+        byte[] frame = in.readNBytes(length);
+        if (frame.length < length) {
+            throw new EOFException("Connection closed inside a frame");
+        }
+        return frame;
+    }
+
+    /**
+     * Decodes a frame from its bytes after the length prefix.
+     *
+     * @param frame  the array holding the frame.
+     * @param offset the index of the frame's type byte.
+     * @param length the number of bytes of the frame.
+     * @return the frame.
+     */
+    static BinaryFrame decode(byte[] frame, int offset, int length) {
+        ByteBuffer buffer = ByteBuffer.wrap(frame, offset, length);
+        byte type = buffer.get();
+        UUID senderId = new UUID(buffer.getLong(), buffer.getLong());
+        String body = new String(frame, offset + HEADER_LENGTH, length - HEADER_LENGTH, StandardCharsets.UTF_8);
+        return new BinaryFrame(type, senderId, body);
+    }
+
+    /**
+     * Writes an unsigned LEB128 varint.
+     *
+     * @param buffer the buffer to write to.
+     * @param value  the non-negative value to write.
+     */
+    static void writeVarint(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+}
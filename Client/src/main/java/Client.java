@@ -1,17 +1,26 @@
 import java.io.IOException;
+import java.net.ConnectException;
 import java.net.SocketTimeoutException;
+import javax.net.ssl.SSLException;
 
 /**
  * Represents a chat client responsible for connecting to a chat server.
  * The client can send and receive text messages through a stream socket connection.
  * Upon successful connection, any message sent by the client is broadcasted
- * by the server to all connected clients.
+ * by the server to all connected clients. If the connection is lost or times out, the client
+ * reconnects once the user presses enter and replays the messages it missed. A restarting server
+ * tells the client when to reconnect, and the client retries for a while if the new server is not
+ * listening yet. With "tls" the connection is encrypted; the server's certificate must be trusted by
+ * the JVM, for instance through {@code -Djavax.net.ssl.trustStore}. Reconnects resume the TLS session
+ * instead of repeating the full handshake.
  *
  * <p>Usage:
  * <pre>
  *     java Client (DEFAULT_HOST=127.0.0.1, DEFAULT_PORT=2000)
  *     java Client &lt;host&gt; (DEFAULT_PORT=2000)
  *     java Client &lt;host&gt; &lt;port&gt;
+ *     java Client &lt;host&gt; &lt;port&gt; &lt;text|binary&gt; (DEFAULT_PROTOCOL=text)
+ *     java Client &lt;host&gt; &lt;port&gt; &lt;text|binary&gt; tls
  * </pre>
  * </p>
  */
@@ -21,8 +30,12 @@ public class Client {
     private static final int DEFAULT_SERVER_PORT = 2000;
     private static final int MIN_USER_PORT = 1024;
     private static final int MAX_USER_PORT = 65535;
+    private static final int MAX_RECONNECT_ATTEMPTS = 6;
+    private static final long INITIAL_RETRY_MILLIS = 250;
     private final String serverHost;
     private final int serverPort;
+    private final WireProtocol protocol;
+    private final boolean tls;
 
     /**
      * Creates an instance of the client and initiates the connection process.
@@ -31,29 +44,117 @@ public class Client {
      * @param serverPort the port number on the server
      */
     public Client(String serverHost, int serverPort) {
+        this(serverHost, serverPort, WireProtocol.TEXT);
+    }
+
+    /**
+     * Creates an instance of the client that asks the server for the given wire protocol.
+     *
+     * @param serverHost the server host address
+     * @param serverPort the port number on the server
+     * @param protocol   the wire protocol to request
+     */
+    public Client(String serverHost, int serverPort, WireProtocol protocol) {
+        this(serverHost, serverPort, protocol, false);
+    }
+
+    /**
+     * Creates an instance of the client that asks the server for the given wire protocol, optionally over TLS.
+     *
+     * @param serverHost the server host address
+     * @param serverPort the port number on the server
+     * @param protocol   the wire protocol to request
+     * @param tls        true to connect with TLS, false for plaintext
+     */
+    public Client(String serverHost, int serverPort, WireProtocol protocol, boolean tls) {
         this.serverHost = serverHost;
         this.serverPort = serverPort;
+        this.protocol = protocol;
+        this.tls = tls;
     }
 
     /**
-     * Attempts to establish a connection with the server.
+     * Attempts to establish a connection with the server, and a new one each time the connection
+     * is lost, until the user quits or the server cannot be reached.
      * Handles various exceptions that may arise during the connection process.
      */
     private void connect() {
-        try (ClientConnection connection = new ClientConnection(serverHost, serverPort)) { // Closeable calls close()
-            connection.initialize();
-            connection.waitForWorkerCompletion();
-        } catch (SocketTimeoutException e){
-            System.out.println("Socket timeout expired. Terminating connection.");
-        } catch (InterruptedException e) {
-            System.out.println("Interruption exception. Shutting down.");
-        } catch (IOException e) {
-            System.out.println("No server connection. Shutting down.");
-        } catch (RuntimeException e) {
-            System.out.println("An error occurred: " + e.getMessage());
+        ReplayPosition position = new ReplayPosition();
+        String alias = null;
+        long reconnectAt = 0;
+        boolean connectionLost = true;
+        while (connectionLost) {
+            try (ClientConnection connection = openConnection(position, alias, reconnectAt)) { // Closeable calls close()
+                connection.initialize();
+                alias = connection.getAlias();
+                connection.waitForWorkerCompletion();
+                connectionLost = connection.isConnectionLost();
+                reconnectAt = connection.getReconnectAt();
+            } catch (SocketTimeoutException e){
+                System.out.println("Socket timeout expired. Terminating connection.");
+                connectionLost = false;
+            } catch (SSLException e) {
+                System.out.println("TLS handshake failed: " + e.getMessage() + ". Shutting down.");
+                connectionLost = false;
+            } catch (InterruptedException e) {
+                System.out.println("Interruption exception. Shutting down.");
+                connectionLost = false;
+            } catch (IOException e) {
+                System.out.println("No server connection. Shutting down.");
+                connectionLost = false;
+            } catch (RuntimeException e) {
+                System.out.println("An error occurred: " + e.getMessage());
+                connectionLost = false;
+            }
         }
     }
 
+    /**
+     * Opens a connection to the server. A reconnecting client first waits until the moment a
+     * restarting server asked for, then retries with growing pauses while nothing is listening,
+     * as happens while the server restarts.
+     *
+     * @param position    the client's position in the chat
+     * @param alias       the alias chosen on an earlier connection, or null on the first connection
+     * @param reconnectAt when a restarting server asked the client to reconnect, or 0
+     * @return the open connection
+     * @throws IOException          if the server cannot be reached
+     * @throws InterruptedException if the client is interrupted while waiting
+     */
+    private ClientConnection openConnection(ReplayPosition position, String alias, long reconnectAt) throws IOException, InterruptedException {
+        long waitMillis = reconnectAt - System.currentTimeMillis();
+        if (waitMillis > 0) {
+            System.out.println("Reconnecting in " + waitMillis + " ms.");
+            Thread.sleep(waitMillis);
+        }
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return new ClientConnection(serverHost, serverPort, protocol, tls, position, alias);
+            } catch (ConnectException e) {
+                long retryMillis = retryDelayMillis(attempt);
+                if (alias == null || retryMillis < 0) {
+                    throw e;
+                }
+                System.out.println("Server not reachable yet. Retrying in " + retryMillis + " ms.");
+                Thread.sleep(retryMillis);
+            }
+        }
+    }
+
+    /**
+     * Returns how long a reconnecting client pauses after a failed attempt to reach the server.
+     * The pause doubles with every attempt, and the client gives up after the last one.
+     *
+     * @param attempt the number of the attempt that failed, starting at 1
+     * @return the pause in milliseconds, or -1 if the client should give up
+     */
+    static long retryDelayMillis(int attempt) {
+        if (attempt >= MAX_RECONNECT_ATTEMPTS) {
+            return -1;
+        }
+        return INITIAL_RETRY_MILLIS << (attempt - 1);
+    }
+
     /**
      * Entry point for the client application.
      * Initializes the client based on command-line arguments and establishes a connection.
@@ -75,6 +176,8 @@ public class Client {
         return switch (args.length) {
             case 1 -> createClientWithDefaultServerPort(args[0]);
             case 2 -> createClientWithSpecifiedPort(args[0], args[1]);
+            case 3 -> createClientWithSpecifiedProtocol(args[0], args[1], args[2], null);
+            case 4 -> createClientWithSpecifiedProtocol(args[0], args[1], args[2], args[3]);
             default -> createDefaultClient();
         };
     }
@@ -101,6 +204,29 @@ public class Client {
         return new Client(host, port);
     }
 
+    /**
+     * Creates a client based on the provided host, port, protocol and security arguments.
+     *
+     * @param host the server host to connect to.
+     * @param portArg the server port to connect to.
+     * @param protocolArg the wire protocol to request, "text" or "binary".
+     * @param securityArg "tls" to connect with TLS, or null for plaintext.
+     * @return a new Client instance initialized with the provided host, port, protocol and security.
+     */
+    private static Client createClientWithSpecifiedProtocol(String host, String portArg, String protocolArg, String securityArg) {
+        int port = parsePortOrDefault(portArg);
+        WireProtocol protocol = WireProtocol.fromArg(protocolArg);
+        if (protocol == null) {
+            System.out.println("Unknown protocol. Using text");
+            protocol = WireProtocol.TEXT;
+        }
+        boolean tls = "tls".equalsIgnoreCase(securityArg);
+        if (securityArg != null && !tls) {
+            System.out.println("Unknown security option. Using plaintext");
+        }
+        return new Client(host, port, protocol, tls);
+    }
+
     private static int parsePortOrDefault(String portArg) {
         try {
             int port = Integer.parseInt(portArg);
@@ -1,62 +1,243 @@
 import java.io.BufferedReader;
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.net.InetAddress;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
 import java.util.UUID;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
 
 /**
  * Represents a connection for the client to communicate with the chat server.
  * This class handles the initialization, setting up of user details, and the initiation
- * of sender and receiver threads for the client's chat operations.
+ * of sender and receiver threads for the client's chat operations. Every connection asks the
+ * server for sequence numbers; a connection that replaces a lost one rejoins the client's room and
+ * asks for a replay of the messages it missed. Every connection also tells the server the user's
+ * alias and follows the roster of online clients in a {@link RosterView}. A binary connection also
+ * asks for compression, so that long messages and replays travel deflated; see {@link FrameCompressor}.
+ *
+ * <p>A TLS connection comes from the JVM's default socket factory, whose session cache outlives the
+ * connection, so a reconnect to the same server resumes the session with the ticket the server sent.</p>
  */
 public class ClientConnection implements Closeable {
 
     private static final int SOCKET_TIME_OUT = 60000;
+    private static final int NEGOTIATION_TIME_OUT = 2000;
     private final Socket socket;
     private final UUID clientUUID;
     private final AtomicBoolean shouldExit;
+    private final AtomicBoolean connectionLost;
+    private final AtomicLong reconnectAt;
+    private final ReplayPosition position;
+    private final RosterView roster;
+    private final FrameCompressor compressor;
     private final InputStreamReader in;
     private final BufferedReader userInput;
     private final UserSetup userSetup;
+    private WireProtocol protocol;
+    private String alias;
     private Thread senderThread;
     private Thread receiverThread;
 
     /**
      * Constructs a new client connection.
      *
-     * @param host the server host to connect to
-     * @param port the server port to connect to
+     * @param host     the server host to connect to
+     * @param port     the server port to connect to
+     * @param protocol the wire protocol to request from the server
+     * @param tls      true to connect with TLS, false for plaintext
+     * @param position the client's position in the chat, shared with the connection it replaces
+     * @param alias    the alias chosen on an earlier connection, or null to ask the user for one
      * @throws IOException if an error occurs during the connection process
      */
-    public ClientConnection(String host, int port) throws IOException {
-        this.socket = new Socket(host, port);
+    public ClientConnection(String host, int port, WireProtocol protocol, boolean tls, ReplayPosition position, String alias) throws IOException {
+        this.socket = tls ? openTlsSocket(host, port) : new Socket(host, port);
         this.clientUUID = UUID.randomUUID();
         this.shouldExit = new AtomicBoolean();
+        this.connectionLost = new AtomicBoolean();
+        this.reconnectAt = new AtomicLong();
+        this.position = position;
+        this.roster = new RosterView();
+        this.compressor = new FrameCompressor();
+        this.alias = alias;
         this.in = new InputStreamReader(System.in);
         this.userInput = new BufferedReader(in);
         this.userSetup = new UserSetupCli(userInput);
+        this.protocol = protocol;
     }
 
     /**
-     * Initializes the client connection by setting the user's alias,
-     * configuring the socket timeout, and starting worker threads for
-     * message sending and receiving.
+     * Connects with TLS and completes the handshake, checking that the server's certificate is
+     * trusted and issued for the host.
+     *
+     * @param host the server host to connect to
+     * @param port the server port to connect to
+     * @return the connected TLS socket
+     * @throws IOException if the server cannot be reached or the handshake fails
+     */
+    private static Socket openTlsSocket(String host, int port) throws IOException {
+        SSLSocket tlsSocket = (SSLSocket) SSLSocketFactory.getDefault().createSocket(host, port);
+        try {
+            SSLParameters parameters = tlsSocket.getSSLParameters();
+            parameters.setEndpointIdentificationAlgorithm("HTTPS");
+            tlsSocket.setSSLParameters(parameters);
+            tlsSocket.startHandshake();
+            return tlsSocket;
+        } catch (IOException e) {
+            tlsSocket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Initializes the client connection by negotiating the wire protocol, setting the user's alias,
+     * configuring the socket timeout, asking for sequence numbers or a replay, and starting worker
+     * threads for message sending and receiving. A reconnecting client keeps its alias.
      *
      * @throws IOException if an error occurs during the initialization process
      */
     public void initialize() throws IOException {
-        userSetup.setUserAlias();
+        if (protocol == WireProtocol.BINARY) {
+            negotiateBinaryProtocol();
+        }
+        boolean reconnecting = alias != null;
+        if (!reconnecting) {
+            userSetup.setUserAlias();
+            alias = userSetup.getAlias();
+        }
         socket.setSoTimeout(SOCKET_TIME_OUT);
         if (isConnected()) {
-            userSetup.printConnectionDetails(getHostAddress(socket), getHostName(socket));
-            userSetup.printWelcomeMsg();
+            if (reconnecting) {
+                System.out.println("Reconnected to " + getHostAddress(socket) + ". Replaying missed messages.");
+            } else {
+                userSetup.printConnectionDetails(getHostAddress(socket), getHostName(socket));
+                userSetup.printWelcomeMsg();
+            }
+            requestReplay(reconnecting);
             startWorkerThreads();
         }
     }
 
+    /**
+     * Tells the server the user's alias, asks it for the roster of online clients, and asks it to
+     * stamp messages with sequence numbers. A binary client asks for compression first, so that the
+     * replay can already be compressed. A reconnecting client also rejoins its room and asks for
+     * every message after the last one it saw.
+     *
+     * @param reconnecting true if this connection replaces a lost one
+     * @throws IOException if an error occurs while talking to the server
+     */
+    private void requestReplay(boolean reconnecting) throws IOException {
+        OutputStream out = socket.getOutputStream();
+        if (protocol == WireProtocol.BINARY) {
+            sendCommand(out, WireProtocol.COMPRESS);
+        }
+        sendCommand(out, "/alias " + alias);
+        sendCommand(out, WireProtocol.ROSTER);
+        if (reconnecting && position.isInRoom()) {
+            sendCommand(out, "/join " + position.getRoom());
+        }
+        sendCommand(out, reconnecting ? "/replay " + position.getReplayArgument() : "/replay");
+        out.flush();
+    }
+
+    /**
+     * Writes a command to the server in the agreed wire protocol.
+     *
+     * @param out     the socket's output stream
+     * @param command the command
+     * @throws IOException if an error occurs while writing
+     */
+    private void sendCommand(OutputStream out, String command) throws IOException {
+        if (protocol == WireProtocol.BINARY) {
+            new BinaryFrame(BinaryFrame.COMMAND, clientUUID, command).writeTo(out);
+        } else {
+            out.write((command + "\n").getBytes(StandardCharsets.ISO_8859_1));
+        }
+    }
+
+    /**
+     * @return the alias the user chose
+     */
+    public String getAlias() {
+        return alias;
+    }
+
+    /**
+     * Checks whether the connection ended because it failed or timed out, rather than because the user quit.
+     *
+     * @return true if the connection was lost, false otherwise
+     */
+    public boolean isConnectionLost() {
+        return connectionLost.get();
+    }
+
+    /**
+     * Returns when a restarting server asked this client to reconnect.
+     *
+     * @return the time in milliseconds since the epoch, or 0 if the server did not say
+     */
+    public long getReconnectAt() {
+        return reconnectAt.get();
+    }
+
+    /**
+     * Asks the server for the binary protocol and waits for its acknowledgement. Lines the server
+     * sends before the acknowledgement are ordinary text messages and are displayed. A server that
+     * does not answer in time does not know the binary protocol, and the client stays on text.
+     *
+     * @throws IOException if an error occurs while talking to the server
+     */
+    private void negotiateBinaryProtocol() throws IOException {
+        OutputStream out = socket.getOutputStream();
+        out.write((WireProtocol.BINARY_REQUEST + "\n").getBytes(StandardCharsets.ISO_8859_1));
+        out.flush();
+
+        socket.setSoTimeout(NEGOTIATION_TIME_OUT);
+        try {
+            InputStream in = socket.getInputStream();
+            String line;
+            while ((line = readRawLine(in)) != null) {
+                if (line.equals(WireProtocol.BINARY_ACK)) {
+                    return;
+                }
+                System.out.println(line);
+            }
+            throw new IOException("Connection closed during protocol negotiation");
+        } catch (SocketTimeoutException e) {
+            System.out.println("Server does not support the binary protocol. Using text");
+            protocol = WireProtocol.TEXT;
+        }
+    }
+
+    /**
+     * Reads a single text line straight from the socket, one byte at a time, so that no bytes
+     * following the line are consumed before the receiver takes over the stream.
+     *
+     * @param in the socket's input stream
+     * @return the line without its terminator, or null at end of stream
+     * @throws IOException if an error occurs while reading
+     */
+    private String readRawLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b == -1) {
+                return null;
+            }
+            line.append((char) b);
+        }
+        return line.toString();
+    }
+
     /**
      * Checks if the socket is connected and not closed.
      *
@@ -70,10 +251,10 @@ public class ClientConnection implements Closeable {
      * Starts separate threads to handle incoming messages (receiver) and outgoing messages (sender).
      */
     private void startWorkerThreads() {
-            receiverThread = new Thread(new MessageReceiver(socket, clientUUID, shouldExit));
+            receiverThread = new Thread(new MessageReceiver(socket, shouldExit, connectionLost, protocol, position, reconnectAt, roster, compressor));
             receiverThread.start();
 
-            senderThread = new Thread(new MessageSender(socket, clientUUID, shouldExit, userInput, userSetup.getAlias()));
+            senderThread = new Thread(new MessageSender(socket, clientUUID, shouldExit, userInput, alias, protocol, roster, compressor));
             senderThread.start();
     }
 
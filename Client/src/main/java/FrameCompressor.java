@@ -0,0 +1,90 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses the frames the client sends, once the server has agreed to compression with its
+ * {@link WireProtocol#COMPRESS} answer. The connection has one deflate stream: a frame of at least
+ * the server's threshold, such as a long pasted message, is deflated into it with a sync flush and
+ * sent as {@link BinaryFrame#COMPRESSED} frames; smaller frames are sent as they are, so ordinary
+ * chat lines cost no CPU.
+ * The sender thread writes through the compressor; the receiver only enables it.
+ */
+public class FrameCompressor {
+
+    private static final int MAX_PAYLOAD_LENGTH = 64 * 1024;
+    private static final UUID NO_SENDER = new UUID(0, 0);
+    private volatile int threshold;
+    private Deflater deflater;
+    private byte[] output;
+
+    /**
+     * Constructs a compressor that sends every frame raw until it is enabled.
+     */
+    public FrameCompressor() {
+        this.threshold = -1;
+    }
+
+    /**
+     * Starts compressing frames that reach the server's threshold.
+     *
+     * @param threshold the number of bytes below which frames are sent raw
+     */
+    public void enable(int threshold) {
+        this.threshold = threshold;
+    }
+
+    /**
+     * Writes a frame, compressed if compression is enabled and the frame reaches the threshold,
+     * with a single write call.
+     *
+     * @param frame the frame to write
+     * @param out   the socket's output stream
+     * @throws IOException if writing fails
+     */
+    public void writeTo(BinaryFrame frame, OutputStream out) throws IOException {
+        ByteBuffer encoded = frame.encode();
+        int limit = threshold;
+        if (limit < 0 || encoded.remaining() < limit) {
+            out.write(encoded.array(), 0, encoded.limit());
+            return;
+        }
+
+        if (deflater == null) {
+            deflater = new Deflater(Deflater.BEST_SPEED);
+            output = new byte[8192];
+        }
+        deflater.setInput(encoded);
+        int produced = 0;
+        do {
+            if (produced == output.length) {
+                output = Arrays.copyOf(output, output.length * 2);
+            }
+            produced += deflater.deflate(output, produced, output.length - produced, Deflater.SYNC_FLUSH);
+        } while (produced == output.length);
+
+        int frames = (produced + MAX_PAYLOAD_LENGTH - 1) / MAX_PAYLOAD_LENGTH;
+        ByteBuffer framed = ByteBuffer.allocate(produced + frames * (3 + BinaryFrame.HEADER_LENGTH));
+        for (int start = 0; start < produced; start += MAX_PAYLOAD_LENGTH) {
+            int count = Math.min(MAX_PAYLOAD_LENGTH, produced - start);
+            BinaryFrame.writeVarint(framed, BinaryFrame.HEADER_LENGTH + count);
+            framed.put(BinaryFrame.COMPRESSED);
+            framed.putLong(NO_SENDER.getMostSignificantBits());
+            framed.putLong(NO_SENDER.getLeastSignificantBits());
+            framed.put(output, start, count);
+        }
+        out.write(framed.array(), 0, framed.position());
+    }
+
+    /**
+     * Releases the deflate stream, if a frame was ever compressed, once the sender is done.
+     */
+    public void end() {
+        if (deflater != null) {
+            deflater.end();
+        }
+    }
+}
@@ -0,0 +1,130 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ProtocolException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads binary frames from the server, inflating {@link BinaryFrame#COMPRESSED} frames with one
+ * inflater for the whole connection. The frames inside a compressed frame are returned one by one,
+ * as if they had arrived raw; a frame inside may continue in the next compressed frame. Inflated
+ * bytes are kept a chunk at a time, so a small compressed frame cannot inflate into more memory
+ * than one frame and one chunk.
+ */
+public class FrameReader {
+
+    private static final int INFLATE_CHUNK_SIZE = 8192;
+    private final InputStream in;
+    private Inflater inflater;
+    private byte[] inflated;
+    private int start;
+    private int end;
+    private boolean chunkFull;
+
+    /**
+     * Constructs a reader for the server's stream.
+     *
+     * @param in the socket's input stream, preferably buffered
+     */
+    public FrameReader(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Reads the next frame, blocking until it is complete.
+     *
+     * @return the frame, or null if the stream ended between frames
+     * @throws IOException if reading fails or the stream does not contain a valid frame
+     */
+    public BinaryFrame read() throws IOException {
+        while (true) {
+            BinaryFrame frame = nextInflated();
+            if (frame != null) {
+                return frame;
+            }
+            if (inflater != null && (!inflater.needsInput() || chunkFull)) {
+                inflate();
+                continue;
+            }
+            byte[] bytes = BinaryFrame.readFrameBytes(in);
+            if (bytes == null) {
+                if (start < end) {
+                    throw new EOFException("Connection closed inside a compressed frame");
+                }
+                return null;
+            }
+            if (bytes[0] != BinaryFrame.COMPRESSED) {
+                return BinaryFrame.decode(bytes, 0, bytes.length);
+            }
+            if (inflater == null) {
+                inflater = new Inflater();
+                inflated = new byte[BinaryFrame.MAX_FRAME_LENGTH + 5 + INFLATE_CHUNK_SIZE];
+            }
+            inflater.setInput(bytes, BinaryFrame.HEADER_LENGTH, bytes.length - BinaryFrame.HEADER_LENGTH);
+        }
+    }
+
+    /**
+     * Releases the inflater, if a compressed frame was ever received.
+     */
+    public void end() {
+        if (inflater != null) {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Takes the next complete frame from the inflated bytes.
+     *
+     * @return the frame, or null if the inflated bytes hold no complete frame
+     * @throws ProtocolException if the inflated bytes do not contain a valid frame
+     */
+    private BinaryFrame nextInflated() throws ProtocolException {
+        int length = 0;
+        int position = start;
+        for (int shift = 0; ; shift += 7) {
+            if (position == end) {
+                return null;
+            }
+            if (shift > 28) {
+                throw new ProtocolException("Malformed frame length");
+            }
+            int b = inflated[position++];
+            length |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                break;
+            }
+        }
+        if (length < BinaryFrame.HEADER_LENGTH || length > BinaryFrame.MAX_FRAME_LENGTH) {
+            throw new ProtocolException("Invalid frame length: " + length);
+        }
+        if (end - position < length) {
+            return null;
+        }
+        start = position + length;
+        return BinaryFrame.decode(inflated, position, length);
+    }
+
+    /**
+     * Inflates the next chunk after the bytes not yet taken, moving those to the front first.
+     *
+     * @throws ProtocolException if the compressed bytes are malformed
+     */
+    private void inflate() throws ProtocolException {
+        System.arraycopy(inflated, start, inflated, 0, end - start);
+        end -= start;
+        start = 0;
+        try {
+            int count = inflater.inflate(inflated, end, Math.min(INFLATE_CHUNK_SIZE, inflated.length - end));
+            // A full chunk may leave inflated bytes behind even when all input has been consumed
+            chunkFull = count == INFLATE_CHUNK_SIZE;
+            if (count == 0 && !inflater.needsInput()) {
+                throw new ProtocolException("Malformed compressed frame");
+            }
+            end += count;
+        } catch (DataFormatException e) {
+            throw new ProtocolException("Malformed compressed frame: " + e.getMessage());
+        }
+    }
+}
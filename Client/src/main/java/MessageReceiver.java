@@ -1,40 +1,67 @@
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
 import java.nio.charset.StandardCharsets;
 import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Handles the task of receiving messages from the server.
- * Messages from the client themselves (matched by UUID) are not displayed.
+ * The server never sends a client's own messages back to it, so everything received is displayed;
+ * a leading "UUID|" sender prefix is stripped first. Sequence numbers are tracked in the
+ * client's {@link ReplayPosition}. Pings from the server are answered, not displayed; since the
+ * server pings idle connections, a read timeout means the server is gone. Roster messages update the
+ * client's {@link RosterView} and are not displayed either; if one turns out to be lost, the receiver
+ * asks for the whole roster again. Compressed frames are inflated by a
+ * {@link FrameReader}, and the server's answer to {@link WireProtocol#COMPRESS} enables the sender's
+ * {@link FrameCompressor} rather than being displayed. If the connection fails
+ * or times out, or the server announces that it is restarting, the receiver marks it as lost so
+ * that the client can reconnect.
  * This class is meant to be run in its own thread.
  */
 public class MessageReceiver implements Runnable {
 
-    private static final String UUID_REGEX = "^[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}";
+    private static final UUID NO_SENDER = new UUID(0, 0);
     private final Socket socket;
-    private final UUID clientUUID;
     private final AtomicBoolean shouldExit;
-    private final Pattern uuidPattern;
+    private final AtomicBoolean connectionLost;
+    private final WireProtocol protocol;
+    private final ReplayPosition position;
+    private final AtomicLong reconnectAt;
+    private final RosterView roster;
+    private final FrameCompressor compressor;
 
     /**
      * Constructs a new MessageReceiver instance.
      *
      * @param socket       the socket connected to the server
-     * @param clientUUID   the unique identifier for the client
-     * @param shouldExit   a flag indicating when to stop receiving messages
+     * @param shouldExit     a flag indicating when to stop receiving messages
+     * @param connectionLost a flag set when the connection fails rather than the user quitting
+     * @param protocol       the wire protocol agreed with the server
+     * @param position       the room and sequence number to update from the received messages
+     * @param reconnectAt    set to the time, in milliseconds since the epoch, at which to reconnect
+     *                       when the server announces that it is restarting
+     * @param roster         the client's copy of the roster, updated from the roster messages
+     * @param compressor     the sender's compressor, enabled when the server agrees to compression
      */
-    public MessageReceiver(Socket socket, UUID clientUUID, AtomicBoolean shouldExit) {
+    public MessageReceiver(Socket socket, AtomicBoolean shouldExit, AtomicBoolean connectionLost,
+                           WireProtocol protocol, ReplayPosition position, AtomicLong reconnectAt,
+                           RosterView roster, FrameCompressor compressor) {
         this.socket = socket;
-        this.clientUUID = clientUUID;
         this.shouldExit = shouldExit;
-        this.uuidPattern = Pattern.compile(UUID_REGEX);
+        this.connectionLost = connectionLost;
+        this.protocol = protocol;
+        this.position = position;
+        this.reconnectAt = reconnectAt;
+        this.roster = roster;
+        this.compressor = compressor;
     }
 
     /**
@@ -43,61 +70,203 @@ public class MessageReceiver implements Runnable {
      */
     @Override
     public void run() {
+        if (protocol == WireProtocol.BINARY) {
+            receiveBinaryFrames();
+        } else {
+            receiveTextLines();
+        }
+    }
+
+    /**
+     * Reads and displays text protocol lines.
+     */
+    private void receiveTextLines() {
         try (BufferedReader in = setupBufferedReader()) {
             while (!shouldExit.get()) {
                 String line = in.readLine();
                 if (line == null) {
-                    System.out.println("Connection failure, press any key to shut down");
-                    shouldExit.set(true);
+                    onEndOfStream();
+                    break;
+                }
+
+                if (line.equals(WireProtocol.PING)) {
+                    answerPing();
+                    continue;
+                }
+                if (line.startsWith(WireProtocol.RECONNECT)) {
+                    onServerRestarting(line);
+                    break;
+                }
+                if (line.startsWith(WireProtocol.ROSTER)) {
+                    applyRoster(line);
+                    continue;
+                }
+                display(position.track(line));
+            }
+        } catch (SocketTimeoutException ste) {
+            onConnectionLost("Socket timeout expired.");
+        } catch (IOException e) {
+            if (!shouldExit.get()) {
+                onConnectionLost("IOException thrown.");
+            }
+        }
+    }
+
+    /**
+     * Reads and displays binary frames.
+     */
+    private void receiveBinaryFrames() {
+        FrameReader frames = null;
+        try (InputStream in = new BufferedInputStream(socket.getInputStream())) {
+            frames = new FrameReader(in);
+            while (!shouldExit.get()) {
+                BinaryFrame frame = frames.read();
+                if (frame == null) {
+                    onEndOfStream();
                     break;
                 }
 
-                if (containsUUID(line)) {
-                    if (startsWithDifferentUUID(line)) {
-                        System.out.println(extractMessage(line));
-                    }
-                } else {
-                    System.out.println(line);
+                if (frame.getType() == BinaryFrame.PING) {
+                    answerPing();
+                    continue;
+                }
+                if (frame.getType() == BinaryFrame.RECONNECT) {
+                    onServerRestarting(frame.getBody());
+                    break;
+                }
+                if (frame.getType() == BinaryFrame.ROSTER) {
+                    applyRoster(frame.getBody());
+                    continue;
+                }
+                if (frame.getType() == BinaryFrame.NOTICE && frame.getBody().startsWith(WireProtocol.COMPRESS + " ")) {
+                    onCompressionAnswer(frame.getBody());
+                    continue;
+                }
+                String body = position.track(frame.getBody());
+                if (body != null) {
+                    System.out.println(body);
                 }
             }
         } catch (SocketTimeoutException ste) {
-            System.out.println("Socket timeout expired. Terminating connection. Press any key to shut down.");
-            shouldExit.set(true);
+            onConnectionLost("Socket timeout expired.");
         } catch (IOException e) {
-            System.out.println("IOException thrown. Terminating connection.");
-            shouldExit.set(true);
+            if (!shouldExit.get()) {
+                onConnectionLost("IOException thrown.");
+            }
+        } finally {
+            if (frames != null) {
+                frames.end();
+            }
+        }
+    }
+
+    /**
+     * Enables the sender's compression with the threshold the server answered, unless it answered "off".
+     *
+     * @param answer the server's {@link WireProtocol#COMPRESS} answer
+     */
+    private void onCompressionAnswer(String answer) {
+        try {
+            compressor.enable(Integer.parseInt(answer.substring(WireProtocol.COMPRESS.length()).trim()));
+        } catch (NumberFormatException e) {
+            // "off": frames are sent raw
+        }
+    }
+
+    /**
+     * Applies a roster message to the client's copy and asks the server for the whole roster again
+     * if the copy shows that a roster message was lost.
+     *
+     * @param message the roster message
+     * @throws IOException if the request cannot be written
+     */
+    private void applyRoster(String message) throws IOException {
+        if (roster.apply(message)) {
+            send(WireProtocol.ROSTER, new BinaryFrame(BinaryFrame.COMMAND, NO_SENDER, WireProtocol.ROSTER));
+        }
+    }
+
+    /**
+     * Answers a ping from the server in the agreed wire protocol.
+     *
+     * @throws IOException if the answer cannot be written
+     */
+    private void answerPing() throws IOException {
+        send(WireProtocol.PONG, new BinaryFrame(BinaryFrame.PONG, NO_SENDER, ""));
+    }
+
+    /**
+     * Writes a line or frame to the server from the receiver thread. It goes out in a single write
+     * call, which the socket does not interleave with the messages the sender thread writes.
+     *
+     * @param line  the text protocol line
+     * @param frame the binary frame saying the same
+     * @throws IOException if the line cannot be written
+     */
+    private void send(String line, BinaryFrame frame) throws IOException {
+        OutputStream out = socket.getOutputStream();
+        if (protocol == WireProtocol.TEXT) {
+            out.write((line + "\n").getBytes(StandardCharsets.ISO_8859_1));
+        } else {
+            frame.writeTo(out);
         }
+        out.flush();
     }
 
     /**
-     * Determines if the given line contains a UUID.
+     * Displays a text protocol line, stripping a leading "UUID|" sender prefix.
      *
-     * @param line the input string
-     * @return true if the line contains a UUID, false otherwise
+     * @param line the line to display, or null if there is nothing to display
      */
-    private boolean containsUUID(String line) {
-        Matcher matcher = uuidPattern.matcher(line);
-        return matcher.find();
+    private void display(String line) {
+        if (line == null) {
+            return;
+        }
+        if (SenderIdParser.hasSenderId(line)) {
+            System.out.println(SenderIdParser.extractMessage(line));
+        } else {
+            System.out.println(line);
+        }
     }
 
     /**
-     * Checks if the line starts with a UUID that is different from the client's UUID.
+     * Handles the hint of a server that is shutting down: picks a random moment within the window
+     * the server asked for, so that its clients do not all reconnect at once, and stops the
+     * client's workers like a lost connection does.
      *
-     * @param line the input string
-     * @return true if the line starts with a different UUID, false otherwise
+     * @param hint the {@link WireProtocol#RECONNECT} hint, with the window in milliseconds
      */
-    private boolean startsWithDifferentUUID(String line) {
-        return !line.split("\\|", 2)[0].equals(clientUUID.toString());
+    private void onServerRestarting(String hint) {
+        long spreadMillis;
+        try {
+            spreadMillis = Math.max(0, Long.parseLong(hint.substring(WireProtocol.RECONNECT.length()).trim()));
+        } catch (NumberFormatException e) {
+            spreadMillis = 0;
+        }
+        reconnectAt.set(System.currentTimeMillis() + ThreadLocalRandom.current().nextLong(spreadMillis + 1));
+        onConnectionLost("The server is restarting.");
+    }
+
+    /**
+     * Handles the end of the server's stream: a lost connection, unless the user quit, in which case
+     * the stream ended because the sender closed the socket.
+     */
+    private void onEndOfStream() {
+        if (!shouldExit.get()) {
+            onConnectionLost("Connection failure.");
+        }
     }
 
     /**
-     * Extracts the message from a line that contains a UUID.
+     * Reports a lost connection and stops the client's workers so that the client can reconnect.
+     * The sender is blocked on user input, so the user is asked to press enter.
      *
-     * @param line the input string with UUID|message format
-     * @return the message without the UUID
+     * @param reason what happened to the connection
      */
-    private String extractMessage(String line) {
-        return line.split("\\|", 2)[1];
+    private void onConnectionLost(String reason) {
+        System.out.println(reason + " Press enter to reconnect.");
+        connectionLost.set(true);
+        shouldExit.set(true);
     }
 
     /**
@@ -6,17 +6,28 @@ import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Handles the task of sending messages from the client to the server.
- * Prepends each message with the client's UUID and alias for message sender identification.
+ * Prepends each message with the client's UUID and alias for message sender identification,
+ * either as a "UUID|" text prefix or in the header of a {@link BinaryFrame}.
+ * "wwhhoo" is answered from the client's {@link RosterView} once the server has sent the roster.
+ * Binary frames go through the connection's {@link FrameCompressor}, which compresses long messages
+ * once the server has agreed to it.
  * This class is meant to be run in its own thread.
  */
 public class MessageSender implements Runnable {
 
     private static final String DISPLAY_CONNECTED_CLIENTS_CMD = "wwhhoo";
+    private static final String JOIN_ROOM_CMD = "/join ";
+    private static final String LEAVE_ROOM_CMD = "/leave";
+    private static final String HISTORY_CMD = "/history";
+    private static final String DIRECT_MESSAGE_CMD = "/msg ";
     private final Socket socket;
     private final UUID clientUUID;
     private final AtomicBoolean shouldExit;
     private final BufferedReader userInput;
     private final String alias;
+    private final WireProtocol protocol;
+    private final RosterView roster;
+    private final FrameCompressor compressor;
 
     /**
      * Constructs a new MessageSender instance.
@@ -26,14 +37,20 @@ public class MessageSender implements Runnable {
      * @param shouldExit   a flag indicating when to stop sending messages
      * @param userInput    the user's input source
      * @param alias        the user's chosen alias
+     * @param protocol     the wire protocol agreed with the server
+     * @param roster       the client's copy of the roster of online clients
+     * @param compressor   the compressor for binary frames, enabled by the receiver
      */
-    public MessageSender(Socket socket, UUID clientUUID, AtomicBoolean shouldExit,
-                         BufferedReader userInput, String alias) {
+    public MessageSender(Socket socket, UUID clientUUID, AtomicBoolean shouldExit, BufferedReader userInput,
+                         String alias, WireProtocol protocol, RosterView roster, FrameCompressor compressor) {
         this.socket = socket;
         this.clientUUID = clientUUID;
         this.shouldExit = shouldExit;
         this.userInput = userInput;
         this.alias = alias;
+        this.protocol = protocol;
+        this.roster = roster;
+        this.compressor = compressor;
     }
 
     /**
@@ -42,6 +59,17 @@ public class MessageSender implements Runnable {
      */
     @Override
     public void run() {
+        if (protocol == WireProtocol.BINARY) {
+            sendBinaryFrames();
+        } else {
+            sendTextLines();
+        }
+    }
+
+    /**
+     * Sends every line the user enters as a text protocol line.
+     */
+    private void sendTextLines() {
         try (PrintWriter out = setupPrintWriter()) {
 
             String line;
@@ -52,11 +80,13 @@ public class MessageSender implements Runnable {
                     break;
                 }
 
-                if (line.equals(DISPLAY_CONNECTED_CLIENTS_CMD)) {
+                if (answerLocally(line)) {
+                    continue;
+                }
+                if (isCommand(line)) {
                     out.write(line + "\n");
                 } else {
-                    String messageWithUUID = clientUUID + "|" + "[" + alias + "]: " + line;
-                    out.write(messageWithUUID + "\n");
+                    out.write(formatChatLine(clientUUID, alias, line) + "\n");
                 }
 
                 out.flush();
@@ -66,6 +96,77 @@ public class MessageSender implements Runnable {
         }
     }
 
+    /**
+     * Formats a chat message as a text protocol line, without the line terminator.
+     *
+     * @param clientUUID the unique identifier of the sending client
+     * @param alias      the sender's alias
+     * @param message    the message text
+     * @return the line in UUID|[alias]: message format
+     */
+    public static String formatChatLine(UUID clientUUID, String alias, String message) {
+        return clientUUID + "|" + "[" + alias + "]: " + message;
+    }
+
+    /**
+     * Sends every line the user enters as a binary frame: commands as {@link BinaryFrame#COMMAND},
+     * everything else as {@link BinaryFrame#CHAT} prefixed with the alias. Frames that reach the
+     * server's threshold are compressed.
+     */
+    private void sendBinaryFrames() {
+        try (OutputStream out = socket.getOutputStream()) {
+
+            String line;
+            while (!shouldExit.get() && (line = userInput.readLine()) != null) {
+
+                if (line.trim().equalsIgnoreCase("quit")) {
+                    shouldExit.set(true);
+                    break;
+                }
+
+                if (answerLocally(line)) {
+                    continue;
+                }
+                if (isCommand(line)) {
+                    compressor.writeTo(new BinaryFrame(BinaryFrame.COMMAND, clientUUID, line), out);
+                } else {
+                    compressor.writeTo(new BinaryFrame(BinaryFrame.CHAT, clientUUID, "[" + alias + "]: " + line), out);
+                }
+            }
+        } catch (IOException e) {
+            shouldExit.set(true);
+        } finally {
+            compressor.end();
+        }
+    }
+
+    /**
+     * Answers "wwhhoo" from the client's copy of the roster, if the server has sent it.
+     *
+     * @param line the line the user entered
+     * @return true if the line was answered here and is not to be sent, false otherwise
+     */
+    private boolean answerLocally(String line) {
+        if (line.equals(DISPLAY_CONNECTED_CLIENTS_CMD) && roster.isReceived()) {
+            System.out.println(roster.describe());
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether a line the user entered is a command for the server rather than a chat
+     * message: "wwhhoo", "/join &lt;room&gt;", "/leave", "/history [count]" or "/msg &lt;alias|#id&gt; &lt;message&gt;".
+     * Commands are sent without the UUID and alias.
+     *
+     * @param line the line the user entered
+     * @return true if the line is a command, false otherwise
+     */
+    static boolean isCommand(String line) {
+        return line.equals(DISPLAY_CONNECTED_CLIENTS_CMD) || line.startsWith(JOIN_ROOM_CMD) || line.equals(LEAVE_ROOM_CMD)
+                || line.equals(HISTORY_CMD) || line.startsWith(HISTORY_CMD + " ") || line.startsWith(DIRECT_MESSAGE_CMD);
+    }
+
     /**
      * Initializes and returns a PrintWriter to send messages to the server.
      *
@@ -0,0 +1,89 @@
+/**
+ * Where the client is in the chat: the room it is in and the sequence number of the last message it
+ * saw there. The receiver updates the position from what the server sends, and after a lost
+ * connection the client uses it to ask the new connection for everything it missed.
+ *
+ * <p>The server stamps messages with a "#&lt;sequence&gt; " prefix once the client has sent "/replay",
+ * and confirms every replay with a "#&lt;sequence&gt;@&lt;history&gt; REPLAYED &lt;count&gt; MESSAGES" notice.
+ * The history ID tells the server which numbering the sequence number belongs to, so that a
+ * server whose room history is another one, such as another cluster node, does not replay from it.</p>
+ */
+public class ReplayPosition {
+
+    private static final String LOBBY = "lobby";
+    private static final String JOINED_PREFIX = "JOINED ";
+    private static final String EMPTY_REPLAY = "REPLAYED 0 MESSAGES";
+    private volatile String room;
+    private volatile long sequence;
+    private volatile String history;
+
+    /**
+     * Constructs the position of a client that has not connected yet: in the lobby, having seen nothing.
+     */
+    public ReplayPosition() {
+        this.room = LOBBY;
+    }
+
+    /**
+     * @return the room the client was last in
+     */
+    public String getRoom() {
+        return room;
+    }
+
+    /**
+     * @return true if the client was last in a room other than the lobby
+     */
+    public boolean isInRoom() {
+        return !room.equals(LOBBY);
+    }
+
+    /**
+     * @return the sequence number of the last message seen in the room, or 0 if none
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Returns what to send with "/replay" to get every message after the last one seen.
+     *
+     * @return "&lt;sequence&gt;@&lt;history&gt;", or just the sequence number if the history is not known
+     */
+    public String getReplayArgument() {
+        String current = history;
+        return current == null ? Long.toString(sequence) : sequence + "@" + current;
+    }
+
+    /**
+     * Updates the position from a received line and returns the text to display.
+     * A sequence number prefix is stripped; a replay notice that replayed nothing is not displayed.
+     *
+     * @param line the line or frame body received from the server
+     * @return the text to display, or null if there is nothing to display
+     */
+    public String track(String line) {
+        if (line.startsWith(JOINED_PREFIX)) {
+            room = line.substring(JOINED_PREFIX.length());
+            sequence = 0;
+            history = null;
+            return line;
+        }
+        int space = line.indexOf(' ');
+        if (!line.startsWith("#") || space < 2) {
+            return line;
+        }
+        int at = line.indexOf('@');
+        int end = at > 0 && at < space ? at : space;
+        try {
+            sequence = Long.parseLong(line.substring(1, end));
+        } catch (NumberFormatException e) {
+            return line;
+        }
+        if (end == at) {
+            history = line.substring(at + 1, space);
+        }
+        String text = line.substring(space + 1);
+        return text.equals(EMPTY_REPLAY) ? null : text;
+    }
+}
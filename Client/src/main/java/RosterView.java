@@ -0,0 +1,145 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The client's own copy of the server's roster of online clients. The connection asks the server for
+ * it with {@link WireProtocol#ROSTER}; the server sends the whole roster once and then only what
+ * changes, so "wwhhoo" can be answered here without asking the server again.
+ * Roster messages are tab-separated: {@link WireProtocol#ROSTER}, "snapshot" or "delta", the roster
+ * version, the part number as "&lt;part&gt;/&lt;parts&gt;", then "+&lt;id&gt; &lt;alias&gt;" for each client
+ * online under that alias and "-&lt;id&gt;" for each client that left.
+ * A server that falls behind may drop a roster message like any other. A delta that does not follow
+ * on from the last version, or a missing part, shows that one was lost: the copy is then out of date,
+ * "wwhhoo" goes to the server again, and the receiver asks for a new snapshot.
+ * Updated by the receiver thread and read by the sender thread.
+ */
+public class RosterView {
+
+    private static final String SNAPSHOT = "snapshot";
+    private static final long RESYNC_RETRY_MILLIS = 5000;
+    private final Map<Long, String> aliases = new ConcurrentHashMap<>();
+    private volatile boolean received;
+    private boolean synced;
+    private String kind;
+    private long version;
+    private int nextPart;
+    private int parts;
+    private long resyncRequestedAt;
+
+    /**
+     * Applies a roster message from the server. A snapshot replaces the whole roster; a delta is only
+     * applied on top of the version it follows. Malformed messages are ignored.
+     *
+     * @param message the roster message
+     * @return true if a roster message was lost and the client should ask the server for the roster again
+     */
+    public boolean apply(String message) {
+        String[] fields = message.split("\t");
+        if (fields.length < 4) {
+            return false;
+        }
+        long messageVersion;
+        int part;
+        int messageParts;
+        try {
+            int slash = fields[3].indexOf('/');
+            messageVersion = Long.parseLong(fields[2]);
+            part = Integer.parseInt(fields[3].substring(0, slash));
+            messageParts = Integer.parseInt(fields[3].substring(slash + 1));
+        } catch (RuntimeException e) {
+            return false;
+        }
+
+        if (part == 1 && fields[1].equals(SNAPSHOT)) {
+            aliases.clear();
+            synced = true;
+        } else if (!follows(fields[1], messageVersion, part)) {
+            return lose();
+        }
+        kind = fields[1];
+        version = messageVersion;
+        parts = messageParts;
+        nextPart = part + 1;
+        for (int i = 4; i < fields.length; i++) {
+            applyEntry(fields[i]);
+        }
+        received = nextPart > parts;
+        return false;
+    }
+
+    /**
+     * Checks whether a message is the next one the copy expects: the next part of the current
+     * snapshot or delta, or the first part of the delta to the following version.
+     *
+     * @param messageKind    "snapshot" or "delta"
+     * @param messageVersion the version the message belongs to
+     * @param part           the part number of the message
+     * @return true if nothing was lost before the message, false otherwise
+     */
+    private boolean follows(String messageKind, long messageVersion, int part) {
+        if (!synced) {
+            return false;
+        }
+        if (nextPart <= parts) {
+            return messageKind.equals(kind) && messageVersion == version && part == nextPart;
+        }
+        return messageKind.equals("delta") && messageVersion == version + 1 && part == 1;
+    }
+
+    /**
+     * Marks the copy as out of date until the next snapshot arrives.
+     *
+     * @return true if the client should ask for a snapshot now, false if it asked only recently
+     */
+    private boolean lose() {
+        synced = false;
+        received = false;
+        long now = System.currentTimeMillis();
+        if (now - resyncRequestedAt < RESYNC_RETRY_MILLIS) {
+            return false;
+        }
+        resyncRequestedAt = now;
+        return true;
+    }
+
+    /**
+     * @return true once the server has sent the roster and no change to it was lost, false while
+     *         "wwhhoo" still has to ask the server
+     */
+    public boolean isReceived() {
+        return received;
+    }
+
+    /**
+     * Describes who is online, the same way the server answers "wwhhoo".
+     *
+     * @return "ONLINE (&lt;count&gt;): " and the aliases in alphabetical order
+     */
+    public String describe() {
+        List<String> online = new ArrayList<>(aliases.values());
+        online.sort(String.CASE_INSENSITIVE_ORDER);
+        return "ONLINE (" + online.size() + "): " + String.join(", ", online);
+    }
+
+    /**
+     * Applies a single roster entry, ignoring malformed ones.
+     *
+     * @param entry "+&lt;id&gt; &lt;alias&gt;" or "-&lt;id&gt;"
+     */
+    private void applyEntry(String entry) {
+        try {
+            if (entry.startsWith("+")) {
+                int space = entry.indexOf(' ');
+                if (space > 1) {
+                    aliases.put(Long.parseLong(entry.substring(1, space)), entry.substring(space + 1));
+                }
+            } else if (entry.startsWith("-")) {
+                aliases.remove(Long.parseLong(entry.substring(1)));
+            }
+        } catch (NumberFormatException e) {
+            // not an entry this client understands
+        }
+    }
+}
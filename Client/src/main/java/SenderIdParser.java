@@ -0,0 +1,53 @@
+/**
+ * Recognises the "UUID|message" prefix of incoming text protocol lines.
+ * The check works on the line in place with {@link String#charAt(int)}, so parsing a line
+ * allocates nothing; only {@link #extractMessage(String)} creates the substring that is displayed.
+ */
+public final class SenderIdParser {
+
+    private static final int UUID_LENGTH = 36;
+    private static final char DELIMITER = '|';
+
+    private SenderIdParser() {
+    }
+
+    /**
+     * Determines if the line starts with a UUID followed by the '|' delimiter.
+     *
+     * @param line the input string
+     * @return true if the line has a sender UUID prefix, false otherwise
+     */
+    public static boolean hasSenderId(String line) {
+        if (line.length() <= UUID_LENGTH || line.charAt(UUID_LENGTH) != DELIMITER) {
+            return false;
+        }
+        for (int i = 0; i < UUID_LENGTH; i++) {
+            char c = line.charAt(i);
+            boolean valid = (i == 8 || i == 13 || i == 18 || i == 23) ? c == '-' : isHexDigit(c);
+            if (!valid) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Extracts the message from a line with a sender UUID prefix.
+     *
+     * @param line the input string with UUID|message format
+     * @return the message without the UUID
+     */
+    public static String extractMessage(String line) {
+        return line.substring(UUID_LENGTH + 1);
+    }
+
+    /**
+     * Checks if a character is a hexadecimal digit.
+     *
+     * @param c the character to check
+     * @return true for 0-9, a-f and A-F, false otherwise
+     */
+    private static boolean isHexDigit(char c) {
+        return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+    }
+}
@@ -80,6 +80,9 @@ public class UserSetupCli implements UserSetup{
     public void printWelcomeMsg() {
         System.out.println(">>> WELCOME TO THE CHAT " + alias + " <<<");
         System.out.println("Enter 'quit' to exit");
+        System.out.println("Enter '/join <room>' to change rooms and '/leave' to return to the lobby");
+        System.out.println("Enter '/history [count]' to see earlier messages in the room");
+        System.out.println("Enter 'wwhhoo' to see who is online and '/msg <alias|#id> <message>' to message one of them");
         System.out.println("************************************************************");
     }
 }
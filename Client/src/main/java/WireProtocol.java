@@ -0,0 +1,84 @@
+import java.util.Locale;
+
+/**
+ * The framings the client can speak with the server.
+ * Every connection starts in {@link #TEXT}. A client that wants {@link #BINARY} sends
+ * {@link #BINARY_REQUEST} as its very first line and waits for {@link #BINARY_ACK};
+ * everything after that line, in both directions, is {@link BinaryFrame}s.
+ * The server pings a connection that has been idle, and the client answers with a pong.
+ * A server that is shutting down sends a reconnect hint before it closes the connection.
+ * The roster of online clients is followed with {@link #ROSTER}; see {@link RosterView}.
+ * A binary client asks for compressed frames with {@link #COMPRESS}; see {@link FrameCompressor}.
+ */
+public enum WireProtocol {
+
+    /**
+     * Newline-delimited text lines, prefixed with the sender's UUID and a '|'.
+     */
+    TEXT("text"),
+
+    /**
+     * Length-prefixed {@link BinaryFrame}s.
+     */
+    BINARY("binary");
+
+    /**
+     * The first line sent to ask the server for {@link #BINARY}.
+     */
+    public static final String BINARY_REQUEST = "PROTOCOL binary";
+
+    /**
+     * The line the server answers with before switching to {@link #BINARY}.
+     */
+    public static final String BINARY_ACK = "PROTOCOL binary OK";
+
+    /**
+     * The line the server sends to a text connection that has been idle.
+     */
+    public static final String PING = "/ping";
+
+    /**
+     * The line answering a {@link #PING}.
+     */
+    public static final String PONG = "/pong";
+
+    /**
+     * The start of the hint a server that is shutting down sends, followed by a space and the
+     * number of milliseconds over which to spread the reconnect.
+     */
+    public static final String RECONNECT = "/reconnect";
+
+    /**
+     * The command asking the server for the roster of online clients and its changes, and the start
+     * of every roster line the server sends.
+     */
+    public static final String ROSTER = "/roster";
+
+    /**
+     * The command asking the server to compress the frames it sends, and the start of its answer,
+     * followed by a space and either the threshold in bytes below which frames are sent raw or "off".
+     */
+    public static final String COMPRESS = "/compress";
+
+    private final String argName;
+
+    WireProtocol(String argName) {
+        this.argName = argName;
+    }
+
+    /**
+     * Parses a command-line argument into a protocol.
+     *
+     * @param arg the argument, e.g. "binary".
+     * @return the matching protocol, or null if the argument names none.
+     */
+    public static WireProtocol fromArg(String arg) {
+        String name = arg.toLowerCase(Locale.ROOT);
+        for (WireProtocol protocol : values()) {
+            if (protocol.argName.equals(name)) {
+                return protocol;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,16 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ClientTest {
+
+    @Test
+    public void testRetryDelayDoublesUntilTheClientGivesUp() {
+        assertEquals(250, Client.retryDelayMillis(1));
+        assertEquals(500, Client.retryDelayMillis(2));
+        assertEquals(1000, Client.retryDelayMillis(3));
+        assertEquals(2000, Client.retryDelayMillis(4));
+        assertEquals(4000, Client.retryDelayMillis(5));
+        assertEquals(-1, Client.retryDelayMillis(6));
+    }
+}
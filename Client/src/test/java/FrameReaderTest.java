@@ -0,0 +1,95 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FrameReaderTest {
+
+    /**
+     * Written by the server's FrameCompressor at BEST_SPEED: two batches of 20 chat frames from
+     * sender 00000000-0000-0001-0000-000000000002, each followed by a raw notice, then one batch
+     * holding a single notice of about 40 KB, all in one deflate stream.
+     */
+    private static final String SERVER_FRAMES = "/server-compressed-frames.bin";
+    private static final UUID SENDER = UUID.randomUUID();
+
+    @Test
+    public void testReadsFramesCompressedByTheServer() throws IOException {
+        byte[] bytes;
+        try (InputStream in = FrameReaderTest.class.getResourceAsStream(SERVER_FRAMES)) {
+            bytes = in.readAllBytes();
+        }
+        FrameReader reader = new FrameReader(new ByteArrayInputStream(bytes));
+        UUID sender = new UUID(1, 2);
+
+        for (int batch = 0; batch < 2; batch++) {
+            for (int i = 0; i < 20; i++) {
+                BinaryFrame frame = reader.read();
+                assertEquals(BinaryFrame.CHAT, frame.getType());
+                assertEquals(sender, frame.getSenderId());
+                assertEquals("10.0.0.1: [alice]: line " + batch + "." + i + " of the quick brown fox", frame.getBody());
+            }
+            BinaryFrame notice = reader.read();
+            assertEquals(BinaryFrame.NOTICE, notice.getType());
+            assertEquals("raw notice " + batch, notice.getBody());
+        }
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; large.length() < 40000; i++) {
+            large.append("row ").append(i % 100).append(' ');
+        }
+        assertEquals(large.toString(), reader.read().getBody());
+        assertNull(reader.read());
+        reader.end();
+    }
+
+    @Test
+    public void testReadsBackWhatTheCompressorWrites() throws IOException {
+        FrameCompressor compressor = new FrameCompressor();
+        compressor.enable(512);
+        Random random = new Random(42);
+        StringBuilder paste = new StringBuilder();
+        random.ints(100_000, 0x21, 0x7F).forEach(c -> paste.append((char) c));
+        String[] bodies = {"hi", "x".repeat(600), paste.substring(0, 60_000), "bye"};
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (String body : bodies) {
+            compressor.writeTo(new BinaryFrame(BinaryFrame.CHAT, SENDER, body), out);
+        }
+        compressor.end();
+        byte[] written = out.toByteArray();
+        assertTrue(written.length < 60_000 + 600);
+
+        FrameReader reader = new FrameReader(new ByteArrayInputStream(written));
+        for (String body : bodies) {
+            BinaryFrame frame = reader.read();
+            assertEquals(SENDER, frame.getSenderId());
+            assertEquals(body, frame.getBody());
+        }
+        assertNull(reader.read());
+        reader.end();
+    }
+
+    @Test
+    public void testStreamEndingInsideCompressedFrameFails() throws IOException {
+        FrameCompressor compressor = new FrameCompressor();
+        compressor.enable(0);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        compressor.writeTo(new BinaryFrame(BinaryFrame.CHAT, SENDER, "a line long enough to be worth compressing"), out);
+        compressor.end();
+        byte[] written = out.toByteArray();
+
+        FrameReader reader = new FrameReader(new ByteArrayInputStream(Arrays.copyOf(written, written.length - 3)));
+        assertThrows(EOFException.class, reader::read);
+        reader.end();
+    }
+}
@@ -0,0 +1,60 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MessageReceiverTest {
+
+    @Test
+    public void testReconnectHintPicksMomentWithinWindow() throws IOException, InterruptedException {
+        long before = System.currentTimeMillis();
+
+        Receiver receiver = receive("/reconnect 5000\n");
+
+        assertTrue(receiver.connectionLost.get());
+        assertTrue(receiver.reconnectAt.get() >= before);
+        assertTrue(receiver.reconnectAt.get() <= System.currentTimeMillis() + 5000);
+    }
+
+    @Test
+    public void testMalformedReconnectHintReconnectsAtOnce() throws IOException, InterruptedException {
+        long before = System.currentTimeMillis();
+
+        Receiver receiver = receive("/reconnect soon\n");
+
+        assertTrue(receiver.connectionLost.get());
+        assertTrue(receiver.reconnectAt.get() >= before);
+        assertTrue(receiver.reconnectAt.get() <= System.currentTimeMillis());
+    }
+
+    private static Receiver receive(String sent) throws IOException, InterruptedException {
+        Receiver receiver = new Receiver();
+        try (ServerSocket server = new ServerSocket(0);
+             Socket client = new Socket("localhost", server.getLocalPort());
+             Socket accepted = server.accept()) {
+            Thread thread = new Thread(new MessageReceiver(client, receiver.shouldExit, receiver.connectionLost,
+                    WireProtocol.TEXT, new ReplayPosition(), receiver.reconnectAt, new RosterView(), new FrameCompressor()));
+            thread.start();
+            OutputStream out = accepted.getOutputStream();
+            out.write(sent.getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            thread.join(5000);
+            assertFalse(thread.isAlive());
+        }
+        return receiver;
+    }
+
+    private static final class Receiver {
+        final AtomicBoolean shouldExit = new AtomicBoolean();
+        final AtomicBoolean connectionLost = new AtomicBoolean();
+        final AtomicLong reconnectAt = new AtomicLong();
+    }
+}
@@ -0,0 +1,46 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RosterViewTest {
+
+    @Test
+    public void testAppliesSnapshotAndFollowingDeltas() {
+        RosterView roster = new RosterView();
+
+        assertFalse(roster.apply("/roster\tsnapshot\t4\t1/2\t+1 alice"));
+        assertFalse(roster.isReceived());
+        assertFalse(roster.apply("/roster\tsnapshot\t4\t2/2\t+2 bob"));
+        assertFalse(roster.apply("/roster\tdelta\t5\t1/1\t-1\t+3 carol"));
+
+        assertTrue(roster.isReceived());
+        assertEquals("ONLINE (2): bob, carol", roster.describe());
+    }
+
+    @Test
+    public void testLostDeltaAsksOnceForNewSnapshot() {
+        RosterView roster = new RosterView();
+        roster.apply("/roster\tsnapshot\t4\t1/1\t+1 alice");
+
+        assertTrue(roster.apply("/roster\tdelta\t6\t1/1\t+2 bob"));
+        assertFalse(roster.isReceived());
+        assertFalse(roster.apply("/roster\tdelta\t7\t1/1\t+3 carol"));
+        assertEquals("ONLINE (1): alice", roster.describe());
+
+        assertFalse(roster.apply("/roster\tsnapshot\t7\t1/1\t+1 alice\t+2 bob\t+3 carol"));
+        assertTrue(roster.isReceived());
+        assertEquals("ONLINE (3): alice, bob, carol", roster.describe());
+    }
+
+    @Test
+    public void testLostPartIsAGap() {
+        RosterView roster = new RosterView();
+        roster.apply("/roster\tsnapshot\t4\t1/1\t+1 alice");
+        roster.apply("/roster\tdelta\t5\t1/3\t+2 bob");
+
+        assertTrue(roster.apply("/roster\tdelta\t5\t3/3\t+3 carol"));
+        assertFalse(roster.isReceived());
+    }
+}
@@ -0,0 +1,134 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * A single message of the binary wire protocol:
+ * <pre>
+ *     varint length | type (1 byte) | sender UUID (16 bytes) | UTF-8 body
+ * </pre>
+ * The length is an unsigned LEB128 varint covering everything after it. The sender UUID is the
+ * client's UUID for chat messages and commands, and all zeros for messages generated by the server.
+ */
+public class BinaryFrame {
+
+    /**
+     * Number of bytes between the length prefix and the body.
+     */
+    public static final int HEADER_LENGTH = 1 + 16;
+
+    /**
+     * The longest body a client reads in one frame, in bytes.
+     */
+    public static final int MAX_BODY_LENGTH = 64 * 1024;
+
+    /**
+     * The longest body accepted from a client, in bytes. It leaves room for what the server puts in
+     * front of a body it relays, such as the sender's address, a sequence number or the header of a
+     * direct message, so that every relayed frame stays within {@link #MAX_BODY_LENGTH}.
+     */
+    public static final int MAX_INBOUND_BODY_LENGTH = MAX_BODY_LENGTH - 256;
+
+    private static final UUID NO_SENDER = new UUID(0, 0);
+    private final FrameType type;
+    private final UUID senderId;
+    private final String body;
+
+    /**
+     * Constructs a new frame.
+     *
+     * @param type     The message type.
+     * @param senderId The UUID of the sending client, or null for server messages.
+     * @param body     The message text.
+     */
+    public BinaryFrame(FrameType type, UUID senderId, String body) {
+        this.type = type;
+        this.senderId = NO_SENDER.equals(senderId) ? null : senderId;
+        this.body = body;
+    }
+
+    /**
+     * @return The message type, or null if the frame carried an unknown type code.
+     */
+    public FrameType getType() {
+        return type;
+    }
+
+    /**
+     * @return The UUID of the sending client, or null for server messages.
+     */
+    public UUID getSenderId() {
+        return senderId;
+    }
+
+    /**
+     * @return The message text.
+     */
+    public String getBody() {
+        return body;
+    }
+
+    /**
+     * Encodes the frame, length prefix included.
+     *
+     * @return A read-only buffer holding the encoded frame.
+     */
+    public ByteBuffer encode() {
+        byte[] bodyBytes = body.getBytes(StandardCharsets.UTF_8);
+        int length = HEADER_LENGTH + bodyBytes.length;
+        ByteBuffer buffer = ByteBuffer.allocate(varintSize(length) + length);
+
+        writeVarint(buffer, length);
+        buffer.put(type.getCode());
+        UUID id = senderId == null ? NO_SENDER : senderId;
+        buffer.putLong(id.getMostSignificantBits());
+        buffer.putLong(id.getLeastSignificantBits());
+        buffer.put(bodyBytes);
+
+        return buffer.flip().asReadOnlyBuffer();
+    }
+
+    /**
+     * Decodes a frame from its bytes, without the length prefix.
+     *
+     * @param frame  The array holding the frame.
+     * @param length The number of bytes of the frame in the array.
+     * @return The decoded frame.
+     */
+    static BinaryFrame decode(byte[] frame, int length) {
+        ByteBuffer buffer = ByteBuffer.wrap(frame, 0, length);
+        FrameType type = FrameType.fromCode(buffer.get());
+        UUID senderId = new UUID(buffer.getLong(), buffer.getLong());
+        String body = new String(frame, HEADER_LENGTH, length - HEADER_LENGTH, StandardCharsets.UTF_8);
+        return new BinaryFrame(type, senderId, body);
+    }
+
+    /**
+     * Writes an unsigned LEB128 varint.
+     *
+     * @param buffer The buffer to write to.
+     * @param value  The non-negative value to write.
+     */
+    static void writeVarint(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Returns the number of bytes needed to write a value as a varint.
+     *
+     * @param value The non-negative value.
+     * @return The encoded size in bytes.
+     */
+    static int varintSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            size++;
+            value >>>= 7;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,119 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * A pool of equally sized direct buffers for socket reads and writes, shared by every connection.
+ * Buffers are cut from large direct slabs, so the pool makes one native allocation per slab rather
+ * than one per buffer, and a released buffer is reused rather than left to the garbage collector.
+ * Reading into or writing from a direct buffer also spares the JDK its own copy through a
+ * temporary direct buffer.
+ *
+ * <p>Each thread keeps a few released buffers for itself, so a writer that takes a buffer for
+ * every batch and returns it afterwards never touches the shared free list. A thread that is about
+ * to end hands its cached buffers back with {@link #releaseThreadCache()}. The shared free list is
+ * guarded by a lock rather than a lock-free queue, whose nodes would be garbage of their own.</p>
+ *
+ * <p>The pool grows by a slab whenever it runs dry and never shrinks.</p>
+ */
+public class BufferPool {
+
+    private static final int THREAD_CACHE_SIZE = 4;
+    private final int bufferSize;
+    private final int buffersPerSlab;
+    private final ArrayDeque<ByteBuffer> free;
+    private final ThreadLocal<ArrayDeque<ByteBuffer>> threadCache;
+    private int slabs;
+
+    /**
+     * Constructs an empty pool. The first slab is allocated on first use.
+     *
+     * @param bufferSize     The capacity of every buffer, in bytes.
+     * @param buffersPerSlab The number of buffers cut from each slab.
+     */
+    public BufferPool(int bufferSize, int buffersPerSlab) {
+        this.bufferSize = bufferSize;
+        this.buffersPerSlab = buffersPerSlab;
+        this.free = new ArrayDeque<>();
+        this.threadCache = ThreadLocal.withInitial(() -> new ArrayDeque<>(THREAD_CACHE_SIZE));
+    }
+
+    /**
+     * Takes a buffer from the calling thread's cache, or else from the shared free list, allocating
+     * a new slab if that is empty too.
+     *
+     * @return A cleared buffer of {@link #getBufferSize()} bytes, to be handed back with {@link #release(ByteBuffer)}.
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = threadCache.get().pollFirst();
+        if (buffer != null) {
+            return buffer;
+        }
+        synchronized (free) {
+            buffer = free.pollFirst();
+            if (buffer == null) {
+                buffer = allocateSlab();
+            }
+        }
+        return buffer;
+    }
+
+    /**
+     * Hands a buffer back to the pool. The buffer must not be used afterwards.
+     *
+     * @param buffer A buffer taken from this pool.
+     */
+    public void release(ByteBuffer buffer) {
+        buffer.clear();
+        ArrayDeque<ByteBuffer> cache = threadCache.get();
+        if (cache.size() < THREAD_CACHE_SIZE) {
+            cache.addFirst(buffer);
+            return;
+        }
+        synchronized (free) {
+            free.addFirst(buffer);
+        }
+    }
+
+    /**
+     * Hands the buffers cached by the calling thread back to the shared free list. Called by a thread
+     * that is about to end, whose cache would otherwise be lost with it.
+     */
+    public void releaseThreadCache() {
+        ArrayDeque<ByteBuffer> cache = threadCache.get();
+        synchronized (free) {
+            free.addAll(cache);
+        }
+        threadCache.remove();
+    }
+
+    /**
+     * @return The capacity of every buffer, in bytes.
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * @return The direct memory held by the pool, in bytes, whether the buffers are in use or not.
+     */
+    public long getAllocatedBytes() {
+        synchronized (free) {
+            return (long) slabs * buffersPerSlab * bufferSize;
+        }
+    }
+
+    /**
+     * Allocates a slab, adds all but one of its buffers to the free list and returns that one.
+     * Called with the free list's lock held.
+     *
+     * @return A buffer from the new slab.
+     */
+    private ByteBuffer allocateSlab() {
+        ByteBuffer slab = ByteBuffer.allocateDirect(bufferSize * buffersPerSlab);
+        slabs++;
+        for (int i = 1; i < buffersPerSlab; i++) {
+            free.addLast(slab.slice(i * bufferSize, bufferSize));
+        }
+        return slab.slice(0, bufferSize);
+    }
+}
@@ -1,96 +1,440 @@
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLSocket;
 
 /**
  * Represents a handler for individual client connections.
  * Manages the input and output streams for a client, reads messages from the client,
  * and sends messages to the client. When a client sends a message, it is forwarded to
  * the server for broadcasting.
+ *
+ * <p>Reading and writing run on separate threads. {@link #run()} reads from the client, while
+ * {@link #writeQueuedMessages()} drains a bounded outbound queue to the socket, so a client that
+ * reads slowly never blocks the thread that is broadcasting to it.</p>
+ *
+ * <p>Both threads work on direct buffers from the server's {@link BufferPool}: the reader reads into
+ * one for the life of the connection and decodes lines and frames straight out of it, and the writer
+ * stages each batch in one, so the only allocation per message is the decoded message itself.</p>
+ *
+ * <p>With TLS the connection is an {@link SSLSocket}, which performs the handshake on the first
+ * read or write.</p>
+ *
+ * <p>A binary client that asks for compression gets every batch that reaches the threshold as
+ * compressed frames, deflated by the writer with the connection's {@link FrameCompressor}; compressed
+ * frames from the client are inflated by its {@link FrameDecoder}.</p>
  */
-public class ClientHandler implements Runnable {
+public class ClientHandler implements Runnable, ClientSession {
 
     private final Socket connection;
+    private final long connectionId;
     private final Server server;
-    private final PrintWriter out;
-    private final BufferedReader in;
+    private final WritableByteChannel out;
+    private final ReadableByteChannel in;
+    private final boolean plaintextChannel;
+    private final OutboundQueue<OutboundMessage> outbound;
+    private final FlushPolicy flushPolicy;
+    private volatile Thread writerThread;
+    private volatile WireProtocol requestedProtocol;
+    private volatile FrameCompressor requestedCompressor;
+    private volatile boolean sequenceNumbers;
+    private volatile long lastActivity;
+    private volatile boolean draining;
+    private WireProtocol protocol;
+    private FrameCompressor compressor;
 
     /**
      * Constructs a new ClientHandler for a given client connection and server.
      *
-     * @param clientConnection The socket representing the client connection.
+     * @param clientConnection The socket representing the client connection, possibly a TLS socket.
+     * @param connectionId     The identifier the server assigned to the connection.
      * @param server           The chat server to which this handler belongs.
+     * @param outbound         The queue holding messages waiting to be written to the client.
+     * @param flushPolicy      How queued messages are coalesced into socket writes.
      * @throws IOException If there's an issue setting up the input or output streams.
      */
-    public ClientHandler(Socket clientConnection, Server server) throws IOException {
+    public ClientHandler(Socket clientConnection, long connectionId, Server server,
+                         OutboundQueue<OutboundMessage> outbound, FlushPolicy flushPolicy) throws IOException {
         this.connection = clientConnection;
+        this.connectionId = connectionId;
         this.server = server;
-        this.in = new BufferedReader(new InputStreamReader(connection.getInputStream()));
-        this.out = new PrintWriter(connection.getOutputStream(), true);
+        // A TLS socket layered over an accepted channel returns that channel, which would bypass encryption
+        this.plaintextChannel = connection.getChannel() != null && !(connection instanceof SSLSocket);
+        this.in = plaintextChannel ? connection.getChannel() : Channels.newChannel(connection.getInputStream());
+        this.out = plaintextChannel ? connection.getChannel() : Channels.newChannel(connection.getOutputStream());
+        this.outbound = outbound;
+        this.flushPolicy = flushPolicy;
+        this.requestedProtocol = WireProtocol.TEXT;
+        this.protocol = WireProtocol.TEXT;
+        this.lastActivity = System.nanoTime();
     }
 
     /**
-     * Returns the IP address of the connected client.
-     *
-     * @return The IP address as a string.
+     * {@inheritDoc}
      */
+    @Override
     public String getClientIP() {
         return connection.getInetAddress().getHostAddress();
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getConnectionId() {
+        return connectionId;
+    }
+
     /**
      * Main logic for handling client messages. Reads messages from the client and forwards
      * them to the server for broadcasting. If a client sends a "quit" message, the connection is terminated.
+     * A client whose first line is {@link WireProtocol#BINARY_REQUEST} is switched to binary frames.
      */
     @Override
     public void run() {
+        BufferPool pool = server.getBufferPool();
+        ByteBuffer buffer = pool.acquire();
         try {
+            if (readTextLines(buffer)) {
+                switchToBinary();
+                readBinaryFrames(buffer);
+            }
+        } catch (ClosedChannelException e) {
+            // the connection was closed by the writer or by the overflow policy
+        } catch (IOException e) {
+            server.getLog().info("Error handling client: " + e.getMessage());
+        } finally {
+            try {
+                closeAllResources();
+            } catch (IOException e) {
+                server.getLog().info("Error closing resources: " + e.getMessage());
+            }
+            pool.release(buffer);
+            pool.releaseThreadCache();
+            server.removeClient(this);
+        }
+    }
+
+    /**
+     * Reads newline-delimited text messages until the client quits or disconnects, or until the
+     * first line turns out to be {@link WireProtocol#BINARY_REQUEST}.
+     *
+     * @param buffer The reader's buffer, flipped for reading on return.
+     * @return true if the client asked for binary frames, false if the connection is done.
+     * @throws IOException If reading from the client fails or a line is too long.
+     */
+    private boolean readTextLines(ByteBuffer buffer) throws IOException {
+        LineDecoder lines = new LineDecoder(Charset.defaultCharset());
+        boolean firstLine = true;
+        buffer.flip();
+        while (true) {
             String message;
-            while ((message = in.readLine()) != null) {
+            while ((message = lines.next(buffer)) != null) {
+                if (firstLine && message.equals(WireProtocol.BINARY_REQUEST)) {
+                    return true;
+                }
+                firstLine = false;
 
                 if (message.equals("quit")) {
-                    break;
+                    return false;
+                }
+
+                if (!message.equals(WireProtocol.PONG)) {
+                    server.broadcastMessage(message, this);
                 }
+            }
+            if (!read(buffer)) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Reads binary frames until the client quits or disconnects. Decoding continues in the buffer
+     * the request line was read from: a binary client sends nothing after its request line until it
+     * has seen the acknowledgement, but any bytes that did follow are decoded as frames.
+     *
+     * @param buffer The reader's buffer, flipped for reading.
+     * @throws IOException If reading from the client fails or a frame is malformed.
+     */
+    private void readBinaryFrames(ByteBuffer buffer) throws IOException {
+        FrameDecoder decoder = new FrameDecoder();
+
+        try {
+            do {
+                BinaryFrame frame;
+                while ((frame = decoder.next(buffer)) != null) {
+                    if (frame.getType() == FrameType.QUIT) {
+                        return;
+                    }
+                    handleFrame(frame);
+                }
+            } while (read(buffer));
+        } finally {
+            decoder.end();
+        }
+    }
+
+    /**
+     * Reads the next bytes from the client into the emptied buffer, blocking until some arrive.
+     * The decoders copy out whatever they keep, so the buffer is always empty when this is called.
+     *
+     * @param buffer The reader's buffer, flipped for reading before and after the call.
+     * @return true if bytes were read, false at end of stream.
+     * @throws IOException If reading from the client fails.
+     */
+    private boolean read(ByteBuffer buffer) throws IOException {
+        buffer.clear();
+        int count;
+        do {
+            count = in.read(buffer);
+        } while (count == 0);
+        buffer.flip();
+        if (count < 0) {
+            return false;
+        }
+        lastActivity = System.nanoTime();
+        server.getMetrics().onBytesReceived(count);
+        return true;
+    }
+
+    /**
+     * Forwards a chat message or command received as a binary frame to the server for broadcasting.
+     * Commands are relayed without the sender's UUID, as text clients send them. Heartbeat answers
+     * only count as activity.
+     *
+     * @param frame The received frame.
+     */
+    private void handleFrame(BinaryFrame frame) {
+        if (frame.getType() == FrameType.CHAT) {
+            server.broadcastMessage(OutboundMessage.fromClient(FrameType.CHAT, getClientIP(), frame.getSenderId(), frame.getBody()), this);
+        } else if (frame.getType() == FrameType.COMMAND) {
+            server.broadcastMessage(OutboundMessage.fromClient(FrameType.COMMAND, getClientIP(), null, frame.getBody()), this);
+        }
+    }
+
+    /**
+     * Asks the writer to acknowledge the binary protocol and to encode everything after the
+     * acknowledgement as binary frames. The queue is woken up so that a writer waiting on an empty
+     * queue sends the acknowledgement at once.
+     */
+    private void switchToBinary() {
+        requestedProtocol = WireProtocol.BINARY;
+        outbound.wakeUp();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void enableSequenceNumbers() {
+        sequenceNumbers = true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasSequenceNumbers() {
+        return sequenceNumbers;
+    }
 
-                server.broadcastMessage(message, getClientIP());
+    /**
+     * {@inheritDoc}
+     * The queue is woken up so that a writer waiting on an empty queue sends the acknowledgement.
+     */
+    @Override
+    public boolean enableCompression() {
+        if (requestedProtocol != WireProtocol.BINARY) {
+            return false;
+        }
+        if (requestedCompressor == null) {
+            FrameCompressor created = server.createCompressor();
+            if (created == null) {
+                return false;
+            }
+            requestedCompressor = created;
+            outbound.wakeUp();
+        }
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getLastActivity() {
+        return lastActivity;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void disconnect() {
+        disconnectSlowClient();
+    }
 
+    /**
+     * {@inheritDoc}
+     * The queue is woken up so that a writer waiting on an empty queue notices.
+     */
+    @Override
+    public void drain() {
+        draining = true;
+        outbound.wakeUp();
+    }
+
+    /**
+     * Writer logic for the client. Takes batches of messages off the outbound queue and writes each
+     * batch to the socket channel with one gathering write, until the connection is closed, a write
+     * fails, or the connection is being drained and nothing is left to write. Closing the socket
+     * then ends {@link #run()}.
+     */
+    public void writeQueuedMessages() {
+        writerThread = Thread.currentThread();
+        BufferPool pool = server.getBufferPool();
+        // A TLS socket copies the batch into its own buffer while encrypting, so only plaintext is staged
+        WriteBatch batch = new WriteBatch(flushPolicy, server.getMetrics(), plaintextChannel ? pool : null);
+        try {
+            while (!connection.isClosed()) {
+                collectBatch(batch);
+                while (!batch.isEmpty()) {
+                    batch.writeTo(out);
+                }
+                if (draining && outbound.isEmpty()) {
+                    break;
+                }
             }
+        } catch (ClosedChannelException e) {
+            // the connection was closed by the reader or by the overflow policy
         } catch (IOException e) {
-            System.out.println("Error handling client: " + e.getMessage());
+            server.getLog().info("Error writing to client: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         } finally {
+            batch.clear();
+            pool.releaseThreadCache();
+            if (compressor != null) {
+                compressor.end();
+            }
             try {
-                closeAllResources();
+                connection.close();
             } catch (IOException e) {
-                System.out.println("Error closing resources: " + e.getMessage());
+                server.getLog().info("Error closing resources: " + e.getMessage());
             }
-            server.removeClient(this);
         }
     }
 
     /**
-     * Closes all resources associated with this client handler including the input and output streams.
+     * Waits for the next message and then keeps adding queued messages to the batch until it is full,
+     * or until no further message arrives within the flush delay. If the reader has asked for a protocol
+     * switch, the acknowledgement goes first and the batch is encoded for the new protocol; likewise
+     * for compression, after which the batch is compressed if it reaches the threshold. A wake-up
+     * with no message queued leaves the batch with just the acknowledgements, if any.
+     *
+     * @param batch The empty batch to fill.
+     * @throws InterruptedException If the writer is stopped while waiting.
+     */
+    private void collectBatch(WriteBatch batch) throws InterruptedException {
+        OutboundMessage first = outbound.take();
+        if (requestedProtocol != protocol) {
+            batch.add(OutboundMessage.notice(WireProtocol.BINARY_ACK).encode(protocol));
+            protocol = requestedProtocol;
+        }
+        if (requestedCompressor != compressor) {
+            compressor = requestedCompressor;
+            batch.add(OutboundMessage.notice(WireProtocol.COMPRESS + " " + compressor.getThreshold()).encode(protocol));
+        }
+        if (first != null) {
+            batch.add(first.encode(protocol, sequenceNumbers));
+            long deadline = System.nanoTime() + flushPolicy.getFlushDelayNanos();
+
+            while (!batch.isFull()) {
+                OutboundMessage message = outbound.poll();
+                if (message == null) {
+                    long remainingNanos = deadline - System.nanoTime();
+                    if (remainingNanos <= 0) {
+                        break;
+                    }
+                    message = outbound.poll(remainingNanos, TimeUnit.NANOSECONDS);
+                    if (message == null) {
+                        break;
+                    }
+                }
+                batch.add(message.encode(protocol, sequenceNumbers));
+            }
+        }
+        if (compressor != null) {
+            batch.compress(compressor);
+        }
+    }
+
+    /**
+     * Closes all resources associated with this client handler including the input and output streams,
+     * and stops the writer. The socket is closed first so that a writer blocked on a slow client is released.
      *
      * @throws IOException If there's an issue closing any of the resources.
      */
     private void closeAllResources() throws IOException {
+        connection.close();
+        Thread writer = writerThread;
+        if (writer != null) {
+            writer.interrupt();
+        }
         if (out != null) {
             out.close();
         }
         if (in != null) {
             in.close();
         }
-        connection.close();
     }
 
     /**
-     * Sends a message to the client associated with this handler.
+     * Queues a message for the client associated with this handler. Never blocks; if the client
+     * has fallen too far behind, the queue's overflow policy drops a message or disconnects the client.
      * The method is called by the Server instance.
      *
-     * @param message The message to be sent.
+     * @param message The message to be sent, possibly shared with other recipients.
+     */
+    @Override
+    public void sendMessage(OutboundMessage message) {
+        if (!outbound.offer(message)) {
+            disconnectSlowClient();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getDroppedMessages() {
+        return outbound.getDroppedMessages();
+    }
+
+    /**
+     * {@inheritDoc}
      */
-    public void sendMessage(String message) {
-        out.println(message);
+    @Override
+    public int getQueueDepth() {
+        return outbound.size();
+    }
+
+    /**
+     * Closes the socket of a client that cannot keep up. Both the reader and the writer
+     * then fail and clean up as for any other lost connection.
+     */
+    private void disconnectSlowClient() {
+        try {
+            connection.close();
+        } catch (IOException e) {
+            server.getLog().info("Error closing resources: " + e.getMessage());
+        }
     }
 }
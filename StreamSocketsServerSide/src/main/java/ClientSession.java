@@ -0,0 +1,99 @@
+/**
+ * Represents a single connected chat client as seen by the {@link Server}.
+ * Implementations differ in how they perform socket I/O (a dedicated blocking thread
+ * or a shared non-blocking event loop), but the server broadcasts to all of them
+ * through this common interface.
+ */
+public interface ClientSession {
+
+    /**
+     * Returns the IP address of the connected client.
+     *
+     * @return The IP address as a string.
+     */
+    String getClientIP();
+
+    /**
+     * Returns the identifier the server assigned to this connection when it was accepted.
+     * Unlike the IP address it is unique even for clients behind the same NAT or on the same host.
+     *
+     * @return The connection ID.
+     */
+    long getConnectionId();
+
+    /**
+     * Sends a message to the client associated with this session.
+     *
+     * @param message The message to be sent.
+     */
+    default void sendMessage(String message) {
+        sendMessage(OutboundMessage.notice(message));
+    }
+
+    /**
+     * Sends a message to the client associated with this session, encoded for the
+     * wire protocol the client speaks. The message may be shared with other recipients.
+     *
+     * @param message The message to be sent.
+     */
+    void sendMessage(OutboundMessage message);
+
+    /**
+     * Returns how many messages were not delivered to this client because it fell too far behind.
+     *
+     * @return The number of dropped messages.
+     */
+    long getDroppedMessages();
+
+    /**
+     * Returns how many messages are waiting to be written to this client.
+     *
+     * @return The number of queued messages.
+     */
+    int getQueueDepth();
+
+    /**
+     * Makes every numbered chat message sent to this client from now on carry its sequence number,
+     * as a "#&lt;sequence&gt; " prefix. Used by clients that want to ask for a replay after reconnecting.
+     */
+    void enableSequenceNumbers();
+
+    /**
+     * Returns whether messages sent to this client carry their sequence numbers.
+     *
+     * @return true after {@link #enableSequenceNumbers()}, false otherwise.
+     */
+    boolean hasSequenceNumbers();
+
+    /**
+     * Compresses the batches sent to this client from now on, once the writer has acknowledged the
+     * request with a {@link WireProtocol#COMPRESS} notice carrying the threshold. Only binary
+     * connections can be compressed. Asking again changes nothing.
+     *
+     * @return true if the connection is or will be compressed, false if it speaks the text protocol
+     * or compression is turned off. Sessions that cannot compress keep this default.
+     */
+    default boolean enableCompression() {
+        return false;
+    }
+
+    /**
+     * Returns when anything, including a heartbeat answer, was last received from the client.
+     *
+     * @return The {@link System#nanoTime()} of the last read, or of the connection if nothing was read yet.
+     */
+    long getLastActivity();
+
+    /**
+     * Closes the connection, for example because the client stopped answering heartbeats.
+     * Safe to call from any thread; the session is cleaned up as for any lost connection.
+     */
+    void disconnect();
+
+    /**
+     * Closes the connection as soon as everything queued for the client so far has been written.
+     * Used when the server shuts down, after the reconnect hint has been queued.
+     * Safe to call from any thread.
+     */
+    void drain();
+}
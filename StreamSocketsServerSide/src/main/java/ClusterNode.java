@@ -0,0 +1,271 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Connects a {@link Server} to the other nodes of a chat cluster, so that a client can connect to
+ * any node and still chat with clients on all the others.
+ *
+ * <p>Nodes talk over plain TCP links: each node listens on its cluster port and keeps a link open
+ * to every configured peer, reconnecting when a link drops. A configured peer that turns out to be
+ * this node itself is given up on after the first handshake. A broadcast on one node is relayed to
+ * all its peers, and every node forwards a relayed message to its other peers, so the nodes only
+ * need to form a connected graph rather than a full mesh. Every message carries its origin node
+ * and a sequence number; {@link RelayDeduplicator} drops copies arriving on a second path, and a
+ * node never accepts its own messages back, so nothing loops.</p>
+ */
+public class ClusterNode {
+
+    private static final String HANDSHAKE = "CHAT-CLUSTER/1";
+    private static final long RECONNECT_DELAY_MILLIS = 1000;
+    private final String nodeId;
+    private final int port;
+    private final List<InetSocketAddress> peers;
+    private final int outboundCapacity;
+    private final Server server;
+    private final Set<PeerLink> links;
+    private final RelayDeduplicator seen;
+    private final AtomicLong nextSequence;
+    private volatile ServerSocket listener;
+    private volatile boolean stopped;
+
+    /**
+     * Constructs a cluster node. Nothing is opened until {@link #start()}.
+     *
+     * @param nodeId           The ID of this node, unique within the cluster.
+     * @param port             The port to accept peer links on, 0 for any free port, or -1 to only connect out.
+     * @param peers            The addresses of the peers this node connects to.
+     * @param outboundCapacity The number of relayed messages queued per peer before new ones are dropped.
+     * @param server           The server whose broadcasts are relayed.
+     */
+    public ClusterNode(String nodeId, int port, List<InetSocketAddress> peers, int outboundCapacity, Server server) {
+        this.nodeId = nodeId;
+        this.port = port;
+        this.peers = peers;
+        this.outboundCapacity = outboundCapacity;
+        this.server = server;
+        this.links = ConcurrentHashMap.newKeySet();
+        this.seen = new RelayDeduplicator();
+        // Starting from the clock keeps sequence numbers increasing across restarts of a node
+        // that keeps its configured ID, so its peers never mistake new messages for old ones.
+        this.nextSequence = new AtomicLong(System.currentTimeMillis() << 20);
+    }
+
+    /**
+     * Opens the cluster port, unless the node only connects out, and starts connecting to the peers.
+     *
+     * @throws IOException If the cluster port cannot be bound.
+     */
+    public void start() throws IOException {
+        if (port >= 0) {
+            listener = new ServerSocket(port);
+            startThread(this::acceptPeers, "cluster-accept");
+        }
+        for (InetSocketAddress peer : peers) {
+            startThread(() -> connectToPeer(peer), "cluster-connect-" + peer);
+        }
+    }
+
+    /**
+     * @return The ID of this node.
+     */
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * @return The port this node accepts peer links on, or -1 if it only connects out or has not started.
+     */
+    public int getPort() {
+        ServerSocket bound = listener;
+        return bound == null ? -1 : bound.getLocalPort();
+    }
+
+    /**
+     * @return The number of peers currently linked to this node.
+     */
+    public int getPeerCount() {
+        return links.size();
+    }
+
+    /**
+     * Relays a message broadcast on this node to every peer.
+     *
+     * @param room    The name of the room the message was broadcast in.
+     * @param message The message.
+     */
+    public void relay(String room, OutboundMessage message) {
+        long sequence = nextSequence.incrementAndGet();
+        seen.firstSeen(nodeId, sequence);
+        forward(new RelayMessage(nodeId, sequence, room, message), null);
+    }
+
+    /**
+     * Handles a message relayed by a peer: unless it has been seen before, it is delivered to this
+     * node's clients and forwarded to the other peers. Called on the link's reader thread.
+     *
+     * @param from    The link the message arrived on.
+     * @param message The relayed message.
+     */
+    void onRelayReceived(PeerLink from, RelayMessage message) {
+        if (message.getOriginNode().equals(nodeId) || !seen.firstSeen(message.getOriginNode(), message.getSequence())) {
+            return;
+        }
+        server.deliverRelayed(message.getRoom(), message.getMessage());
+        forward(message, from);
+    }
+
+    /**
+     * Queues a message on every link except the one it arrived on.
+     *
+     * @param message The message to forward.
+     * @param from    The link the message arrived on, or null for a local broadcast.
+     */
+    private void forward(RelayMessage message, PeerLink from) {
+        for (PeerLink link : links) {
+            if (link != from) {
+                link.send(message);
+            }
+        }
+    }
+
+    /**
+     * Stops accepting and reconnecting links and closes the open ones.
+     */
+    public void stop() {
+        stopped = true;
+        ServerSocket bound = listener;
+        if (bound != null) {
+            try {
+                bound.close();
+            } catch (IOException e) {
+                // already closed
+            }
+        }
+        for (PeerLink link : links) {
+            link.close();
+        }
+    }
+
+    /**
+     * Accepts links from peers, serving each on its own thread, until the node is stopped.
+     */
+    private void acceptPeers() {
+        while (!stopped) {
+            try {
+                Socket socket = listener.accept();
+                startThread(() -> serve(socket), "cluster-peer-" + socket.getRemoteSocketAddress());
+            } catch (IOException e) {
+                if (!stopped) {
+                    server.getLog().info("Issue with a cluster connection: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Keeps a link to a configured peer open, reconnecting after a short delay whenever the peer
+     * is unreachable or the link drops. Stops for good if the peer turns out to be this node.
+     *
+     * @param address The address of the peer's cluster port.
+     */
+    private void connectToPeer(InetSocketAddress address) {
+        while (!stopped) {
+            try {
+                if (!serve(new Socket(address.getHostString(), address.getPort()))) {
+                    server.getLog().info("Cluster peer " + address.getHostString() + ":" + address.getPort()
+                            + " is this node. Not connecting to it");
+                    return;
+                }
+            } catch (IOException e) {
+                // the peer is not up yet; try again after the delay
+            }
+            try {
+                Thread.sleep(RECONNECT_DELAY_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Exchanges node IDs over a new connection and then serves it as a link until it closes.
+     * A connection from this node to itself is closed right after the handshake.
+     *
+     * @param socket The new connection.
+     * @return false if the connection led back to this node, true otherwise.
+     */
+    private boolean serve(Socket socket) {
+        PeerLink link;
+        try {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = PeerLink.inputOf(socket);
+            DataOutputStream out = PeerLink.outputOf(socket);
+            out.writeUTF(HANDSHAKE);
+            out.writeUTF(nodeId);
+            out.flush();
+            if (!HANDSHAKE.equals(in.readUTF())) {
+                throw new IOException("not a chat cluster node");
+            }
+            String remoteNodeId = in.readUTF();
+            if (remoteNodeId.equals(nodeId)) {
+                socket.close();
+                return false;
+            }
+            link = new PeerLink(socket, remoteNodeId, in, out, outboundCapacity);
+        } catch (IOException e) {
+            server.getLog().info("Cluster handshake with " + socket.getRemoteSocketAddress() + " failed: " + e.getMessage());
+            closeQuietly(socket);
+            return true;
+        }
+
+        links.add(link);
+        server.getLog().info("Cluster peer " + link.getRemoteNodeId() + " connected from " + socket.getRemoteSocketAddress());
+        startThread(link::writeQueuedRelays, "cluster-writer-" + link.getRemoteNodeId());
+        try {
+            link.readRelays(this);
+        } catch (IOException e) {
+            server.getLog().info("Cluster peer " + link.getRemoteNodeId() + " failed: " + e.getMessage());
+        } finally {
+            links.remove(link);
+            link.close();
+            long dropped = link.getDroppedMessages();
+            server.getLog().info("Cluster peer " + link.getRemoteNodeId() + " disconnected"
+                    + (dropped > 0 ? " after missing " + dropped + " messages." : "."));
+        }
+        return true;
+    }
+
+    /**
+     * Closes a socket, ignoring errors.
+     *
+     * @param socket The socket to close.
+     */
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // nothing more to do
+        }
+    }
+
+    /**
+     * Starts a daemon thread.
+     *
+     * @param task The work of the thread.
+     * @param name The thread name.
+     */
+    private static void startThread(Runnable task, String name) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+}
@@ -0,0 +1,14 @@
+/**
+ * Writes log batches to standard output.
+ */
+public class ConsoleLogSink implements LogSink {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(String text) {
+        System.out.print(text);
+        System.out.flush();
+    }
+}
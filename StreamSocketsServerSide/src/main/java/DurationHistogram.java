@@ -0,0 +1,81 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A concurrent histogram of durations with power-of-two buckets from 1 µs to about 1 s.
+ * Recording a value increments three {@link LongAdder}s, so any number of threads can record
+ * without contending on a lock; readers see a consistent enough view for monitoring.
+ */
+public class DurationHistogram {
+
+    private static final int MIN_EXPONENT = 10;
+    private static final int MAX_EXPONENT = 30;
+    private final LongAdder[] buckets;
+    private final LongAdder count;
+    private final LongAdder sumNanos;
+
+    /**
+     * Constructs an empty histogram.
+     */
+    public DurationHistogram() {
+        this.buckets = new LongAdder[MAX_EXPONENT - MIN_EXPONENT + 2];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+        this.count = new LongAdder();
+        this.sumNanos = new LongAdder();
+    }
+
+    /**
+     * Records a single duration.
+     *
+     * @param nanos The duration in nanoseconds.
+     */
+    public void record(long nanos) {
+        int exponent = 64 - Long.numberOfLeadingZeros(Math.max(nanos, 1) - 1);
+        int index = Math.min(Math.max(exponent - MIN_EXPONENT, 0), buckets.length - 1);
+        buckets[index].increment();
+        count.increment();
+        sumNanos.add(nanos);
+    }
+
+    /**
+     * @return The number of buckets, the last of which has no upper bound.
+     */
+    public int getBucketCount() {
+        return buckets.length;
+    }
+
+    /**
+     * Returns the inclusive upper bound of a bucket.
+     *
+     * @param index The bucket index.
+     * @return The upper bound in nanoseconds, or {@link Long#MAX_VALUE} for the last bucket.
+     */
+    public long getUpperBoundNanos(int index) {
+        return index == buckets.length - 1 ? Long.MAX_VALUE : 1L << (MIN_EXPONENT + index);
+    }
+
+    /**
+     * Returns the number of durations that fell into a bucket, not counting lower buckets.
+     *
+     * @param index The bucket index.
+     * @return The number of durations in the bucket.
+     */
+    public long getCount(int index) {
+        return buckets[index].sum();
+    }
+
+    /**
+     * @return The number of recorded durations.
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * @return The sum of all recorded durations in nanoseconds.
+     */
+    public long getSumNanos() {
+        return sumNanos.sum();
+    }
+}
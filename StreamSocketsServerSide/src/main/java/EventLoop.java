@@ -0,0 +1,151 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A single-threaded selector loop serving many non-blocking client connections.
+ * Each loop owns one {@link Selector} and a shared read buffer; all reads, writes and
+ * registrations for its {@link NioClientHandler}s happen on the loop's own thread.
+ * Other threads hand work to the loop through {@link #execute(Runnable)}.
+ */
+public class EventLoop implements Runnable {
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private final Selector selector;
+    private final Queue<Runnable> tasks;
+    private final PriorityQueue<ScheduledTask> scheduledTasks;
+    private final ByteBuffer readBuffer;
+
+    /**
+     * Constructs a new event loop with its own selector.
+     *
+     * @throws IOException If the selector cannot be opened.
+     */
+    public EventLoop() throws IOException {
+        this.selector = Selector.open();
+        this.tasks = new ConcurrentLinkedQueue<>();
+        this.scheduledTasks = new PriorityQueue<>(Comparator.comparingLong(ScheduledTask::deadline));
+        this.readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+    }
+
+    /**
+     * Hands a newly accepted client over to this loop. The channel is registered
+     * with the selector on the loop thread.
+     *
+     * @param clientHandler The handler for the accepted client connection.
+     */
+    public void register(NioClientHandler clientHandler) {
+        execute(() -> clientHandler.register(selector));
+    }
+
+    /**
+     * Queues a task to be run on the loop thread and wakes the selector up.
+     *
+     * @param task The task to be run.
+     */
+    public void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    /**
+     * Queues a task to be run on the loop thread once the given delay has passed.
+     *
+     * @param task       The task to be run.
+     * @param delayNanos The delay in nanoseconds.
+     */
+    public void schedule(Runnable task, long delayNanos) {
+        ScheduledTask scheduledTask = new ScheduledTask(System.nanoTime() + delayNanos, task);
+        execute(() -> scheduledTasks.add(scheduledTask));
+    }
+
+    /**
+     * Main loop. Waits for ready channels, dispatches read and write readiness to the
+     * attached handlers and runs any tasks queued by other threads or due scheduled tasks.
+     */
+    @Override
+    public void run() {
+        try (selector) {
+            while (!Thread.currentThread().isInterrupted()) {
+                select();
+                runPendingTasks();
+                runDueScheduledTasks();
+            }
+        } catch (IOException e) {
+            System.out.println("Event loop terminated: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Waits for ready channels, but no longer than until the next scheduled task is due.
+     * The selector only has millisecond resolution, so when the next task is due in less than
+     * a millisecond the loop polls without blocking instead.
+     *
+     * @throws IOException If the selector fails.
+     */
+    private void select() throws IOException {
+        ScheduledTask next = scheduledTasks.peek();
+        if (next == null) {
+            selector.select(this::dispatch);
+            return;
+        }
+
+        long timeoutMillis = TimeUnit.NANOSECONDS.toMillis(next.deadline() - System.nanoTime());
+        if (timeoutMillis > 0) {
+            selector.select(this::dispatch, timeoutMillis);
+        } else {
+            selector.selectNow(this::dispatch);
+        }
+    }
+
+    /**
+     * Dispatches the readiness of a single selection key to its handler.
+     *
+     * @param key The selected key.
+     */
+    private void dispatch(SelectionKey key) {
+        NioClientHandler clientHandler = (NioClientHandler) key.attachment();
+        if (key.isValid() && key.isReadable()) {
+            clientHandler.handleRead(readBuffer);
+        }
+        if (key.isValid() && key.isWritable()) {
+            clientHandler.handleWrite();
+        }
+    }
+
+    /**
+     * Runs all tasks queued since the last iteration.
+     */
+    private void runPendingTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    /**
+     * Runs every scheduled task whose deadline has passed.
+     */
+    private void runDueScheduledTasks() {
+        long now = System.nanoTime();
+        ScheduledTask next;
+        while ((next = scheduledTasks.peek()) != null && next.deadline() - now <= 0) {
+            scheduledTasks.poll().task().run();
+        }
+    }
+
+    /**
+     * A task waiting in the loop for its deadline.
+     *
+     * @param deadline The {@link System#nanoTime()} at which the task is due.
+     * @param task     The task to be run.
+     */
+    private record ScheduledTask(long deadline, Runnable task) {
+    }
+}
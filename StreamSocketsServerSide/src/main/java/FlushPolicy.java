@@ -0,0 +1,49 @@
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides how queued outbound messages are coalesced into socket writes.
+ * A writer gathers queued messages into one batch and writes them with a single gathering write.
+ * A batch is written as soon as it reaches either size limit; otherwise the writer waits up to
+ * the flush delay for more messages to arrive. A delay of zero writes whatever is queued right away,
+ * which still coalesces bursts without adding latency.
+ */
+public class FlushPolicy {
+
+    private final int maxBatchBytes;
+    private final int maxBatchMessages;
+    private final long flushDelayNanos;
+
+    /**
+     * Constructs a new flush policy.
+     *
+     * @param maxBatchBytes    The number of bytes at which a batch is written without waiting.
+     * @param maxBatchMessages The maximum number of messages in one gathering write.
+     * @param flushDelayMicros How long to wait for more messages before writing a smaller batch.
+     */
+    public FlushPolicy(int maxBatchBytes, int maxBatchMessages, long flushDelayMicros) {
+        this.maxBatchBytes = maxBatchBytes;
+        this.maxBatchMessages = maxBatchMessages;
+        this.flushDelayNanos = TimeUnit.MICROSECONDS.toNanos(flushDelayMicros);
+    }
+
+    /**
+     * @return The number of bytes at which a batch is written without waiting.
+     */
+    public int getMaxBatchBytes() {
+        return maxBatchBytes;
+    }
+
+    /**
+     * @return The maximum number of messages in one gathering write.
+     */
+    public int getMaxBatchMessages() {
+        return maxBatchMessages;
+    }
+
+    /**
+     * @return How long, in nanoseconds, to wait for more messages before writing a smaller batch.
+     */
+    public long getFlushDelayNanos() {
+        return flushDelayNanos;
+    }
+}
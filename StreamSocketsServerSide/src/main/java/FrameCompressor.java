@@ -0,0 +1,112 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses the batches written to a binary client that asked for it with {@link WireProtocol#COMPRESS}.
+ * Each connection has one deflate stream: every batch is deflated into it and ends with a sync flush,
+ * so the client can inflate the batch as soon as it arrives, while later batches still refer back to
+ * the text of earlier ones. The deflated bytes are sent as {@link FrameType#COMPRESSED} frames of at
+ * most {@link #MAX_PAYLOAD_LENGTH} bytes each, so a large batch becomes several compressed frames in a
+ * row. Batches smaller than the threshold are not worth the CPU and are written as they are. The
+ * output buffer grows to hold a large batch and goes back to its initial size afterwards, so an
+ * occasional large batch does not pin its size to the connection.
+ *
+ * <p>Not thread-safe; owned by the connection's writer.</p>
+ */
+public class FrameCompressor {
+
+    /**
+     * The largest number of deflated bytes carried by one compressed frame.
+     */
+    public static final int MAX_PAYLOAD_LENGTH = BinaryFrame.MAX_BODY_LENGTH;
+
+    private static final int INITIAL_OUTPUT_CAPACITY = 8192;
+    private static final int MAX_RETAINED_OUTPUT_CAPACITY = 4 * INITIAL_OUTPUT_CAPACITY;
+    private static final byte[] NO_SENDER = new byte[16];
+    private final Deflater deflater;
+    private final int threshold;
+    private byte[] output;
+
+    /**
+     * Constructs a compressor with a fresh deflate stream.
+     *
+     * @param level     The deflate level, from {@link Deflater#BEST_SPEED} to {@link Deflater#BEST_COMPRESSION}.
+     * @param threshold The number of bytes below which a batch is written raw.
+     */
+    public FrameCompressor(int level, int threshold) {
+        this.deflater = new Deflater(level);
+        this.threshold = threshold;
+        this.output = new byte[INITIAL_OUTPUT_CAPACITY];
+    }
+
+    /**
+     * @return The number of bytes below which a batch is written raw.
+     */
+    public int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Deflates the remaining bytes of the given buffers into the stream, ends them with a sync flush
+     * and frames the result. The buffers are consumed.
+     *
+     * @param buffers The encoded frames.
+     * @param offset  The index of the first buffer.
+     * @param length  The number of buffers.
+     * @return A read-only buffer holding one or more compressed frames.
+     */
+    public ByteBuffer compress(ByteBuffer[] buffers, int offset, int length) {
+        int produced = 0;
+        for (int i = offset; i < offset + length; i++) {
+            deflater.setInput(buffers[i]);
+            while (!deflater.needsInput()) {
+                produced = deflate(produced, Deflater.NO_FLUSH);
+            }
+        }
+        do {
+            produced = deflate(produced, Deflater.SYNC_FLUSH);
+        } while (produced == output.length);
+
+        int frames = (produced + MAX_PAYLOAD_LENGTH - 1) / MAX_PAYLOAD_LENGTH;
+        int frameOverhead = BinaryFrame.varintSize(BinaryFrame.HEADER_LENGTH + MAX_PAYLOAD_LENGTH) + BinaryFrame.HEADER_LENGTH;
+        ByteBuffer framed = ByteBuffer.allocate(produced + frames * frameOverhead);
+        for (int start = 0; start < produced; start += MAX_PAYLOAD_LENGTH) {
+            int count = Math.min(MAX_PAYLOAD_LENGTH, produced - start);
+            BinaryFrame.writeVarint(framed, BinaryFrame.HEADER_LENGTH + count);
+            framed.put(FrameType.COMPRESSED.getCode()).put(NO_SENDER).put(output, start, count);
+        }
+        if (output.length > MAX_RETAINED_OUTPUT_CAPACITY) {
+            output = new byte[INITIAL_OUTPUT_CAPACITY];
+        }
+        return framed.flip().asReadOnlyBuffer();
+    }
+
+    /**
+     * @return The size of the output buffer kept between batches.
+     */
+    int getOutputCapacity() {
+        return output.length;
+    }
+
+    /**
+     * Releases the deflate stream. The compressor cannot be used afterwards.
+     */
+    public void end() {
+        deflater.end();
+    }
+
+    /**
+     * Deflates into the output buffer after the bytes produced so far, growing the buffer if it is full.
+     *
+     * @param produced The number of bytes already in the output buffer.
+     * @param flush    The deflate flush mode.
+     * @return The number of bytes in the output buffer afterwards.
+     */
+    private int deflate(int produced, int flush) {
+        if (produced == output.length) {
+            output = Arrays.copyOf(output, output.length * 2);
+        }
+        return produced + deflater.deflate(output, produced, output.length - produced, flush);
+    }
+}
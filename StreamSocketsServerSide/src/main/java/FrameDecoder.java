@@ -0,0 +1,188 @@
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Incrementally reassembles {@link BinaryFrame}s from a byte stream that arrives in arbitrary chunks.
+ * Keeps the partial length prefix and frame between calls. Not thread-safe; owned by one reader.
+ *
+ * <p>{@link FrameType#COMPRESSED} frames are inflated with one inflater for the whole connection,
+ * a chunk at a time, and the frames inside them are returned as if they had arrived raw. A frame
+ * inside may continue in the next compressed frame.</p>
+ */
+public class FrameDecoder {
+
+    private static final int MAX_FRAME_LENGTH = BinaryFrame.HEADER_LENGTH + BinaryFrame.MAX_INBOUND_BODY_LENGTH;
+    private static final int MAX_COMPRESSED_FRAME_LENGTH = BinaryFrame.HEADER_LENGTH + BinaryFrame.MAX_BODY_LENGTH;
+    private static final int MAX_VARINT_SHIFT = 28;
+    private static final int INFLATE_CHUNK_SIZE = 8192;
+    private final boolean compressedFramesAllowed;
+    private Inflater inflater;
+    private ByteBuffer inflated;
+    private boolean inflatedChunkFull;
+    private FrameDecoder inflatedFrames;
+    private byte[] frame;
+    private int frameLength = -1;
+    private int frameOffset;
+    private int varintValue;
+    private int varintShift;
+
+    /**
+     * Constructs a decoder for a client connection.
+     */
+    public FrameDecoder() {
+        this(true);
+    }
+
+    /**
+     * @param compressedFramesAllowed false for the decoder of inflated bytes, which must not hold
+     *                                compressed frames themselves.
+     */
+    private FrameDecoder(boolean compressedFramesAllowed) {
+        this.compressedFramesAllowed = compressedFramesAllowed;
+    }
+
+    /**
+     * Consumes bytes from the buffer until a complete frame has been read or the buffer is exhausted.
+     * Bytes after a complete frame are left in the buffer for the next call. Frames inside a compressed
+     * frame are returned one by one before any more bytes are consumed.
+     *
+     * @param in The bytes received so far.
+     * @return The next complete frame, or null if more bytes are needed.
+     * @throws ProtocolException If the stream does not contain a valid frame.
+     */
+    public BinaryFrame next(ByteBuffer in) throws ProtocolException {
+        while (true) {
+            BinaryFrame decoded = nextInflated();
+            if (decoded != null) {
+                return decoded;
+            }
+            if (frameLength < 0 && !readLength(in)) {
+                return null;
+            }
+
+            int count = Math.min(in.remaining(), frameLength - frameOffset);
+            in.get(frame, frameOffset, count);
+            frameOffset += count;
+            if (frameOffset < frameLength) {
+                return null;
+            }
+
+            int length = frameLength;
+            frameLength = -1;
+            if (frame[0] != FrameType.COMPRESSED.getCode()) {
+                if (length > MAX_FRAME_LENGTH) {
+                    throw new ProtocolException("Invalid frame length: " + length);
+                }
+                return BinaryFrame.decode(frame, length);
+            }
+            if (!compressedFramesAllowed) {
+                throw new ProtocolException("Compressed frame inside a compressed frame");
+            }
+            startInflating(length);
+        }
+    }
+
+    /**
+     * Releases the inflater, if a compressed frame was ever received.
+     */
+    public void end() {
+        if (inflater != null) {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Hands the body of a compressed frame to the inflater. The frame buffer is not reused until the
+     * inflater has consumed all of it.
+     *
+     * @param length The length of the compressed frame.
+     */
+    private void startInflating(int length) {
+        if (inflater == null) {
+            inflater = new Inflater();
+            inflated = ByteBuffer.allocate(INFLATE_CHUNK_SIZE).limit(0);
+            inflatedFrames = new FrameDecoder(false);
+        }
+        inflater.setInput(frame, BinaryFrame.HEADER_LENGTH, length - BinaryFrame.HEADER_LENGTH);
+    }
+
+    /**
+     * Returns the next frame from the compressed frames received so far, inflating a chunk at a time.
+     *
+     * @return The next inflated frame, or null once everything received so far has been inflated.
+     * @throws ProtocolException If the compressed bytes are malformed.
+     */
+    private BinaryFrame nextInflated() throws ProtocolException {
+        if (inflater == null) {
+            return null;
+        }
+        while (true) {
+            if (inflated.hasRemaining()) {
+                BinaryFrame decoded = inflatedFrames.next(inflated);
+                if (decoded != null) {
+                    return decoded;
+                }
+            }
+            // A full chunk may leave inflated bytes behind even when all input has been consumed
+            if (inflater.needsInput() && !inflatedChunkFull) {
+                return null;
+            }
+            try {
+                int count = inflater.inflate(inflated.array());
+                inflatedChunkFull = count == inflated.capacity();
+                if (count == 0 && !inflater.needsInput()) {
+                    throw new ProtocolException("Malformed compressed frame");
+                }
+                inflated.position(0).limit(count);
+            } catch (DataFormatException e) {
+                throw new ProtocolException("Malformed compressed frame: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Reads the varint length prefix, possibly across several calls.
+     *
+     * @param in The bytes received so far.
+     * @return true once the complete length has been read, false if more bytes are needed.
+     * @throws ProtocolException If the length is malformed or out of range.
+     */
+    private boolean readLength(ByteBuffer in) throws ProtocolException {
+        while (in.hasRemaining()) {
+            byte b = in.get();
+            varintValue |= (b & 0x7F) << varintShift;
+            if ((b & 0x80) == 0) {
+                startFrame(varintValue);
+                return true;
+            }
+            varintShift += 7;
+            if (varintShift > MAX_VARINT_SHIFT) {
+                throw new ProtocolException("Malformed frame length");
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Prepares the frame buffer for a frame of the given length. The type is not known yet, so the
+     * length is checked against the limit of a compressed frame here, and that of any other frame
+     * once it is complete.
+     *
+     * @param length The length read from the prefix.
+     * @throws ProtocolException If the length is out of range.
+     */
+    private void startFrame(int length) throws ProtocolException {
+        varintValue = 0;
+        varintShift = 0;
+        if (length < BinaryFrame.HEADER_LENGTH || length > MAX_COMPRESSED_FRAME_LENGTH) {
+            throw new ProtocolException("Invalid frame length: " + length);
+        }
+        if (frame == null || frame.length < length) {
+            frame = new byte[length];
+        }
+        frameLength = length;
+        frameOffset = 0;
+    }
+}
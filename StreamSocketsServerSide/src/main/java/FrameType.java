@@ -0,0 +1,86 @@
+/**
+ * The message types carried in a {@link BinaryFrame}.
+ */
+public enum FrameType {
+
+    /**
+     * A chat message typed by a user.
+     */
+    CHAT((byte) 1),
+
+    /**
+     * A message generated by the server, such as a connect or disconnect notice.
+     */
+    NOTICE((byte) 2),
+
+    /**
+     * A client command, such as the who-is-online request.
+     */
+    COMMAND((byte) 3),
+
+    /**
+     * A client announcing that it is leaving.
+     */
+    QUIT((byte) 4),
+
+    /**
+     * A heartbeat from the server to a connection that has been idle; the client answers with {@link #PONG}.
+     */
+    PING((byte) 5),
+
+    /**
+     * A client's answer to a {@link #PING}.
+     */
+    PONG((byte) 6),
+
+    /**
+     * The server going down asking the client to reconnect; the body is {@link WireProtocol#RECONNECT}
+     * followed by the number of milliseconds the client should spread its reconnect over.
+     */
+    RECONNECT((byte) 7),
+
+    /**
+     * The whole roster of online clients or the changes to it, sent to clients that asked for it with
+     * {@link WireProtocol#ROSTER}; see {@link Roster}.
+     */
+    ROSTER((byte) 8),
+
+    /**
+     * A direct message from one client to another, delivered to the recipient alone.
+     */
+    DIRECT((byte) 9),
+
+    /**
+     * A run of other frames, deflated into the connection's compression stream; see {@link FrameCompressor}.
+     * Unlike every other type, the body is binary rather than UTF-8 text.
+     */
+    COMPRESSED((byte) 10);
+
+    private final byte code;
+
+    FrameType(byte code) {
+        this.code = code;
+    }
+
+    /**
+     * @return The byte identifying this type on the wire.
+     */
+    public byte getCode() {
+        return code;
+    }
+
+    /**
+     * Resolves a frame type from its wire code.
+     *
+     * @param code The type byte read from a frame.
+     * @return The matching frame type, or null if the code is unknown.
+     */
+    public static FrameType fromCode(byte code) {
+        for (FrameType type : values()) {
+            if (type.code == code) {
+                return type;
+            }
+        }
+        return null;
+    }
+}
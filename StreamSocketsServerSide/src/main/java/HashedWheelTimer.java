@@ -0,0 +1,169 @@
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A timer for very many short tasks, such as one idle check per connection, on a single thread.
+ * Time is divided into ticks and the tasks are hashed into the buckets of a wheel by the tick they
+ * are due in; a task further away than one turn of the wheel waits out the extra turns in its bucket.
+ * Scheduling and cancelling are O(1) and never take a lock: new tasks are handed to the timer thread
+ * through a lock-free queue, and cancelled tasks are only marked and dropped when their bucket comes up.
+ * Tasks run on the timer thread, at most one tick late, so they should be quick.
+ */
+public class HashedWheelTimer {
+
+    private final long tickNanos;
+    private final Timeout[] wheel;
+    private final int mask;
+    private final Queue<Timeout> scheduled;
+    private final Thread worker;
+    private final ServerLog log;
+    private final long startNanos;
+    private long tick;
+    private volatile boolean stopped;
+
+    /**
+     * Constructs the timer and starts its thread.
+     *
+     * @param name      The name of the timer thread.
+     * @param tick      The length of a tick, which is the timer's resolution.
+     * @param unit      The unit of the tick length.
+     * @param wheelSize The minimum number of buckets, rounded up to a power of two.
+     * @param log       The log failed tasks are reported in.
+     */
+    public HashedWheelTimer(String name, long tick, TimeUnit unit, int wheelSize, ServerLog log) {
+        this.tickNanos = unit.toNanos(tick);
+        int size = Integer.highestOneBit(Math.max(2, wheelSize) * 2 - 1);
+        this.wheel = new Timeout[size];
+        this.mask = size - 1;
+        this.scheduled = new ConcurrentLinkedQueue<>();
+        this.startNanos = System.nanoTime();
+        this.log = log;
+        this.worker = new Thread(this::run, name);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Schedules a task to run once after a delay. Safe to call from any thread, including from a
+     * task running on the timer thread.
+     *
+     * @param task  The task to run.
+     * @param delay The delay.
+     * @param unit  The unit of the delay.
+     * @return A handle for cancelling the task.
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        Timeout timeout = new Timeout(task, System.nanoTime() - startNanos + unit.toNanos(Math.max(0, delay)));
+        scheduled.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Stops the timer thread. Tasks that have not run yet never will.
+     */
+    public void stop() {
+        stopped = true;
+        worker.interrupt();
+    }
+
+    /**
+     * Timer thread: waits for the end of each tick, moves newly scheduled tasks into their buckets
+     * and runs the tasks due in the bucket of the tick that just ended.
+     */
+    private void run() {
+        while (!stopped) {
+            long deadline = (tick + 1) * tickNanos;
+            long sleepNanos = deadline - (System.nanoTime() - startNanos);
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            transferScheduled();
+            expire(wheel[(int) tick & mask]);
+            tick++;
+        }
+    }
+
+    /**
+     * Moves the tasks scheduled since the previous tick into the buckets of the ticks they are due in.
+     * A task that is already due goes into the current bucket.
+     */
+    private void transferScheduled() {
+        Timeout timeout;
+        while ((timeout = scheduled.poll()) != null) {
+            if (timeout.cancelled) {
+                continue;
+            }
+            long dueTick = Math.max(tick, timeout.deadlineNanos / tickNanos);
+            timeout.remainingRounds = (dueTick - tick) / wheel.length;
+            int bucket = (int) dueTick & mask;
+            timeout.next = wheel[bucket];
+            wheel[bucket] = timeout;
+        }
+    }
+
+    /**
+     * Runs the due tasks in a bucket and removes them and any cancelled tasks from it. Tasks due
+     * in a later turn of the wheel stay, one turn closer. A task that throws is logged and does not
+     * stop the timer.
+     *
+     * @param head The first task in the bucket.
+     */
+    private void expire(Timeout head) {
+        int bucket = (int) tick & mask;
+        wheel[bucket] = null;
+        Timeout timeout = head;
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            if (timeout.cancelled) {
+                timeout.next = null;
+            } else if (timeout.remainingRounds > 0) {
+                timeout.remainingRounds--;
+                timeout.next = wheel[bucket];
+                wheel[bucket] = timeout;
+            } else {
+                timeout.next = null;
+                try {
+                    timeout.task.run();
+                } catch (RuntimeException e) {
+                    log.error("Timer task failed on " + worker.getName(), e);
+                }
+            }
+            timeout = next;
+        }
+    }
+
+    /**
+     * A scheduled task. Buckets are singly linked lists of timeouts, touched only by the timer thread.
+     */
+    public static final class Timeout {
+
+        private final Runnable task;
+        private final long deadlineNanos;
+        private long remainingRounds;
+        private Timeout next;
+        private volatile boolean cancelled;
+
+        /**
+         * Constructs a timeout.
+         *
+         * @param task          The task to run.
+         * @param deadlineNanos When the task is due, in nanoseconds since the timer started.
+         */
+        private Timeout(Runnable task, long deadlineNanos) {
+            this.task = task;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        /**
+         * Keeps the task from running if it has not run yet.
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finds connections whose peer has gone away without closing them, such as a client on a machine
+ * that lost power, which would otherwise stay in the server for ever. Handlers only record when they
+ * last read something; one {@link HashedWheelTimer} checks each connection once per interval. A
+ * connection idle for a whole interval is sent a {@link OutboundMessage#ping() ping}, and one that
+ * has not sent anything within the timeout after the ping is disconnected. A check that finds
+ * recent activity just schedules the next one for an interval after it, so reading never touches
+ * the timer, and no connection needs its own thread or blocking socket timeout.
+ */
+public class HeartbeatMonitor {
+
+    private static final long TICK_MILLIS = 100;
+    private static final int WHEEL_SIZE = 512;
+    private final long intervalNanos;
+    private final long timeoutNanos;
+    private final ServerMetrics metrics;
+    private final ServerLog log;
+    private final HashedWheelTimer timer;
+    private final Map<ClientSession, Heartbeat> heartbeats;
+
+    /**
+     * Constructs the monitor and starts its timer thread.
+     *
+     * @param intervalMillis How long a connection may be idle before it is pinged.
+     * @param timeoutMillis  How long a pinged connection has to send something.
+     * @param metrics        The metrics idle disconnects are counted in.
+     * @param log            The log idle disconnects and failed checks are reported in.
+     */
+    public HeartbeatMonitor(long intervalMillis, long timeoutMillis, ServerMetrics metrics, ServerLog log) {
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        this.metrics = metrics;
+        this.log = log;
+        this.timer = new HashedWheelTimer("heartbeat-timer", TICK_MILLIS, TimeUnit.MILLISECONDS, WHEEL_SIZE, log);
+        this.heartbeats = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Starts watching a newly connected client.
+     *
+     * @param session The client.
+     */
+    public void watch(ClientSession session) {
+        Heartbeat heartbeat = new Heartbeat(session);
+        heartbeats.put(session, heartbeat);
+        heartbeat.scheduleCheck(intervalNanos);
+    }
+
+    /**
+     * Stops watching a client that has disconnected.
+     *
+     * @param session The client.
+     */
+    public void unwatch(ClientSession session) {
+        Heartbeat heartbeat = heartbeats.remove(session);
+        if (heartbeat != null) {
+            heartbeat.cancel();
+        }
+    }
+
+    /**
+     * Stops the timer thread.
+     */
+    public void stop() {
+        timer.stop();
+    }
+
+    /**
+     * The heartbeat state of one connection. Only the timer thread checks it.
+     */
+    private final class Heartbeat implements Runnable {
+
+        private final ClientSession session;
+        private volatile HashedWheelTimer.Timeout check;
+        private volatile boolean cancelled;
+        private boolean awaitingPong;
+        private long pingSentAt;
+
+        /**
+         * Constructs the heartbeat of a connection.
+         *
+         * @param session The client.
+         */
+        private Heartbeat(ClientSession session) {
+            this.session = session;
+        }
+
+        /**
+         * Checks the connection: if it has been active within the interval, the next check is due an
+         * interval after that activity; otherwise it is pinged, or disconnected if a ping went unanswered.
+         */
+        @Override
+        public void run() {
+            if (cancelled) {
+                return;
+            }
+            long lastActivity = session.getLastActivity();
+            if (awaitingPong && lastActivity - pingSentAt >= 0) {
+                awaitingPong = false;
+            }
+            long now = System.nanoTime();
+            long idleNanos = now - lastActivity;
+            if (!awaitingPong && idleNanos < intervalNanos) {
+                scheduleCheck(intervalNanos - idleNanos);
+            } else if (!awaitingPong) {
+                awaitingPong = true;
+                pingSentAt = now;
+                session.sendMessage(OutboundMessage.ping());
+                scheduleCheck(timeoutNanos);
+            } else {
+                log.info("Disconnecting " + session.getClientIP() + ": no answer to ping for "
+                        + TimeUnit.NANOSECONDS.toSeconds(now - pingSentAt) + " s");
+                metrics.onIdleDisconnect();
+                heartbeats.remove(session, this);
+                session.disconnect();
+            }
+        }
+
+        /**
+         * Schedules the next check of the connection.
+         *
+         * @param delayNanos The delay before the check.
+         */
+        private void scheduleCheck(long delayNanos) {
+            check = timer.schedule(this, delayNanos, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Stops checking the connection.
+         */
+        private void cancel() {
+            cancelled = true;
+            HashedWheelTimer.Timeout pending = check;
+            if (pending != null) {
+                pending.cancel();
+            }
+        }
+    }
+}
@@ -0,0 +1,153 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/**
+ * One chat message as stored in the {@link MessageJournal}:
+ * <pre>
+ *     length (int) | CRC-32 of the payload (int) | payload
+ *     payload: sequence (long) | timestamp millis (long) | type (byte) | room length (short) | room
+ *              | sender IP length (short) | sender IP, empty for notices | has sender UUID (byte)
+ *              [| UUID (2 longs)] | body length (int) | body
+ * </pre>
+ * Strings are UTF-8. The checksum lets recovery find where a write was torn by a crash.
+ */
+public final class JournalRecord {
+
+    static final int HEADER_LENGTH = 2 * Integer.BYTES;
+    private final long sequence;
+    private final long timestamp;
+    private final String room;
+    private final OutboundMessage message;
+
+    /**
+     * Constructs a record.
+     *
+     * @param sequence  The journal-wide sequence number of the record.
+     * @param timestamp When the message was journaled, in milliseconds since the epoch.
+     * @param room      The name of the room the message was broadcast in.
+     * @param message   The message.
+     */
+    public JournalRecord(long sequence, long timestamp, String room, OutboundMessage message) {
+        this.sequence = sequence;
+        this.timestamp = timestamp;
+        this.room = room;
+        this.message = message;
+    }
+
+    /**
+     * @return The journal-wide sequence number of the record.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return When the message was journaled, in milliseconds since the epoch.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return The name of the room the message was broadcast in.
+     */
+    public String getRoom() {
+        return room;
+    }
+
+    /**
+     * @return The message.
+     */
+    public OutboundMessage getMessage() {
+        return message;
+    }
+
+    /**
+     * Encodes the record, including its length and checksum.
+     *
+     * @return The encoded record.
+     */
+    public byte[] encode() {
+        byte[] roomBytes = room.getBytes(StandardCharsets.UTF_8);
+        byte[] ipBytes = message.getSenderIP() == null ? new byte[0] : message.getSenderIP().getBytes(StandardCharsets.UTF_8);
+        byte[] bodyBytes = message.getBody().getBytes(StandardCharsets.UTF_8);
+        UUID senderId = message.getSenderId();
+        int payloadLength = 2 * Long.BYTES + 1 + Short.BYTES + roomBytes.length + Short.BYTES + ipBytes.length
+                + 1 + (senderId == null ? 0 : 2 * Long.BYTES) + Integer.BYTES + bodyBytes.length;
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH + payloadLength);
+        buffer.position(HEADER_LENGTH);
+        buffer.putLong(sequence).putLong(timestamp).put(message.getType().getCode());
+        buffer.putShort((short) roomBytes.length).put(roomBytes);
+        buffer.putShort((short) ipBytes.length).put(ipBytes);
+        buffer.put((byte) (senderId == null ? 0 : 1));
+        if (senderId != null) {
+            buffer.putLong(senderId.getMostSignificantBits()).putLong(senderId.getLeastSignificantBits());
+        }
+        buffer.putInt(bodyBytes.length).put(bodyBytes);
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), HEADER_LENGTH, payloadLength);
+        buffer.putInt(0, payloadLength).putInt(Integer.BYTES, (int) crc.getValue());
+        return buffer.array();
+    }
+
+    /**
+     * Reads the record at the buffer's position and moves the position past it. A record that is
+     * cut off or fails its checksum is not read and leaves the position unchanged.
+     *
+     * @param buffer The journal bytes, for example a mapped segment.
+     * @return The record, or null if no complete, intact record starts at the position.
+     */
+    public static JournalRecord read(ByteBuffer buffer) {
+        int start = buffer.position();
+        if (buffer.remaining() < HEADER_LENGTH) {
+            return null;
+        }
+        int payloadLength = buffer.getInt(start);
+        if (payloadLength <= 0 || payloadLength > buffer.remaining() - HEADER_LENGTH) {
+            return null;
+        }
+        ByteBuffer payload = buffer.slice(start + HEADER_LENGTH, payloadLength);
+        CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+        if ((int) crc.getValue() != buffer.getInt(start + Integer.BYTES)) {
+            return null;
+        }
+
+        try {
+            long sequence = payload.getLong();
+            long timestamp = payload.getLong();
+            FrameType type = FrameType.fromCode(payload.get());
+            String room = readString(payload, Short.toUnsignedInt(payload.getShort()));
+            String senderIP = readString(payload, Short.toUnsignedInt(payload.getShort()));
+            UUID senderId = payload.get() == 0 ? null : new UUID(payload.getLong(), payload.getLong());
+            String body = readString(payload, payload.getInt());
+            if (type == null) {
+                return null;
+            }
+            OutboundMessage message = senderIP.isEmpty()
+                    ? OutboundMessage.notice(body)
+                    : OutboundMessage.fromClient(type, senderIP, senderId, body);
+            buffer.position(start + HEADER_LENGTH + payloadLength);
+            return new JournalRecord(sequence, timestamp, room, message);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads a UTF-8 string of a known length.
+     *
+     * @param buffer The buffer positioned at the string.
+     * @param length The length of the string in bytes.
+     * @return The string.
+     */
+    private static String readString(ByteBuffer buffer, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,390 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * One file of the {@link MessageJournal}: "&lt;base sequence&gt;.log" holds the records, starting with
+ * the one numbered by the base sequence, and "&lt;base sequence&gt;.idx" holds a sparse index of
+ * (sequence, position) pairs, one for roughly every {@link #INDEX_INTERVAL_BYTES} of records.
+ * Only the journal's writer thread appends and only its reader thread reads, up to {@link #size()},
+ * which is only advanced once the bytes are in the file; index entries are only published after
+ * the records they point at.
+ */
+public class JournalSegment {
+
+    static final int INDEX_INTERVAL_BYTES = 4096;
+    private static final int INDEX_ENTRY_BYTES = Long.BYTES + Integer.BYTES;
+    private static final String LOG_SUFFIX = ".log";
+    private static final String INDEX_SUFFIX = ".idx";
+    private final long baseSequence;
+    private final Path logFile;
+    private final Path indexFile;
+    private final FileChannel readChannel;
+    private volatile FileChannel logChannel;
+    private FileChannel indexChannel;
+    private volatile long[] indexSequences;
+    private volatile int[] indexPositions;
+    private volatile int indexSize;
+    private volatile int size;
+    private int lastIndexedPosition;
+    private MappedByteBuffer sealedMapping;
+    private ByteBuffer readBuffer;
+
+    /**
+     * Constructs a segment over existing or newly created files.
+     *
+     * @param directory    The journal directory.
+     * @param baseSequence The sequence number of the first record in the segment.
+     * @throws IOException If the log file cannot be opened.
+     */
+    private JournalSegment(Path directory, long baseSequence) throws IOException {
+        this.baseSequence = baseSequence;
+        this.logFile = directory.resolve(fileName(baseSequence, LOG_SUFFIX));
+        this.indexFile = directory.resolve(fileName(baseSequence, INDEX_SUFFIX));
+        this.logChannel = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.readChannel = FileChannel.open(logFile, StandardOpenOption.READ);
+        this.indexSequences = new long[16];
+        this.indexPositions = new int[16];
+        this.lastIndexedPosition = -INDEX_INTERVAL_BYTES;
+    }
+
+    /**
+     * Creates a new, empty segment that records are appended to.
+     *
+     * @param directory    The journal directory.
+     * @param baseSequence The sequence number of the first record that will be appended.
+     * @return The segment.
+     * @throws IOException If the files cannot be created.
+     */
+    public static JournalSegment create(Path directory, long baseSequence) throws IOException {
+        JournalSegment segment = new JournalSegment(directory, baseSequence);
+        segment.logChannel.truncate(0);
+        segment.indexChannel = FileChannel.open(segment.indexFile, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        return segment;
+    }
+
+    /**
+     * Opens a segment written earlier. A sealed segment loads its index file, falling back to
+     * scanning its records if the index is missing or damaged. The active segment, the last one,
+     * is always scanned: records cut off or corrupted by a crash are truncated away, the index is
+     * rebuilt and the segment is left open for appending.
+     *
+     * @param logFile The segment's ".log" file.
+     * @param active  Whether records will be appended to the segment.
+     * @return The segment.
+     * @throws IOException If the files cannot be read or repaired.
+     */
+    public static JournalSegment open(Path logFile, boolean active) throws IOException {
+        JournalSegment segment = new JournalSegment(logFile.getParent(), parseBaseSequence(logFile));
+        segment.size = (int) Math.min(segment.logChannel.size(), Integer.MAX_VALUE);
+        if (active || !segment.loadIndex()) {
+            segment.recover();
+        }
+        if (active) {
+            segment.indexChannel = FileChannel.open(segment.indexFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            segment.indexChannel.position(segment.indexChannel.size());
+        } else {
+            segment.seal();
+        }
+        return segment;
+    }
+
+    /**
+     * Returns whether a path is a segment's ".log" file.
+     *
+     * @param path The path.
+     * @return true if the path names a segment log file, false otherwise.
+     */
+    public static boolean isLogFile(Path path) {
+        String name = path.getFileName().toString();
+        return name.endsWith(LOG_SUFFIX) && name.length() > LOG_SUFFIX.length()
+                && name.substring(0, name.length() - LOG_SUFFIX.length()).chars().allMatch(Character::isDigit);
+    }
+
+    /**
+     * Returns the base sequence encoded in a segment's file name.
+     *
+     * @param logFile The segment's ".log" file.
+     * @return The sequence number of the segment's first record.
+     */
+    public static long parseBaseSequence(Path logFile) {
+        String name = logFile.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - LOG_SUFFIX.length()));
+    }
+
+    /**
+     * @return The sequence number of the first record in the segment.
+     */
+    public long getBaseSequence() {
+        return baseSequence;
+    }
+
+    /**
+     * @return The number of bytes of complete records in the segment.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return The last time the segment was written to, in milliseconds since the epoch.
+     * @throws IOException If the file's attributes cannot be read.
+     */
+    public long lastModified() throws IOException {
+        return Files.getLastModifiedTime(logFile).toMillis();
+    }
+
+    /**
+     * Decides whether the record about to be appended at a position gets an index entry: the first
+     * record and then the first record at least {@link #INDEX_INTERVAL_BYTES} past the previous
+     * indexed one. Writer thread only.
+     *
+     * @param position The position the record will be written at.
+     * @return true if the record should be indexed, false otherwise.
+     */
+    boolean needsIndexEntry(int position) {
+        if (position - lastIndexedPosition < INDEX_INTERVAL_BYTES) {
+            return false;
+        }
+        lastIndexedPosition = position;
+        return true;
+    }
+
+    /**
+     * Appends encoded records to the end of the segment. Writer thread only.
+     *
+     * @param records The records, from position to limit.
+     * @throws IOException If the records cannot be written.
+     */
+    void write(ByteBuffer records) throws IOException {
+        int written = 0;
+        while (records.hasRemaining()) {
+            written += logChannel.write(records, size + written);
+        }
+        size += written;
+    }
+
+    /**
+     * Adds an entry to the sparse index, both in memory and in the index file. The record it points
+     * at must already have been {@link #write(ByteBuffer) written}. Writer thread only.
+     *
+     * @param sequence The record's sequence number.
+     * @param position The record's position in the segment.
+     * @throws IOException If the entry cannot be written to the index file.
+     */
+    void addIndexEntry(long sequence, int position) throws IOException {
+        publishIndexEntry(sequence, position);
+        ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_BYTES).putLong(sequence).putInt(position).flip();
+        while (entry.hasRemaining()) {
+            indexChannel.write(entry);
+        }
+    }
+
+    /**
+     * Forces the records and index entries written so far to the storage device. Writer thread only.
+     *
+     * @throws IOException If the files cannot be forced.
+     */
+    void force() throws IOException {
+        logChannel.force(false);
+        indexChannel.force(false);
+    }
+
+    /**
+     * Closes the segment for appending once the journal rolls over to a new one. Writer thread only.
+     *
+     * @throws IOException If the files cannot be closed.
+     */
+    void seal() throws IOException {
+        logChannel.close();
+        logChannel = null;
+        if (indexChannel != null) {
+            indexChannel.close();
+            indexChannel = null;
+        }
+    }
+
+    /**
+     * Returns the records between two positions for reading. A sealed segment is mapped into memory
+     * once and the mapping reused. The active segment keeps growing, so instead of mapping it again
+     * for every query, the range is read into a buffer the segment reuses. Reader thread only: the
+     * returned buffer is only valid until the next call.
+     *
+     * @param start The position of the first record, at most {@code end}.
+     * @param end   The position after the last record, at most {@link #size()}.
+     * @return A read-only buffer over the records, positioned at 0.
+     * @throws IOException If the segment cannot be mapped or read.
+     */
+    public ByteBuffer read(int start, int end) throws IOException {
+        MappedByteBuffer mapping = sealedMapping;
+        if (mapping == null && logChannel == null) {
+            mapping = readChannel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            sealedMapping = mapping;
+        }
+        if (mapping != null) {
+            return mapping.slice(start, end - start).asReadOnlyBuffer();
+        }
+        if (readBuffer == null || readBuffer.capacity() < end - start) {
+            readBuffer = ByteBuffer.allocate(Math.max(end - start, INDEX_INTERVAL_BYTES * 2));
+        }
+        ByteBuffer range = readBuffer.clear().limit(end - start);
+        while (range.hasRemaining()) {
+            if (readChannel.read(range, start + range.position()) < 0) {
+                throw new EOFException("Journal segment " + logFile.getFileName() + " ends before " + end);
+            }
+        }
+        return range.flip().asReadOnlyBuffer();
+    }
+
+    /**
+     * @return The number of entries in the sparse index.
+     */
+    public int indexSize() {
+        return indexSize;
+    }
+
+    /**
+     * Returns the position of an index entry. Entries are in ascending order.
+     *
+     * @param entry The index of the entry, below {@link #indexSize()}.
+     * @return The position of the indexed record in the segment.
+     */
+    public int indexPosition(int entry) {
+        return indexPositions[entry];
+    }
+
+    /**
+     * Finds where to start reading to reach a record, using the sparse index.
+     *
+     * @param sequence The sequence number of the wanted record.
+     * @return The position of the closest indexed record at or before it, or 0.
+     */
+    public int floorPosition(long sequence) {
+        int entries = indexSize;
+        long[] sequences = indexSequences;
+        int found = Arrays.binarySearch(sequences, 0, entries, sequence);
+        int entry = found >= 0 ? found : -found - 2;
+        return entry < 0 ? 0 : indexPositions[entry];
+    }
+
+    /**
+     * Closes the segment's files.
+     *
+     * @throws IOException If a file cannot be closed.
+     */
+    public void close() throws IOException {
+        if (logChannel != null) {
+            seal();
+        }
+        readChannel.close();
+    }
+
+    /**
+     * Closes the segment and deletes its files.
+     *
+     * @throws IOException If a file cannot be deleted.
+     */
+    public void delete() throws IOException {
+        close();
+        Files.deleteIfExists(logFile);
+        Files.deleteIfExists(indexFile);
+    }
+
+    /**
+     * Loads the sparse index from the index file, checking that it is consistent with the log file.
+     *
+     * @return true if the index was loaded, false if it is missing or damaged.
+     * @throws IOException If the index file exists but cannot be read.
+     */
+    private boolean loadIndex() throws IOException {
+        if (!Files.exists(indexFile)) {
+            return false;
+        }
+        ByteBuffer index = ByteBuffer.wrap(Files.readAllBytes(indexFile));
+        if (index.remaining() % INDEX_ENTRY_BYTES != 0) {
+            return false;
+        }
+        long previousSequence = baseSequence - 1;
+        int previousPosition = -1;
+        while (index.hasRemaining()) {
+            long sequence = index.getLong();
+            int position = index.getInt();
+            if (sequence <= previousSequence || position <= previousPosition || position >= size) {
+                indexSize = 0;
+                return false;
+            }
+            publishIndexEntry(sequence, position);
+            previousSequence = sequence;
+            previousPosition = position;
+        }
+        return size == 0 || (indexSize > 0 && indexPositions[0] == 0);
+    }
+
+    /**
+     * Scans the records from the start, rebuilding the sparse index, and truncates the log file
+     * after the last intact record. The index file is rewritten to match.
+     *
+     * @throws IOException If the files cannot be read or rewritten.
+     */
+    private void recover() throws IOException {
+        indexSize = 0;
+        lastIndexedPosition = -INDEX_INTERVAL_BYTES;
+        ByteBuffer records = readChannel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        int position = 0;
+        JournalRecord record;
+        while ((record = JournalRecord.read(records)) != null) {
+            if (needsIndexEntry(position)) {
+                publishIndexEntry(record.getSequence(), position);
+            }
+            position = records.position();
+        }
+        if (position < size) {
+            System.out.println("Journal segment " + logFile.getFileName() + " ends with a damaged record. Truncating "
+                    + (size - position) + " bytes");
+            logChannel.truncate(position);
+            size = position;
+        }
+
+        ByteBuffer index = ByteBuffer.allocate(indexSize * INDEX_ENTRY_BYTES);
+        for (int i = 0; i < indexSize; i++) {
+            index.putLong(indexSequences[i]).putInt(indexPositions[i]);
+        }
+        Files.write(indexFile, index.array());
+    }
+
+    /**
+     * Appends an entry to the in-memory index, growing the arrays as needed. The entry is written
+     * before the size is, so a reader that sees the new size also sees the entry.
+     *
+     * @param sequence The record's sequence number.
+     * @param position The record's position in the segment.
+     */
+    private void publishIndexEntry(long sequence, int position) {
+        int entries = indexSize;
+        if (entries == indexSequences.length) {
+            indexSequences = Arrays.copyOf(indexSequences, entries * 2);
+            indexPositions = Arrays.copyOf(indexPositions, entries * 2);
+        }
+        indexSequences[entries] = sequence;
+        indexPositions[entries] = position;
+        indexSize = entries + 1;
+    }
+
+    /**
+     * Builds a segment file name from its base sequence, zero-padded so the names sort in order.
+     *
+     * @param baseSequence The sequence number of the first record in the segment.
+     * @param suffix       The file suffix.
+     * @return The file name.
+     */
+    private static String fileName(long baseSequence, String suffix) {
+        return String.format("%020d%s", baseSequence, suffix);
+    }
+}
@@ -0,0 +1,89 @@
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Incrementally assembles newline-delimited text lines from bytes that arrive in arbitrary chunks.
+ * Bytes are copied in bulk from the read buffer into one line buffer that is reused from line to
+ * line, so a line costs a single String and no intermediate char buffers. A trailing carriage
+ * return is dropped. Not thread-safe; owned by one reader.
+ */
+public class LineDecoder {
+
+    /**
+     * The longest line accepted, in bytes. Like a frame body, a line must leave room for what the
+     * server puts in front of it when it is relayed; see {@link BinaryFrame#MAX_INBOUND_BODY_LENGTH}.
+     */
+    public static final int MAX_LINE_LENGTH = BinaryFrame.MAX_INBOUND_BODY_LENGTH;
+
+    private static final int INITIAL_LINE_CAPACITY = 128;
+    private final Charset charset;
+    private byte[] line;
+    private int lineLength;
+
+    /**
+     * Constructs a decoder.
+     *
+     * @param charset The charset the client's lines are encoded in.
+     */
+    public LineDecoder(Charset charset) {
+        this.charset = charset;
+        this.line = new byte[INITIAL_LINE_CAPACITY];
+    }
+
+    /**
+     * Consumes bytes from the buffer up to and including the next newline. Bytes after the newline
+     * are left in the buffer for the next call.
+     *
+     * @param in The bytes received so far.
+     * @return The decoded line, or null if the buffer ran out before the end of the line.
+     * @throws ProtocolException If the line is longer than {@link #MAX_LINE_LENGTH}.
+     */
+    public String next(ByteBuffer in) throws ProtocolException {
+        int start = in.position();
+        int limit = in.limit();
+        for (int i = start; i < limit; i++) {
+            if (in.get(i) == '\n') {
+                append(in, i - start);
+                in.position(i + 1);
+                return takeLine();
+            }
+        }
+        append(in, limit - start);
+        return null;
+    }
+
+    /**
+     * Copies bytes from the buffer onto the line, growing the line buffer when needed.
+     *
+     * @param in    The bytes received.
+     * @param count The number of bytes to copy.
+     * @throws ProtocolException If the line would become longer than {@link #MAX_LINE_LENGTH}.
+     */
+    private void append(ByteBuffer in, int count) throws ProtocolException {
+        if (lineLength + count > MAX_LINE_LENGTH) {
+            throw new ProtocolException("line exceeds " + MAX_LINE_LENGTH + " bytes");
+        }
+        if (lineLength + count > line.length) {
+            line = Arrays.copyOf(line, Math.min(Math.max(line.length * 2, lineLength + count), MAX_LINE_LENGTH));
+        }
+        in.get(line, lineLength, count);
+        lineLength += count;
+    }
+
+    /**
+     * Decodes the assembled line, dropping a trailing carriage return, and resets the line buffer.
+     *
+     * @return The decoded line.
+     */
+    private String takeLine() {
+        int length = lineLength;
+        if (length > 0 && line[length - 1] == '\r') {
+            length--;
+        }
+        String decoded = length == 0 ? "" : new String(line, 0, length, charset);
+        lineLength = 0;
+        return decoded;
+    }
+}
@@ -0,0 +1,104 @@
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded, lock-free ring buffer with many producers and a single consumer.
+ * Producers claim a slot with a compare-and-set on the tail and publish the entry through a
+ * per-slot sequence number; the consumer reads slots in order and hands them back by advancing
+ * their sequence one lap. A producer that finds the buffer full gets false back immediately,
+ * so appending never blocks and never takes a lock.
+ *
+ * @param <E> The type of the buffered entries.
+ */
+public class LogRingBuffer<E> {
+
+    private final int mask;
+    private final AtomicReferenceArray<E> entries;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail;
+    private volatile long head;
+
+    /**
+     * Constructs an empty ring buffer.
+     *
+     * @param capacity The minimum number of entries the buffer can hold, rounded up to a power of two.
+     */
+    public LogRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1);
+        this.mask = size - 1;
+        this.entries = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.tail = new AtomicLong();
+    }
+
+    /**
+     * Appends an entry if there is room. Safe to call from any number of threads.
+     *
+     * @param entry The entry to append.
+     * @return true if the entry was appended, false if the buffer is full.
+     */
+    public boolean offer(E entry) {
+        while (true) {
+            long position = tail.get();
+            int index = (int) position & mask;
+            long sequence = sequences.get(index);
+            if (sequence == position) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    entries.set(index, entry);
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+            } else if (sequence < position) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Moves up to {@code maxEntries} published entries, oldest first, into the given list.
+     * Must only be called from the single consumer thread.
+     *
+     * @param batch      The list the entries are added to.
+     * @param maxEntries The maximum number of entries to move.
+     * @return The number of entries moved.
+     */
+    public int drainTo(List<? super E> batch, int maxEntries) {
+        long position = head;
+        int drained = 0;
+        while (drained < maxEntries) {
+            int index = (int) position & mask;
+            if (sequences.get(index) != position + 1) {
+                break;
+            }
+            batch.add(entries.get(index));
+            entries.set(index, null);
+            sequences.set(index, position + mask + 1);
+            position++;
+            drained++;
+        }
+        head = position;
+        return drained;
+    }
+
+    /**
+     * Returns the number of entries currently claimed or buffered. The value is a snapshot and
+     * may be slightly stale while producers are appending.
+     *
+     * @return The number of buffered entries.
+     */
+    public int size() {
+        return (int) Math.max(0, Math.min(tail.get() - head, capacity()));
+    }
+
+    /**
+     * @return The number of entries the buffer can hold.
+     */
+    public int capacity() {
+        return mask + 1;
+    }
+}
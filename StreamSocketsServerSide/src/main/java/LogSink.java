@@ -0,0 +1,26 @@
+import java.io.IOException;
+
+/**
+ * Destination of the {@link ServerLog}. The log's background thread hands over everything it has
+ * collected as one block of text, so an implementation performs one write per batch rather than
+ * one per entry.
+ */
+public interface LogSink extends AutoCloseable {
+
+    /**
+     * Writes a batch of log lines.
+     *
+     * @param text One or more complete lines, each terminated by a line separator.
+     * @throws IOException If the text cannot be written.
+     */
+    void write(String text) throws IOException;
+
+    /**
+     * Releases the sink. The default does nothing.
+     *
+     * @throws IOException If the sink cannot be closed cleanly.
+     */
+    @Override
+    default void close() throws IOException {
+    }
+}
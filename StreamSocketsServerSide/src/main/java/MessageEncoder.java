@@ -0,0 +1,26 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Turns outgoing text protocol lines into the bytes written to clients.
+ * The resulting read-only buffer is meant to be shared by every recipient; each recipient
+ * writes its own {@link ByteBuffer#duplicate() duplicate}, which has an independent position
+ * but no copy of the bytes.
+ */
+public final class MessageEncoder {
+
+    private static final Charset CHARSET = Charset.defaultCharset();
+
+    private MessageEncoder() {
+    }
+
+    /**
+     * Encodes a message as a newline-terminated line in the charset the handlers read with.
+     *
+     * @param message The message to be encoded, without a line terminator.
+     * @return A read-only buffer holding the encoded line.
+     */
+    public static ByteBuffer encodeLine(String message) {
+        return ByteBuffer.wrap((message + "\n").getBytes(CHARSET)).asReadOnlyBuffer();
+    }
+}
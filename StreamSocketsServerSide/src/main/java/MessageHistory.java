@@ -0,0 +1,80 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The most recent chat messages of one room, kept so that a client that lost its connection can
+ * catch up. Every message gets the next sequence number; the last {@code capacity} messages are
+ * kept in a fixed array used as a ring. The messages keep their cached encodings, so a replay
+ * copies bytes that were encoded for the live broadcast.
+ *
+ * <p>Sequence numbers only mean something within one history. Each history therefore has a random
+ * ID, which clients send back with the sequence number they ask to replay from. A history of the
+ * same room on another cluster node, after a restart or after the room was emptied has another ID.</p>
+ *
+ * <p>Not thread-safe; owned by the room's shard thread.</p>
+ */
+public class MessageHistory {
+
+    private final String id;
+    private final OutboundMessage[] messages;
+    private long lastSequence;
+
+    /**
+     * Constructs an empty history.
+     *
+     * @param capacity The number of messages kept; 0 numbers messages without keeping any.
+     */
+    public MessageHistory(int capacity) {
+        this.id = Long.toString(ThreadLocalRandom.current().nextLong() >>> 1, Character.MAX_RADIX);
+        this.messages = new OutboundMessage[capacity];
+    }
+
+    /**
+     * @return The ID that tells this history's sequence numbers apart from any other history's.
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Numbers a message and keeps the numbered copy, replacing the oldest message once the history is full.
+     *
+     * @param message The message broadcast in the room.
+     * @return The numbered copy, to be sent instead of the message.
+     */
+    public OutboundMessage append(OutboundMessage message) {
+        lastSequence++;
+        OutboundMessage numbered = message.withSequence(lastSequence);
+        if (messages.length > 0) {
+            messages[(int) (lastSequence % messages.length)] = numbered;
+        }
+        return numbered;
+    }
+
+    /**
+     * @return The sequence number of the latest message, or 0 if there has been none.
+     */
+    public long getLastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * Returns the kept messages that came after a given sequence number. Messages that have
+     * already been replaced are silently missing from the result.
+     *
+     * @param sequence The sequence number of the last message the client has seen.
+     * @return The later messages still kept, oldest first.
+     */
+    public List<OutboundMessage> since(long sequence) {
+        if (sequence >= lastSequence) {
+            return List.of();
+        }
+        long first = Math.max(Math.max(sequence, 0) + 1, lastSequence - messages.length + 1);
+        List<OutboundMessage> backlog = new ArrayList<>((int) Math.max(0, lastSequence - first + 1));
+        for (long s = first; s <= lastSequence; s++) {
+            backlog.add(messages[(int) (s % messages.length)]);
+        }
+        return backlog;
+    }
+}
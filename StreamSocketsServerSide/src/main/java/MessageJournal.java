@@ -0,0 +1,373 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+/**
+ * Durable, append-only history of the chat messages broadcast by the server, kept in a directory of
+ * {@link JournalSegment segment files}. Broadcasting only appends a record to a lock-free
+ * {@link LogRingBuffer}; a writer thread numbers the records, encodes a whole batch into one buffer,
+ * writes it with a single {@link java.nio.channels.FileChannel} call and forces it to disk once for
+ * the batch, so every message broadcast while the previous batch was being forced is committed together.
+ * A segment is rolled over when the next record would not fit, and the oldest segments are deleted
+ * beyond the configured count or age. History queries run on a separate reader thread and read the
+ * segments, walking backwards through each segment's sparse index. Segments dropped by retention
+ * are deleted on the reader thread too, so a query never loses a segment it is reading.
+ */
+public class MessageJournal {
+
+    private static final int MAX_BATCH_RECORDS = 1024;
+    private static final int PENDING_CAPACITY = 8192;
+    private static final int WRITE_BUFFER_BYTES = 256 * 1024;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long RETENTION_CHECK_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    private static final long CLOSE_TIMEOUT_MILLIS = 5000;
+    private final Path directory;
+    private final int segmentBytes;
+    private final int retentionSegments;
+    private final long retentionMillis;
+    private final boolean fsync;
+    private final ServerLog log;
+    private final LogRingBuffer<JournalRecord> pending;
+    private final List<JournalSegment> segments;
+    private final ExecutorService reader;
+    private final Thread writer;
+    private final long[] indexSequences;
+    private final int[] indexPositions;
+    private int indexEntries;
+    private ByteBuffer writeBuffer;
+    private long nextSequence;
+    private volatile boolean closed;
+
+    /**
+     * Opens the journal in a directory, creating it if needed, recovers the segments already in it
+     * and starts the writer and reader threads.
+     *
+     * @param directory         The journal directory.
+     * @param segmentBytes      The size a segment is rolled over at.
+     * @param retentionSegments The number of segments kept, at least 1.
+     * @param retentionMillis   The age after which a segment is deleted, or 0 to keep segments regardless of age.
+     * @param fsync             Whether each batch is forced to the storage device before the next one is written.
+     * @param log               The log write and retention failures are reported in.
+     * @throws IOException If the directory or its segments cannot be opened.
+     */
+    public MessageJournal(Path directory, int segmentBytes, int retentionSegments, long retentionMillis, boolean fsync,
+                          ServerLog log) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.retentionSegments = Math.max(1, retentionSegments);
+        this.retentionMillis = retentionMillis;
+        this.fsync = fsync;
+        this.log = log;
+        this.pending = new LogRingBuffer<>(PENDING_CAPACITY);
+        this.segments = new CopyOnWriteArrayList<>();
+        this.indexSequences = new long[MAX_BATCH_RECORDS];
+        this.indexPositions = new int[MAX_BATCH_RECORDS];
+        this.writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES);
+        this.reader = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "journal-reader");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Files.createDirectories(directory);
+        List<Path> logFiles;
+        try (Stream<Path> files = Files.list(directory)) {
+            logFiles = files.filter(JournalSegment::isLogFile)
+                    .sorted(Comparator.comparingLong(JournalSegment::parseBaseSequence))
+                    .toList();
+        }
+        for (int i = 0; i < logFiles.size(); i++) {
+            segments.add(JournalSegment.open(logFiles.get(i), i == logFiles.size() - 1));
+        }
+        if (segments.isEmpty()) {
+            segments.add(JournalSegment.create(directory, 1));
+        }
+        this.nextSequence = findNextSequence(activeSegment());
+        applyRetention();
+
+        this.writer = new Thread(this::writeRecords, "journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Appends a chat message to the journal. The message is encoded and written on the writer thread.
+     * Appending never blocks: if the writer has fallen a full buffer behind, the message is left
+     * out of the journal. Callers are the rooms' shard threads, and a slow disk must
+     * not hold up broadcasts; the message still reaches the room and its in-memory history.
+     *
+     * @param room    The name of the room the message was broadcast in.
+     * @param message The message.
+     * @return true if the message was queued for writing, false if it was dropped.
+     */
+    public boolean append(String room, OutboundMessage message) {
+        return pending.offer(new JournalRecord(0, System.currentTimeMillis(), room, message));
+    }
+
+    /**
+     * Finds the latest messages of a room on the reader thread. Messages still waiting for the
+     * writer thread are not included.
+     *
+     * @param room  The room name.
+     * @param count The maximum number of messages returned.
+     * @return The room's last messages, oldest first, completed exceptionally if the journal cannot be read.
+     */
+    public CompletableFuture<List<JournalRecord>> readLast(String room, int count) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return findLast(room, count);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, reader);
+    }
+
+    /**
+     * Stops the writer thread after it has written and forced everything appended so far, and closes
+     * the segments. Waits at most five seconds, so a stuck disk cannot hold up shutdown.
+     */
+    public void close() {
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(CLOSE_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        reader.shutdown();
+    }
+
+    /**
+     * Finds a room's last messages by reading the segments from newest to oldest. Each segment is
+     * read in chunks between consecutive sparse index entries, last chunk first, so only as much
+     * of the journal is decoded as the query needs.
+     *
+     * @param room  The room name.
+     * @param count The maximum number of messages returned.
+     * @return The room's last messages, oldest first.
+     * @throws IOException If a segment cannot be read.
+     */
+    List<JournalRecord> findLast(String room, int count) throws IOException {
+        Deque<JournalRecord> found = new ArrayDeque<>();
+        List<JournalSegment> snapshot = List.copyOf(segments);
+        for (int s = snapshot.size() - 1; s >= 0 && found.size() < count; s--) {
+            JournalSegment segment = snapshot.get(s);
+            int end = segment.size();
+            for (int entry = segment.indexSize() - 1; entry >= 0 && found.size() < count; entry--) {
+                int start = segment.indexPosition(entry);
+                if (start >= end) {
+                    continue;
+                }
+                List<JournalRecord> chunk = new ArrayList<>();
+                ByteBuffer range = segment.read(start, end);
+                JournalRecord record;
+                while ((record = JournalRecord.read(range)) != null) {
+                    if (record.getRoom().equals(room)) {
+                        chunk.add(record);
+                    }
+                }
+                for (int i = chunk.size() - 1; i >= 0 && found.size() < count; i--) {
+                    found.addFirst(chunk.get(i));
+                }
+                end = start;
+            }
+        }
+        return new ArrayList<>(found);
+    }
+
+    /**
+     * Writer thread: drains the pending records in batches and writes each batch, parking briefly
+     * whenever nothing is pending. Old segments are also checked against the retention age once a minute.
+     */
+    private void writeRecords() {
+        List<JournalRecord> batch = new ArrayList<>(MAX_BATCH_RECORDS);
+        long nextRetentionCheck = System.currentTimeMillis() + RETENTION_CHECK_MILLIS;
+        while (true) {
+            boolean closing = closed;
+            if (pending.drainTo(batch, MAX_BATCH_RECORDS) == 0) {
+                if (closing) {
+                    break;
+                }
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            } else {
+                try {
+                    writeBatch(batch);
+                } catch (IOException e) {
+                    log.error("Could not write journal batch of " + batch.size() + " records", e);
+                }
+                batch.clear();
+            }
+            if (retentionMillis > 0 && System.currentTimeMillis() >= nextRetentionCheck) {
+                applyRetention();
+                nextRetentionCheck = System.currentTimeMillis() + RETENTION_CHECK_MILLIS;
+            }
+        }
+        List<JournalSegment> open = List.copyOf(segments);
+        onReader(() -> {
+            for (JournalSegment segment : open) {
+                try {
+                    segment.close();
+                } catch (IOException e) {
+                    log.error("Could not close journal segment " + segment.getBaseSequence(), e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Numbers and encodes a batch of records into the write buffer and writes it to the active
+     * segment, rolling over to a new segment when the next record would not fit. The batch is
+     * forced to disk with one call at the end.
+     *
+     * @param batch The records to write, in order.
+     * @throws IOException If the records cannot be written.
+     */
+    private void writeBatch(List<JournalRecord> batch) throws IOException {
+        JournalSegment segment = activeSegment();
+        for (JournalRecord queued : batch) {
+            byte[] record = new JournalRecord(nextSequence, queued.getTimestamp(), queued.getRoom(), queued.getMessage()).encode();
+            int position = segment.size() + writeBuffer.position();
+            if (position > 0 && (long) position + record.length > segmentBytes) {
+                flush(segment);
+                segment = roll();
+                position = 0;
+            } else if (record.length > writeBuffer.remaining()) {
+                flush(segment);
+                if (record.length > writeBuffer.capacity()) {
+                    writeBuffer = ByteBuffer.allocateDirect(record.length);
+                }
+            }
+            if (segment.needsIndexEntry(position)) {
+                indexSequences[indexEntries] = nextSequence;
+                indexPositions[indexEntries] = position;
+                indexEntries++;
+            }
+            writeBuffer.put(record);
+            nextSequence++;
+        }
+        flush(segment);
+        if (fsync) {
+            segment.force();
+        }
+    }
+
+    /**
+     * Writes the buffered records to a segment, then publishes their index entries.
+     *
+     * @param segment The segment the records belong to.
+     * @throws IOException If the records cannot be written.
+     */
+    private void flush(JournalSegment segment) throws IOException {
+        writeBuffer.flip();
+        try {
+            segment.write(writeBuffer);
+            for (int i = 0; i < indexEntries; i++) {
+                segment.addIndexEntry(indexSequences[i], indexPositions[i]);
+            }
+        } finally {
+            writeBuffer.clear();
+            indexEntries = 0;
+        }
+    }
+
+    /**
+     * Seals the active segment and starts a new one with the next sequence number, then deletes
+     * segments beyond the retention limits.
+     *
+     * @return The new active segment.
+     * @throws IOException If the new segment cannot be created.
+     */
+    private JournalSegment roll() throws IOException {
+        JournalSegment sealed = activeSegment();
+        if (fsync) {
+            sealed.force();
+        }
+        sealed.seal();
+        JournalSegment segment = JournalSegment.create(directory, nextSequence);
+        segments.add(segment);
+        applyRetention();
+        return segment;
+    }
+
+    /**
+     * Drops the oldest segments while there are more than the retention count or they are older
+     * than the retention age. The active segment is never dropped. A dropped segment is deleted on
+     * the reader thread, after any query that may still be reading it.
+     */
+    private void applyRetention() {
+        long cutoff = System.currentTimeMillis() - retentionMillis;
+        while (segments.size() > 1) {
+            JournalSegment oldest = segments.get(0);
+            try {
+                if (segments.size() <= retentionSegments && (retentionMillis == 0 || oldest.lastModified() >= cutoff)) {
+                    return;
+                }
+            } catch (IOException e) {
+                log.error("Could not check age of journal segment " + oldest.getBaseSequence(), e);
+                return;
+            }
+            segments.remove(0);
+            onReader(() -> {
+                try {
+                    oldest.delete();
+                } catch (IOException e) {
+                    log.error("Could not delete journal segment " + oldest.getBaseSequence(), e);
+                }
+            });
+        }
+    }
+
+    /**
+     * Runs a task on the reader thread, behind the queries already submitted, or on the calling
+     * thread once the reader has been shut down.
+     *
+     * @param task The task.
+     */
+    private void onReader(Runnable task) {
+        try {
+            reader.execute(task);
+        } catch (RejectedExecutionException e) {
+            task.run();
+        }
+    }
+
+    /**
+     * Finds the sequence number the next record gets by reading the active segment from its last
+     * index entry to the end.
+     *
+     * @param segment The active segment.
+     * @return The sequence number after the segment's last record, or its base sequence if it is empty.
+     * @throws IOException If the segment cannot be read.
+     */
+    private static long findNextSequence(JournalSegment segment) throws IOException {
+        ByteBuffer records = segment.read(segment.floorPosition(Long.MAX_VALUE), segment.size());
+        long next = segment.getBaseSequence();
+        JournalRecord record;
+        while ((record = JournalRecord.read(records)) != null) {
+            next = record.getSequence() + 1;
+        }
+        return next;
+    }
+
+    /**
+     * @return The segment records are appended to.
+     */
+    private JournalSegment activeSegment() {
+        return segments.get(segments.size() - 1);
+    }
+}
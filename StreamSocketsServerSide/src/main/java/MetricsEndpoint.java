@@ -0,0 +1,60 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Serves the server's metrics as plain text on their own port, at {@code /metrics}, for
+ * Prometheus-style scrapers or a quick {@code curl}. Runs on the JDK's built-in HTTP server with
+ * a single dispatcher thread, so scrapes never touch the chat threads.
+ */
+public class MetricsEndpoint {
+
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private final HttpServer httpServer;
+
+    /**
+     * Binds the endpoint to the given port.
+     *
+     * @param port    The port to listen on.
+     * @param metrics The metrics to serve.
+     * @throws IOException If the port cannot be bound.
+     */
+    public MetricsEndpoint(int port, ServerMetrics metrics) throws IOException {
+        this.httpServer = HttpServer.create(new InetSocketAddress(port), 0);
+        this.httpServer.createContext("/metrics", exchange -> respond(exchange, metrics.scrape()));
+    }
+
+    /**
+     * Starts serving scrapes on a background thread.
+     */
+    public void start() {
+        httpServer.start();
+    }
+
+    /**
+     * @return The port the endpoint listens on.
+     */
+    public int getPort() {
+        return httpServer.getAddress().getPort();
+    }
+
+    /**
+     * Writes a scrape response and closes the exchange.
+     *
+     * @param exchange The HTTP request and response.
+     * @param body     The metrics text.
+     * @throws IOException If the response cannot be written.
+     */
+    private static void respond(HttpExchange exchange, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,448 @@
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.net.ssl.SSLEngine;
+
+/**
+ * Non-blocking counterpart of {@link ClientHandler}. Instead of owning a thread, the handler
+ * is driven by the {@link EventLoop} it is registered with: incoming bytes are assembled into
+ * newline-delimited messages and forwarded to the server, and outgoing messages are queued
+ * and written whenever the channel is writable. With TLS, the handler reads and writes through a
+ * {@link TlsChannel} instead of the socket channel itself.
+ */
+public class NioClientHandler implements ClientSession {
+
+    private final SocketChannel channel;
+    private final ByteChannel transport;
+    private final TlsChannel tls;
+    private final long connectionId;
+    private final Server server;
+    private final EventLoop eventLoop;
+    private final String clientIP;
+    private final LineDecoder lines;
+    private final OutboundQueue<OutboundMessage> outbound;
+    private final FlushPolicy flushPolicy;
+    private final AtomicBoolean flushScheduled;
+    private SelectionKey key;
+    private WriteBatch writeBatch;
+    private WireProtocol inboundProtocol;
+    private WireProtocol requestedProtocol;
+    private WireProtocol outboundProtocol;
+    private FrameDecoder frameDecoder;
+    private FrameCompressor requestedCompressor;
+    private FrameCompressor compressor;
+    private volatile boolean sequenceNumbers;
+    private volatile long lastActivity;
+    private boolean draining;
+    private boolean firstLine;
+    private boolean closed;
+
+    /**
+     * Constructs a new NioClientHandler for an accepted client channel.
+     *
+     * @param channel      The accepted channel representing the client connection.
+     * @param connectionId The identifier the server assigned to the connection.
+     * @param server       The chat server to which this handler belongs.
+     * @param eventLoop    The event loop that will serve this connection.
+     * @param outbound     The queue holding messages waiting to be written to the client.
+     * @param flushPolicy  How queued messages are coalesced into socket writes.
+     * @param tlsEngine    The TLS engine for the connection, or null for plaintext.
+     * @throws IOException If the TLS handshake cannot be started.
+     */
+    public NioClientHandler(SocketChannel channel, long connectionId, Server server, EventLoop eventLoop,
+                            OutboundQueue<OutboundMessage> outbound, FlushPolicy flushPolicy, SSLEngine tlsEngine) throws IOException {
+        this.channel = channel;
+        this.tls = tlsEngine == null ? null : new TlsChannel(channel, tlsEngine);
+        this.transport = tls == null ? channel : tls;
+        this.connectionId = connectionId;
+        this.server = server;
+        this.eventLoop = eventLoop;
+        this.clientIP = channel.socket().getInetAddress().getHostAddress();
+        this.lines = new LineDecoder(Charset.defaultCharset());
+        this.outbound = outbound;
+        this.flushPolicy = flushPolicy;
+        this.flushScheduled = new AtomicBoolean();
+        this.inboundProtocol = WireProtocol.TEXT;
+        this.requestedProtocol = WireProtocol.TEXT;
+        this.outboundProtocol = WireProtocol.TEXT;
+        this.firstLine = true;
+        this.lastActivity = System.nanoTime();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getClientIP() {
+        return clientIP;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getConnectionId() {
+        return connectionId;
+    }
+
+    /**
+     * Switches the channel to non-blocking mode and registers it for reads, then writes the
+     * messages queued before registration.
+     * Called on the event loop thread.
+     *
+     * @param selector The selector of the owning event loop.
+     */
+    void register(Selector selector) {
+        try {
+            channel.configureBlocking(false);
+            key = channel.register(selector, SelectionKey.OP_READ, this);
+            if (flushScheduled.get()) {
+                handleWrite();
+            }
+        } catch (IOException e) {
+            server.getLog().info("Error registering client: " + e.getMessage());
+            close();
+        }
+    }
+
+    /**
+     * Reads whatever is available from the channel and forwards every complete line, or every
+     * complete frame once the client has switched to the binary protocol, to the server.
+     * A "quit" message, end of stream, an oversized line or a malformed frame terminates the connection.
+     * With TLS, reads continue as long as decrypted bytes are buffered, and handshake messages or
+     * messages held back by the handshake are written afterwards.
+     * Called on the event loop thread.
+     *
+     * @param readBuffer The event loop's shared read buffer.
+     */
+    void handleRead(ByteBuffer readBuffer) {
+        int count;
+        do {
+            count = readFrom(readBuffer);
+        } while (count > 0 && tls != null && tls.hasBufferedInput());
+        if (!closed && tls != null && (tls.hasPendingOutput() || (!tls.isHandshaking() && flushScheduled.get()))) {
+            handleWrite();
+        }
+    }
+
+    /**
+     * Reads once from the channel and handles what was read.
+     *
+     * @param readBuffer The event loop's shared read buffer.
+     * @return The number of bytes read, or -1 if the connection has been closed.
+     */
+    private int readFrom(ByteBuffer readBuffer) {
+        readBuffer.clear();
+        int count;
+        try {
+            count = transport.read(readBuffer);
+            if (count == -1) {
+                close();
+                return -1;
+            }
+            server.getMetrics().onBytesReceived(count);
+            lastActivity = System.nanoTime();
+        } catch (IOException e) {
+            server.getLog().info("Error handling client: " + e.getMessage());
+            close();
+            return -1;
+        }
+
+        readBuffer.flip();
+        try {
+            while (readBuffer.hasRemaining() && !closed) {
+                if (inboundProtocol == WireProtocol.BINARY) {
+                    readFrames(readBuffer);
+                    break;
+                }
+                String message = lines.next(readBuffer);
+                if (message == null) {
+                    break;
+                }
+                handleMessage(message);
+            }
+        } catch (ProtocolException e) {
+            server.getLog().info("Error handling client: " + e.getMessage());
+            close();
+        }
+        return closed ? -1 : count;
+    }
+
+    /**
+     * Handles a single complete message the same way {@link ClientHandler#run()} does. A heartbeat
+     * answer only counts as activity.
+     * A first line of {@link WireProtocol#BINARY_REQUEST} switches the connection to binary frames.
+     *
+     * @param message The message received from the client.
+     */
+    private void handleMessage(String message) {
+        if (firstLine) {
+            firstLine = false;
+            if (message.equals(WireProtocol.BINARY_REQUEST)) {
+                switchToBinary();
+                return;
+            }
+        }
+        if (message.equals("quit")) {
+            close();
+            return;
+        }
+        if (!message.equals(WireProtocol.PONG)) {
+            server.broadcastMessage(message, this);
+        }
+    }
+
+    /**
+     * Decodes and handles every complete binary frame in the buffer.
+     *
+     * @param readBuffer The bytes received from the client.
+     * @throws ProtocolException If the client sent a malformed frame.
+     */
+    private void readFrames(ByteBuffer readBuffer) throws ProtocolException {
+        BinaryFrame frame;
+        while (!closed && (frame = frameDecoder.next(readBuffer)) != null) {
+            handleFrame(frame);
+        }
+    }
+
+    /**
+     * Handles a single binary frame the same way {@link ClientHandler} does.
+     *
+     * @param frame The frame received from the client.
+     */
+    private void handleFrame(BinaryFrame frame) {
+        if (frame.getType() == FrameType.QUIT) {
+            close();
+        } else if (frame.getType() == FrameType.CHAT) {
+            server.broadcastMessage(OutboundMessage.fromClient(FrameType.CHAT, clientIP, frame.getSenderId(), frame.getBody()), this);
+        } else if (frame.getType() == FrameType.COMMAND) {
+            server.broadcastMessage(OutboundMessage.fromClient(FrameType.COMMAND, clientIP, null, frame.getBody()), this);
+        }
+    }
+
+    /**
+     * Switches incoming bytes to binary frames and asks the writer to acknowledge the switch.
+     * A batch that is already partly written is finished as text before the acknowledgement.
+     */
+    private void switchToBinary() {
+        inboundProtocol = WireProtocol.BINARY;
+        frameDecoder = new FrameDecoder();
+        requestedProtocol = WireProtocol.BINARY;
+        flushScheduled.set(true);
+        handleWrite();
+    }
+
+    /**
+     * Queues a message for the client and schedules a flush on the event loop, after the flush
+     * delay if one is configured. A full batch worth of queued messages is flushed right away.
+     * Safe to call from any thread; never blocks on the socket. If the client has fallen too far
+     * behind, the queue's overflow policy drops a message or the client is disconnected.
+     *
+     * @param message The message to be sent, possibly shared with other recipients.
+     */
+    @Override
+    public void sendMessage(OutboundMessage message) {
+        if (!outbound.offer(message)) {
+            eventLoop.execute(this::close);
+            return;
+        }
+        if (flushScheduled.compareAndSet(false, true)) {
+            long flushDelayNanos = flushPolicy.getFlushDelayNanos();
+            if (flushDelayNanos == 0) {
+                eventLoop.execute(this::handleWrite);
+            } else {
+                eventLoop.schedule(this::handleWrite, flushDelayNanos);
+            }
+        } else if (outbound.size() == flushPolicy.getMaxBatchMessages()) {
+            eventLoop.execute(this::handleWrite);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getDroppedMessages() {
+        return outbound.getDroppedMessages();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getQueueDepth() {
+        return outbound.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void enableSequenceNumbers() {
+        sequenceNumbers = true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasSequenceNumbers() {
+        return sequenceNumbers;
+    }
+
+    /**
+     * {@inheritDoc}
+     * Called on the event loop thread, with the command that asked for it.
+     */
+    @Override
+    public boolean enableCompression() {
+        if (inboundProtocol != WireProtocol.BINARY) {
+            return false;
+        }
+        if (requestedCompressor == null) {
+            requestedCompressor = server.createCompressor();
+            if (requestedCompressor == null) {
+                return false;
+            }
+            flushScheduled.set(true);
+            handleWrite();
+        }
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getLastActivity() {
+        return lastActivity;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void disconnect() {
+        eventLoop.execute(this::close);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void drain() {
+        eventLoop.execute(() -> {
+            draining = true;
+            handleWrite();
+        });
+    }
+
+    /**
+     * Writes queued messages in batches, one gathering write per batch, until the queue is empty
+     * or the socket send buffer is full. In the latter case write interest is registered and the
+     * loop calls back when the channel becomes writable again. Messages are taken off the queue
+     * before they are written, so the overflow policy can never drop a partially written message.
+     * A connection being drained is closed once nothing is left to write.
+     * With TLS, encrypted bytes the channel did not take count as not yet written.
+     * Called on the event loop thread.
+     */
+    void handleWrite() {
+        if (closed || key == null) {
+            // an unregistered channel is written once registered
+            return;
+        }
+        if (writeBatch == null) {
+            // A TLS channel copies the batch into its own buffer while encrypting, so only plaintext is staged
+            writeBatch = new WriteBatch(flushPolicy, server.getMetrics(), tls == null ? server.getBufferPool() : null);
+        }
+        try {
+            do {
+                while (true) {
+                    if (writeBatch.isEmpty()) {
+                        if (requestedProtocol != outboundProtocol) {
+                            writeBatch.add(OutboundMessage.notice(WireProtocol.BINARY_ACK).encode(outboundProtocol));
+                            outboundProtocol = requestedProtocol;
+                        }
+                        if (requestedCompressor != compressor) {
+                            compressor = requestedCompressor;
+                            writeBatch.add(OutboundMessage.notice(WireProtocol.COMPRESS + " " + compressor.getThreshold()).encode(outboundProtocol));
+                        }
+                        writeBatch.fill(outbound, outboundProtocol, sequenceNumbers);
+                        if (writeBatch.isEmpty()) {
+                            break;
+                        }
+                        if (compressor != null) {
+                            writeBatch.compress(compressor);
+                        }
+                    }
+                    writeBatch.writeTo(transport);
+                    if (!writeBatch.isEmpty()) {
+                        awaitWritable();
+                        return;
+                    }
+                }
+                if (tls != null && !tls.flush()) {
+                    awaitWritable();
+                    return;
+                }
+                key.interestOps(SelectionKey.OP_READ);
+                flushScheduled.set(false);
+            } while (!outbound.isEmpty() && flushScheduled.compareAndSet(false, true));
+            if (draining && outbound.isEmpty()) {
+                close();
+            }
+        } catch (IOException e) {
+            server.getLog().info("Error handling client: " + e.getMessage());
+            close();
+        }
+    }
+
+    /**
+     * Registers write interest, so that writing resumes when the channel becomes writable. A TLS
+     * handshake waiting for the client resumes writing from {@link #handleRead(ByteBuffer)} instead,
+     * since the channel being writable would not help it.
+     */
+    private void awaitWritable() {
+        if (tls != null && tls.isHandshaking() && !tls.hasPendingOutput()) {
+            key.interestOps(SelectionKey.OP_READ);
+        } else {
+            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+    }
+
+    /**
+     * Closes the channel, cancels its selection key and removes the client from the server.
+     * Called on the event loop thread, either on a lost connection or when a slow client is disconnected.
+     */
+    private void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            transport.close();
+        } catch (IOException e) {
+            server.getLog().info("Error closing resources: " + e.getMessage());
+        }
+        outbound.clear();
+        if (writeBatch != null) {
+            writeBatch.clear();
+        }
+        if (frameDecoder != null) {
+            frameDecoder.end();
+        }
+        if (compressor != null) {
+            compressor.end();
+        }
+        server.removeClient(this);
+    }
+}
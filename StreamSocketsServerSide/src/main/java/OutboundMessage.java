@@ -0,0 +1,328 @@
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A message on its way from the server to one or more clients.
+ * The message is kept in protocol-neutral form and encoded lazily for each {@link WireProtocol}
+ * the recipients speak. The encoding is cached and shared, so a broadcast is encoded once per
+ * protocol rather than once per recipient; each recipient gets its own duplicate of the bytes.
+ *
+ * <p>A chat message kept in a room's {@link MessageHistory} is a numbered copy of the message
+ * received, with a sequence number. Clients that asked for sequence numbers get it as a
+ * "#&lt;sequence&gt; " prefix, from a separately cached encoding, so other clients keep sharing the
+ * plain bytes. A message is never changed once created, so it can be shared freely.</p>
+ */
+public final class OutboundMessage {
+
+    private static final int UUID_LENGTH = 36;
+    private static final OutboundMessage PING = new OutboundMessage(FrameType.PING, null, null, WireProtocol.PING);
+    private final FrameType type;
+    private final String senderIP;
+    private final String senderIdText;
+    private volatile UUID senderId;
+    private final String body;
+    private final List<OutboundMessage> backlog;
+    private final long sequence;
+    private volatile ByteBuffer textEncoding;
+    private volatile ByteBuffer binaryEncoding;
+    private volatile ByteBuffer sequencedTextEncoding;
+    private volatile ByteBuffer sequencedBinaryEncoding;
+
+    private OutboundMessage(FrameType type, String senderIP, UUID senderId, String body) {
+        this(type, senderIP, senderId, null, body, null, 0);
+    }
+
+    private OutboundMessage(FrameType type, String senderIP, UUID senderId, String senderIdText, String body,
+                            List<OutboundMessage> backlog, long sequence) {
+        this.type = type;
+        this.senderIP = senderIP;
+        this.senderId = senderId;
+        this.senderIdText = senderIdText;
+        this.body = body;
+        this.backlog = backlog;
+        this.sequence = sequence;
+    }
+
+    /**
+     * Creates a message generated by the server itself.
+     *
+     * @param text The notice text.
+     * @return The notice.
+     */
+    public static OutboundMessage notice(String text) {
+        return new OutboundMessage(FrameType.NOTICE, null, null, text);
+    }
+
+    /**
+     * Creates a message relayed from a client.
+     *
+     * @param type     The message type, {@link FrameType#CHAT} or {@link FrameType#COMMAND}.
+     * @param senderIP The IP address of the sending client.
+     * @param senderId The UUID of the sending client, or null if it did not send one.
+     * @param body     The message text, without the sender's UUID.
+     * @return The relayed message.
+     */
+    public static OutboundMessage fromClient(FrameType type, String senderIP, UUID senderId, String body) {
+        return new OutboundMessage(type, senderIP, senderId, body);
+    }
+
+    /**
+     * Creates a message relayed from a text protocol line. A leading "UUID|" is recognised as the
+     * sender's UUID; any other line is relayed as is. The UUID is only parsed when something asks
+     * for it, since text recipients get it back exactly as it was sent.
+     *
+     * @param senderIP The IP address of the sending client.
+     * @param line     The line as received.
+     * @return The relayed message.
+     */
+    public static OutboundMessage fromTextLine(String senderIP, String line) {
+        if (hasSenderIdPrefix(line)) {
+            return new OutboundMessage(FrameType.CHAT, senderIP, null, line.substring(0, UUID_LENGTH),
+                    line.substring(UUID_LENGTH + 1), null, 0);
+        }
+        return fromClient(FrameType.CHAT, senderIP, null, line);
+    }
+
+    /**
+     * Creates a message that replays earlier messages to a single client. It is encoded as the
+     * already encoded, sequence-numbered messages back to back in one buffer, so the whole backlog
+     * goes out in one write.
+     *
+     * @param messages The messages to replay, oldest first.
+     * @return The backlog message.
+     */
+    public static OutboundMessage backlog(List<OutboundMessage> messages) {
+        return new OutboundMessage(FrameType.CHAT, null, null, null, "", List.copyOf(messages), 0);
+    }
+
+    /**
+     * Returns the heartbeat sent to idle connections: a {@link FrameType#PING} frame, or the line
+     * {@link WireProtocol#PING} on the text protocol. There is only one instance, so its encodings are
+     * cached once and every ping after the first costs no encoding.
+     *
+     * @return The ping.
+     */
+    public static OutboundMessage ping() {
+        return PING;
+    }
+
+    /**
+     * Creates the hint sent to every client when the server shuts down: a {@link FrameType#RECONNECT}
+     * frame, or a {@link WireProtocol#RECONNECT} line on the text protocol.
+     *
+     * @param spreadMillis The window over which clients should spread their reconnects.
+     * @return The reconnect hint.
+     */
+    public static OutboundMessage reconnect(long spreadMillis) {
+        return new OutboundMessage(FrameType.RECONNECT, null, null, WireProtocol.RECONNECT + " " + spreadMillis);
+    }
+
+    /**
+     * Creates a roster message: a {@link FrameType#ROSTER} frame, or a line starting with
+     * {@link WireProtocol#ROSTER} on the text protocol.
+     *
+     * @param body The roster line; see {@link Roster}.
+     * @return The roster message.
+     */
+    public static OutboundMessage roster(String body) {
+        return new OutboundMessage(FrameType.ROSTER, null, null, body);
+    }
+
+    /**
+     * Creates a direct message for a single recipient: "DM from &lt;alias&gt; (#&lt;id&gt;): &lt;text&gt;",
+     * so that the recipient can answer by alias or connection ID.
+     *
+     * @param senderAlias  The alias of the sending client.
+     * @param connectionId The connection ID of the sending client.
+     * @param text         The message text.
+     * @return The direct message.
+     */
+    public static OutboundMessage direct(String senderAlias, long connectionId, String text) {
+        return new OutboundMessage(FrameType.DIRECT, null, null, "DM from " + senderAlias + " (#" + connectionId + "): " + text);
+    }
+
+    /**
+     * @return The message type.
+     */
+    public FrameType getType() {
+        return type;
+    }
+
+    /**
+     * @return The IP address of the sending client, or null for notices.
+     */
+    public String getSenderIP() {
+        return senderIP;
+    }
+
+    /**
+     * @return The message text, without the sender's IP address or UUID.
+     */
+    public String getBody() {
+        return body;
+    }
+
+    /**
+     * @return The sequence number of the message in its room's history, or 0 if it has none.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Returns a copy of the message numbered for its room's history. The copy is what the room
+     * queues for its members; the message itself may already be shared, for example with the log
+     * or the cluster, and is left as it is.
+     *
+     * @param sequence The sequence number.
+     * @return The numbered message.
+     */
+    OutboundMessage withSequence(long sequence) {
+        return new OutboundMessage(type, senderIP, senderId, senderIdText, body, backlog, sequence);
+    }
+
+    /**
+     * @return The UUID of the sending client, or null for notices and clients that sent none.
+     */
+    public UUID getSenderId() {
+        UUID id = senderId;
+        if (id == null && senderIdText != null) {
+            id = UUID.fromString(senderIdText);
+            senderId = id;
+        }
+        return id;
+    }
+
+    /**
+     * Renders the message as a text protocol line, without the line terminator.
+     * Relayed messages keep the historical "senderIP: UUID|body" form.
+     *
+     * @return The text line.
+     */
+    public String toText() {
+        if (backlog != null) {
+            StringBuilder text = new StringBuilder();
+            for (OutboundMessage message : backlog) {
+                text.append(text.isEmpty() ? "" : System.lineSeparator()).append(message.toText());
+            }
+            return text.toString();
+        }
+        if (senderIP == null) {
+            return body;
+        }
+        Object sender = senderIdText != null ? senderIdText : senderId;
+        return sender == null ? senderIP + ": " + body : senderIP + ": " + sender + "|" + body;
+    }
+
+    /**
+     * Returns the message encoded for the given protocol, encoding it on first use.
+     *
+     * @param protocol The recipient's wire protocol.
+     * @return A read-only buffer of the encoded bytes, positioned for this recipient alone.
+     */
+    public ByteBuffer encode(WireProtocol protocol) {
+        return encode(protocol, false);
+    }
+
+    /**
+     * Returns the message encoded for the given protocol, with or without its sequence number,
+     * encoding it on first use. A message without a sequence number is always encoded plainly.
+     *
+     * @param protocol        The recipient's wire protocol.
+     * @param sequenceNumbers Whether the recipient asked for sequence numbers.
+     * @return A read-only buffer of the encoded bytes, positioned for this recipient alone.
+     */
+    public ByteBuffer encode(WireProtocol protocol, boolean sequenceNumbers) {
+        if (backlog != null) {
+            return encodeBacklog(protocol);
+        }
+        if (sequenceNumbers && sequence != 0) {
+            return encodeSequenced(protocol);
+        }
+        if (protocol == WireProtocol.BINARY) {
+            ByteBuffer encoded = binaryEncoding;
+            if (encoded == null) {
+                String frameBody = senderIP == null ? body : senderIP + ": " + body;
+                encoded = new BinaryFrame(type, getSenderId(), frameBody).encode();
+                binaryEncoding = encoded;
+            }
+            return encoded.duplicate();
+        }
+
+        ByteBuffer encoded = textEncoding;
+        if (encoded == null) {
+            encoded = MessageEncoder.encodeLine(toText());
+            textEncoding = encoded;
+        }
+        return encoded.duplicate();
+    }
+
+    /**
+     * Returns the message encoded with its "#&lt;sequence&gt; " prefix, encoding it on first use.
+     *
+     * @param protocol The recipient's wire protocol.
+     * @return A read-only buffer of the encoded bytes, positioned for this recipient alone.
+     */
+    private ByteBuffer encodeSequenced(WireProtocol protocol) {
+        String prefix = "#" + sequence + " ";
+        if (protocol == WireProtocol.BINARY) {
+            ByteBuffer encoded = sequencedBinaryEncoding;
+            if (encoded == null) {
+                String frameBody = senderIP == null ? body : senderIP + ": " + body;
+                encoded = new BinaryFrame(type, getSenderId(), prefix + frameBody).encode();
+                sequencedBinaryEncoding = encoded;
+            }
+            return encoded.duplicate();
+        }
+
+        ByteBuffer encoded = sequencedTextEncoding;
+        if (encoded == null) {
+            encoded = MessageEncoder.encodeLine(prefix + toText());
+            sequencedTextEncoding = encoded;
+        }
+        return encoded.duplicate();
+    }
+
+    /**
+     * Copies the sequence-numbered encodings of the replayed messages into one buffer.
+     * Messages that were already sent to a sequence-numbered client reuse that encoding.
+     *
+     * @param protocol The recipient's wire protocol.
+     * @return A read-only buffer holding every replayed message.
+     */
+    private ByteBuffer encodeBacklog(WireProtocol protocol) {
+        ByteBuffer[] parts = new ByteBuffer[backlog.size()];
+        int length = 0;
+        for (int i = 0; i < parts.length; i++) {
+            parts[i] = backlog.get(i).encode(protocol, true);
+            length += parts[i].remaining();
+        }
+        ByteBuffer encoded = ByteBuffer.allocate(length);
+        for (ByteBuffer part : parts) {
+            encoded.put(part);
+        }
+        return encoded.flip().asReadOnlyBuffer();
+    }
+
+    /**
+     * Checks whether a line starts with a UUID in its canonical 8-4-4-4-12 hex form followed by '|'.
+     * Such a prefix always parses, so the check stands in for parsing it.
+     *
+     * @param line The line to check.
+     * @return true if the line has a UUID prefix, false otherwise.
+     */
+    private static boolean hasSenderIdPrefix(String line) {
+        if (line.length() <= UUID_LENGTH || line.charAt(UUID_LENGTH) != '|') {
+            return false;
+        }
+        for (int i = 0; i < UUID_LENGTH; i++) {
+            char c = line.charAt(i);
+            boolean valid = i == 8 || i == 13 || i == 18 || i == 23 ? c == '-' : Character.digit(c, 16) >= 0;
+            if (!valid) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,194 @@
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded queue of messages waiting to be written to one client.
+ * Producers (the broadcasting threads) never block: when the queue is full the configured
+ * {@link OverflowPolicy} decides what happens, and every message lost that way is counted.
+ * A message is removed from the queue before it is written, so a partially written message
+ * is never dropped.
+ *
+ * <p>The consumer can also be {@link #wakeUp() woken up} without a message, for example to act on
+ * a request the reader made. The wake-up is a flag next to the queue rather than a marker in it,
+ * so it never takes the place of a message or gets dropped by the overflow policy.</p>
+ *
+ * @param <T> The type of the queued messages.
+ */
+public class OutboundQueue<T> {
+
+    private final ArrayDeque<T> messages;
+    private final int capacity;
+    private final OverflowPolicy overflowPolicy;
+    private final AtomicLong droppedMessages;
+    private final ReentrantLock lock;
+    private final Condition notEmpty;
+    private boolean wakeUpRequested;
+
+    /**
+     * Constructs a new outbound queue.
+     *
+     * @param capacity       The maximum number of queued messages.
+     * @param overflowPolicy What to do when a message arrives and the queue is full.
+     */
+    public OutboundQueue(int capacity, OverflowPolicy overflowPolicy) {
+        this.messages = new ArrayDeque<>(Math.min(capacity, 1024));
+        this.capacity = capacity;
+        this.overflowPolicy = overflowPolicy;
+        this.droppedMessages = new AtomicLong();
+        this.lock = new ReentrantLock();
+        this.notEmpty = lock.newCondition();
+    }
+
+    /**
+     * Adds a message to the queue, applying the overflow policy if the queue is full.
+     *
+     * @param message The message to be queued.
+     * @return false if the queue is full and the policy is {@link OverflowPolicy#DISCONNECT},
+     *         meaning the caller should disconnect the client; true otherwise.
+     */
+    public boolean offer(T message) {
+        lock.lock();
+        try {
+            if (messages.size() < capacity) {
+                messages.addLast(message);
+                notEmpty.signal();
+                return true;
+            }
+            switch (overflowPolicy) {
+                case DROP_OLDEST -> {
+                    messages.pollFirst();
+                    messages.addLast(message);
+                    droppedMessages.incrementAndGet();
+                    return true;
+                }
+                case DROP_NEWEST -> {
+                    droppedMessages.incrementAndGet();
+                    return true;
+                }
+                default -> {
+                    droppedMessages.incrementAndGet();
+                    return false;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wakes up the consumer if it is waiting in {@link #take()}, or makes its next call return at
+     * once. Nothing is queued, so the wake-up never displaces a message.
+     */
+    public void wakeUp() {
+        lock.lock();
+        try {
+            wakeUpRequested = true;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the next message, waiting until one is available or until the queue is
+     * {@link #wakeUp() woken up}. Either way a pending wake-up is used up.
+     *
+     * @return The next message, or null if the queue was woken up while empty.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public T take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (messages.isEmpty() && !wakeUpRequested) {
+                notEmpty.await();
+            }
+            wakeUpRequested = false;
+            return messages.pollFirst();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the next message if there is one.
+     *
+     * @return The next message, or null if the queue is empty.
+     */
+    public T poll() {
+        lock.lock();
+        try {
+            return messages.pollFirst();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the next message, waiting up to the given time for one to arrive. A
+     * {@link #wakeUp() wake-up} ends the wait early but is left pending for {@link #take()}.
+     *
+     * @param timeout How long to wait.
+     * @param unit    The unit of the timeout.
+     * @return The next message, or null if none arrived in time.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long remainingNanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (messages.isEmpty() && !wakeUpRequested && remainingNanos > 0) {
+                remainingNanos = notEmpty.awaitNanos(remainingNanos);
+            }
+            return messages.pollFirst();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Checks whether any messages are waiting.
+     *
+     * @return true if the queue is empty, false otherwise.
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Returns the number of messages currently waiting.
+     *
+     * @return The queue depth.
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return messages.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Discards all waiting messages without counting them as dropped.
+     */
+    public void clear() {
+        lock.lock();
+        try {
+            messages.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of messages lost to the overflow policy so far.
+     *
+     * @return The dropped message count.
+     */
+    public long getDroppedMessages() {
+        return droppedMessages.get();
+    }
+}
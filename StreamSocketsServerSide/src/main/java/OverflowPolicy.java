@@ -0,0 +1,48 @@
+/**
+ * What a client's outbound queue does when a new message arrives and the queue is already full,
+ * i.e. when the client is reading slower than the chat is producing.
+ */
+public enum OverflowPolicy {
+
+    /**
+     * Discards the oldest queued message to make room for the new one.
+     */
+    DROP_OLDEST("drop-oldest"),
+
+    /**
+     * Discards the new message and keeps the queue as it is.
+     */
+    DROP_NEWEST("drop-newest"),
+
+    /**
+     * Disconnects the client.
+     */
+    DISCONNECT("disconnect");
+
+    private final String argName;
+
+    OverflowPolicy(String argName) {
+        this.argName = argName;
+    }
+
+    /**
+     * Resolves an overflow policy from its configuration name.
+     *
+     * @param argName The configured name, e.g. "drop-oldest".
+     * @return The matching overflow policy.
+     * @throws IllegalArgumentException If no policy has the given name.
+     */
+    public static OverflowPolicy fromArg(String argName) {
+        for (OverflowPolicy policy : values()) {
+            if (policy.argName.equalsIgnoreCase(argName)) {
+                return policy;
+            }
+        }
+        throw new IllegalArgumentException("Unknown overflow policy: " + argName);
+    }
+
+    @Override
+    public String toString() {
+        return argName;
+    }
+}
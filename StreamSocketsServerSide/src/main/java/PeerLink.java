@@ -0,0 +1,139 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.Socket;
+
+/**
+ * One TCP connection between two nodes of a chat cluster, whichever side opened it. Like a
+ * {@link ClientHandler} it reads on one thread and writes on another: relayed messages for the peer
+ * wait in a bounded {@link OutboundQueue}, so a slow or stalled peer never blocks a broadcast and
+ * only loses messages itself.
+ */
+public class PeerLink {
+
+    private final Socket socket;
+    private final String remoteNodeId;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private final OutboundQueue<RelayMessage> outbound;
+    private volatile Thread writerThread;
+
+    /**
+     * Constructs a link over a connection whose handshake has completed.
+     *
+     * @param socket       The connection to the peer.
+     * @param remoteNodeId The node ID the peer announced.
+     * @param in           The stream from the peer, positioned after the handshake.
+     * @param out          The stream to the peer, positioned after the handshake.
+     * @param capacity     The number of relayed messages queued for the peer before new ones are dropped.
+     */
+    public PeerLink(Socket socket, String remoteNodeId, DataInputStream in, DataOutputStream out, int capacity) {
+        this.socket = socket;
+        this.remoteNodeId = remoteNodeId;
+        this.in = in;
+        this.out = out;
+        this.outbound = new OutboundQueue<>(capacity, OverflowPolicy.DROP_NEWEST);
+    }
+
+    /**
+     * Wraps the input of a connected socket in a buffered data stream.
+     *
+     * @param socket The connection to a peer.
+     * @return The stream from the peer.
+     * @throws IOException If the stream cannot be opened.
+     */
+    static DataInputStream inputOf(Socket socket) throws IOException {
+        return new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+    }
+
+    /**
+     * Wraps the output of a connected socket in a buffered data stream.
+     *
+     * @param socket The connection to a peer.
+     * @return The stream to the peer.
+     * @throws IOException If the stream cannot be opened.
+     */
+    static DataOutputStream outputOf(Socket socket) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    /**
+     * @return The node ID of the peer.
+     */
+    public String getRemoteNodeId() {
+        return remoteNodeId;
+    }
+
+    /**
+     * @return The number of relayed messages dropped because the peer fell behind.
+     */
+    public long getDroppedMessages() {
+        return outbound.getDroppedMessages();
+    }
+
+    /**
+     * Queues a relayed message for the peer. Never blocks.
+     *
+     * @param message The message to relay.
+     */
+    public void send(RelayMessage message) {
+        outbound.offer(message);
+    }
+
+    /**
+     * Reads relayed messages from the peer and hands them to the cluster node until the
+     * connection is closed.
+     *
+     * @param node The node this link belongs to.
+     * @throws IOException If the connection fails or the peer sends a malformed message.
+     */
+    void readRelays(ClusterNode node) throws IOException {
+        try {
+            while (true) {
+                node.onRelayReceived(this, RelayMessage.readFrom(in));
+            }
+        } catch (EOFException e) {
+            // the peer closed the connection
+        }
+    }
+
+    /**
+     * Writer thread: writes queued messages to the peer, flushing once the queue is empty,
+     * until the connection is closed.
+     */
+    void writeQueuedRelays() {
+        writerThread = Thread.currentThread();
+        try {
+            while (!socket.isClosed()) {
+                RelayMessage message = outbound.take();
+                do {
+                    message.writeTo(out);
+                } while ((message = outbound.poll()) != null);
+                out.flush();
+            }
+        } catch (IOException e) {
+            close();
+        } catch (InterruptedException e) {
+            // the link was closed while the writer was waiting
+        }
+    }
+
+    /**
+     * Closes the connection and discards queued messages. Wakes the writer thread if it is waiting.
+     */
+    void close() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // already closed
+        }
+        outbound.clear();
+        Thread writer = writerThread;
+        if (writer != null) {
+            writer.interrupt();
+        }
+    }
+}
@@ -0,0 +1,169 @@
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tells the members of a room who connected, disconnected, joined or left. Notices are collected for a
+ * short window and then published once per room and kind of change. A single change keeps its usual
+ * notice, such as "CLIENT CONNECTED: 10.0.0.7"; several changes are coalesced into one, such as
+ * "12 CLIENTS CONNECTED". Without this, N clients reconnecting at once would cost N notices to up to N
+ * members each, N² messages in all, while the room fills up.
+ * Recording a change is a lock-free queue offer; one scheduler thread publishes the notices.
+ */
+public class PresenceNotifier {
+
+    /**
+     * Publishes a notice to a room, for instance by broadcasting it there and relaying it to the cluster.
+     */
+    @FunctionalInterface
+    public interface Publisher {
+
+        /**
+         * Publishes a notice to a room.
+         *
+         * @param room     The room whose members are notified.
+         * @param notice   The notice.
+         * @param subjects The clients the notice is about, which do not get it.
+         */
+        void publish(Room room, OutboundMessage notice, Set<ClientSession> subjects);
+    }
+
+    /**
+     * The kinds of change, with the notice for a single client and for several.
+     */
+    public enum Change {
+        CONNECTED("CLIENT CONNECTED: ", " CLIENTS CONNECTED"),
+        DISCONNECTED("CLIENT DISCONNECTED: ", " CLIENTS DISCONNECTED"),
+        JOINED("CLIENT JOINED %s: ", " CLIENTS JOINED %s"),
+        LEFT("CLIENT LEFT %s: ", " CLIENTS LEFT %s");
+
+        private final String single;
+        private final String several;
+
+        Change(String single, String several) {
+            this.single = single;
+            this.several = several;
+        }
+
+        /**
+         * @param room    The room the change happened in.
+         * @param session The client that changed.
+         * @return The notice for one client.
+         */
+        String notice(Room room, ClientSession session) {
+            return single.replace("%s", room.getName()) + session.getClientIP();
+        }
+
+        /**
+         * @param room  The room the change happened in.
+         * @param count How many clients changed.
+         * @return The notice for several clients.
+         */
+        String notice(Room room, int count) {
+            return count + several.replace("%s", room.getName());
+        }
+    }
+
+    private final Publisher publisher;
+    private final Queue<Event> pending;
+    private final ScheduledExecutorService scheduler;
+    private final ServerLog log;
+
+    /**
+     * Constructs a notifier. With a window of 0 every notice is published right away.
+     *
+     * @param windowMillis How long changes are collected before they are published.
+     * @param publisher    Where the notices go.
+     * @param log          The log failures to publish are reported in.
+     */
+    public PresenceNotifier(long windowMillis, Publisher publisher, ServerLog log) {
+        this.publisher = publisher;
+        this.pending = new ConcurrentLinkedQueue<>();
+        this.log = log;
+        if (windowMillis > 0) {
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "presence-notifier");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(this::publishPending, windowMillis, windowMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.scheduler = null;
+        }
+    }
+
+    /**
+     * Records that a client changed. The room is notified with the next batch of notices.
+     *
+     * @param change  What happened.
+     * @param room    The room whose members are notified.
+     * @param session The client.
+     */
+    public void announce(Change change, Room room, ClientSession session) {
+        if (scheduler == null) {
+            publisher.publish(room, OutboundMessage.notice(change.notice(room, session)), Set.of(session));
+            return;
+        }
+        pending.offer(new Event(change, room, session));
+    }
+
+    /**
+     * Scheduler task: publishes the pending changes. A failure is logged rather than thrown, because
+     * the scheduler never runs a periodic task again once it has thrown.
+     */
+    private void publishPending() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("Could not publish presence notices", e);
+        }
+    }
+
+    /**
+     * Publishes the changes recorded since the last call: one notice per room and kind of change,
+     * in the order the first of each was recorded. The clients a notice is about do not get it,
+     * so a client that just connected is not told that it did.
+     * Normally runs on the scheduler thread once per window.
+     */
+    void flush() {
+        Map<Room, Map<Change, Set<ClientSession>>> changes = new LinkedHashMap<>();
+        Event event;
+        while ((event = pending.poll()) != null) {
+            changes.computeIfAbsent(event.room(), room -> new LinkedHashMap<>())
+                    .computeIfAbsent(event.change(), change -> new LinkedHashSet<>())
+                    .add(event.session());
+        }
+        changes.forEach((room, roomChanges) -> roomChanges.forEach((change, sessions) -> {
+            String notice = sessions.size() == 1
+                    ? change.notice(room, sessions.iterator().next())
+                    : change.notice(room, sessions.size());
+            publisher.publish(room, OutboundMessage.notice(notice), sessions);
+        }));
+    }
+
+    /**
+     * Stops publishing notices and discards those not yet published.
+     */
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        pending.clear();
+    }
+
+    /**
+     * A change waiting to be published.
+     *
+     * @param change  What happened.
+     * @param room    The room whose members are notified.
+     * @param session The client.
+     */
+    private record Event(Change change, Room room, ClientSession session) {
+    }
+}
@@ -0,0 +1,93 @@
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers which relayed messages a cluster node has already seen. For every origin node it keeps
+ * the highest sequence number seen and a sliding window of the {@value #WINDOW} sequence numbers
+ * below it, like a replay window. A message below the window counts as seen, so memory stays
+ * bounded however long the cluster runs.
+ */
+public class RelayDeduplicator {
+
+    static final int WINDOW = 4096;
+    private final Map<String, Window> windows;
+
+    /**
+     * Constructs a deduplicator that has seen nothing yet.
+     */
+    public RelayDeduplicator() {
+        this.windows = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Records a message and reports whether it is new.
+     *
+     * @param originNode The ID of the node the message originated on.
+     * @param sequence   The sequence number the origin node assigned to it.
+     * @return true the first time the message is seen, false for a duplicate or a message too old to tell.
+     */
+    public boolean firstSeen(String originNode, long sequence) {
+        return windows.computeIfAbsent(originNode, node -> new Window()).mark(sequence);
+    }
+
+    /**
+     * The sequence numbers seen from one origin node.
+     */
+    private static final class Window {
+
+        private final long[] bits = new long[WINDOW / Long.SIZE];
+        private long highest = Long.MIN_VALUE;
+
+        /**
+         * Marks a sequence number as seen.
+         *
+         * @param sequence The sequence number.
+         * @return true if it had not been seen before, false otherwise.
+         */
+        synchronized boolean mark(long sequence) {
+            if (highest == Long.MIN_VALUE || sequence > highest) {
+                if (highest == Long.MIN_VALUE || sequence - highest >= WINDOW) {
+                    Arrays.fill(bits, 0);
+                } else {
+                    for (long s = highest + 1; s < sequence; s++) {
+                        clear(s);
+                    }
+                }
+                highest = sequence;
+                set(sequence);
+                return true;
+            }
+            if (highest - sequence >= WINDOW || isSet(sequence)) {
+                return false;
+            }
+            set(sequence);
+            return true;
+        }
+
+        /**
+         * @param sequence A sequence number inside the window.
+         * @return true if it has been seen, false otherwise.
+         */
+        private boolean isSet(long sequence) {
+            int bit = (int) Math.floorMod(sequence, (long) WINDOW);
+            return (bits[bit >>> 6] & (1L << bit)) != 0;
+        }
+
+        /**
+         * @param sequence A sequence number inside the window to mark as seen.
+         */
+        private void set(long sequence) {
+            int bit = (int) Math.floorMod(sequence, (long) WINDOW);
+            bits[bit >>> 6] |= 1L << bit;
+        }
+
+        /**
+         * @param sequence A sequence number inside the window to mark as not seen.
+         */
+        private void clear(long sequence) {
+            int bit = (int) Math.floorMod(sequence, (long) WINDOW);
+            bits[bit >>> 6] &= ~(1L << bit);
+        }
+    }
+}
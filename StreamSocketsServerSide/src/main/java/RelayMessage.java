@@ -0,0 +1,126 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * A broadcast relayed between the nodes of a chat cluster. Its ID is the node it originated on
+ * together with a sequence number that node assigned, which lets every node recognise and drop a
+ * message it has already seen, however many paths it arrives on.
+ *
+ * <p>Wire format, written with {@link DataOutputStream}:
+ * <pre>
+ *     origin node (UTF) | sequence (long) | room (UTF) | type (byte) | sender IP (UTF, "" for notices)
+ *     | has sender UUID (boolean) [| UUID (2 longs)] | body length (int) | UTF-8 body
+ * </pre>
+ * </p>
+ */
+public final class RelayMessage {
+
+    private static final int MAX_BODY_LENGTH = 1024 * 1024;
+    private final String originNode;
+    private final long sequence;
+    private final String room;
+    private final OutboundMessage message;
+
+    /**
+     * Constructs a relayed message.
+     *
+     * @param originNode The ID of the node the message was first broadcast on.
+     * @param sequence   The sequence number the origin node assigned to the message.
+     * @param room       The name of the room the message was broadcast in.
+     * @param message    The message itself.
+     */
+    public RelayMessage(String originNode, long sequence, String room, OutboundMessage message) {
+        this.originNode = originNode;
+        this.sequence = sequence;
+        this.room = room;
+        this.message = message;
+    }
+
+    /**
+     * @return The ID of the node the message was first broadcast on.
+     */
+    public String getOriginNode() {
+        return originNode;
+    }
+
+    /**
+     * @return The sequence number the origin node assigned to the message.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return The name of the room the message was broadcast in.
+     */
+    public String getRoom() {
+        return room;
+    }
+
+    /**
+     * @return The message itself.
+     */
+    public OutboundMessage getMessage() {
+        return message;
+    }
+
+    /**
+     * Writes the relayed message to a peer. The caller flushes the stream.
+     *
+     * @param out The stream to the peer.
+     * @throws IOException If writing fails.
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeUTF(originNode);
+        out.writeLong(sequence);
+        out.writeUTF(room);
+        out.writeByte(message.getType().getCode());
+        out.writeUTF(message.getSenderIP() == null ? "" : message.getSenderIP());
+        UUID senderId = message.getSenderId();
+        out.writeBoolean(senderId != null);
+        if (senderId != null) {
+            out.writeLong(senderId.getMostSignificantBits());
+            out.writeLong(senderId.getLeastSignificantBits());
+        }
+        byte[] body = message.getBody().getBytes(StandardCharsets.UTF_8);
+        out.writeInt(body.length);
+        out.write(body);
+    }
+
+    /**
+     * Reads one relayed message from a peer.
+     *
+     * @param in The stream from the peer.
+     * @return The relayed message.
+     * @throws java.io.EOFException If the peer closed the connection.
+     * @throws ProtocolException    If the message is malformed.
+     * @throws IOException          If reading fails.
+     */
+    public static RelayMessage readFrom(DataInputStream in) throws IOException {
+        String originNode = in.readUTF();
+        long sequence = in.readLong();
+        String room = in.readUTF();
+        FrameType type = FrameType.fromCode(in.readByte());
+        if (type == null) {
+            throw new ProtocolException("Unknown relayed message type");
+        }
+        String senderIP = in.readUTF();
+        UUID senderId = in.readBoolean() ? new UUID(in.readLong(), in.readLong()) : null;
+        int length = in.readInt();
+        if (length < 0 || length > MAX_BODY_LENGTH) {
+            throw new ProtocolException("Invalid relayed message length: " + length);
+        }
+        byte[] body = new byte[length];
+        in.readFully(body);
+        String text = new String(body, StandardCharsets.UTF_8);
+
+        OutboundMessage message = senderIP.isEmpty()
+                ? OutboundMessage.notice(text)
+                : OutboundMessage.fromClient(type, senderIP, senderId, text);
+        return new RelayMessage(originNode, sequence, room, message);
+    }
+}
@@ -0,0 +1,103 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Appends log batches to a file and rolls it over once it reaches a size limit.
+ * On rollover "server.log" becomes "server.log.1", "server.log.1" becomes "server.log.2" and so
+ * on; the oldest file beyond the configured count is deleted. A batch is never split across two
+ * files, so a file may exceed the limit by at most one batch.
+ */
+public class RollingFileLogSink implements LogSink {
+
+    private final Path file;
+    private final long maxFileBytes;
+    private final int maxFiles;
+    private FileChannel channel;
+    private long fileBytes;
+
+    /**
+     * Opens the log file for appending, creating it and its directory if needed.
+     *
+     * @param file         The active log file.
+     * @param maxFileBytes The size at which the file is rolled over.
+     * @param maxFiles     The number of files kept, including the active one.
+     * @throws IOException If the file cannot be opened.
+     */
+    public RollingFileLogSink(Path file, long maxFileBytes, int maxFiles) throws IOException {
+        this.file = file.toAbsolutePath();
+        this.maxFileBytes = maxFileBytes;
+        this.maxFiles = maxFiles;
+        Files.createDirectories(this.file.getParent());
+        open();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(String text) throws IOException {
+        ByteBuffer bytes = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+        if (fileBytes > 0 && fileBytes + bytes.remaining() > maxFileBytes) {
+            roll();
+        }
+        while (bytes.hasRemaining()) {
+            fileBytes += channel.write(bytes);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Closes the active file, shifts the older files up by one and starts a new active file.
+     *
+     * @throws IOException If a file cannot be renamed or the new file cannot be opened.
+     */
+    private void roll() throws IOException {
+        channel.close();
+        if (maxFiles == 1) {
+            Files.delete(file);
+        } else {
+            Files.deleteIfExists(rolledFile(maxFiles - 1));
+            for (int i = maxFiles - 2; i >= 1; i--) {
+                Path older = rolledFile(i);
+                if (Files.exists(older)) {
+                    Files.move(older, rolledFile(i + 1), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            Files.move(file, rolledFile(1), StandardCopyOption.REPLACE_EXISTING);
+        }
+        open();
+    }
+
+    /**
+     * Opens the active file for appending and picks up its current size.
+     *
+     * @throws IOException If the file cannot be opened.
+     */
+    private void open() throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        fileBytes = channel.size();
+    }
+
+    /**
+     * Returns the path of a rolled-over file.
+     *
+     * @param index 1 for the most recent rolled-over file, higher for older ones.
+     * @return The path of that file.
+     */
+    private Path rolledFile(int index) {
+        return file.resolveSibling(file.getFileName() + "." + index);
+    }
+}
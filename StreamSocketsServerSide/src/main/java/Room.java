@@ -0,0 +1,203 @@
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A named chat room: a set of member sessions and the {@link RoomShard} the room is pinned to.
+ * Every broadcast in the room runs on that one shard thread, so messages in a room keep their
+ * order while rooms on different shards fan out in parallel. Membership is a concurrent set,
+ * so neither joining nor broadcasting takes a lock shared with other rooms. The room's recent
+ * chat messages are kept in a {@link MessageHistory}, which only the shard thread touches, and
+ * appended to the server's {@link MessageJournal} if it keeps one.
+ */
+public class Room {
+
+    /**
+     * The sender ID of a message that did not come from a local client, such as one relayed from
+     * another cluster node; connection IDs start at 1, so every member gets the message.
+     */
+    public static final long NO_SENDER = 0;
+    private final String name;
+    private final Set<ClientSession> members;
+    private final RoomShard shard;
+    private final ServerMetrics metrics;
+    private final MessageHistory history;
+    private final MessageJournal journal;
+
+    /**
+     * Constructs an empty room.
+     *
+     * @param name            The room name.
+     * @param shard           The shard every broadcast in this room runs on.
+     * @param metrics         The metrics the fan-out time is recorded in.
+     * @param historyCapacity The number of chat messages kept for replay.
+     * @param journal         The journal chat messages are appended to, or null if none is kept.
+     */
+    public Room(String name, RoomShard shard, ServerMetrics metrics, int historyCapacity, MessageJournal journal) {
+        this.name = name;
+        this.members = ConcurrentHashMap.newKeySet();
+        this.shard = shard;
+        this.metrics = metrics;
+        this.history = new MessageHistory(historyCapacity);
+        this.journal = journal;
+    }
+
+    /**
+     * @return The room name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return The number of sessions in the room.
+     */
+    public int size() {
+        return members.size();
+    }
+
+    /**
+     * @return true if nobody is in the room, false otherwise.
+     */
+    public boolean isEmpty() {
+        return members.isEmpty();
+    }
+
+    /**
+     * Adds a session to the room.
+     *
+     * @param session The joining session.
+     */
+    void add(ClientSession session) {
+        members.add(session);
+    }
+
+    /**
+     * Removes a session from the room.
+     *
+     * @param session The leaving session.
+     */
+    void remove(ClientSession session) {
+        members.remove(session);
+    }
+
+    /**
+     * Hands a message to the room's shard, which queues it for every member except the sender.
+     * Returns immediately; the caller never iterates the member set itself.
+     *
+     * @param message The message to be broadcast.
+     * @param sender  The session the message came from, which does not get it back.
+     */
+    public void broadcast(OutboundMessage message, ClientSession sender) {
+        broadcast(message, sender.getConnectionId());
+    }
+
+    /**
+     * Hands a message to the room's shard, which queues it for every member except the sender.
+     * If the shard is too far behind, the message is dropped and counted instead.
+     *
+     * @param message  The message to be broadcast.
+     * @param senderId The connection ID of the sending client, or {@link #NO_SENDER}.
+     */
+    public void broadcast(OutboundMessage message, long senderId) {
+        if (!shard.offer(() -> fanOut(message, senderId))) {
+            metrics.onBroadcastDropped();
+        }
+    }
+
+    /**
+     * Hands a notice to the room's shard, which queues it for every member except the clients it
+     * is about. If the shard is too far behind, the notice is dropped and counted instead.
+     *
+     * @param notice   The notice to be broadcast, which is not kept in the room's history.
+     * @param subjects The clients the notice is about.
+     */
+    public void broadcast(OutboundMessage notice, Set<ClientSession> subjects) {
+        if (!shard.offer(() -> fanOut(notice, subjects))) {
+            metrics.onBroadcastDropped();
+        }
+    }
+
+    /**
+     * Sends a client the chat messages it missed since a sequence number, all in one
+     * {@link OutboundMessage#backlog(List) backlog message}, followed by a notice with the room's
+     * latest sequence number and history ID: "#&lt;sequence&gt;@&lt;history&gt; REPLAYED &lt;count&gt; MESSAGES".
+     * Runs on the shard thread, so the client gets every later message live, neither missing nor
+     * repeating one. A sequence number from another history, such as the same room's on another
+     * cluster node, is rejected: the client is told so and nothing is replayed.
+     *
+     * @param session   The client, which must be a member of the room.
+     * @param sequence  The sequence number of the last message the client has seen.
+     * @param historyId The ID of the history the sequence number belongs to, or null if unknown.
+     */
+    public void replay(ClientSession session, long sequence, String historyId) {
+        shard.execute(() -> {
+            List<OutboundMessage> backlog = List.of();
+            if (historyId != null && !historyId.equals(history.getId())) {
+                session.sendMessage("CANNOT REPLAY: SEQUENCE NUMBERS ARE FROM ANOTHER SERVER OR AN EARLIER ROOM");
+            } else {
+                backlog = history.since(sequence);
+            }
+            if (!backlog.isEmpty()) {
+                session.sendMessage(OutboundMessage.backlog(backlog));
+            }
+            session.sendMessage("#" + history.getLastSequence() + "@" + history.getId() + " REPLAYED " + backlog.size() + " MESSAGES");
+        });
+    }
+
+    /**
+     * Sends a member a last message and then closes its connection once everything queued for it
+     * has been written. Runs on the shard thread, so every message already broadcast in the room
+     * reaches the member before the last one.
+     *
+     * @param session The member.
+     * @param message The last message, such as a reconnect hint.
+     */
+    public void drain(ClientSession session, OutboundMessage message) {
+        shard.execute(() -> {
+            session.sendMessage(message);
+            session.drain();
+        });
+    }
+
+    /**
+     * Queues a message for every member except the sender and records the time it took.
+     * Chat messages are numbered, kept in the room's history and journaled first; the members get
+     * the numbered copy. Normally runs on the room's shard thread.
+     *
+     * @param message  The message to be broadcast.
+     * @param senderId The connection ID of the sending client.
+     */
+    public void fanOut(OutboundMessage message, long senderId) {
+        long start = System.nanoTime();
+        if (message.getType() == FrameType.CHAT) {
+            message = history.append(message);
+            if (journal != null && !journal.append(name, message)) {
+                metrics.onJournalRecordDropped();
+            }
+        }
+        for (ClientSession member : members) {
+            if (member.getConnectionId() != senderId) {
+                member.sendMessage(message);
+            }
+        }
+        metrics.onBroadcast(System.nanoTime() - start);
+    }
+
+    /**
+     * Queues a notice for every member except the clients it is about and records the time it took.
+     * Runs on the room's shard thread.
+     *
+     * @param notice   The notice to be broadcast.
+     * @param subjects The clients the notice is about.
+     */
+    private void fanOut(OutboundMessage notice, Set<ClientSession> subjects) {
+        long start = System.nanoTime();
+        for (ClientSession member : members) {
+            if (!subjects.contains(member)) {
+                member.sendMessage(notice);
+            }
+        }
+        metrics.onBroadcast(System.nanoTime() - start);
+    }
+}
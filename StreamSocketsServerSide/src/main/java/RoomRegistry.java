@@ -0,0 +1,123 @@
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps track of the chat rooms and which room each client is in. Every client starts in the
+ * {@link #LOBBY} and is in exactly one room at a time. A room is pinned to one of a fixed number
+ * of {@link RoomShard}s by the hash of its name, and any room other than the lobby disappears
+ * when its last member leaves.
+ */
+public class RoomRegistry {
+
+    public static final String LOBBY = "lobby";
+    private static final int MAX_ROOM_NAME_LENGTH = 32;
+    private final Map<String, Room> rooms;
+    private final Map<ClientSession, Room> roomOfSession;
+    private final RoomShard[] shards;
+    private final ServerMetrics metrics;
+    private final int historyCapacity;
+    private final MessageJournal journal;
+
+    /**
+     * Constructs the registry and starts its shard threads.
+     *
+     * @param shardCount      The number of shards rooms are spread over.
+     * @param shardCapacity   The number of broadcasts each shard queues before it drops them.
+     * @param metrics         The metrics the rooms record their fan-out time in.
+     * @param historyCapacity The number of chat messages each room keeps for replay.
+     * @param journal         The journal the rooms append chat messages to, or null if none is kept.
+     */
+    public RoomRegistry(int shardCount, int shardCapacity, ServerMetrics metrics, int historyCapacity, MessageJournal journal) {
+        this.rooms = new ConcurrentHashMap<>();
+        this.roomOfSession = new ConcurrentHashMap<>();
+        this.shards = new RoomShard[shardCount];
+        this.metrics = metrics;
+        this.historyCapacity = historyCapacity;
+        this.journal = journal;
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new RoomShard("room-shard-" + i, shardCapacity);
+        }
+    }
+
+    /**
+     * Checks whether a room name is acceptable: 1 to 32 characters without whitespace.
+     *
+     * @param name The requested room name.
+     * @return true if the name is valid, false otherwise.
+     */
+    public static boolean isValidName(String name) {
+        return !name.isEmpty() && name.length() <= MAX_ROOM_NAME_LENGTH && name.chars().noneMatch(Character::isWhitespace);
+    }
+
+    /**
+     * Returns the room a client is in.
+     *
+     * @param session The client.
+     * @return The client's room, or null if it is not in any room.
+     */
+    public Room getRoom(ClientSession session) {
+        return roomOfSession.get(session);
+    }
+
+    /**
+     * Looks a room up by name.
+     *
+     * @param name The room name.
+     * @return The room, or null if nobody is in a room of that name.
+     */
+    public Room findRoom(String name) {
+        return rooms.get(name);
+    }
+
+    /**
+     * @return The number of rooms that currently exist.
+     */
+    public int getRoomCount() {
+        return rooms.size();
+    }
+
+    /**
+     * Adds a client to a room, creating the room if needed. The client must not be in a room;
+     * call {@link #leave(ClientSession)} first to move it.
+     *
+     * @param session The joining client.
+     * @param name    The name of the room, see {@link #isValidName(String)}.
+     * @return The room joined.
+     */
+    public Room join(ClientSession session, String name) {
+        Room room = rooms.compute(name, (key, existing) -> {
+            Room joined = existing != null ? existing : new Room(key, shardFor(key), metrics, historyCapacity, journal);
+            joined.add(session);
+            return joined;
+        });
+        roomOfSession.put(session, room);
+        return room;
+    }
+
+    /**
+     * Removes a client from the room it is in, removing the room too if it is now empty.
+     *
+     * @param session The leaving client.
+     * @return The room left, or null if the client was not in a room.
+     */
+    public Room leave(ClientSession session) {
+        Room room = roomOfSession.remove(session);
+        if (room != null) {
+            rooms.computeIfPresent(room.getName(), (key, existing) -> {
+                existing.remove(session);
+                return existing.isEmpty() && !key.equals(LOBBY) ? null : existing;
+            });
+        }
+        return room;
+    }
+
+    /**
+     * Picks the shard a room is pinned to.
+     *
+     * @param name The room name.
+     * @return The room's shard.
+     */
+    private RoomShard shardFor(String name) {
+        return shards[Math.floorMod(name.hashCode(), shards.length)];
+    }
+}
@@ -0,0 +1,84 @@
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The single thread a group of rooms runs its broadcasts on. At most a fixed number of broadcasts
+ * wait for the thread; a broadcast beyond that is dropped and counted rather than queued, the same
+ * way the drop-newest {@link OverflowPolicy} treats a client that falls behind. This keeps a burst
+ * from piling up in front of the per-client {@link OutboundQueue}s, where it would escape their bound.
+ *
+ * <p>Other room tasks, such as replaying history to one client or draining it on shutdown, are rare
+ * and must not be lost, so they are always queued. Everything runs in submission order.</p>
+ */
+public class RoomShard implements Executor {
+
+    private final Executor executor;
+    private final int capacity;
+    private final AtomicInteger queuedBroadcasts;
+
+    /**
+     * Constructs a shard and starts its thread.
+     *
+     * @param threadName The name of the shard thread.
+     * @param capacity   The maximum number of broadcasts waiting for the thread.
+     */
+    public RoomShard(String threadName, int capacity) {
+        this(Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, threadName);
+            thread.setDaemon(true);
+            return thread;
+        }), capacity);
+    }
+
+    private RoomShard(Executor executor, int capacity) {
+        this.executor = executor;
+        this.capacity = capacity;
+        this.queuedBroadcasts = new AtomicInteger();
+    }
+
+    /**
+     * Returns a shard that runs every task on the calling thread, for measuring or testing a room
+     * without a shard thread in between.
+     *
+     * @return The shard.
+     */
+    public static RoomShard callerRuns() {
+        return new RoomShard(Runnable::run, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Queues a broadcast unless the shard already has its capacity of broadcasts waiting.
+     *
+     * @param broadcast The broadcast to run.
+     * @return true if the broadcast was queued, false if it was dropped.
+     */
+    public boolean offer(Runnable broadcast) {
+        if (queuedBroadcasts.incrementAndGet() > capacity) {
+            queuedBroadcasts.decrementAndGet();
+            return false;
+        }
+        executor.execute(() -> {
+            queuedBroadcasts.decrementAndGet();
+            broadcast.run();
+        });
+        return true;
+    }
+
+    /**
+     * Queues a task that must not be dropped. Not counted against the capacity.
+     *
+     * @param task The task to run.
+     */
+    @Override
+    public void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    /**
+     * @return The number of broadcasts waiting for the shard thread.
+     */
+    public int getQueuedBroadcasts() {
+        return queuedBroadcasts.get();
+    }
+}
@@ -0,0 +1,299 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Who is online on this server: the alias of every connected client, by connection ID. A client
+ * is listed under its IP address until it sends "/alias &lt;name&gt;". The roster also indexes the
+ * clients by connection ID and by alias, so that a direct message finds its recipient with one hash
+ * lookup. An alias is held by one client at a time, regardless of case, and is refused to anyone
+ * else until its holder leaves or renames itself; otherwise a client could take another's alias and
+ * receive its direct messages. A client still listed under its IP address is not in the alias index
+ * and can only be reached by connection ID.
+ *
+ * <p>"wwhhoo" is answered from the map without locking. A client that sends "/roster" gets the whole
+ * roster once, followed by only the changes: one {@link WireProtocol#ROSTER} message per window, with
+ * every client that came, went or was renamed in that window. A client can therefore keep its own
+ * copy of the roster without asking again, and a mass reconnect costs each subscriber one message
+ * per window rather than one per client.</p>
+ *
+ * <p>A roster message is tab-separated: {@link WireProtocol#ROSTER}, then "snapshot" or "delta",
+ * the roster version, the part number as "&lt;part&gt;/&lt;parts&gt;", and then one entry per client,
+ * either "+&lt;id&gt; &lt;alias&gt;" for a client that is online under that alias or "-&lt;id&gt;" for a
+ * client that has left. Every flush of changes is a new version; a snapshot carries the version it
+ * is at. Changes, subscriptions and flushes are ordered by the roster's lock, so a new subscriber's
+ * snapshot is followed exactly by the deltas with the following versions. A long snapshot or delta
+ * is split into several numbered parts.</p>
+ *
+ * <p>Roster messages share the client's bounded queue with everything else, so a client that falls
+ * behind may lose one. The versions and part numbers let the client notice the gap; it then
+ * subscribes again and gets a fresh snapshot, rather than answering "wwhhoo" from a stale copy.</p>
+ */
+public class Roster {
+
+    private static final int MAX_ALIAS_LENGTH = 32;
+    private static final String SNAPSHOT = "snapshot";
+    private static final String DELTA = "delta";
+    // Keeps a message within the binary frame limit even if every character takes three UTF-8 bytes
+    private static final int MAX_MESSAGE_CHARS = 16 * 1024;
+    // Room for the command, kind, version and part number in front of the entries
+    private static final int MAX_HEADER_CHARS = 64;
+    private final Map<Long, String> aliases;
+    private final Map<Long, ClientSession> sessions;
+    private final Map<String, ClientSession> sessionsByAlias;
+    private final Set<ClientSession> subscribers;
+    private final List<String> changes;
+    private final ScheduledExecutorService scheduler;
+    private final ServerLog log;
+    private long version;
+
+    /**
+     * Constructs an empty roster. With a window of 0 every change is sent to the subscribers right away.
+     *
+     * @param windowMillis How long changes are collected before they are sent.
+     * @param log          The log failures to send changes are reported in.
+     */
+    public Roster(long windowMillis, ServerLog log) {
+        this.aliases = new ConcurrentHashMap<>();
+        this.sessions = new ConcurrentHashMap<>();
+        this.sessionsByAlias = new ConcurrentHashMap<>();
+        this.subscribers = ConcurrentHashMap.newKeySet();
+        this.changes = new ArrayList<>();
+        this.log = log;
+        if (windowMillis > 0) {
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "roster");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(this::sendChanges, windowMillis, windowMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.scheduler = null;
+        }
+    }
+
+    /**
+     * Lists a newly connected client under its IP address.
+     *
+     * @param session The client.
+     */
+    public void add(ClientSession session) {
+        sessions.put(session.getConnectionId(), session);
+        put(session, session.getClientIP(), false);
+    }
+
+    /**
+     * Lists a client under a new alias, unless another client holds it. Control characters are
+     * replaced by spaces and long aliases are cut short. A blank alias is ignored.
+     *
+     * @param session The client.
+     * @param alias   The alias the client chose.
+     * @return false if another client holds the alias, in which case nothing changes, true otherwise.
+     */
+    public boolean rename(ClientSession session, String alias) {
+        String cleaned = alias.replaceAll("\\p{Cntrl}", " ").trim();
+        if (cleaned.isEmpty()) {
+            return true;
+        }
+        return put(session, cleaned.length() > MAX_ALIAS_LENGTH ? cleaned.substring(0, MAX_ALIAS_LENGTH) : cleaned, true);
+    }
+
+    /**
+     * Removes a client that has disconnected, and its subscription.
+     *
+     * @param session The client.
+     */
+    public void remove(ClientSession session) {
+        subscribers.remove(session);
+        synchronized (this) {
+            sessions.remove(session.getConnectionId());
+            String alias = aliases.remove(session.getConnectionId());
+            if (alias != null) {
+                sessionsByAlias.remove(key(alias), session);
+                record("-" + session.getConnectionId());
+            }
+        }
+    }
+
+    /**
+     * Sends a client the whole roster and from then on every change to it. A subscriber that lost
+     * a roster message subscribes again and gets a new snapshot.
+     *
+     * @param session The client.
+     */
+    public synchronized void subscribe(ClientSession session) {
+        flush();
+        List<String> entries = new ArrayList<>(aliases.size());
+        aliases.forEach((id, alias) -> entries.add("+" + id + " " + alias));
+        for (OutboundMessage message : messages(SNAPSHOT, version, entries)) {
+            session.sendMessage(message);
+        }
+        subscribers.add(session);
+    }
+
+    /**
+     * Describes who is online, in answer to "wwhhoo": "ONLINE (&lt;count&gt;): " and the aliases in
+     * alphabetical order.
+     *
+     * @return The description.
+     */
+    public String describe() {
+        List<String> online = new ArrayList<>(aliases.values());
+        online.sort(String.CASE_INSENSITIVE_ORDER);
+        return "ONLINE (" + online.size() + "): " + String.join(", ", online);
+    }
+
+    /**
+     * Finds a client by connection ID or alias.
+     *
+     * @param recipient "#&lt;id&gt;" or an alias.
+     * @return The client, or null if no client on the roster matches.
+     */
+    public ClientSession find(String recipient) {
+        if (recipient.startsWith("#")) {
+            try {
+                return sessions.get(Long.parseLong(recipient.substring(1)));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return sessionsByAlias.get(key(recipient));
+    }
+
+    /**
+     * @param session A client on the roster.
+     * @return The client's alias, or its IP address if it has left.
+     */
+    public String getAlias(ClientSession session) {
+        return aliases.getOrDefault(session.getConnectionId(), session.getClientIP());
+    }
+
+    /**
+     * @return The number of clients on the roster.
+     */
+    public int size() {
+        return aliases.size();
+    }
+
+    /**
+     * Scheduler task: sends the changes recorded in the last window. A failure is logged rather than
+     * thrown, because the scheduler never runs a periodic task again once it has thrown.
+     */
+    private void sendChanges() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("Could not send roster changes", e);
+        }
+    }
+
+    /**
+     * Sends the changes recorded since the last call to every subscriber as the next version of the
+     * roster, usually as one message. Normally runs on the roster's thread once per window.
+     */
+    synchronized void flush() {
+        if (changes.isEmpty()) {
+            return;
+        }
+        version++;
+        List<OutboundMessage> deltas = messages(DELTA, version, changes);
+        changes.clear();
+        for (ClientSession subscriber : subscribers) {
+            for (OutboundMessage delta : deltas) {
+                subscriber.sendMessage(delta);
+            }
+        }
+    }
+
+    /**
+     * Stops sending changes.
+     */
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Lists a client under an alias, moves it in the alias index and records the change.
+     *
+     * @param session The client.
+     * @param alias   The alias.
+     * @param indexed Whether the alias is one the client chose, which is indexed and must be its own,
+     *                rather than its IP address.
+     * @return false if the alias is indexed and held by another client, true otherwise.
+     */
+    private synchronized boolean put(ClientSession session, String alias, boolean indexed) {
+        if (indexed) {
+            ClientSession holder = sessionsByAlias.putIfAbsent(key(alias), session);
+            if (holder != null && holder != session) {
+                return false;
+            }
+        }
+        long connectionId = session.getConnectionId();
+        String previous = aliases.put(connectionId, alias);
+        if (alias.equals(previous)) {
+            return true;
+        }
+        if (previous != null && !key(previous).equals(key(alias))) {
+            sessionsByAlias.remove(key(previous), session);
+        }
+        record("+" + connectionId + " " + alias);
+        return true;
+    }
+
+    /**
+     * @param alias An alias.
+     * @return The key of the alias in the alias index.
+     */
+    private static String key(String alias) {
+        return alias.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Records a change for the subscribers, sending it right away if there is no window.
+     * Called with the roster's lock held.
+     *
+     * @param entry The changed roster entry.
+     */
+    private void record(String entry) {
+        changes.add(entry);
+        if (scheduler == null) {
+            flush();
+        }
+    }
+
+    /**
+     * Builds the roster messages for a list of entries: one message, unless the entries do not fit,
+     * in which case they are split into numbered parts.
+     *
+     * @param kind    "snapshot" or "delta".
+     * @param version The roster version the messages bring the subscriber to.
+     * @param entries The roster entries.
+     * @return The messages, each encoded once for all its recipients.
+     */
+    static List<OutboundMessage> messages(String kind, long version, List<String> entries) {
+        List<StringBuilder> parts = new ArrayList<>(1);
+        StringBuilder part = new StringBuilder();
+        parts.add(part);
+        for (String entry : entries) {
+            if (part.length() > 0 && MAX_HEADER_CHARS + part.length() + 1 + entry.length() > MAX_MESSAGE_CHARS) {
+                part = new StringBuilder();
+                parts.add(part);
+            }
+            part.append('\t').append(entry);
+        }
+        List<OutboundMessage> messages = new ArrayList<>(parts.size());
+        for (int i = 0; i < parts.size(); i++) {
+            messages.add(OutboundMessage.roster(WireProtocol.ROSTER + "\t" + kind + "\t" + version
+                    + "\t" + (i + 1) + "/" + parts.size() + parts.get(i)));
+        }
+        return messages;
+    }
+}
@@ -1,116 +1,889 @@
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import javax.management.JMException;
+import javax.management.ObjectName;
 
 /**
  * Represents the chat server which manages multiple client connections.
- * It accepts connections from clients, broadcasts messages to all connected clients,
- * and maintains the list of connected clients.
+ * It accepts connections from clients, broadcasts messages to the other clients in the sender's
+ * room, and maintains the list of connected clients.
+ *
+ * <p>Rooms: clients start in the lobby and move between rooms with "/join &lt;room&gt;" and
+ * "/leave"; see {@link RoomRegistry}. Chat messages can be kept in a {@link MessageJournal} and
+ * read back with "/history &lt;count&gt;". In cluster mode broadcasts are relayed to and from
+ * other server processes; see {@link ClusterNode}.</p>
+ *
+ * <p>Clients: the {@link Roster} answers "wwhhoo", keeps subscribed clients' copies of it up to
+ * date and finds the recipients of direct messages. The {@link HeartbeatMonitor} finds connections
+ * whose peer vanished. With a keystore configured, clients connect with TLS; see
+ * {@link TlsContext}.</p>
+ *
+ * <p>Admission and shutdown: connections are admitted at a limited rate and up to a limit, and a
+ * {@link PresenceNotifier} coalesces connect and leave notices, so that a mass reconnect does not
+ * flood the server. On shutdown the server {@link #drain(long) drains} its clients instead of
+ * dropping them.</p>
+ *
+ * <p>Observability: traffic is counted in {@link ServerMetrics}, published through JMX and
+ * optionally on a plain-text port. Output goes through the asynchronous {@link ServerLog}.</p>
+ *
+ * <p>Usage:
+ * <pre>
+ *     java Server (DEFAULT_PORT=2000, mode=threaded)
+ *     java Server &lt;port&gt; (mode=threaded)
+ *     java Server &lt;port&gt; &lt;threaded|virtual|nio&gt;
+ * </pre>
+ * </p>
  */
 public class Server {
 
     private static final int DEFAULT_PORT = 2000;
-    private final Queue<ClientHandler> clients;
-    private final ServerSocket serverSocket;
+    private static final int ACCEPT_BACKLOG = 1024;
+    private static final String JOIN_COMMAND = "/join ";
+    private static final String LEAVE_COMMAND = "/leave";
+    private static final String REPLAY_COMMAND = "/replay";
+    private static final String HISTORY_COMMAND = "/history";
+    private static final String WHO_COMMAND = "wwhhoo";
+    private static final String ALIAS_COMMAND = "/alias ";
+    private static final String MESSAGE_COMMAND = "/msg ";
+    private static final int DEFAULT_HISTORY_COUNT = 20;
+    private static final int MAX_HISTORY_COUNT = 1000;
+    private static final long DRAIN_POLL_MILLIS = 50;
+    private static final byte[] SERVER_FULL = "SERVER IS FULL. TRY AGAIN LATER\n".getBytes(StandardCharsets.ISO_8859_1);
+    private final Set<ClientSession> clients;
+    private final AtomicInteger clientCount;
+    private final RoomRegistry rooms;
+    private final AtomicLong nextConnectionId;
+    private final ServerSocketChannel serverChannel;
+    private final ServerMode mode;
+    private final ServerConfiguration configuration;
+    private final ServerMetrics metrics;
+    private final ServerLog log;
+    private final MessageJournal journal;
+    private final HeartbeatMonitor heartbeats;
+    private final PresenceNotifier presence;
+    private final Roster roster;
+    private final TokenBucket acceptRate;
+    private final int maxConnections;
+    private final TlsContext tls;
+    private final BufferPool buffers;
+    private ClusterNode cluster;
     private final String serverHost;
     private final int serverPort;
+    private volatile boolean draining;
 
     public Server(int port) throws IOException {
-        this.clients = new ConcurrentLinkedQueue<>();
-        this.serverSocket = new ServerSocket(port);
+        this(port, ServerMode.THREADED, new ServerConfiguration());
+    }
+
+    public Server(int port, ServerMode mode, ServerConfiguration configuration) throws IOException {
+        this.clients = ConcurrentHashMap.newKeySet();
+        this.clientCount = new AtomicInteger();
+        this.nextConnectionId = new AtomicLong();
+        this.mode = mode;
+        this.configuration = configuration;
+        this.metrics = new ServerMetrics(clients, clientCount::get);
+        this.log = new ServerLog(configuration);
+        this.journal = openJournal(configuration, log);
+        this.rooms = new RoomRegistry(configuration.getRoomShards(), configuration.getRoomShardCapacity(), metrics, configuration.getHistoryMessages(), journal);
+        this.heartbeats = createHeartbeatMonitor(configuration, metrics, log);
+        this.presence = new PresenceNotifier(configuration.getPresenceWindowMillis(), this::publishStatus, log);
+        this.roster = new Roster(configuration.getPresenceWindowMillis(), log);
+        this.acceptRate = createAcceptRate(configuration);
+        this.maxConnections = configuration.getMaxConnections();
+        this.tls = createTlsContext(configuration);
+        this.buffers = new BufferPool(configuration.getBufferSizeBytes(), configuration.getBuffersPerSlab());
+        this.serverChannel = openServerChannel(port, configuration);
+        ServerSocket serverSocket = serverChannel.socket();
         this.serverHost = serverSocket.getInetAddress().getHostAddress();
         this.serverPort = serverSocket.getLocalPort();
     }
 
+    /**
+     * Opens the listening socket. A listening socket inherited from the process that launched the
+     * server, as with systemd socket activation, is used as is: it stays open across restarts, so
+     * connections made while the server restarts wait in its backlog instead of being refused.
+     * Otherwise a new socket is bound to the port, with SO_REUSEPORT if configured, so that a new
+     * server process can start listening before the old one stops.
+     *
+     * @param port          The port to listen on, unless a listening socket is inherited.
+     * @param configuration The server configuration.
+     * @return The bound listening channel.
+     * @throws IOException If the socket cannot be opened or bound.
+     */
+    private static ServerSocketChannel openServerChannel(int port, ServerConfiguration configuration) throws IOException {
+        if (System.inheritedChannel() instanceof ServerSocketChannel inherited) {
+            System.out.println("Using the listening socket inherited from the launching process");
+            return inherited;
+        }
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        if (configuration.isReusePortEnabled()) {
+            if (channel.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT)) {
+                channel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+            } else {
+                System.out.println("SO_REUSEPORT is not supported on this platform. Not sharing the port");
+            }
+        }
+        channel.bind(new InetSocketAddress(port), ACCEPT_BACKLOG);
+        return channel;
+    }
+
+    /**
+     * Creates the heartbeat monitor, unless heartbeats are turned off.
+     *
+     * @param configuration The server configuration.
+     * @param metrics       The metrics idle disconnects are counted in.
+     * @param log           The log idle disconnects are reported in.
+     * @return The monitor, or null if heartbeats are off.
+     */
+    private static HeartbeatMonitor createHeartbeatMonitor(ServerConfiguration configuration, ServerMetrics metrics, ServerLog log) {
+        int intervalSeconds = configuration.getHeartbeatIntervalSeconds();
+        if (intervalSeconds == 0) {
+            return null;
+        }
+        return new HeartbeatMonitor(TimeUnit.SECONDS.toMillis(intervalSeconds),
+                TimeUnit.SECONDS.toMillis(configuration.getHeartbeatTimeoutSeconds()), metrics, log);
+    }
+
+    /**
+     * Creates the token bucket that limits the accept rate, unless the rate is unlimited.
+     *
+     * @param configuration The server configuration.
+     * @return The token bucket, or null if connections are accepted as fast as they come.
+     */
+    private static TokenBucket createAcceptRate(ServerConfiguration configuration) {
+        int ratePerSecond = configuration.getAcceptRatePerSecond();
+        if (ratePerSecond == 0) {
+            return null;
+        }
+        return new TokenBucket(ratePerSecond, configuration.getAcceptBurst());
+    }
+
+    /**
+     * Loads the configured TLS keystore. Unlike a missing journal, a keystore that cannot be loaded
+     * stops the server, so that it never silently serves plaintext.
+     *
+     * @param configuration The server configuration.
+     * @return The TLS context, or null if clients connect in plaintext.
+     * @throws IOException If the keystore cannot be loaded.
+     */
+    private static TlsContext createTlsContext(ServerConfiguration configuration) throws IOException {
+        String keystore = configuration.getTlsKeystore();
+        if (keystore == null) {
+            return null;
+        }
+        TlsContext context = new TlsContext(Path.of(keystore), configuration.getTlsKeystorePassword(),
+                configuration.getTlsProtocols(), configuration.getTlsSessionTimeoutSeconds());
+        System.out.println("Accepting TLS connections with " + String.join(", ", configuration.getTlsProtocols()));
+        return context;
+    }
+
+    /**
+     * Opens the configured message journal. The server runs without one if no journal directory is
+     * configured or it cannot be opened.
+     *
+     * @param configuration The server configuration.
+     * @param log           The log the journal reports write failures in.
+     * @return The journal, or null if none is kept.
+     */
+    private static MessageJournal openJournal(ServerConfiguration configuration, ServerLog log) {
+        String directory = configuration.getJournalDirectory();
+        if (directory == null) {
+            return null;
+        }
+        try {
+            MessageJournal journal = new MessageJournal(Path.of(directory), configuration.getJournalSegmentBytes(),
+                    configuration.getJournalRetentionSegments(),
+                    TimeUnit.HOURS.toMillis(configuration.getJournalRetentionHours()),
+                    configuration.isJournalFsyncEnabled(), log);
+            System.out.println("Journaling messages to " + directory);
+            return journal;
+        } catch (IOException e) {
+            System.out.println("Could not open message journal " + directory + ": " + e.getMessage() + ". Running without one");
+            return null;
+        }
+    }
+
     /**
      * Initiates the server and listens for client connections on the given port.
      */
     public void run() {
 
         System.out.println("*******************>>>>> Chat Server Up And Running <<<<<*******************");
+        publishMetrics();
+        joinCluster();
 
-        try (serverSocket) {
-            while (true) {
-                try {
-                    Socket clientConnection = serverSocket.accept();
+        try (serverChannel) {
+            if (mode == ServerMode.NIO) {
+                acceptNonBlockingClients();
+            } else {
+                acceptBlockingClients();
+            }
+        } catch (IOException e) {
+            System.out.println("Server shutdown: " + e.getMessage());
+        }
+    }
 
-                    ClientHandler clientHandler = new ClientHandler(clientConnection, this);
-                    clients.add(clientHandler);
+    /**
+     * Registers the metrics with the platform MBean server and starts the plain-text metrics
+     * endpoint if a metrics port is configured. The server keeps running if either fails.
+     */
+    private void publishMetrics() {
+        try {
+            ObjectName name = new ObjectName("chat:type=Server,port=" + serverPort);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, name);
+        } catch (JMException e) {
+            System.out.println("Could not register metrics with JMX: " + e.getMessage());
+        }
 
-                    Thread clientThread = new Thread(clientHandler);
-                    clientThread.start();
+        int metricsPort = configuration.getMetricsPort();
+        if (metricsPort > 0) {
+            try {
+                MetricsEndpoint endpoint = new MetricsEndpoint(metricsPort, metrics);
+                endpoint.start();
+                System.out.println("Metrics available on port " + endpoint.getPort() + " at /metrics");
+            } catch (IOException e) {
+                System.out.println("Could not start metrics endpoint: " + e.getMessage());
+            }
+        }
+    }
 
-                    printServerInfo();
+    /**
+     * Starts relaying broadcasts to and from other nodes if cluster mode is enabled.
+     * The server keeps running on its own if the cluster port cannot be bound.
+     */
+    private void joinCluster() {
+        if (!configuration.isClusterEnabled()) {
+            return;
+        }
+        List<InetSocketAddress> peers = configuration.getClusterPeers();
+        ClusterNode node = new ClusterNode(configuration.getClusterNodeId(), configuration.getClusterPort(), peers,
+                configuration.getClusterOutboundCapacity(), this);
+        try {
+            node.start();
+            cluster = node;
+            StringBuilder description = new StringBuilder("Cluster node ").append(node.getNodeId());
+            if (node.getPort() >= 0) {
+                description.append(" accepting peers on port ").append(node.getPort());
+            }
+            if (!peers.isEmpty()) {
+                description.append(", connecting to ").append(peers.stream()
+                        .map(peer -> peer.getHostString() + ":" + peer.getPort())
+                        .collect(Collectors.joining(", ")));
+            }
+            System.out.println(description);
+        } catch (IOException e) {
+            System.out.println("Could not join the cluster: " + e.getMessage());
+        }
+    }
 
-                    broadcastClientConnectionStatus("CLIENT CONNECTED: ", clientHandler);
+    /**
+     * Returns the port the server listens on, which is the one picked by the system if the server
+     * was started on port 0.
+     *
+     * @return The listening port.
+     */
+    public int getPort() {
+        return serverPort;
+    }
+
+    /**
+     * Returns the server's metrics, which the client handlers record their traffic in.
+     *
+     * @return The metrics.
+     */
+    public ServerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the pool of direct buffers that client handlers read into and stage their writes in.
+     *
+     * @return The buffer pool.
+     */
+    public BufferPool getBufferPool() {
+        return buffers;
+    }
+
+    /**
+     * Returns the server's chat rooms.
+     *
+     * @return The room registry.
+     */
+    public RoomRegistry getRooms() {
+        return rooms;
+    }
+
+    /**
+     * Returns the server's log, which the client handlers report their errors to.
+     *
+     * @return The log.
+     */
+    public ServerLog getLog() {
+        return log;
+    }
 
-                } catch (IOException e) {
-                    System.out.println("Issue with a client connection: " + e.getMessage());
+    /**
+     * Accepts client connections and serves each of them with a reader and a writer
+     * on their own platform or virtual threads, until the listening socket is closed.
+     */
+    private void acceptBlockingClients() {
+        Executor clientExecutor = createClientExecutor();
+
+        while (serverChannel.isOpen()) {
+            try {
+                SocketChannel clientChannel = acceptNextClient();
+                if (clientChannel == null) {
+                    continue;
                 }
+                Socket clientConnection = tls == null ? clientChannel.socket() : tls.wrap(clientChannel.socket());
+
+                ClientHandler clientHandler = new ClientHandler(clientConnection, nextConnectionId.incrementAndGet(), this,
+                        createOutboundQueue(), configuration.getFlushPolicy());
+                onClientConnected(clientHandler);
+
+                clientExecutor.execute(clientHandler);
+                clientExecutor.execute(clientHandler::writeQueuedMessages);
+
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                log.info("Issue with a client connection: " + e.getMessage());
             }
-        } catch (IOException e) {
-            System.out.println("Server shutdown: " + e.getMessage());
         }
     }
 
     /**
-     * Prints the current state of the server including its IP, port, and number of connected clients.
+     * Creates the executor that runs blocking client handlers: a new platform thread per
+     * task in threaded mode, a new virtual thread per task in virtual mode.
+     *
+     * @return The executor for client handlers.
+     */
+    private Executor createClientExecutor() {
+        if (mode == ServerMode.VIRTUAL) {
+            try {
+                // Looked up reflectively so the server still builds and runs on Java 17
+                return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                System.out.println("Virtual threads require Java 21 or later. Using platform threads");
+            }
+        }
+        return clientHandler -> new Thread(clientHandler).start();
+    }
+
+    /**
+     * Accepts client connections and distributes them round-robin over one event loop per core,
+     * until the listening socket is closed.
+     *
+     * @throws IOException If the event loops cannot be created.
+     */
+    private void acceptNonBlockingClients() throws IOException {
+        EventLoop[] eventLoops = startEventLoops(Runtime.getRuntime().availableProcessors());
+        int nextEventLoop = 0;
+
+        while (serverChannel.isOpen()) {
+            try {
+                SocketChannel clientChannel = acceptNextClient();
+                if (clientChannel == null) {
+                    continue;
+                }
+
+                EventLoop eventLoop = eventLoops[nextEventLoop];
+                nextEventLoop = (nextEventLoop + 1) % eventLoops.length;
+
+                NioClientHandler clientHandler = new NioClientHandler(clientChannel, nextConnectionId.incrementAndGet(), this, eventLoop,
+                        createOutboundQueue(), configuration.getFlushPolicy(), tls == null ? null : tls.createEngine());
+                onClientConnected(clientHandler);
+
+                eventLoop.register(clientHandler);
+
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                log.info("Issue with a client connection: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Accepts the next connection once the accept rate allows it. Connections beyond the rate wait in
+     * the listening socket's backlog, where they cost the server nothing. A connection beyond the
+     * connection limit is closed right away. In plaintext it is first told that the server is full.
+     * With TLS it is closed without a word: the notice would have to wait for a handshake, which
+     * costs the public-key work the limit is there to avoid and would hold up the accept thread,
+     * and sent unencrypted it would only make the client fail its handshake with a protocol error.
+     *
+     * @return The admitted connection, or null if it was turned away.
+     * @throws IOException If accepting fails.
+     */
+    private SocketChannel acceptNextClient() throws IOException {
+        if (acceptRate != null) {
+            try {
+                acceptRate.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ClosedChannelException();
+            }
+        }
+        SocketChannel clientChannel = serverChannel.accept();
+        if (maxConnections > 0 && clientCount.get() >= maxConnections) {
+            metrics.onConnectionRejected();
+            try (clientChannel) {
+                if (tls == null) {
+                    // A fresh connection's send buffer is empty, so this write does not block
+                    clientChannel.write(ByteBuffer.wrap(SERVER_FULL));
+                }
+            } catch (IOException e) {
+                // the client is turned away either way
+            }
+            return null;
+        }
+        metrics.onConnectionAccepted();
+        return clientChannel;
+    }
+
+    /**
+     * Creates an outbound queue for a new client with the configured capacity and overflow policy.
+     *
+     * @return A new, empty outbound queue.
+     */
+    private OutboundQueue<OutboundMessage> createOutboundQueue() {
+        return new OutboundQueue<>(configuration.getOutboundCapacity(), configuration.getOverflowPolicy());
+    }
+
+    /**
+     * Creates the compressor for a binary client that asked for compression with {@link WireProtocol#COMPRESS}.
+     *
+     * @return A compressor with its own deflate stream, or null if compression is turned off.
+     */
+    public FrameCompressor createCompressor() {
+        int level = configuration.getCompressionLevel();
+        return level == 0 ? null : new FrameCompressor(level, configuration.getCompressionThresholdBytes());
+    }
+
+    /**
+     * Creates and starts the given number of event loops, each on its own thread.
+     *
+     * @param count The number of event loops to start.
+     * @return The started event loops.
+     * @throws IOException If a selector cannot be opened.
+     */
+    private EventLoop[] startEventLoops(int count) throws IOException {
+        EventLoop[] eventLoops = new EventLoop[count];
+        for (int i = 0; i < count; i++) {
+            eventLoops[i] = new EventLoop();
+            new Thread(eventLoops[i], "event-loop-" + i).start();
+        }
+        return eventLoops;
+    }
+
+    /**
+     * Adds a newly connected client to the connected clients and counts it, puts it in the lobby and
+     * on the roster, starts watching its heartbeat and announces it to the others in the lobby.
+     * Called before the client's handler starts reading, so its first message already has a room.
+     *
+     * @param client The newly connected client.
+     */
+    private void onClientConnected(ClientSession client) {
+        clients.add(client);
+        clientCount.incrementAndGet();
+        Room lobby = rooms.join(client, RoomRegistry.LOBBY);
+        roster.add(client);
+        if (heartbeats != null) {
+            heartbeats.watch(client);
+        }
+        printServerInfo();
+        presence.announce(PresenceNotifier.Change.CONNECTED, lobby, client);
+    }
+
+    /**
+     * Logs the current state of the server including its mode, IP, port, and number of connected clients.
      */
     private void printServerInfo() {
-        System.out.println("Server running on host " + serverHost + " on port " + serverPort + " with " + clients.size() + " clients connected.");
+        log.info("Server (" + mode + ") running on host " + serverHost + " on port " + serverPort + " with " + clientCount.get() + " clients connected.");
     }
 
     /**
-     * Broadcasts a message to all clients except the sender.
+     * Broadcasts a message to the other clients in the sender's room, or handles it if it is a
+     * room command.
+     * Only enqueues the message on each client; the actual socket writes happen on each client's
+     * own writer, so no lock is held and a slow receiver cannot stall the sender.
+     * The message is encoded once per wire protocol and the same bytes are shared by every recipient.
      *
-     * @param message   The message to be broadcast.
-     * @param senderIP  The IP address of the sending client to avoid sending back to the sender.
+     * @param message The message to be broadcast, as received on a text protocol connection.
+     * @param sender  The session of the sending client, which does not get its own message back.
      */
-    public synchronized void broadcastMessage(String message, String senderIP) {
+    public void broadcastMessage(String message, ClientSession sender) {
+        if (draining || handleRoomCommand(message, sender)) {
+            return;
+        }
+        broadcastMessage(OutboundMessage.fromTextLine(sender.getClientIP(), message), sender);
+    }
 
-        System.out.println(senderIP + ": " + message);
+    /**
+     * Broadcasts an already parsed message to the other clients in the sender's room, or handles
+     * it if it is a room command.
+     * The sender is recognised by its connection ID, so other clients on the same IP still get the message.
+     * The fan-out itself runs on the room's shard thread, which records the time it takes.
+     * Messages received while the server is draining are ignored.
+     *
+     * @param message The message to be broadcast.
+     * @param sender  The session of the sending client, which does not get its own message back.
+     */
+    public void broadcastMessage(OutboundMessage message, ClientSession sender) {
+        if (draining) {
+            return;
+        }
+        if (message.getType() == FrameType.COMMAND && handleRoomCommand(message.getBody(), sender)) {
+            return;
+        }
+        Room room = rooms.getRoom(sender);
+        if (room == null) {
+            return;
+        }
 
-        for (ClientHandler client : clients) {
-            if (!client.getClientIP().equals(senderIP)) {
+        metrics.onMessageReceived();
+        log.message(message);
+
+        room.broadcast(message, sender);
+        if (cluster != null) {
+            cluster.relay(room.getName(), message);
+        }
+    }
 
-                client.sendMessage(senderIP + ": " + message);
+    /**
+     * Delivers a message relayed from another cluster node to every local client in the room of
+     * that name. Nobody here receives it if no local client is in that room.
+     *
+     * @param roomName The name of the room the message was broadcast in.
+     * @param message  The relayed message.
+     */
+    public void deliverRelayed(String roomName, OutboundMessage message) {
+        Room room = rooms.findRoom(roomName);
+        if (room != null) {
+            log.message(message);
+            room.broadcast(message, Room.NO_SENDER);
+        }
+    }
+
+    /**
+     * Handles "/join &lt;room&gt;", "/leave", which moves the client back to the lobby,
+     * "/replay [sequence]", see {@link #replay(ClientSession, String)}, "/history [count]",
+     * see {@link #history(ClientSession, String)}, and the roster commands: "wwhhoo", answered with
+     * who is online, "/alias &lt;name&gt;" and "/roster"; see {@link Roster}. "/msg &lt;recipient&gt; &lt;text&gt;"
+     * sends a direct message; see {@link #sendDirect(ClientSession, String)}. "/compress" asks for
+     * compressed frames; a client that cannot have them is told {@link WireProtocol#COMPRESS_OFF}.
+     *
+     * @param command The line or command frame body received from the client.
+     * @param sender  The session of the client that sent it.
+     * @return true if the line was a room command, false if it should be broadcast.
+     */
+    private boolean handleRoomCommand(String command, ClientSession sender) {
+        if (command.equals(LEAVE_COMMAND)) {
+            moveToRoom(sender, RoomRegistry.LOBBY);
+            return true;
+        }
+        if (command.startsWith(JOIN_COMMAND)) {
+            String name = command.substring(JOIN_COMMAND.length()).trim();
+            if (RoomRegistry.isValidName(name)) {
+                moveToRoom(sender, name);
+            } else {
+                sender.sendMessage("INVALID ROOM NAME: " + name);
             }
+            return true;
+        }
+        if (command.equals(REPLAY_COMMAND) || command.startsWith(REPLAY_COMMAND + " ")) {
+            replay(sender, command.substring(REPLAY_COMMAND.length()).trim());
+            return true;
+        }
+        if (command.equals(HISTORY_COMMAND) || command.startsWith(HISTORY_COMMAND + " ")) {
+            history(sender, command.substring(HISTORY_COMMAND.length()).trim());
+            return true;
+        }
+        if (command.equals(WHO_COMMAND)) {
+            sender.sendMessage(roster.describe());
+            return true;
+        }
+        if (command.startsWith(ALIAS_COMMAND)) {
+            String alias = command.substring(ALIAS_COMMAND.length());
+            if (!roster.rename(sender, alias)) {
+                sender.sendMessage("ALIAS TAKEN: " + alias.trim());
+            }
+            return true;
+        }
+        if (command.equals(WireProtocol.ROSTER)) {
+            roster.subscribe(sender);
+            return true;
+        }
+        if (command.startsWith(MESSAGE_COMMAND)) {
+            sendDirect(sender, command.substring(MESSAGE_COMMAND.length()));
+            return true;
+        }
+        if (command.equals(WireProtocol.COMPRESS)) {
+            if (!sender.enableCompression()) {
+                sender.sendMessage(WireProtocol.COMPRESS_OFF);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Sends a direct message to a single client, found by alias or by connection ID in the
+     * {@link Roster}. It costs one lookup and one enqueue however many clients are online, and
+     * bypasses rooms, history, the journal and the cluster. The message is not logged.
+     *
+     * @param sender   The sending client.
+     * @param argument "&lt;alias&gt; &lt;text&gt;" or "#&lt;id&gt; &lt;text&gt;".
+     */
+    private void sendDirect(ClientSession sender, String argument) {
+        int space = argument.indexOf(' ');
+        if (space <= 0 || space == argument.length() - 1) {
+            sender.sendMessage("USAGE: /msg <alias|#id> <message>");
+            return;
+        }
+        String recipientName = argument.substring(0, space);
+        ClientSession recipient = roster.find(recipientName);
+        if (recipient == null) {
+            sender.sendMessage("NO SUCH CLIENT: " + recipientName);
+            return;
         }
+        metrics.onMessageReceived();
+        recipient.sendMessage(OutboundMessage.direct(roster.getAlias(sender), sender.getConnectionId(), argument.substring(space + 1)));
     }
 
     /**
-     * Broadcasts client connection or disconnection status to all other clients.
+     * Turns on sequence numbers for a client and sends it the messages of its room it has missed
+     * since the given sequence number. Without a sequence number nothing is replayed and the client
+     * only learns the room's latest sequence number and history ID. A sequence number is only
+     * replayed from if it comes with the ID of the room's current history, or with no ID at all;
+     * see {@link Room#replay(ClientSession, long, String)}.
      *
-     * @param message            The message to be broadcast.
-     * @param clientHandler  The client handler for the client whose status changed.
+     * @param session  The client asking for the replay.
+     * @param argument "&lt;sequence&gt;@&lt;history&gt;" or "&lt;sequence&gt;" for the last message the client has seen, or "".
      */
-    private synchronized void broadcastClientConnectionStatus(String message, ClientHandler clientHandler) {
-        String clientIP = clientHandler.getClientIP();
+    private void replay(ClientSession session, String argument) {
+        long sequence = Long.MAX_VALUE;
+        String historyId = null;
+        if (!argument.isEmpty()) {
+            int at = argument.indexOf('@');
+            if (at >= 0) {
+                historyId = argument.substring(at + 1);
+            }
+            try {
+                sequence = Long.parseLong(at >= 0 ? argument.substring(0, at) : argument);
+            } catch (NumberFormatException e) {
+                session.sendMessage("INVALID SEQUENCE NUMBER: " + argument);
+                return;
+            }
+        }
+        Room room = rooms.getRoom(session);
+        if (room != null) {
+            session.enableSequenceNumbers();
+            room.replay(session, sequence, historyId);
+        }
+    }
 
-        for (ClientHandler client : clients) {
-            if (!client.getClientIP().equals(clientIP)) {
-                client.sendMessage(message + clientIP);
+    /**
+     * Sends a client the last messages of its room from the message journal, which outlives
+     * restarts and holds far more than the in-memory replay history. The journal is read on its
+     * own reader thread; the client gets a notice "HISTORY OF &lt;room&gt;: &lt;count&gt; MESSAGES" followed
+     * by the messages, all in one {@link OutboundMessage#backlog(List) backlog message}.
+     *
+     * @param session  The client asking for the history.
+     * @param argument The number of messages wanted, at most 1000, or "" for the last 20.
+     */
+    private void history(ClientSession session, String argument) {
+        int count = DEFAULT_HISTORY_COUNT;
+        if (!argument.isEmpty()) {
+            try {
+                count = Math.min(Integer.parseInt(argument), MAX_HISTORY_COUNT);
+            } catch (NumberFormatException e) {
+                count = 0;
+            }
+            if (count <= 0) {
+                session.sendMessage("INVALID MESSAGE COUNT: " + argument);
+                return;
+            }
+        }
+        Room room = rooms.getRoom(session);
+        if (room == null) {
+            return;
+        }
+        if (journal == null) {
+            session.sendMessage("HISTORY IS NOT AVAILABLE");
+            return;
+        }
+        String roomName = room.getName();
+        journal.readLast(roomName, count).whenComplete((records, error) -> {
+            if (error != null) {
+                log.info("Could not read message journal: " + error.getMessage());
+                session.sendMessage("HISTORY IS NOT AVAILABLE");
+                return;
             }
+            session.sendMessage("HISTORY OF " + roomName + ": " + records.size() + " MESSAGES");
+            if (!records.isEmpty()) {
+                session.sendMessage(OutboundMessage.backlog(records.stream().map(JournalRecord::getMessage).toList()));
+            }
+        });
+    }
+
+    /**
+     * Moves a client to another room, confirming the move to the client and announcing it to the
+     * others in the room it left and the room it joined.
+     *
+     * @param session The moving client.
+     * @param name    The name of the room to join.
+     */
+    private void moveToRoom(ClientSession session, String name) {
+        Room previous = rooms.leave(session);
+        if (previous != null) {
+            presence.announce(PresenceNotifier.Change.LEFT, previous, session);
         }
+        Room room = rooms.join(session, name);
+        session.sendMessage("JOINED " + room.getName());
+        if (session.hasSequenceNumbers()) {
+            room.replay(session, Long.MAX_VALUE, null);
+        }
+        presence.announce(PresenceNotifier.Change.JOINED, room, session);
     }
 
     /**
-     * Removes a client from the list of connected clients and notifies others of the disconnection.
+     * Broadcasts a notice about clients' connection or room status to the clients in a room and
+     * relays it to the cluster. Called by the {@link PresenceNotifier}.
      *
-     * @param clientHandler The client handler representing the client to be removed.
+     * @param room     The room whose members are notified.
+     * @param status   The notice.
+     * @param subjects The clients the notice is about, which do not get it.
      */
-    public void removeClient(ClientHandler clientHandler) {
-        broadcastClientConnectionStatus("CLIENT DISCONNECTED: ", clientHandler);
-        clients.remove(clientHandler);
+    private void publishStatus(Room room, OutboundMessage status, Set<ClientSession> subjects) {
+        room.broadcast(status, subjects);
+        if (cluster != null) {
+            cluster.relay(room.getName(), status);
+        }
+    }
+
+    /**
+     * Removes a client from the list of connected clients, its room, the roster and the heartbeat
+     * monitor, and announces the disconnection to the others in the room, unless the server is draining.
+     *
+     * @param session The session representing the client to be removed.
+     */
+    public void removeClient(ClientSession session) {
+        if (heartbeats != null) {
+            heartbeats.unwatch(session);
+        }
+        roster.remove(session);
+        Room room = rooms.leave(session);
+        if (room != null && !draining) {
+            presence.announce(PresenceNotifier.Change.DISCONNECTED, room, session);
+        }
+        if (clients.remove(session)) {
+            clientCount.decrementAndGet();
+        }
+        metrics.onClientRemoved(session);
+        long droppedMessages = session.getDroppedMessages();
+        if (droppedMessages > 0) {
+            log.info("Client " + session.getClientIP() + " missed " + droppedMessages + " messages.");
+        }
         printServerInfo();
     }
 
+    /**
+     * Shuts the server down gracefully. The server stops accepting connections and messages, and sends
+     * every client a {@link OutboundMessage#reconnect(long) reconnect hint} through its room, after
+     * every message already broadcast there. Each connection is closed as soon as everything queued
+     * for it, the hint included, has been written. Connections still open when the
+     * timeout runs out are closed anyway. Clients pick a random moment within the configured window to
+     * reconnect, so a restarted server is not hit by all of them at once.
+     *
+     * @param timeoutMillis How long to wait for the clients' queues to be written.
+     */
+    public void drain(long timeoutMillis) {
+        draining = true;
+        presence.stop();
+        roster.stop();
+        try {
+            serverChannel.close();
+        } catch (IOException e) {
+            log.info("Error closing server socket: " + e.getMessage());
+        }
+        int drainingClients = clientCount.get();
+        log.info("Draining " + drainingClients + " clients");
+
+        OutboundMessage hint = OutboundMessage.reconnect(TimeUnit.SECONDS.toMillis(configuration.getReconnectSpreadSeconds()));
+        for (ClientSession client : clients) {
+            Room room = rooms.getRoom(client);
+            if (room != null) {
+                room.drain(client, hint);
+            } else {
+                client.sendMessage(hint);
+                client.drain();
+            }
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (!clients.isEmpty() && deadline - System.nanoTime() > 0) {
+            try {
+                Thread.sleep(DRAIN_POLL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        int remaining = clientCount.get();
+        for (ClientSession client : clients) {
+            client.disconnect();
+        }
+        log.info("Drained " + (drainingClients - remaining) + " of " + drainingClients + " clients; closed " + remaining + " still busy");
+    }
+
+    /**
+     * Stops the server: drains the clients if a drain timeout is configured, then closes the message
+     * journal and the log, in that order, so that nothing the drain logs or journals is lost.
+     * {@link #main(String[])} runs this from a shutdown hook; a server embedded in another
+     * application, or built by a test, is stopped by calling it directly.
+     */
+    public void shutdown() {
+        int drainSeconds = configuration.getDrainSeconds();
+        if (drainSeconds > 0) {
+            drain(TimeUnit.SECONDS.toMillis(drainSeconds));
+        }
+        if (heartbeats != null) {
+            heartbeats.stop();
+        }
+        if (cluster != null) {
+            cluster.stop();
+        }
+        if (journal != null) {
+            journal.close();
+        }
+        log.close();
+    }
+
     /**
      * The main entry point for the Server application. Initiates the server on a given port or the default port.
      *
-     * @param args Command-line arguments, expects the port number as the first argument.
+     * @param args Command-line arguments, expects the port number as the first argument
+     *             and optionally the server mode as the second.
      */
     public static void main(String[] args) throws IOException {
         int port;
@@ -120,7 +893,15 @@ public class Server {
             port = DEFAULT_PORT;
         }
 
-        Server server = new Server(port);
+        ServerMode mode;
+        try {
+            mode = ServerMode.fromArg(args[1]);
+        } catch (RuntimeException e) {
+            mode = ServerMode.THREADED;
+        }
+
+        Server server = new Server(port, mode, new ServerConfiguration());
+        Runtime.getRuntime().addShutdownHook(new Thread(server::shutdown, "server-shutdown"));
         server.run();
     }
 }
@@ -0,0 +1,548 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.zip.Deflater;
+
+/**
+ * Tunable settings for the chat server. Values are read from a "server.properties" file on the
+ * classpath and can be overridden per run with system properties of the same name,
+ * e.g. {@code java -Dclient.overflow.policy=disconnect Server}. Missing or invalid values fall
+ * back to the defaults.
+ */
+public class ServerConfiguration {
+
+    private static final String CONFIG_FILE = "server.properties";
+    private static final int DEFAULT_OUTBOUND_CAPACITY = 1024;
+    private static final OverflowPolicy DEFAULT_OVERFLOW_POLICY = OverflowPolicy.DROP_NEWEST;
+    private static final int DEFAULT_FLUSH_MAX_BYTES = 64 * 1024;
+    private static final int DEFAULT_FLUSH_MAX_MESSAGES = 64;
+    private static final int DEFAULT_FLUSH_DELAY_MICROS = 0;
+    private static final int DEFAULT_METRICS_PORT = 0;
+    private static final boolean DEFAULT_LOG_MESSAGES = true;
+    private static final int DEFAULT_LOG_FILE_MAX_BYTES = 10 * 1024 * 1024;
+    private static final int DEFAULT_LOG_FILE_COUNT = 5;
+    private static final int DEFAULT_LOG_BUFFER_CAPACITY = 8192;
+    private static final int DEFAULT_LOG_SAMPLE_EVERY = 16;
+    private static final int DEFAULT_ROOM_SHARDS = Runtime.getRuntime().availableProcessors();
+    private static final int DEFAULT_ROOM_SHARD_CAPACITY = 4096;
+    private static final int DEFAULT_HISTORY_MESSAGES = 256;
+    private static final boolean DEFAULT_CLUSTER_ENABLED = false;
+    private static final int DEFAULT_CLUSTER_PORT = 0;
+    private static final int DEFAULT_CLUSTER_OUTBOUND_CAPACITY = 8192;
+    private static final int DEFAULT_JOURNAL_SEGMENT_BYTES = 64 * 1024 * 1024;
+    private static final int DEFAULT_JOURNAL_RETENTION_SEGMENTS = 16;
+    private static final int DEFAULT_JOURNAL_RETENTION_HOURS = 0;
+    private static final boolean DEFAULT_JOURNAL_FSYNC = true;
+    private static final int DEFAULT_HEARTBEAT_INTERVAL_SECONDS = 30;
+    private static final int DEFAULT_HEARTBEAT_TIMEOUT_SECONDS = 30;
+    private static final int DEFAULT_DRAIN_SECONDS = 10;
+    private static final int DEFAULT_RECONNECT_SPREAD_SECONDS = 5;
+    private static final boolean DEFAULT_REUSE_PORT = false;
+    private static final int DEFAULT_MAX_CONNECTIONS = 10000;
+    private static final int DEFAULT_ACCEPT_RATE_PER_SECOND = 1000;
+    private static final int DEFAULT_ACCEPT_BURST = 200;
+    private static final int DEFAULT_PRESENCE_WINDOW_MILLIS = 100;
+    private static final String DEFAULT_TLS_PROTOCOLS = "TLSv1.3";
+    private static final int DEFAULT_TLS_SESSION_TIMEOUT_SECONDS = 24 * 60 * 60;
+    private static final int DEFAULT_COMPRESSION_LEVEL = Deflater.BEST_SPEED;
+    private static final int DEFAULT_COMPRESSION_THRESHOLD_BYTES = 512;
+    private static final int DEFAULT_BUFFER_SIZE_BYTES = 8192;
+    private static final int DEFAULT_BUFFERS_PER_SLAB = 128;
+    private final Properties properties;
+
+    /**
+     * Constructs a configuration from "server.properties" on the classpath, if present.
+     */
+    public ServerConfiguration() {
+        this(loadProperties());
+    }
+
+    /**
+     * Constructs a configuration from the given properties.
+     *
+     * @param properties The configured values.
+     */
+    public ServerConfiguration(Properties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * Returns the maximum number of messages queued for a single client.
+     *
+     * @return The outbound queue capacity per client.
+     */
+    public int getOutboundCapacity() {
+        return getInt("client.outbound.capacity", DEFAULT_OUTBOUND_CAPACITY, 1);
+    }
+
+    /**
+     * Returns how queued outbound messages are coalesced into socket writes.
+     *
+     * @return The flush policy.
+     */
+    public FlushPolicy getFlushPolicy() {
+        return new FlushPolicy(
+                getInt("client.flush.max-bytes", DEFAULT_FLUSH_MAX_BYTES, 1),
+                getInt("client.flush.max-messages", DEFAULT_FLUSH_MAX_MESSAGES, 1),
+                getInt("client.flush.delay-micros", DEFAULT_FLUSH_DELAY_MICROS, 0));
+    }
+
+    /**
+     * Returns what happens when a client's outbound queue is full.
+     *
+     * @return The overflow policy.
+     */
+    public OverflowPolicy getOverflowPolicy() {
+        String value = getProperty("client.overflow.policy");
+        if (value == null) {
+            return DEFAULT_OVERFLOW_POLICY;
+        }
+        try {
+            return OverflowPolicy.fromArg(value.trim());
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage() + ". Using default");
+            return DEFAULT_OVERFLOW_POLICY;
+        }
+    }
+
+    /**
+     * Returns the port of the plain-text metrics endpoint.
+     *
+     * @return The metrics port, or 0 if the endpoint is disabled.
+     */
+    public int getMetricsPort() {
+        return getInt("metrics.port", DEFAULT_METRICS_PORT, 0);
+    }
+
+    /**
+     * Returns whether every chat message is written to the console log.
+     *
+     * @return true if chat messages are logged, false otherwise.
+     */
+    public boolean isMessageLoggingEnabled() {
+        String value = getProperty("log.messages");
+        if (value == null) {
+            return DEFAULT_LOG_MESSAGES;
+        }
+        return Boolean.parseBoolean(value.trim());
+    }
+
+    /**
+     * Returns the file the server log is written to.
+     *
+     * @return The log file path, or null to log to the console.
+     */
+    public String getLogFile() {
+        String value = getProperty("log.file");
+        return value == null || value.isBlank() ? null : value.trim();
+    }
+
+    /**
+     * Returns the size at which the log file is rolled over.
+     *
+     * @return The maximum log file size in bytes.
+     */
+    public int getLogFileMaxBytes() {
+        return getInt("log.file.max-bytes", DEFAULT_LOG_FILE_MAX_BYTES, 1);
+    }
+
+    /**
+     * Returns how many log files are kept, including the active one.
+     *
+     * @return The number of log files.
+     */
+    public int getLogFileCount() {
+        return getInt("log.file.count", DEFAULT_LOG_FILE_COUNT, 1);
+    }
+
+    /**
+     * Returns the number of entries the log buffers before it starts dropping them.
+     *
+     * @return The log buffer capacity.
+     */
+    public int getLogBufferCapacity() {
+        return getInt("log.buffer.capacity", DEFAULT_LOG_BUFFER_CAPACITY, 2);
+    }
+
+    /**
+     * Returns the sampling rate used for chat messages while the log buffer is filling up.
+     *
+     * @return One in this many chat messages is kept; 1 disables sampling.
+     */
+    public int getLogSampleEvery() {
+        return getInt("log.sample-every", DEFAULT_LOG_SAMPLE_EVERY, 1);
+    }
+
+    /**
+     * Returns the number of shard threads chat rooms are spread over.
+     *
+     * @return The number of room shards.
+     */
+    public int getRoomShards() {
+        return getInt("rooms.shards", DEFAULT_ROOM_SHARDS, 1);
+    }
+
+    /**
+     * Returns the maximum number of broadcasts waiting for a room shard's thread.
+     *
+     * @return The broadcast queue capacity per shard.
+     */
+    public int getRoomShardCapacity() {
+        return getInt("rooms.shard.capacity", DEFAULT_ROOM_SHARD_CAPACITY, 1);
+    }
+
+    /**
+     * Returns the number of recent chat messages each room keeps for clients that reconnect.
+     *
+     * @return The history size per room; 0 keeps none.
+     */
+    public int getHistoryMessages() {
+        return getInt("history.messages", DEFAULT_HISTORY_MESSAGES, 0);
+    }
+
+    /**
+     * Returns whether this server joins a cluster of chat servers.
+     *
+     * @return true if cluster mode is enabled, false otherwise.
+     */
+    public boolean isClusterEnabled() {
+        String value = getProperty("cluster.enabled");
+        if (value == null) {
+            return DEFAULT_CLUSTER_ENABLED;
+        }
+        return Boolean.parseBoolean(value.trim());
+    }
+
+    /**
+     * Returns the port this node accepts links from other cluster nodes on.
+     *
+     * @return The cluster port, 0 for any free port, or -1 if this node does not accept peer links.
+     */
+    public int getClusterPort() {
+        return getInt("cluster.port", DEFAULT_CLUSTER_PORT, -1);
+    }
+
+    /**
+     * Returns the cluster ports of the nodes this node connects to, from a comma-separated list of
+     * host:port pairs. Invalid entries are reported and skipped.
+     *
+     * @return The peer addresses, empty if none are configured.
+     */
+    public List<InetSocketAddress> getClusterPeers() {
+        List<InetSocketAddress> peers = new ArrayList<>();
+        String value = getProperty("cluster.peers");
+        if (value == null || value.isBlank()) {
+            return peers;
+        }
+        for (String entry : value.split(",")) {
+            String peer = entry.trim();
+            int colon = peer.lastIndexOf(':');
+            try {
+                peers.add(InetSocketAddress.createUnresolved(peer.substring(0, colon), Integer.parseInt(peer.substring(colon + 1))));
+            } catch (RuntimeException e) {
+                System.out.println("Invalid cluster peer " + peer + ". Ignoring it");
+            }
+        }
+        return peers;
+    }
+
+    /**
+     * Returns the ID of this node in the cluster.
+     *
+     * @return The configured node ID, or a random one if none is configured.
+     */
+    public String getClusterNodeId() {
+        String value = getProperty("cluster.node-id");
+        return value == null || value.isBlank() ? UUID.randomUUID().toString() : value.trim();
+    }
+
+    /**
+     * Returns the maximum number of relayed messages queued for a single cluster peer.
+     *
+     * @return The outbound queue capacity per peer.
+     */
+    public int getClusterOutboundCapacity() {
+        return getInt("cluster.outbound.capacity", DEFAULT_CLUSTER_OUTBOUND_CAPACITY, 1);
+    }
+
+    /**
+     * Returns the directory the message journal is kept in.
+     *
+     * @return The journal directory, or null if no journal is kept.
+     */
+    public String getJournalDirectory() {
+        String value = getProperty("journal.dir");
+        return value == null || value.isBlank() ? null : value.trim();
+    }
+
+    /**
+     * Returns the size at which a journal segment is rolled over.
+     *
+     * @return The maximum segment size in bytes.
+     */
+    public int getJournalSegmentBytes() {
+        return getInt("journal.segment-bytes", DEFAULT_JOURNAL_SEGMENT_BYTES, 4096);
+    }
+
+    /**
+     * Returns the number of journal segments kept; older ones are deleted.
+     *
+     * @return The number of segments kept.
+     */
+    public int getJournalRetentionSegments() {
+        return getInt("journal.retention-segments", DEFAULT_JOURNAL_RETENTION_SEGMENTS, 1);
+    }
+
+    /**
+     * Returns the age after which a journal segment is deleted.
+     *
+     * @return The retention age in hours; 0 keeps segments regardless of age.
+     */
+    public int getJournalRetentionHours() {
+        return getInt("journal.retention-hours", DEFAULT_JOURNAL_RETENTION_HOURS, 0);
+    }
+
+    /**
+     * Returns whether every batch of journal records is forced to the storage device.
+     *
+     * @return true if batches are forced, false to leave flushing to the operating system.
+     */
+    public boolean isJournalFsyncEnabled() {
+        String value = getProperty("journal.fsync");
+        if (value == null) {
+            return DEFAULT_JOURNAL_FSYNC;
+        }
+        return Boolean.parseBoolean(value.trim());
+    }
+
+    /**
+     * Returns how long a connection may be idle before the server pings it.
+     *
+     * @return The heartbeat interval in seconds; 0 turns heartbeats off.
+     */
+    public int getHeartbeatIntervalSeconds() {
+        return getInt("heartbeat.interval-seconds", DEFAULT_HEARTBEAT_INTERVAL_SECONDS, 0);
+    }
+
+    /**
+     * Returns how long a pinged connection has to send something before it is disconnected.
+     *
+     * @return The heartbeat timeout in seconds.
+     */
+    public int getHeartbeatTimeoutSeconds() {
+        return getInt("heartbeat.timeout-seconds", DEFAULT_HEARTBEAT_TIMEOUT_SECONDS, 1);
+    }
+
+    /**
+     * Returns how long the server waits on shutdown for the clients' queued messages to be written
+     * before it closes the remaining connections.
+     *
+     * @return The drain timeout in seconds; 0 closes connections right away.
+     */
+    public int getDrainSeconds() {
+        return getInt("shutdown.drain-seconds", DEFAULT_DRAIN_SECONDS, 0);
+    }
+
+    /**
+     * Returns the window over which clients are asked to spread their reconnects when the server
+     * shuts down, so that they do not all reconnect at once.
+     *
+     * @return The reconnect window in seconds.
+     */
+    public int getReconnectSpreadSeconds() {
+        return getInt("shutdown.reconnect-spread-seconds", DEFAULT_RECONNECT_SPREAD_SECONDS, 0);
+    }
+
+    /**
+     * Returns whether the listening socket is bound with SO_REUSEPORT, so that a new server process
+     * can bind the same port while the old one is still draining.
+     *
+     * @return true if the port may be shared, false otherwise.
+     */
+    public boolean isReusePortEnabled() {
+        String value = getProperty("server.reuse-port");
+        if (value == null) {
+            return DEFAULT_REUSE_PORT;
+        }
+        return Boolean.parseBoolean(value.trim());
+    }
+
+    /**
+     * Returns how many clients may be connected at once. Further connections are told that the
+     * server is full and closed.
+     *
+     * @return The connection limit; 0 means no limit.
+     */
+    public int getMaxConnections() {
+        return getInt("server.max-connections", DEFAULT_MAX_CONNECTIONS, 0);
+    }
+
+    /**
+     * Returns how many connections are accepted per second at most, on average.
+     *
+     * @return The accept rate; 0 means no limit.
+     */
+    public int getAcceptRatePerSecond() {
+        return getInt("server.accept-rate", DEFAULT_ACCEPT_RATE_PER_SECOND, 0);
+    }
+
+    /**
+     * Returns how many connections may be accepted in a burst after a quiet period, above the accept rate.
+     *
+     * @return The accept burst.
+     */
+    public int getAcceptBurst() {
+        return getInt("server.accept-burst", DEFAULT_ACCEPT_BURST, 1);
+    }
+
+    /**
+     * Returns how long notices that clients connected, disconnected, joined or left are collected
+     * before they are sent, coalesced per room.
+     *
+     * @return The window in milliseconds; 0 sends every notice right away.
+     */
+    public long getPresenceWindowMillis() {
+        return getInt("presence.window-millis", DEFAULT_PRESENCE_WINDOW_MILLIS, 0);
+    }
+
+    /**
+     * Returns the keystore holding the server's TLS key and certificate.
+     *
+     * @return The keystore path, or null if clients connect in plaintext.
+     */
+    public String getTlsKeystore() {
+        String value = getProperty("tls.keystore");
+        return value == null || value.isBlank() ? null : value.trim();
+    }
+
+    /**
+     * Returns the password of the TLS keystore and its key.
+     *
+     * @return The password, empty if none is configured.
+     */
+    public char[] getTlsKeystorePassword() {
+        String value = getProperty("tls.keystore-password");
+        return value == null ? new char[0] : value.toCharArray();
+    }
+
+    /**
+     * Returns the TLS versions the server accepts.
+     *
+     * @return The protocol names, such as "TLSv1.3".
+     */
+    public String[] getTlsProtocols() {
+        String value = getProperty("tls.protocols");
+        if (value == null || value.isBlank()) {
+            value = DEFAULT_TLS_PROTOCOLS;
+        }
+        return value.trim().split("\\s*,\\s*");
+    }
+
+    /**
+     * Returns how long a client can resume its TLS session instead of repeating the full handshake.
+     *
+     * @return The session timeout in seconds.
+     */
+    public int getTlsSessionTimeoutSeconds() {
+        return getInt("tls.session-timeout-seconds", DEFAULT_TLS_SESSION_TIMEOUT_SECONDS, 1);
+    }
+
+    /**
+     * Returns the deflate level used for binary clients that ask for compression.
+     *
+     * @return The level, from 1 for the fastest to 9 for the smallest; 0 turns compression off.
+     */
+    public int getCompressionLevel() {
+        int level = getInt("compression.level", DEFAULT_COMPRESSION_LEVEL, 0);
+        if (level > Deflater.BEST_COMPRESSION) {
+            System.out.println("Invalid value for compression.level. Using default");
+            return DEFAULT_COMPRESSION_LEVEL;
+        }
+        return level;
+    }
+
+    /**
+     * Returns the size below which a batch for a compressed connection is sent raw, since compressing
+     * it would cost more CPU than it saves bandwidth.
+     *
+     * @return The threshold in bytes.
+     */
+    public int getCompressionThresholdBytes() {
+        return getInt("compression.threshold-bytes", DEFAULT_COMPRESSION_THRESHOLD_BYTES, 0);
+    }
+
+    /**
+     * Returns the size of the pooled direct buffers that blocking clients read into and that
+     * writers stage outbound batches in.
+     *
+     * @return The buffer size in bytes.
+     */
+    public int getBufferSizeBytes() {
+        return getInt("buffers.size-bytes", DEFAULT_BUFFER_SIZE_BYTES, 1024);
+    }
+
+    /**
+     * Returns how many buffers are cut from each direct slab the buffer pool allocates.
+     *
+     * @return The number of buffers per slab.
+     */
+    public int getBuffersPerSlab() {
+        return getInt("buffers.per-slab", DEFAULT_BUFFERS_PER_SLAB, 1);
+    }
+
+    /**
+     * Looks a setting up, preferring a system property over the properties file.
+     *
+     * @param key The setting name.
+     * @return The configured value, or null if not set.
+     */
+    private String getProperty(String key) {
+        return System.getProperty(key, properties.getProperty(key));
+    }
+
+    /**
+     * Reads an integer setting.
+     *
+     * @param key          The setting name.
+     * @param defaultValue The value used when the setting is missing or invalid.
+     * @param minValue     The smallest valid value.
+     * @return The configured value or the default.
+     */
+    private int getInt(String key, int defaultValue, int minValue) {
+        String value = getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            int parsed = Integer.parseInt(value.trim());
+            if (parsed >= minValue) {
+                return parsed;
+            }
+        } catch (NumberFormatException e) {
+            // fall through to the default
+        }
+        System.out.println("Invalid value for " + key + ". Using default");
+        return defaultValue;
+    }
+
+    /**
+     * Loads "server.properties" from the classpath.
+     *
+     * @return The loaded properties, or empty properties if the file is missing or unreadable.
+     */
+    private static Properties loadProperties() {
+        Properties properties = new Properties();
+        try (InputStream in = ServerConfiguration.class.getClassLoader().getResourceAsStream(CONFIG_FILE)) {
+            if (in != null) {
+                properties.load(in);
+            }
+        } catch (IOException e) {
+            System.out.println("Could not read " + CONFIG_FILE + ": " + e.getMessage() + ". Using defaults");
+        }
+        return properties;
+    }
+}
@@ -0,0 +1,221 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous log for the chat server. Callers only append an entry to a lock-free
+ * {@link LogRingBuffer}; a background thread formats the entries and hands them to a
+ * {@link LogSink} in batches, either the console or a rolling log file. Appending never blocks:
+ * once the buffer is three quarters full only a sample of the chat messages is kept, and when it
+ * is completely full entries are dropped. Both are counted and reported in the log itself, so a
+ * slow disk or console can never throttle chat traffic. Logging every chat message can be turned
+ * off entirely.
+ */
+public class ServerLog {
+
+    private static final int MAX_BATCH_ENTRIES = 1024;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long CLOSE_TIMEOUT_MILLIS = 1000;
+    private final LogRingBuffer<Object> entries;
+    private final LogSink sink;
+    private final boolean messageLoggingEnabled;
+    private final int sampleEvery;
+    private final int sampleThreshold;
+    private final LongAdder droppedEntries;
+    private final LongAdder sampledOutMessages;
+    private final Thread writer;
+    private volatile boolean closed;
+
+    /**
+     * Constructs the log described by the server configuration and starts its writer thread.
+     * If the configured log file cannot be opened, the log falls back to the console.
+     *
+     * @param configuration The server configuration.
+     */
+    public ServerLog(ServerConfiguration configuration) {
+        this(openSink(configuration), configuration.getLogBufferCapacity(),
+                configuration.isMessageLoggingEnabled(), configuration.getLogSampleEvery());
+    }
+
+    /**
+     * Constructs the log and starts its writer thread.
+     *
+     * @param sink                  Where the log is written.
+     * @param capacity              The number of entries the buffer holds before entries are dropped.
+     * @param messageLoggingEnabled Whether every chat message is logged.
+     * @param sampleEvery           Under pressure, one in this many chat messages is kept; 1 keeps all of them.
+     */
+    public ServerLog(LogSink sink, int capacity, boolean messageLoggingEnabled, int sampleEvery) {
+        this.entries = new LogRingBuffer<>(capacity);
+        this.sink = sink;
+        this.messageLoggingEnabled = messageLoggingEnabled;
+        this.sampleEvery = sampleEvery;
+        this.sampleThreshold = entries.capacity() / 4 * 3;
+        this.droppedEntries = new LongAdder();
+        this.sampledOutMessages = new LongAdder();
+
+        this.writer = new Thread(this::writeEntries, "server-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Logs a chat message, if message logging is enabled. The message is rendered as text on the
+     * writer thread, not by the caller. While the log is behind only a sample of the messages is kept.
+     *
+     * @param message The message relayed by the server.
+     */
+    public void message(OutboundMessage message) {
+        if (!messageLoggingEnabled) {
+            return;
+        }
+        if (sampleEvery > 1 && entries.size() >= sampleThreshold
+                && ThreadLocalRandom.current().nextInt(sampleEvery) != 0) {
+            sampledOutMessages.increment();
+            return;
+        }
+        append(message);
+    }
+
+    /**
+     * Logs a line about the server's state, such as a client connecting or an I/O error.
+     *
+     * @param line The line to log.
+     */
+    public void info(String line) {
+        append(line);
+    }
+
+    /**
+     * Logs a failure with the stack trace of its cause, such as a background task that threw.
+     * The stack trace is rendered on the writer thread, not by the caller.
+     *
+     * @param line  The line to log.
+     * @param cause The exception that caused the failure.
+     */
+    public void error(String line, Throwable cause) {
+        append(new Failure(line, cause));
+    }
+
+    /**
+     * @return The number of entries dropped because the buffer was full.
+     */
+    public long getDroppedEntries() {
+        return droppedEntries.sum();
+    }
+
+    /**
+     * @return The number of chat messages left out by sampling while the log was behind.
+     */
+    public long getSampledOutMessages() {
+        return sampledOutMessages.sum();
+    }
+
+    /**
+     * Stops the writer thread after it has written everything appended so far, and closes the sink.
+     * Waits at most a second, so a stuck sink cannot hold up shutdown.
+     */
+    public void close() {
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(CLOSE_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Appends an entry without blocking, dropping it if the buffer is full.
+     *
+     * @param entry A {@link String}, an {@link OutboundMessage} or a {@link Failure}.
+     */
+    private void append(Object entry) {
+        if (!entries.offer(entry)) {
+            droppedEntries.increment();
+        }
+    }
+
+    /**
+     * Writer thread: drains the buffer in batches and writes each batch with a single call to the
+     * sink, parking briefly whenever the buffer is empty. Entries lost since the previous batch are
+     * reported with one extra line.
+     */
+    private void writeEntries() {
+        List<Object> batch = new ArrayList<>(MAX_BATCH_ENTRIES);
+        StringBuilder text = new StringBuilder();
+        long reportedLost = 0;
+        while (true) {
+            boolean closing = closed;
+            if (entries.drainTo(batch, MAX_BATCH_ENTRIES) == 0) {
+                if (closing) {
+                    break;
+                }
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+                continue;
+            }
+            for (Object entry : batch) {
+                if (entry instanceof Failure failure) {
+                    StringWriter trace = new StringWriter();
+                    failure.cause().printStackTrace(new PrintWriter(trace));
+                    text.append(failure.line()).append(System.lineSeparator()).append(trace);
+                } else {
+                    text.append(entry instanceof OutboundMessage message ? message.toText() : entry).append(System.lineSeparator());
+                }
+            }
+            long lost = getDroppedEntries() + getSampledOutMessages();
+            if (lost != reportedLost) {
+                text.append("Log fell behind: ").append(getDroppedEntries()).append(" entries dropped, ")
+                        .append(getSampledOutMessages()).append(" messages sampled out so far")
+                        .append(System.lineSeparator());
+                reportedLost = lost;
+            }
+            try {
+                sink.write(text.toString());
+            } catch (IOException e) {
+                System.out.println("Could not write log: " + e.getMessage());
+            }
+            batch.clear();
+            text.setLength(0);
+        }
+        try {
+            sink.close();
+        } catch (IOException e) {
+            System.out.println("Could not close log: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Opens the configured rolling log file, or the console if no file is configured or it cannot be opened.
+     *
+     * @param configuration The server configuration.
+     * @return The sink the log writes to.
+     */
+    private static LogSink openSink(ServerConfiguration configuration) {
+        String logFile = configuration.getLogFile();
+        if (logFile != null) {
+            try {
+                return new RollingFileLogSink(Path.of(logFile), configuration.getLogFileMaxBytes(), configuration.getLogFileCount());
+            } catch (IOException e) {
+                System.out.println("Could not open log file " + logFile + ": " + e.getMessage() + ". Logging to the console");
+            }
+        }
+        return new ConsoleLogSink();
+    }
+
+    /**
+     * A logged failure, kept as is until the writer thread renders its stack trace.
+     *
+     * @param line  The line to log.
+     * @param cause The exception that caused the failure.
+     */
+    private record Failure(String line, Throwable cause) {
+    }
+}
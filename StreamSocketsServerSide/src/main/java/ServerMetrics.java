@@ -0,0 +1,382 @@
+import java.util.Collection;
+import java.util.function.IntSupplier;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Low-overhead counters and histograms for the chat server's hot paths.
+ * Every update is a {@link LongAdder} increment, so handlers on any thread record without locking
+ * and without allocating. Gauges that describe the connected clients, such as queue depths,
+ * are computed from the live sessions only when they are read.
+ * The metrics are exposed through JMX ({@link ServerMetricsMBean}) and as plain text by {@link #scrape()}.
+ */
+public class ServerMetrics implements ServerMetricsMBean {
+
+    private static final int[] QUEUE_DEPTH_BOUNDS = {0, 1, 4, 16, 64, 256, 1024};
+    private final Collection<ClientSession> clients;
+    private final IntSupplier connectedClients;
+    private final LongAdder connectionsAccepted;
+    private final LongAdder connectionsRejected;
+    private final LongAdder messagesIn;
+    private final LongAdder messagesOut;
+    private final LongAdder bytesIn;
+    private final LongAdder bytesOut;
+    private final LongAdder droppedByDisconnectedClients;
+    private final LongAdder idleDisconnects;
+    private final LongAdder droppedBroadcasts;
+    private final LongAdder droppedJournalRecords;
+    private final DurationHistogram fanOutTime;
+
+    /**
+     * Constructs metrics that count the connected clients by the size of their collection.
+     *
+     * @param clients The live collection of connected clients.
+     */
+    public ServerMetrics(Collection<ClientSession> clients) {
+        this(clients, clients::size);
+    }
+
+    /**
+     * Constructs metrics for a server.
+     *
+     * @param clients          The server's live collection of connected clients.
+     * @param connectedClients The server's count of connected clients, read instead of counting the collection.
+     */
+    public ServerMetrics(Collection<ClientSession> clients, IntSupplier connectedClients) {
+        this.clients = clients;
+        this.connectedClients = connectedClients;
+        this.connectionsAccepted = new LongAdder();
+        this.connectionsRejected = new LongAdder();
+        this.messagesIn = new LongAdder();
+        this.messagesOut = new LongAdder();
+        this.bytesIn = new LongAdder();
+        this.bytesOut = new LongAdder();
+        this.droppedByDisconnectedClients = new LongAdder();
+        this.idleDisconnects = new LongAdder();
+        this.droppedBroadcasts = new LongAdder();
+        this.droppedJournalRecords = new LongAdder();
+        this.fanOutTime = new DurationHistogram();
+    }
+
+    /**
+     * Records an accepted connection.
+     */
+    public void onConnectionAccepted() {
+        connectionsAccepted.increment();
+    }
+
+    /**
+     * Records a connection turned away because the server was full.
+     */
+    public void onConnectionRejected() {
+        connectionsRejected.increment();
+    }
+
+    /**
+     * Records a message received from a client.
+     */
+    public void onMessageReceived() {
+        messagesIn.increment();
+    }
+
+    /**
+     * Records bytes read from a client.
+     *
+     * @param count The number of bytes.
+     */
+    public void onBytesReceived(long count) {
+        bytesIn.add(count);
+    }
+
+    /**
+     * Records messages completely written to a client.
+     *
+     * @param count The number of messages.
+     */
+    public void onMessagesWritten(int count) {
+        messagesOut.add(count);
+    }
+
+    /**
+     * Records bytes written to a client.
+     *
+     * @param count The number of bytes.
+     */
+    public void onBytesWritten(long count) {
+        bytesOut.add(count);
+    }
+
+    /**
+     * Records the time a broadcast took to reach every recipient's queue.
+     *
+     * @param nanos The fan-out time in nanoseconds.
+     */
+    public void onBroadcast(long nanos) {
+        fanOutTime.record(nanos);
+    }
+
+    /**
+     * Records a broadcast dropped because its room's shard was too far behind.
+     */
+    public void onBroadcastDropped() {
+        droppedBroadcasts.increment();
+    }
+
+    /**
+     * Records a chat message left out of the journal because its writer was too far behind.
+     */
+    public void onJournalRecordDropped() {
+        droppedJournalRecords.increment();
+    }
+
+    /**
+     * Records a client disconnected because it stopped answering heartbeats.
+     */
+    public void onIdleDisconnect() {
+        idleDisconnects.increment();
+    }
+
+    /**
+     * Keeps the dropped message count of a client that is going away.
+     *
+     * @param session The removed client.
+     */
+    public void onClientRemoved(ClientSession session) {
+        droppedByDisconnectedClients.add(session.getDroppedMessages());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getConnectedClients() {
+        return connectedClients.getAsInt();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getConnectionsAccepted() {
+        return connectionsAccepted.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getConnectionsRejected() {
+        return connectionsRejected.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getMessagesIn() {
+        return messagesIn.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getMessagesOut() {
+        return messagesOut.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getBroadcasts() {
+        return fanOutTime.getCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getMeanFanOutMicros() {
+        long broadcasts = fanOutTime.getCount();
+        return broadcasts == 0 ? 0 : fanOutTime.getSumNanos() / 1000.0 / broadcasts;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getQueuedMessages() {
+        long queued = 0;
+        for (ClientSession client : clients) {
+            queued += client.getQueueDepth();
+        }
+        return queued;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getMaxQueueDepth() {
+        int max = 0;
+        for (ClientSession client : clients) {
+            max = Math.max(max, client.getQueueDepth());
+        }
+        return max;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getDroppedMessages() {
+        long dropped = droppedByDisconnectedClients.sum();
+        for (ClientSession client : clients) {
+            dropped += client.getDroppedMessages();
+        }
+        return dropped;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getDroppedBroadcasts() {
+        return droppedBroadcasts.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getDroppedJournalRecords() {
+        return droppedJournalRecords.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getIdleDisconnects() {
+        return idleDisconnects.sum();
+    }
+
+    /**
+     * Renders all metrics in the Prometheus text exposition format. Queue depths are reported
+     * as a distribution over the connected clients.
+     *
+     * @return The metrics as plain text.
+     */
+    public String scrape() {
+        StringBuilder out = new StringBuilder(2048);
+        gauge(out, "chat_connected_clients", "Currently connected clients.", getConnectedClients());
+        counter(out, "chat_connections_accepted_total", "Connections accepted.", getConnectionsAccepted());
+        counter(out, "chat_connections_rejected_total", "Connections turned away because the server was full.", getConnectionsRejected());
+        counter(out, "chat_messages_in_total", "Messages received from clients.", getMessagesIn());
+        counter(out, "chat_messages_out_total", "Messages written to clients.", getMessagesOut());
+        counter(out, "chat_bytes_in_total", "Bytes read from clients.", getBytesIn());
+        counter(out, "chat_bytes_out_total", "Bytes written to clients.", getBytesOut());
+        counter(out, "chat_dropped_messages_total", "Messages dropped for clients that fell behind.", getDroppedMessages());
+        counter(out, "chat_dropped_broadcasts_total", "Broadcasts dropped because their room's shard fell behind.", getDroppedBroadcasts());
+        counter(out, "chat_dropped_journal_records_total", "Chat messages left out of the journal because its writer fell behind.", getDroppedJournalRecords());
+        counter(out, "chat_idle_disconnects_total", "Clients disconnected for not answering heartbeats.", getIdleDisconnects());
+        appendFanOutTime(out);
+        appendQueueDepths(out);
+        return out.toString();
+    }
+
+    /**
+     * Appends the broadcast fan-out time histogram, in seconds.
+     *
+     * @param out The text being built.
+     */
+    private void appendFanOutTime(StringBuilder out) {
+        String name = "chat_broadcast_fanout_seconds";
+        out.append("# HELP ").append(name).append(" Time to queue a broadcast for every recipient.\n");
+        out.append("# TYPE ").append(name).append(" histogram\n");
+        long cumulative = 0;
+        for (int i = 0; i < fanOutTime.getBucketCount(); i++) {
+            cumulative += fanOutTime.getCount(i);
+            long bound = fanOutTime.getUpperBoundNanos(i);
+            String le = bound == Long.MAX_VALUE ? "+Inf" : Double.toString(bound / 1e9);
+            out.append(name).append("_bucket{le=\"").append(le).append("\"} ").append(cumulative).append('\n');
+        }
+        out.append(name).append("_sum ").append(fanOutTime.getSumNanos() / 1e9).append('\n');
+        out.append(name).append("_count ").append(cumulative).append('\n');
+    }
+
+    /**
+     * Appends the distribution of outbound queue depths over the connected clients.
+     *
+     * @param out The text being built.
+     */
+    private void appendQueueDepths(StringBuilder out) {
+        long[] counts = new long[QUEUE_DEPTH_BOUNDS.length + 1];
+        long sum = 0;
+        for (ClientSession client : clients) {
+            int depth = client.getQueueDepth();
+            int index = 0;
+            while (index < QUEUE_DEPTH_BOUNDS.length && depth > QUEUE_DEPTH_BOUNDS[index]) {
+                index++;
+            }
+            counts[index]++;
+            sum += depth;
+        }
+
+        String name = "chat_client_queue_depth";
+        out.append("# HELP ").append(name).append(" Messages waiting in each client's outbound queue.\n");
+        out.append("# TYPE ").append(name).append(" histogram\n");
+        long cumulative = 0;
+        for (int i = 0; i < counts.length; i++) {
+            cumulative += counts[i];
+            String le = i < QUEUE_DEPTH_BOUNDS.length ? Integer.toString(QUEUE_DEPTH_BOUNDS[i]) : "+Inf";
+            out.append(name).append("_bucket{le=\"").append(le).append("\"} ").append(cumulative).append('\n');
+        }
+        out.append(name).append("_sum ").append(sum).append('\n');
+        out.append(name).append("_count ").append(cumulative).append('\n');
+    }
+
+    /**
+     * Appends a counter.
+     *
+     * @param out   The text being built.
+     * @param name  The metric name.
+     * @param help  The metric description.
+     * @param value The current value.
+     */
+    private static void counter(StringBuilder out, String name, String help, long value) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" counter\n");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    /**
+     * Appends a gauge.
+     *
+     * @param out   The text being built.
+     * @param name  The metric name.
+     * @param help  The metric description.
+     * @param value The current value.
+     */
+    private static void gauge(StringBuilder out, String name, String help, long value) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" gauge\n");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+}
@@ -0,0 +1,80 @@
+/**
+ * The chat server's metrics as exposed through JMX. Implemented by {@link ServerMetrics}.
+ */
+public interface ServerMetricsMBean {
+
+    /**
+     * @return The number of currently connected clients.
+     */
+    int getConnectedClients();
+
+    /**
+     * @return The number of connections accepted since the server started.
+     */
+    long getConnectionsAccepted();
+
+    /**
+     * @return The number of connections turned away because the server was full.
+     */
+    long getConnectionsRejected();
+
+    /**
+     * @return The number of chat messages and commands received from clients.
+     */
+    long getMessagesIn();
+
+    /**
+     * @return The number of messages completely written to clients.
+     */
+    long getMessagesOut();
+
+    /**
+     * @return The number of bytes read from clients.
+     */
+    long getBytesIn();
+
+    /**
+     * @return The number of bytes written to clients.
+     */
+    long getBytesOut();
+
+    /**
+     * @return The number of broadcasts fanned out to the connected clients.
+     */
+    long getBroadcasts();
+
+    /**
+     * @return The mean time a broadcast took to reach every recipient's queue, in microseconds.
+     */
+    double getMeanFanOutMicros();
+
+    /**
+     * @return The number of messages waiting in all outbound queues together.
+     */
+    long getQueuedMessages();
+
+    /**
+     * @return The number of messages waiting in the fullest outbound queue.
+     */
+    int getMaxQueueDepth();
+
+    /**
+     * @return The number of messages dropped because a client fell too far behind.
+     */
+    long getDroppedMessages();
+
+    /**
+     * @return The number of broadcasts dropped because their room's shard fell behind.
+     */
+    long getDroppedBroadcasts();
+
+    /**
+     * @return The number of chat messages left out of the journal because its writer fell behind.
+     */
+    long getDroppedJournalRecords();
+
+    /**
+     * @return The number of clients disconnected because they stopped answering heartbeats.
+     */
+    long getIdleDisconnects();
+}
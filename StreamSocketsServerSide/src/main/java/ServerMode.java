@@ -0,0 +1,49 @@
+/**
+ * The I/O models the chat {@link Server} can be started with.
+ */
+public enum ServerMode {
+
+    /**
+     * One blocking platform thread per connected client, running a {@link ClientHandler}.
+     */
+    THREADED("threaded"),
+
+    /**
+     * One blocking virtual thread per connected client, running a {@link ClientHandler}.
+     * Requires a Java 21+ runtime; older runtimes fall back to {@link #THREADED}.
+     */
+    VIRTUAL("virtual"),
+
+    /**
+     * A small fixed set of {@link EventLoop} threads multiplexing all clients
+     * over non-blocking channels and selectors.
+     */
+    NIO("nio");
+
+    private final String argName;
+
+    ServerMode(String argName) {
+        this.argName = argName;
+    }
+
+    /**
+     * Resolves a server mode from its command-line name.
+     *
+     * @param argName The name given on the command line, e.g. "nio".
+     * @return The matching server mode.
+     * @throws IllegalArgumentException If no mode has the given name.
+     */
+    public static ServerMode fromArg(String argName) {
+        for (ServerMode mode : values()) {
+            if (mode.argName.equalsIgnoreCase(argName)) {
+                return mode;
+            }
+        }
+        throw new IllegalArgumentException("Unknown server mode: " + argName);
+    }
+
+    @Override
+    public String toString() {
+        return argName;
+    }
+}
@@ -0,0 +1,300 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.SocketChannel;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+
+/**
+ * A socket channel with TLS on top, driven by an {@link SSLEngine}. Reads return decrypted bytes
+ * and writes take plaintext, so a {@link NioClientHandler} and its {@link WriteBatch} use it just
+ * like the plain channel. Works on blocking and non-blocking channels.
+ *
+ * <p>The handshake is driven by reads: the engine's handshake messages are queued as they are
+ * produced and sent whenever the channel takes them. Until the handshake has finished,
+ * {@link #write(ByteBuffer[], int, int)} takes nothing; a non-blocking caller should then wait for
+ * the next read rather than for the channel to become writable (see {@link #isHandshaking()}).
+ * Encrypted bytes the channel did not take are kept until {@link #flush()} sends them
+ * ({@link #hasPendingOutput()}). The engine's delegated tasks, such as signing the handshake,
+ * run on the calling thread.</p>
+ *
+ * <p>Not thread-safe; owned by a single event loop.</p>
+ */
+public class TlsChannel implements ByteChannel, GatheringByteChannel {
+
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+    private final SocketChannel channel;
+    private final SSLEngine engine;
+    private final ByteBuffer netIn;
+    private final ByteBuffer appIn;
+    private ByteBuffer netOut;
+    private boolean underflow;
+    private boolean inboundClosed;
+
+    /**
+     * Wraps a connected channel and starts the handshake.
+     *
+     * @param channel The connected channel.
+     * @param engine  The engine, in client or server mode.
+     * @throws SSLException If the handshake cannot be started.
+     */
+    public TlsChannel(SocketChannel channel, SSLEngine engine) throws SSLException {
+        this.channel = channel;
+        this.engine = engine;
+        int packetSize = engine.getSession().getPacketBufferSize();
+        this.netIn = ByteBuffer.allocate(packetSize);
+        this.netOut = ByteBuffer.allocate(packetSize);
+        this.appIn = ByteBuffer.allocate(engine.getSession().getApplicationBufferSize());
+        engine.beginHandshake();
+    }
+
+    /**
+     * Reads from the channel and decrypts what has arrived, answering handshake messages on the way.
+     *
+     * @param dst The buffer to fill with decrypted bytes.
+     * @return The number of bytes read, possibly 0, or -1 once the peer has closed the connection.
+     * @throws IOException If reading fails or the peer breaks the protocol.
+     */
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        if (appIn.position() == 0 && !inboundClosed) {
+            if (channel.read(netIn) == -1) {
+                inboundClosed = true;
+            }
+            unwrap();
+            flush();
+        }
+        if (appIn.position() > 0) {
+            appIn.flip();
+            int count = Math.min(appIn.remaining(), dst.remaining());
+            ByteBuffer slice = appIn.slice();
+            slice.limit(count);
+            dst.put(slice);
+            appIn.position(appIn.position() + count);
+            appIn.compact();
+            return count;
+        }
+        return inboundClosed ? -1 : 0;
+    }
+
+    /**
+     * Encrypts and writes as much of the given bytes as the channel takes. Takes nothing while
+     * earlier encrypted bytes are still waiting to be sent or the handshake is waiting for the peer.
+     *
+     * @param srcs   The buffers to write.
+     * @param offset The index of the first buffer.
+     * @param length The number of buffers.
+     * @return The number of plaintext bytes taken.
+     * @throws IOException If writing fails or the connection has been closed.
+     */
+    @Override
+    public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+        long consumed = 0;
+        while (flush()) {
+            SSLEngineResult.HandshakeStatus status = engine.getHandshakeStatus();
+            if (status == SSLEngineResult.HandshakeStatus.NEED_TASK) {
+                runDelegatedTasks();
+                continue;
+            }
+            if (status == SSLEngineResult.HandshakeStatus.NEED_UNWRAP || status == SSLEngineResult.HandshakeStatus.NEED_UNWRAP_AGAIN) {
+                break;
+            }
+            if (status == SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING && !hasRemaining(srcs, offset, length)) {
+                break;
+            }
+            SSLEngineResult result = engine.wrap(srcs, offset, length, netOut);
+            if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                throw new ClosedChannelException();
+            }
+            if (result.bytesConsumed() == 0 && result.bytesProduced() == 0) {
+                break;
+            }
+            consumed += result.bytesConsumed();
+        }
+        return consumed;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long write(ByteBuffer[] srcs) throws IOException {
+        return write(srcs, 0, srcs.length);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        return (int) write(new ByteBuffer[]{src}, 0, 1);
+    }
+
+    /**
+     * Writes encrypted bytes that the channel did not take earlier.
+     *
+     * @return true if nothing is left to write, false otherwise.
+     * @throws IOException If writing fails.
+     */
+    public boolean flush() throws IOException {
+        if (netOut.position() == 0) {
+            return true;
+        }
+        netOut.flip();
+        try {
+            channel.write(netOut);
+        } finally {
+            netOut.compact();
+        }
+        return netOut.position() == 0;
+    }
+
+    /**
+     * @return true if encrypted bytes are waiting for the channel to become writable, false otherwise.
+     */
+    public boolean hasPendingOutput() {
+        return netOut.position() > 0;
+    }
+
+    /**
+     * @return true if decrypted or still encrypted bytes are buffered, so that another read returns
+     * more without the channel having to become readable again.
+     */
+    public boolean hasBufferedInput() {
+        return appIn.position() > 0 || (netIn.position() > 0 && !underflow);
+    }
+
+    /**
+     * @return true while the handshake is in progress, false once application data can flow.
+     */
+    public boolean isHandshaking() {
+        SSLEngineResult.HandshakeStatus status = engine.getHandshakeStatus();
+        return status != SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING && status != SSLEngineResult.HandshakeStatus.FINISHED;
+    }
+
+    /**
+     * @return The negotiated TLS version, such as "TLSv1.3", or "NONE" during the first handshake.
+     */
+    public String getProtocol() {
+        return engine.getSession().getProtocol();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    /**
+     * Sends the peer a close notification if the channel takes it right away, and closes the channel.
+     *
+     * @throws IOException If the channel cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            engine.closeOutbound();
+            while (engine.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_WRAP
+                    && engine.wrap(EMPTY, netOut).getStatus() == SSLEngineResult.Status.OK) {
+                // queue the close notification
+            }
+            flush();
+        } catch (IOException e) {
+            // the peer may already be gone
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Decrypts every complete record received so far into the application buffer, as far as it has
+     * room, producing and running whatever the handshake needs on the way.
+     *
+     * @throws IOException If the peer breaks the protocol.
+     */
+    private void unwrap() throws IOException {
+        netIn.flip();
+        try {
+            while (true) {
+                SSLEngineResult.HandshakeStatus status = engine.getHandshakeStatus();
+                if (status == SSLEngineResult.HandshakeStatus.NEED_TASK) {
+                    runDelegatedTasks();
+                    continue;
+                }
+                if (status == SSLEngineResult.HandshakeStatus.NEED_WRAP) {
+                    if (!wrapHandshake()) {
+                        break;
+                    }
+                    continue;
+                }
+                SSLEngineResult result = engine.unwrap(netIn, appIn);
+                underflow = result.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW;
+                if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                    inboundClosed = true;
+                    break;
+                }
+                if (result.getStatus() != SSLEngineResult.Status.OK) {
+                    break;
+                }
+            }
+        } finally {
+            netIn.compact();
+        }
+        if (inboundClosed && !engine.isInboundDone()) {
+            try {
+                engine.closeInbound();
+            } catch (SSLException e) {
+                // the peer closed the connection without a close notification
+            }
+        }
+    }
+
+    /**
+     * Produces the next handshake message. The output buffer grows if the encrypted bytes already
+     * waiting leave no room, so that the handshake never has to wait for the channel.
+     *
+     * @return true if a message was produced, false if the engine has nothing more to send.
+     * @throws SSLException If the engine fails.
+     */
+    private boolean wrapHandshake() throws SSLException {
+        SSLEngineResult result = engine.wrap(EMPTY, netOut);
+        if (result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+            ByteBuffer larger = ByteBuffer.allocate(netOut.capacity() + engine.getSession().getPacketBufferSize());
+            netOut.flip();
+            larger.put(netOut);
+            netOut = larger;
+            return true;
+        }
+        return result.getStatus() == SSLEngineResult.Status.OK;
+    }
+
+    /**
+     * Runs the engine's delegated tasks on the calling thread.
+     */
+    private void runDelegatedTasks() {
+        Runnable task;
+        while ((task = engine.getDelegatedTask()) != null) {
+            task.run();
+        }
+    }
+
+    /**
+     * @param srcs   The buffers.
+     * @param offset The index of the first buffer.
+     * @param length The number of buffers.
+     * @return true if any of the buffers has bytes left, false otherwise.
+     */
+    private static boolean hasRemaining(ByteBuffer[] srcs, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            if (srcs[i].hasRemaining()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
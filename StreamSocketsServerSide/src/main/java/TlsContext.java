@@ -0,0 +1,79 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSocket;
+
+/**
+ * The server's TLS setup: its certificate and key, the protocol versions it accepts and how long
+ * sessions can be resumed. One context serves every connection. Blocking handlers get an
+ * {@link SSLSocket} layered over the accepted socket; non-blocking handlers get an {@link SSLEngine}
+ * for a {@link TlsChannel}.
+ *
+ * <p>TLS 1.3 resumption uses session tickets: at the end of a full handshake the server sends the
+ * client a ticket sealed with a key only this context knows, and a client that presents it on its
+ * next connection skips the certificate exchange and signature. The server keeps no per-session state
+ * for this, so a reconnect storm is not slowed down by full handshakes. Tickets stay valid for the
+ * session timeout, but only as long as this process runs.</p>
+ */
+public class TlsContext {
+
+    private final SSLContext sslContext;
+    private final String[] protocols;
+
+    /**
+     * Loads the server's key and certificate from a PKCS#12 or JKS keystore.
+     *
+     * @param keystore              The keystore file.
+     * @param password              The password of the keystore and its key.
+     * @param protocols             The TLS versions to accept, such as "TLSv1.3".
+     * @param sessionTimeoutSeconds How long a session ticket can be used to resume a session.
+     * @throws IOException If the keystore cannot be read or holds no usable key.
+     */
+    public TlsContext(Path keystore, char[] password, String[] protocols, int sessionTimeoutSeconds) throws IOException {
+        try (InputStream in = Files.newInputStream(keystore)) {
+            KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+            keyStore.load(in, password);
+            KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+            keyManagers.init(keyStore, password);
+            this.sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(keyManagers.getKeyManagers(), null, null);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Cannot use keystore " + keystore + ": " + e.getMessage(), e);
+        }
+        sslContext.getServerSessionContext().setSessionTimeout(sessionTimeoutSeconds);
+        this.protocols = protocols.clone();
+    }
+
+    /**
+     * Layers a server-side TLS socket over an accepted connection. The handshake happens on the
+     * first read or write.
+     *
+     * @param socket The accepted connection.
+     * @return The TLS socket, which closes the connection when it is closed.
+     * @throws IOException If the socket cannot be layered.
+     */
+    public Socket wrap(Socket socket) throws IOException {
+        SSLSocket sslSocket = (SSLSocket) sslContext.getSocketFactory().createSocket(socket, null, true);
+        sslSocket.setEnabledProtocols(protocols);
+        return sslSocket;
+    }
+
+    /**
+     * Creates a server-side engine for a non-blocking connection.
+     *
+     * @return The engine.
+     */
+    public SSLEngine createEngine() {
+        SSLEngine engine = sslContext.createSSLEngine();
+        engine.setUseClientMode(false);
+        engine.setEnabledProtocols(protocols);
+        return engine;
+    }
+}
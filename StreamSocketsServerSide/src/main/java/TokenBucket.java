@@ -0,0 +1,56 @@
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A token bucket that limits how often something may happen: it holds up to a burst of tokens and
+ * gains a token every 1/rate seconds. Taking a token when the bucket is empty waits for the next one.
+ * Used by the single accept thread, so it is not thread-safe.
+ */
+public class TokenBucket {
+
+    private final long nanosPerToken;
+    private final long burstNanos;
+    private long emptyAt;
+
+    /**
+     * Constructs a full bucket.
+     *
+     * @param ratePerSecond How many tokens are added per second.
+     * @param burst         How many tokens the bucket holds at most.
+     */
+    public TokenBucket(int ratePerSecond, int burst) {
+        this.nanosPerToken = TimeUnit.SECONDS.toNanos(1) / ratePerSecond;
+        this.burstNanos = nanosPerToken * burst;
+        this.emptyAt = System.nanoTime() - burstNanos;
+    }
+
+    /**
+     * Takes a token without waiting.
+     *
+     * @param now The current {@link System#nanoTime()}.
+     * @return 0 if a token was taken, otherwise how many nanoseconds until the next token.
+     */
+    public long tryAcquire(long now) {
+        // The bucket is tracked as the moment it was or will be empty; each token pushes it forward
+        if (now - emptyAt > burstNanos) {
+            emptyAt = now - burstNanos;
+        }
+        long wait = emptyAt + nanosPerToken - now;
+        if (wait > 0) {
+            return wait;
+        }
+        emptyAt += nanosPerToken;
+        return 0;
+    }
+
+    /**
+     * Takes a token, waiting for one if the bucket is empty.
+     *
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public void acquire() throws InterruptedException {
+        long wait;
+        while ((wait = tryAcquire(System.nanoTime())) > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * The framings a client connection can speak.
+ * Every connection starts in {@link #TEXT}. A client that wants {@link #BINARY} sends
+ * {@link #BINARY_REQUEST} as its very first line; the server answers with {@link #BINARY_ACK}
+ * and everything after that line, in both directions, is binary frames. Clients that never
+ * ask keep using newline-delimited text.
+ *
+ * <p>A connection that has been idle for a while is sent a {@link #PING} line or a
+ * {@link FrameType#PING} frame, and the client answers with a {@link #PONG} line or a
+ * {@link FrameType#PONG} frame; see {@link HeartbeatMonitor}. A server that is shutting down
+ * sends every client a {@link #RECONNECT} line or {@link FrameType#RECONNECT} frame before it
+ * closes the connection; see {@link Server#drain(long)}. A client that sends {@link #ROSTER} gets
+ * the roster of online clients as {@link #ROSTER} lines or {@link FrameType#ROSTER} frames, first
+ * whole and then as changes; see {@link Roster}. A binary client that sends {@link #COMPRESS} gets
+ * its larger batches as {@link FrameType#COMPRESSED} frames; see {@link FrameCompressor}.</p>
+ */
+public enum WireProtocol {
+
+    /**
+     * Newline-delimited text lines, optionally prefixed with the sender's UUID and a '|'.
+     */
+    TEXT,
+
+    /**
+     * Length-prefixed {@link BinaryFrame}s.
+     */
+    BINARY;
+
+    /**
+     * The first line a client sends to switch its connection to {@link #BINARY}.
+     */
+    public static final String BINARY_REQUEST = "PROTOCOL binary";
+
+    /**
+     * The last text line the server sends before switching a connection to {@link #BINARY}.
+     */
+    public static final String BINARY_ACK = "PROTOCOL binary OK";
+
+    /**
+     * The line the server sends to a text connection that has been idle.
+     */
+    public static final String PING = "/ping";
+
+    /**
+     * The line a text client answers a {@link #PING} with.
+     */
+    public static final String PONG = "/pong";
+
+    /**
+     * The start of the line a server that is shutting down sends, followed by a space and the number
+     * of milliseconds over which the client should pick a random moment to reconnect.
+     */
+    public static final String RECONNECT = "/reconnect";
+
+    /**
+     * The command a client sends to follow the roster of online clients, and the start of every
+     * roster line the server sends it.
+     */
+    public static final String ROSTER = "/roster";
+
+    /**
+     * The command a binary client sends to have the frames sent to it compressed, and the start of the
+     * notice answering it, followed by a space and either the threshold in bytes below which frames
+     * are sent raw or "off" if the connection will not be compressed.
+     */
+    public static final String COMPRESS = "/compress";
+
+    /**
+     * The answer to {@link #COMPRESS} when the connection will not be compressed.
+     */
+    public static final String COMPRESS_OFF = COMPRESS + " off";
+}
@@ -0,0 +1,248 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A group of outbound messages written to a client's channel with one gathering write.
+ * The batch remembers how far it got, so a non-blocking writer can resume a partial write
+ * once the channel becomes writable again. Written bytes and completely written messages are
+ * counted in the server's metrics. A batch can be replaced by its compressed form before it is
+ * written; see {@link #compress(FrameCompressor)}.
+ *
+ * <p>Given a {@link BufferPool}, the batch is staged in pooled direct buffers: the messages are copied
+ * into as many buffers as the batch needs and written from there with the same single gathering write,
+ * rather than handing the channel heap buffers that it would copy into a temporary direct buffer of its
+ * own. Each staging buffer goes back to the pool as soon as it has been written.</p>
+ *
+ * <p>Not thread-safe; owned by a single writer.</p>
+ */
+public class WriteBatch {
+
+    private final FlushPolicy flushPolicy;
+    private final ServerMetrics metrics;
+    private final BufferPool pool;
+    private final ByteBuffer[] buffers;
+    private int offset;
+    private int length;
+    private long bytes;
+    private int compressedMessages;
+    private ByteBuffer[] staged;
+    private int[] stagedMessages;
+    private int stagedOffset;
+    private int stagedLength;
+
+    /**
+     * Constructs an empty batch sized by the given flush policy.
+     *
+     * @param flushPolicy The policy limiting the size of the batch.
+     * @param metrics     The metrics to record written bytes and messages in.
+     */
+    public WriteBatch(FlushPolicy flushPolicy, ServerMetrics metrics) {
+        this(flushPolicy, metrics, null);
+    }
+
+    /**
+     * Constructs an empty batch sized by the given flush policy that is written through buffers from a pool.
+     *
+     * @param flushPolicy The policy limiting the size of the batch.
+     * @param metrics     The metrics to record written bytes and messages in.
+     * @param pool        The pool to take staging buffers from, or null to write the messages directly.
+     */
+    public WriteBatch(FlushPolicy flushPolicy, ServerMetrics metrics, BufferPool pool) {
+        this.flushPolicy = flushPolicy;
+        this.metrics = metrics;
+        this.pool = pool;
+        this.buffers = new ByteBuffer[flushPolicy.getMaxBatchMessages()];
+        this.staged = new ByteBuffer[0];
+        this.stagedMessages = new int[0];
+    }
+
+    /**
+     * Adds a message to the batch. Must only be called while the batch is not full.
+     * Empty messages, such as wake-up markers, are skipped.
+     *
+     * @param message The encoded message.
+     */
+    public void add(ByteBuffer message) {
+        if (!message.hasRemaining()) {
+            return;
+        }
+        buffers[length++] = message;
+        bytes += message.remaining();
+    }
+
+    /**
+     * Moves queued messages into the batch until the queue is empty or the batch is full.
+     *
+     * @param queue           The client's outbound queue.
+     * @param protocol        The wire protocol to encode the messages for.
+     * @param sequenceNumbers Whether the client asked for sequence numbers.
+     */
+    public void fill(OutboundQueue<OutboundMessage> queue, WireProtocol protocol, boolean sequenceNumbers) {
+        OutboundMessage message;
+        while (!isFull() && (message = queue.poll()) != null) {
+            add(message.encode(protocol, sequenceNumbers));
+        }
+    }
+
+    /**
+     * Replaces the messages in the batch with one buffer of compressed frames, if they add up to at
+     * least the compressor's threshold. Must only be called before any of the batch has been written.
+     *
+     * @param compressor The connection's compressor.
+     */
+    public void compress(FrameCompressor compressor) {
+        if (length == 0 || bytes < compressor.getThreshold()) {
+            return;
+        }
+        ByteBuffer compressed = compressor.compress(buffers, 0, length);
+        compressedMessages = length;
+        while (length > 1) {
+            buffers[--length] = null;
+        }
+        buffers[0] = compressed;
+        bytes = compressed.remaining();
+    }
+
+    /**
+     * Checks whether the batch has reached one of the flush policy's size limits.
+     *
+     * @return true if no more messages should be added, false otherwise.
+     */
+    public boolean isFull() {
+        return length == buffers.length || bytes >= flushPolicy.getMaxBatchBytes();
+    }
+
+    /**
+     * Checks whether everything in the batch has been written.
+     *
+     * @return true if nothing is left to write, false otherwise.
+     */
+    public boolean isEmpty() {
+        return offset == length && stagedOffset == stagedLength;
+    }
+
+    /**
+     * Writes as much of the batch as the channel accepts in one call and releases the fully
+     * written messages. When the batch has been written completely it is reset for reuse.
+     *
+     * @param channel The client's channel.
+     * @throws IOException If the write fails.
+     */
+    public void writeTo(WritableByteChannel channel) throws IOException {
+        if (pool != null) {
+            writeStaged(channel);
+            return;
+        }
+        long written;
+        if (channel instanceof GatheringByteChannel gatheringChannel) {
+            written = gatheringChannel.write(buffers, offset, length - offset);
+        } else {
+            written = channel.write(buffers[offset]);
+        }
+        metrics.onBytesWritten(written);
+
+        int completed = 0;
+        while (offset < length && !buffers[offset].hasRemaining()) {
+            buffers[offset++] = null;
+            completed++;
+        }
+        metrics.onMessagesWritten(completed > 0 && compressedMessages > 0 ? compressedMessages : completed);
+        if (isEmpty()) {
+            reset();
+        }
+    }
+
+    /**
+     * Stages the batch if it has not been staged yet, then writes as much of the staging buffers as
+     * the channel accepts in one call. Messages count as written once the staging buffer holding
+     * their last byte has been written.
+     *
+     * @param channel The client's channel.
+     * @throws IOException If the write fails.
+     */
+    private void writeStaged(WritableByteChannel channel) throws IOException {
+        if (stagedLength == 0) {
+            stage();
+        }
+        long written;
+        if (channel instanceof GatheringByteChannel gatheringChannel) {
+            written = gatheringChannel.write(staged, stagedOffset, stagedLength - stagedOffset);
+        } else {
+            written = channel.write(staged[stagedOffset]);
+        }
+        metrics.onBytesWritten(written);
+
+        int completed = 0;
+        while (stagedOffset < stagedLength && !staged[stagedOffset].hasRemaining()) {
+            completed += stagedMessages[stagedOffset];
+            pool.release(staged[stagedOffset]);
+            staged[stagedOffset++] = null;
+        }
+        metrics.onMessagesWritten(completed);
+        if (stagedOffset == stagedLength) {
+            stagedOffset = 0;
+            stagedLength = 0;
+            reset();
+        }
+    }
+
+    /**
+     * Copies every message of the batch into as many pooled buffers as it takes, releasing the
+     * messages, and flips the buffers for writing. A message that does not fit in one buffer is
+     * continued in the next.
+     */
+    private void stage() {
+        int needed = (int) ((bytes + pool.getBufferSize() - 1) / pool.getBufferSize());
+        if (staged.length < needed) {
+            staged = new ByteBuffer[needed];
+            stagedMessages = new int[needed];
+        }
+        while (offset < length) {
+            if (stagedLength == 0 || !staged[stagedLength - 1].hasRemaining()) {
+                staged[stagedLength] = pool.acquire();
+                stagedMessages[stagedLength++] = 0;
+            }
+            ByteBuffer buffer = staged[stagedLength - 1];
+            ByteBuffer message = buffers[offset];
+            int count = Math.min(message.remaining(), buffer.remaining());
+            buffer.put(buffer.position(), message, message.position(), count);
+            buffer.position(buffer.position() + count);
+            message.position(message.position() + count);
+            if (!message.hasRemaining()) {
+                buffers[offset++] = null;
+                stagedMessages[stagedLength - 1] += compressedMessages > 0 ? compressedMessages : 1;
+            }
+        }
+        for (int i = 0; i < stagedLength; i++) {
+            staged[i].flip();
+        }
+    }
+
+    /**
+     * Drops everything in the batch without writing it.
+     */
+    public void clear() {
+        while (offset < length) {
+            buffers[offset++] = null;
+        }
+        while (stagedOffset < stagedLength) {
+            pool.release(staged[stagedOffset]);
+            staged[stagedOffset++] = null;
+        }
+        stagedOffset = 0;
+        stagedLength = 0;
+        reset();
+    }
+
+    /**
+     * Resets the batch for reuse once everything in it has been written or dropped.
+     */
+    private void reset() {
+        offset = 0;
+        length = 0;
+        bytes = 0;
+        compressedMessages = 0;
+    }
+}
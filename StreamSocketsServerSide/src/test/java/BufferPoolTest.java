@@ -0,0 +1,47 @@
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BufferPoolTest {
+
+    @Test
+    public void testReusesReleasedBuffersWithoutGrowing() {
+        BufferPool pool = new BufferPool(1024, 4);
+        ByteBuffer first = pool.acquire();
+        assertTrue(first.isDirect());
+        assertEquals(1024, first.capacity());
+        assertEquals(4 * 1024, pool.getAllocatedBytes());
+
+        first.put((byte) 1);
+        pool.release(first);
+        ByteBuffer again = pool.acquire();
+        assertSame(first, again);
+        assertEquals(0, again.position());
+
+        for (int i = 0; i < 100; i++) {
+            pool.release(pool.acquire());
+        }
+        assertEquals(4 * 1024, pool.getAllocatedBytes());
+    }
+
+    @Test
+    public void testBuffersCutFromOneSlabDoNotOverlap() {
+        BufferPool pool = new BufferPool(16, 2);
+        ByteBuffer first = pool.acquire();
+        ByteBuffer second = pool.acquire();
+        assertNotSame(first, second);
+
+        first.put(0, (byte) 'a');
+        second.put(0, (byte) 'b');
+        assertEquals('a', first.get(0));
+        assertEquals(2 * 16, pool.getAllocatedBytes());
+
+        pool.acquire();
+        assertEquals(4 * 16, pool.getAllocatedBytes());
+    }
+}
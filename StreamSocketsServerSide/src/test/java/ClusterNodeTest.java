@@ -0,0 +1,86 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.List;
+import java.util.Properties;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ClusterNodeTest {
+
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    @Test
+    public void testBroadcastReachesEveryNodeOfAChain() throws IOException, InterruptedException {
+        Server serverA = newServer();
+        Server serverB = newServer();
+        Server serverC = newServer();
+        ClusterNode a = new ClusterNode("a", 0, List.of(), 16, serverA);
+        a.start();
+        ClusterNode b = new ClusterNode("b", 0, List.of(addressOf(a)), 16, serverB);
+        b.start();
+        ClusterNode c = new ClusterNode("c", 0, List.of(addressOf(b)), 16, serverC);
+        c.start();
+        TestSession onA = join(serverA);
+        TestSession onB = join(serverB);
+        TestSession onC = join(serverC);
+        assertTrue(await(() -> a.getPeerCount() == 1 && b.getPeerCount() == 2 && c.getPeerCount() == 1));
+
+        a.relay(RoomRegistry.LOBBY, OutboundMessage.notice("hello from a"));
+        c.relay(RoomRegistry.LOBBY, OutboundMessage.notice("hello from c"));
+
+        assertTrue(await(() -> onB.received.size() == 2 && onC.received.size() == 1 && onA.received.size() == 1));
+        Thread.sleep(200);
+        assertEquals(List.of("hello from c"), onA.texts());
+        assertEquals(List.of("hello from a"), onC.texts());
+        a.stop();
+        b.stop();
+        c.stop();
+    }
+
+    @Test
+    public void testNodeGivesUpOnPeerThatIsItself() throws IOException, InterruptedException {
+        int port;
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        InetSocketAddress self = InetSocketAddress.createUnresolved("localhost", port);
+        ClusterNode node = new ClusterNode("a", port, List.of(self), 16, newServer());
+
+        node.start();
+
+        assertTrue(await(() -> Thread.getAllStackTraces().keySet().stream()
+                .noneMatch(thread -> thread.getName().equals("cluster-connect-" + self))));
+        assertEquals(0, node.getPeerCount());
+        node.stop();
+    }
+
+    private static Server newServer() throws IOException {
+        return new Server(0, ServerMode.THREADED, new ServerConfiguration(new Properties()));
+    }
+
+    private static TestSession join(Server server) {
+        TestSession session = new TestSession(1);
+        server.getRooms().join(session, RoomRegistry.LOBBY);
+        return session;
+    }
+
+    private static InetSocketAddress addressOf(ClusterNode node) {
+        return InetSocketAddress.createUnresolved("localhost", node.getPort());
+    }
+
+    private static boolean await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            Thread.sleep(20);
+        }
+        return true;
+    }
+}
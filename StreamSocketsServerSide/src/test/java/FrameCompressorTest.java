@@ -0,0 +1,96 @@
+import org.junit.jupiter.api.Test;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.zip.Deflater;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FrameCompressorTest {
+
+    private static final FlushPolicy FLUSH_POLICY = new FlushPolicy(64 * 1024, 64, 0);
+
+    @Test
+    public void testDecoderInflatesBatchesSharingOneStream() throws ProtocolException {
+        FrameCompressor compressor = new FrameCompressor(Deflater.BEST_SPEED, 0);
+        FrameDecoder decoder = new FrameDecoder();
+        UUID senderId = UUID.randomUUID();
+        String line = "10.0.0.1: [alice]: the quick brown fox jumps over the lazy dog";
+
+        for (int batch = 0; batch < 3; batch++) {
+            ByteBuffer[] frames = new ByteBuffer[20];
+            int length = 0;
+            for (int i = 0; i < frames.length; i++) {
+                frames[i] = new BinaryFrame(FrameType.CHAT, senderId, line + " #" + batch + "." + i).encode();
+                length += frames[i].remaining();
+            }
+            ByteBuffer compressed = compressor.compress(frames, 0, frames.length);
+            assertTrue(compressed.remaining() < length / 4);
+
+            // Delivered a few bytes at a time, as a socket might
+            List<BinaryFrame> decoded = new ArrayList<>();
+            while (compressed.hasRemaining()) {
+                ByteBuffer chunk = compressed.slice().limit(Math.min(7, compressed.remaining()));
+                compressed.position(compressed.position() + chunk.remaining());
+                BinaryFrame frame;
+                while ((frame = decoder.next(chunk)) != null) {
+                    decoded.add(frame);
+                }
+            }
+            assertEquals(frames.length, decoded.size());
+            assertEquals(FrameType.CHAT, decoded.get(0).getType());
+            assertEquals(senderId, decoded.get(0).getSenderId());
+            assertEquals(line + " #" + batch + ".19", decoded.get(19).getBody());
+        }
+    }
+
+    @Test
+    public void testSplitsLargeBatchIntoSeveralCompressedFrames() throws ProtocolException {
+        FrameCompressor compressor = new FrameCompressor(Deflater.BEST_SPEED, 0);
+        Random random = new Random(42);
+        String[] bodies = new String[64];
+        ByteBuffer[] frames = new ByteBuffer[bodies.length];
+        for (int i = 0; i < frames.length; i++) {
+            StringBuilder body = new StringBuilder();
+            random.ints(4000, 0x21, 0x7F).forEach(c -> body.append((char) c));
+            bodies[i] = body.toString();
+            frames[i] = new BinaryFrame(FrameType.NOTICE, null, bodies[i]).encode();
+        }
+
+        ByteBuffer compressed = compressor.compress(frames, 0, frames.length);
+        assertTrue(compressed.remaining() > FrameCompressor.MAX_PAYLOAD_LENGTH);
+
+        FrameDecoder decoder = new FrameDecoder();
+        for (String body : bodies) {
+            assertEquals(body, decoder.next(compressed).getBody());
+        }
+        assertNull(decoder.next(compressed));
+        assertEquals(0, compressed.remaining());
+        assertTrue(compressor.getOutputCapacity() <= 32 * 1024);
+
+        ByteBuffer[] next = {new BinaryFrame(FrameType.NOTICE, null, "after the large batch").encode()};
+        assertEquals("after the large batch", decoder.next(compressor.compress(next, 0, 1)).getBody());
+    }
+
+    @Test
+    public void testCompressesOnlyBatchesReachingThreshold() {
+        FrameCompressor compressor = new FrameCompressor(Deflater.BEST_SPEED, 512);
+        WriteBatch small = new WriteBatch(FLUSH_POLICY, new ServerMetrics(List.of()));
+        ByteBuffer line = new BinaryFrame(FrameType.CHAT, null, "hi").encode();
+        small.add(line);
+        small.compress(compressor);
+        assertEquals(0, line.position());
+
+        WriteBatch large = new WriteBatch(FLUSH_POLICY, new ServerMetrics(List.of()));
+        ByteBuffer paste = new BinaryFrame(FrameType.CHAT, null, "x".repeat(600)).encode();
+        large.add(paste);
+        large.compress(compressor);
+        assertEquals(0, paste.remaining());
+    }
+}
@@ -0,0 +1,60 @@
+import org.junit.jupiter.api.Test;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class FrameDecoderTest {
+
+    @Test
+    public void testDecodesFrameDeliveredOneByteAtATime() throws ProtocolException {
+        UUID senderId = UUID.randomUUID();
+        ByteBuffer encoded = new BinaryFrame(FrameType.CHAT, senderId, "hello åäö").encode();
+        FrameDecoder decoder = new FrameDecoder();
+
+        BinaryFrame frame = null;
+        while (encoded.hasRemaining()) {
+            assertNull(frame);
+            frame = decoder.next(ByteBuffer.wrap(new byte[]{encoded.get()}));
+        }
+
+        assertEquals(FrameType.CHAT, frame.getType());
+        assertEquals(senderId, frame.getSenderId());
+        assertEquals("hello åäö", frame.getBody());
+    }
+
+    @Test
+    public void testDecodesConsecutiveFramesFromOneBuffer() throws ProtocolException {
+        ByteBuffer first = new BinaryFrame(FrameType.NOTICE, null, "a".repeat(300)).encode();
+        ByteBuffer second = new BinaryFrame(FrameType.COMMAND, null, "wwhhoo").encode();
+        ByteBuffer both = ByteBuffer.allocate(first.remaining() + second.remaining()).put(first).put(second).flip();
+        FrameDecoder decoder = new FrameDecoder();
+
+        assertEquals(300, decoder.next(both).getBody().length());
+        BinaryFrame frame = decoder.next(both);
+        assertEquals(FrameType.COMMAND, frame.getType());
+        assertNull(frame.getSenderId());
+        assertNull(decoder.next(both));
+    }
+
+    @Test
+    public void testRejectsFrameShorterThanHeader() {
+        FrameDecoder decoder = new FrameDecoder();
+
+        assertThrows(ProtocolException.class, () -> decoder.next(ByteBuffer.wrap(new byte[]{3, 1, 0, 0})));
+    }
+
+    @Test
+    public void testAcceptsBodyAtInboundLimitAndRejectsLonger() throws ProtocolException {
+        String body = "x".repeat(BinaryFrame.MAX_INBOUND_BODY_LENGTH);
+        FrameDecoder decoder = new FrameDecoder();
+
+        assertEquals(body, decoder.next(new BinaryFrame(FrameType.CHAT, null, body).encode()).getBody());
+        ByteBuffer longer = new BinaryFrame(FrameType.CHAT, null, body + "x").encode();
+        assertThrows(ProtocolException.class, () -> decoder.next(longer));
+    }
+}
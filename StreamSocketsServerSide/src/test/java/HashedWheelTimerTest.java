@@ -0,0 +1,68 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HashedWheelTimerTest {
+
+    private static final ServerLog LOG = new ServerLog(text -> { }, 16, false, 1);
+
+    @Test
+    public void testRunsTasksNoEarlierThanTheirDelay() throws InterruptedException {
+        HashedWheelTimer timer = new HashedWheelTimer("test-timer", 10, TimeUnit.MILLISECONDS, 8, LOG);
+        CountDownLatch ran = new CountDownLatch(1);
+        long start = System.nanoTime();
+        long[] elapsed = new long[1];
+
+        // 200 ms is more than two turns of an 8-bucket wheel with 10 ms ticks
+        timer.schedule(() -> {
+            elapsed[0] = System.nanoTime() - start;
+            ran.countDown();
+        }, 200, TimeUnit.MILLISECONDS);
+
+        assertTrue(ran.await(2, TimeUnit.SECONDS));
+        assertTrue(elapsed[0] >= TimeUnit.MILLISECONDS.toNanos(200));
+        timer.stop();
+    }
+
+    @Test
+    public void testCancelledTaskDoesNotRun() throws InterruptedException {
+        HashedWheelTimer timer = new HashedWheelTimer("test-timer", 10, TimeUnit.MILLISECONDS, 8, LOG);
+        AtomicBoolean cancelledRan = new AtomicBoolean();
+        CountDownLatch laterRan = new CountDownLatch(1);
+
+        timer.schedule(() -> cancelledRan.set(true), 30, TimeUnit.MILLISECONDS).cancel();
+        timer.schedule(laterRan::countDown, 60, TimeUnit.MILLISECONDS);
+
+        assertTrue(laterRan.await(2, TimeUnit.SECONDS));
+        assertFalse(cancelledRan.get());
+        timer.stop();
+    }
+
+    @Test
+    public void testLogsFailedTaskWithStackTraceAndKeepsRunning() throws InterruptedException {
+        List<String> written = new CopyOnWriteArrayList<>();
+        ServerLog log = new ServerLog(written::add, 16, false, 1);
+        HashedWheelTimer timer = new HashedWheelTimer("test-timer", 10, TimeUnit.MILLISECONDS, 8, log);
+        CountDownLatch laterRan = new CountDownLatch(1);
+
+        timer.schedule(() -> {
+            throw new IllegalStateException("broken check");
+        }, 10, TimeUnit.MILLISECONDS);
+        timer.schedule(laterRan::countDown, 40, TimeUnit.MILLISECONDS);
+
+        assertTrue(laterRan.await(2, TimeUnit.SECONDS));
+        timer.stop();
+        log.close();
+        String text = String.join("", written);
+        assertTrue(text.contains("Timer task failed on test-timer"));
+        assertTrue(text.contains("java.lang.IllegalStateException: broken check"));
+        assertTrue(text.contains("at HashedWheelTimerTest"));
+    }
+}
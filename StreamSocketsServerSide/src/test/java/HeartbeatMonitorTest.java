@@ -0,0 +1,60 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HeartbeatMonitorTest {
+
+    @Test
+    public void testPingsIdleClientAndDisconnectsItWhenItDoesNotAnswer() throws InterruptedException {
+        ServerMetrics metrics = new ServerMetrics(List.of());
+        HeartbeatMonitor monitor = new HeartbeatMonitor(200, 200, metrics, new ServerLog(line -> { }, 16, false, 1));
+        IdleSession session = new IdleSession(false);
+
+        monitor.watch(session);
+
+        assertTrue(session.disconnected.await(3, TimeUnit.SECONDS));
+        assertTrue(session.pinged);
+        assertEquals(1, metrics.getIdleDisconnects());
+        monitor.stop();
+    }
+
+    @Test
+    public void testKeepsClientThatAnswersPings() throws InterruptedException {
+        ServerMetrics metrics = new ServerMetrics(List.of());
+        HeartbeatMonitor monitor = new HeartbeatMonitor(200, 200, metrics, new ServerLog(line -> { }, 16, false, 1));
+        IdleSession session = new IdleSession(true);
+
+        monitor.watch(session);
+
+        assertFalse(session.disconnected.await(1500, TimeUnit.MILLISECONDS));
+        assertTrue(session.pinged);
+        assertEquals(0, metrics.getIdleDisconnects());
+        monitor.stop();
+    }
+
+    private static final class IdleSession extends TestSession {
+
+        private final boolean answersPings;
+        private volatile boolean pinged;
+
+        private IdleSession(boolean answersPings) {
+            super(1);
+            this.answersPings = answersPings;
+        }
+
+        @Override
+        public void sendMessage(OutboundMessage message) {
+            if (message.getType() == FrameType.PING) {
+                pinged = true;
+                if (answersPings) {
+                    lastActivity = System.nanoTime();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+import org.junit.jupiter.api.Test;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class LineDecoderTest {
+
+    @Test
+    public void testAssemblesLinesSplitAcrossReads() throws ProtocolException {
+        LineDecoder decoder = new LineDecoder(StandardCharsets.UTF_8);
+        byte[] bytes = "hello åäö\r\n\nsecond\n".getBytes(StandardCharsets.UTF_8);
+
+        assertNull(decoder.next(ByteBuffer.wrap(bytes, 0, 7)));
+        ByteBuffer rest = ByteBuffer.wrap(bytes, 7, bytes.length - 7);
+        assertEquals("hello åäö", decoder.next(rest));
+        assertEquals("", decoder.next(rest));
+        assertEquals("second", decoder.next(rest));
+        assertNull(decoder.next(rest));
+    }
+
+    @Test
+    public void testRejectsOverlongLine() {
+        LineDecoder decoder = new LineDecoder(StandardCharsets.UTF_8);
+        ByteBuffer chunk = ByteBuffer.wrap(new byte[8192]);
+
+        assertThrows(ProtocolException.class, () -> {
+            while (true) {
+                decoder.next(chunk.clear());
+            }
+        });
+    }
+}
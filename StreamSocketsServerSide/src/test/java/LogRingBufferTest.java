@@ -0,0 +1,61 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LogRingBufferTest {
+
+    @Test
+    public void testRejectsEntriesWhenFull() {
+        LogRingBuffer<String> buffer = new LogRingBuffer<>(2);
+        List<String> batch = new ArrayList<>();
+
+        assertTrue(buffer.offer("a"));
+        assertTrue(buffer.offer("b"));
+        assertFalse(buffer.offer("c"));
+
+        assertEquals(2, buffer.drainTo(batch, 10));
+        assertEquals(List.of("a", "b"), batch);
+        assertTrue(buffer.offer("c"));
+    }
+
+    @Test
+    public void testKeepsEachProducersEntriesInOrder() throws InterruptedException {
+        int producers = 4;
+        int entriesPerProducer = 100_000;
+        LogRingBuffer<long[]> buffer = new LogRingBuffer<>(1024);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            long producer = p;
+            Thread thread = new Thread(() -> {
+                for (long i = 0; i < entriesPerProducer; i++) {
+                    while (!buffer.offer(new long[]{producer, i})) {
+                        Thread.onSpinWait();
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+
+        long[] next = new long[producers];
+        List<long[]> batch = new ArrayList<>();
+        int received = 0;
+        while (received < producers * entriesPerProducer) {
+            batch.clear();
+            received += buffer.drainTo(batch, 256);
+            for (long[] entry : batch) {
+                assertEquals(next[(int) entry[0]]++, entry[1]);
+            }
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(0, buffer.size());
+    }
+}
@@ -0,0 +1,80 @@
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MessageHistoryTest {
+
+    @Test
+    public void testReplaysOnlyMessagesStillKept() {
+        MessageHistory history = new MessageHistory(3);
+        for (int i = 1; i <= 5; i++) {
+            history.append(OutboundMessage.fromTextLine("127.0.0.1", "message " + i));
+        }
+
+        assertEquals(5, history.getLastSequence());
+        assertEquals(List.of(3L, 4L, 5L), sequences(history.since(0)));
+        assertEquals(List.of(5L), sequences(history.since(4)));
+        assertTrue(history.since(5).isEmpty());
+        assertTrue(history.since(Long.MAX_VALUE).isEmpty());
+    }
+
+    @Test
+    public void testBacklogIsSequenceNumberedInOneBuffer() {
+        MessageHistory history = new MessageHistory(4);
+        OutboundMessage first = OutboundMessage.fromTextLine("127.0.0.1", "hello");
+        OutboundMessage second = OutboundMessage.fromTextLine("127.0.0.1", "again");
+        history.append(first);
+        history.append(second);
+
+        String backlog = StandardCharsets.UTF_8.decode(OutboundMessage.backlog(history.since(0)).encode(WireProtocol.TEXT)).toString();
+
+        assertTrue(backlog.startsWith("#1 127.0.0.1: hello"));
+        assertTrue(backlog.contains("#2 127.0.0.1: again"));
+        assertEquals("127.0.0.1: hello", StandardCharsets.UTF_8.decode(first.encode(WireProtocol.TEXT)).toString().trim());
+    }
+
+    @Test
+    public void testNumbersACopyAndLeavesTheMessageAlone() {
+        MessageHistory history = new MessageHistory(4);
+        OutboundMessage message = OutboundMessage.fromTextLine("127.0.0.1", "hello");
+
+        OutboundMessage numbered = history.append(message);
+
+        assertEquals(0, message.getSequence());
+        assertEquals(1, numbered.getSequence());
+        assertEquals(List.of(numbered), history.since(0));
+    }
+
+    @Test
+    public void testReplayOnlyTrustsSequenceNumbersOfTheSameHistory() {
+        Room room = new Room("games", RoomShard.callerRuns(), new ServerMetrics(List.of()), 4, null);
+        TestSession member = new TestSession(1);
+        room.add(member);
+        room.fanOut(OutboundMessage.fromTextLine("127.0.0.1", "hello"), Room.NO_SENDER);
+        room.fanOut(OutboundMessage.fromTextLine("127.0.0.1", "again"), Room.NO_SENDER);
+        member.received.clear();
+
+        room.replay(member, 0, null);
+        String confirmation = member.texts().get(1);
+        assertTrue(confirmation.startsWith("#2@") && confirmation.endsWith(" REPLAYED 2 MESSAGES"));
+        String historyId = confirmation.substring(3, confirmation.indexOf(' '));
+
+        member.received.clear();
+        room.replay(member, 1, historyId);
+        assertEquals(List.of("127.0.0.1: again", "#2@" + historyId + " REPLAYED 1 MESSAGES"), member.texts());
+
+        member.received.clear();
+        room.replay(member, 1, "another");
+        assertEquals(2, member.received.size());
+        assertTrue(member.texts().get(0).startsWith("CANNOT REPLAY"));
+        assertEquals("#2@" + historyId + " REPLAYED 0 MESSAGES", member.texts().get(1));
+    }
+
+    private static List<Long> sequences(List<OutboundMessage> messages) {
+        return messages.stream().map(OutboundMessage::getSequence).toList();
+    }
+}
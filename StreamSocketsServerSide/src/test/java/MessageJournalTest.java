@@ -0,0 +1,113 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MessageJournalTest {
+
+    private static final ServerLog LOG = new ServerLog(text -> { }, 16, false, 1);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testReadsLastMessagesOfRoomAcrossSegmentsAfterReopening() throws IOException {
+        MessageJournal journal = new MessageJournal(directory, 1024, 100, 0, false, LOG);
+        for (int i = 0; i < 200; i++) {
+            journal.append(i % 2 == 0 ? "lobby" : "games", chat("message " + i));
+        }
+        journal.close();
+        assertTrue(countSegments() > 1);
+
+        MessageJournal reopened = new MessageJournal(directory, 1024, 100, 0, false, LOG);
+        List<JournalRecord> records = reopened.readLast("games", 3).join();
+        assertEquals(List.of("message 195", "message 197", "message 199"), bodies(records));
+        assertEquals(200, records.get(2).getSequence());
+
+        reopened.append("games", chat("after restart"));
+        reopened.close();
+        List<JournalRecord> latest = new MessageJournal(directory, 1024, 100, 0, false, LOG).readLast("games", 1).join();
+        assertEquals(201, latest.get(0).getSequence());
+        assertEquals("10.0.0.1: after restart", latest.get(0).getMessage().toText());
+    }
+
+    @Test
+    public void testTruncatesDamagedRecordAtEndOfActiveSegment() throws IOException {
+        MessageJournal journal = new MessageJournal(directory, 64 * 1024, 4, 0, true, LOG);
+        journal.append("lobby", chat("first"));
+        journal.append("lobby", chat("second"));
+        journal.close();
+        Files.write(directory.resolve(String.format("%020d.log", 1)), new byte[] {0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        MessageJournal reopened = new MessageJournal(directory, 64 * 1024, 4, 0, true, LOG);
+        reopened.append("lobby", chat("third"));
+        reopened.close();
+
+        List<JournalRecord> records = new MessageJournal(directory, 64 * 1024, 4, 0, true, LOG).readLast("lobby", 10).join();
+        assertEquals(List.of("first", "second", "third"), bodies(records));
+        assertEquals(3, records.get(2).getSequence());
+    }
+
+    @Test
+    public void testDeletesOldestSegmentsBeyondRetention() throws IOException {
+        MessageJournal journal = new MessageJournal(directory, 512, 3, 0, false, LOG);
+        for (int i = 0; i < 100; i++) {
+            journal.append("lobby", chat("message " + i));
+        }
+        journal.close();
+
+        assertEquals(3, countSegments());
+        List<JournalRecord> records = new MessageJournal(directory, 512, 3, 0, false, LOG).readLast("lobby", 1000).join();
+        assertTrue(records.size() < 100);
+        assertEquals("message 99", bodies(records).get(records.size() - 1));
+    }
+
+    @Test
+    public void testQueriesSeeRecordsAppendedToActiveSegmentSinceLastQuery() throws IOException, InterruptedException {
+        MessageJournal journal = new MessageJournal(directory, 64 * 1024, 4, 0, false, LOG);
+        journal.append("lobby", chat("first"));
+        assertTrue(awaitRecords(journal, 1));
+
+        for (int i = 0; i < 300; i++) {
+            journal.append("lobby", chat("message " + i));
+        }
+        assertTrue(awaitRecords(journal, 301));
+        List<String> bodies = bodies(journal.readLast("lobby", 2).join());
+        journal.close();
+
+        assertEquals(List.of("message 298", "message 299"), bodies);
+    }
+
+    private static boolean awaitRecords(MessageJournal journal, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (journal.readLast("lobby", count).join().size() < count) {
+            if (System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    private static OutboundMessage chat(String body) {
+        return OutboundMessage.fromClient(FrameType.CHAT, "10.0.0.1", null, body);
+    }
+
+    private static List<String> bodies(List<JournalRecord> records) {
+        return records.stream().map(record -> record.getMessage().getBody()).toList();
+    }
+
+    private long countSegments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(JournalSegment::isLogFile).count();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class OutboundMessageTest {
+
+    @Test
+    public void testTextLineKeepsTheSenderIdAsSent() {
+        UUID senderId = UUID.randomUUID();
+
+        OutboundMessage message = OutboundMessage.fromTextLine("10.0.0.7", senderId + "|hello");
+
+        assertEquals("hello", message.getBody());
+        assertEquals("10.0.0.7: " + senderId + "|hello", message.toText());
+        assertEquals(senderId, message.getSenderId());
+    }
+
+    @Test
+    public void testLineWithoutValidSenderIdIsRelayedUnchanged() {
+        String line = "zzzzzzzz-0000-0000-0000-000000000000|hello";
+
+        OutboundMessage message = OutboundMessage.fromTextLine("10.0.0.7", line);
+
+        assertNull(message.getSenderId());
+        assertEquals(line, message.getBody());
+        assertNull(OutboundMessage.fromTextLine("10.0.0.7", "hello").getSenderId());
+    }
+
+    @Test
+    public void testRelayedBodyAtInboundLimitFitsInAClientFrame() {
+        // Two bytes per character in UTF-8
+        String body = "é".repeat(BinaryFrame.MAX_INBOUND_BODY_LENGTH / 2);
+        String senderIP = "fe80:0:0:0:211:22ff:fe33:4455%enp0s31f6";
+        OutboundMessage chat = OutboundMessage.fromClient(FrameType.CHAT, senderIP, UUID.randomUUID(), body)
+                .withSequence(Long.MAX_VALUE);
+        OutboundMessage direct = OutboundMessage.direct("\uD83D\uDE00".repeat(32), Long.MAX_VALUE, body);
+        int maxFrameLength = BinaryFrame.HEADER_LENGTH + BinaryFrame.MAX_BODY_LENGTH;
+
+        for (ByteBuffer encoded : List.of(chat.encode(WireProtocol.BINARY, true), direct.encode(WireProtocol.BINARY, false))) {
+            int frameLength = encoded.remaining() - BinaryFrame.varintSize(maxFrameLength);
+            assertTrue(frameLength > BinaryFrame.HEADER_LENGTH + BinaryFrame.MAX_INBOUND_BODY_LENGTH);
+            assertTrue(frameLength <= maxFrameLength);
+        }
+    }
+}
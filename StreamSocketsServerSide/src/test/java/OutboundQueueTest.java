@@ -0,0 +1,87 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class OutboundQueueTest {
+
+    @Test
+    public void testDropOldestKeepsNewestMessages() {
+        OutboundQueue<String> queue = new OutboundQueue<>(2, OverflowPolicy.DROP_OLDEST);
+
+        assertTrue(queue.offer("a"));
+        assertTrue(queue.offer("b"));
+        assertTrue(queue.offer("c"));
+
+        assertEquals("b", queue.poll());
+        assertEquals("c", queue.poll());
+        assertEquals(1, queue.getDroppedMessages());
+    }
+
+    @Test
+    public void testDropNewestKeepsOldestMessages() {
+        OutboundQueue<String> queue = new OutboundQueue<>(2, OverflowPolicy.DROP_NEWEST);
+
+        assertTrue(queue.offer("a"));
+        assertTrue(queue.offer("b"));
+        assertTrue(queue.offer("c"));
+
+        assertEquals("a", queue.poll());
+        assertEquals("b", queue.poll());
+        assertEquals(1, queue.getDroppedMessages());
+    }
+
+    @Test
+    public void testDisconnectRejectsMessageWhenFull() {
+        OutboundQueue<String> queue = new OutboundQueue<>(1, OverflowPolicy.DISCONNECT);
+
+        assertTrue(queue.offer("a"));
+        assertFalse(queue.offer("b"));
+
+        assertEquals(1, queue.size());
+        assertEquals(1, queue.getDroppedMessages());
+    }
+
+    @Test
+    public void testWakeUpDoesNotDisplaceQueuedMessages() throws InterruptedException {
+        OutboundQueue<String> queue = new OutboundQueue<>(2, OverflowPolicy.DROP_OLDEST);
+        queue.offer("a");
+        queue.offer("b");
+
+        queue.wakeUp();
+
+        assertEquals(2, queue.size());
+        assertEquals(0, queue.getDroppedMessages());
+        assertEquals("a", queue.take());
+        assertEquals("b", queue.take());
+    }
+
+    @Test
+    public void testWakeUpReleasesWaitingConsumerWithoutMessage() throws InterruptedException {
+        OutboundQueue<String> queue = new OutboundQueue<>(2, OverflowPolicy.DROP_OLDEST);
+        CountDownLatch woken = new CountDownLatch(1);
+        AtomicReference<String> taken = new AtomicReference<>("not woken");
+        Thread consumer = new Thread(() -> {
+            try {
+                taken.set(queue.take());
+                woken.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        consumer.start();
+
+        Thread.sleep(50);
+        queue.wakeUp();
+
+        assertTrue(woken.await(2, TimeUnit.SECONDS));
+        assertNull(taken.get());
+        assertTrue(queue.isEmpty());
+    }
+}
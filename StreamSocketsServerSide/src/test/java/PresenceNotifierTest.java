@@ -0,0 +1,111 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PresenceNotifierTest {
+
+    private static final ServerLog LOG = new ServerLog(text -> { }, 16, false, 1);
+    private final List<String> published = new ArrayList<>();
+    private final List<Set<Long>> subjects = new ArrayList<>();
+    private final Room lobby = new Room("lobby", RoomShard.callerRuns(), new ServerMetrics(List.of()), 0, null);
+    private final Room games = new Room("games", RoomShard.callerRuns(), new ServerMetrics(List.of()), 0, null);
+
+    @Test
+    public void testSingleChangeKeepsItsNotice() {
+        PresenceNotifier notifier = new PresenceNotifier(60_000, this::record, LOG);
+
+        notifier.announce(PresenceNotifier.Change.JOINED, games, new TestSession(7, "10.0.0.7"));
+        notifier.flush();
+
+        assertEquals(List.of("CLIENT JOINED games: 10.0.0.7"), published);
+        assertEquals(List.of(Set.of(7L)), subjects);
+        notifier.stop();
+    }
+
+    @Test
+    public void testCoalescesChangesPerRoomAndKind() {
+        PresenceNotifier notifier = new PresenceNotifier(60_000, this::record, LOG);
+
+        for (int i = 1; i <= 12; i++) {
+            notifier.announce(PresenceNotifier.Change.CONNECTED, lobby, new TestSession(i, "10.0.0." + i));
+        }
+        notifier.announce(PresenceNotifier.Change.LEFT, lobby, new TestSession(1, "10.0.0.1"));
+        notifier.announce(PresenceNotifier.Change.JOINED, games, new TestSession(1, "10.0.0.1"));
+        notifier.announce(PresenceNotifier.Change.JOINED, games, new TestSession(2, "10.0.0.2"));
+        notifier.flush();
+
+        assertEquals(List.of("12 CLIENTS CONNECTED", "CLIENT LEFT lobby: 10.0.0.1", "2 CLIENTS JOINED games"), published);
+        assertEquals(12, subjects.get(0).size());
+        assertEquals(List.of(Set.of(1L), Set.of(1L, 2L)), subjects.subList(1, 3));
+
+        published.clear();
+        notifier.flush();
+        assertEquals(List.of(), published);
+        notifier.stop();
+    }
+
+    @Test
+    public void testPublishesRightAwayWithoutWindow() {
+        PresenceNotifier notifier = new PresenceNotifier(0, this::record, LOG);
+
+        notifier.announce(PresenceNotifier.Change.DISCONNECTED, lobby, new TestSession(3, "10.0.0.3"));
+
+        assertEquals(List.of("CLIENT DISCONNECTED: 10.0.0.3"), published);
+    }
+
+    @Test
+    public void testCoalescedNoticeSkipsTheClientsItIsAbout() {
+        TestSession member = new TestSession(1, "10.0.0.1");
+        TestSession joining = new TestSession(2, "10.0.0.2");
+        TestSession alsoJoining = new TestSession(3, "10.0.0.3");
+        games.add(member);
+        games.add(joining);
+        games.add(alsoJoining);
+        PresenceNotifier notifier = new PresenceNotifier(60_000, Room::broadcast, LOG);
+
+        notifier.announce(PresenceNotifier.Change.JOINED, games, joining);
+        notifier.announce(PresenceNotifier.Change.JOINED, games, alsoJoining);
+        notifier.flush();
+
+        assertEquals(List.of("2 CLIENTS JOINED games"), member.texts());
+        assertEquals(List.of(), joining.texts());
+        assertEquals(List.of(), alsoJoining.texts());
+        notifier.stop();
+    }
+
+    @Test
+    public void testKeepsPublishingAfterAFailure() throws InterruptedException {
+        List<String> logged = new CopyOnWriteArrayList<>();
+        ServerLog log = new ServerLog(logged::add, 16, false, 1);
+        CountDownLatch published = new CountDownLatch(1);
+        PresenceNotifier notifier = new PresenceNotifier(20, (room, notice, sessions) -> {
+            if (notice.getBody().contains("10.0.0.1")) {
+                throw new IllegalStateException("room is gone");
+            }
+            published.countDown();
+        }, log);
+
+        notifier.announce(PresenceNotifier.Change.JOINED, games, new TestSession(1, "10.0.0.1"));
+        Thread.sleep(100);
+        notifier.announce(PresenceNotifier.Change.JOINED, games, new TestSession(2, "10.0.0.2"));
+
+        assertTrue(published.await(2, TimeUnit.SECONDS));
+        notifier.stop();
+        log.close();
+        assertTrue(String.join("", logged).contains("java.lang.IllegalStateException: room is gone"));
+    }
+
+    private void record(Room room, OutboundMessage notice, Set<ClientSession> sessions) {
+        published.add(notice.toText());
+        subjects.add(sessions.stream().map(ClientSession::getConnectionId).collect(Collectors.toSet()));
+    }
+}
@@ -0,0 +1,36 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RelayDeduplicatorTest {
+
+    @Test
+    public void testDuplicatesAreRecognisedPerOrigin() {
+        RelayDeduplicator seen = new RelayDeduplicator();
+
+        assertTrue(seen.firstSeen("a", 10));
+        assertFalse(seen.firstSeen("a", 10));
+        assertTrue(seen.firstSeen("b", 10));
+    }
+
+    @Test
+    public void testOutOfOrderMessagesInsideTheWindowAreAccepted() {
+        RelayDeduplicator seen = new RelayDeduplicator();
+
+        assertTrue(seen.firstSeen("a", 100));
+        assertTrue(seen.firstSeen("a", 98));
+        assertTrue(seen.firstSeen("a", 99));
+        assertFalse(seen.firstSeen("a", 98));
+    }
+
+    @Test
+    public void testMessagesBelowTheWindowCountAsSeen() {
+        RelayDeduplicator seen = new RelayDeduplicator();
+
+        assertTrue(seen.firstSeen("a", 1));
+        assertTrue(seen.firstSeen("a", 1 + RelayDeduplicator.WINDOW * 3L));
+        assertFalse(seen.firstSeen("a", 2));
+        assertTrue(seen.firstSeen("a", RelayDeduplicator.WINDOW * 3L));
+    }
+}
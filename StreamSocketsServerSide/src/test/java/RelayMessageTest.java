@@ -0,0 +1,43 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class RelayMessageTest {
+
+    @Test
+    public void testChatMessageSurvivesTheRoundTrip() throws IOException {
+        UUID senderId = UUID.randomUUID();
+        OutboundMessage chat = OutboundMessage.fromClient(FrameType.CHAT, "10.0.0.7", senderId, "[alice]: hej på dig");
+
+        RelayMessage relayed = roundTrip(new RelayMessage("node-1", 42, "games", chat));
+
+        assertEquals("node-1", relayed.getOriginNode());
+        assertEquals(42, relayed.getSequence());
+        assertEquals("games", relayed.getRoom());
+        assertEquals(chat.toText(), relayed.getMessage().toText());
+        assertEquals(senderId, relayed.getMessage().getSenderId());
+    }
+
+    @Test
+    public void testNoticeSurvivesTheRoundTrip() throws IOException {
+        RelayMessage relayed = roundTrip(new RelayMessage("node-1", 1, "lobby", OutboundMessage.notice("CLIENT CONNECTED: 10.0.0.7")));
+
+        assertEquals(FrameType.NOTICE, relayed.getMessage().getType());
+        assertNull(relayed.getMessage().getSenderIP());
+        assertEquals("CLIENT CONNECTED: 10.0.0.7", relayed.getMessage().toText());
+    }
+
+    private static RelayMessage roundTrip(RelayMessage message) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        message.writeTo(new DataOutputStream(bytes));
+        return RelayMessage.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+}
@@ -0,0 +1,42 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+public class RollingFileLogSinkTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testRollsOverAndKeepsConfiguredNumberOfFiles() throws IOException {
+        Path file = directory.resolve("server.log");
+        try (RollingFileLogSink sink = new RollingFileLogSink(file, 10, 3)) {
+            sink.write("first\n");
+            sink.write("second\n");
+            sink.write("third\n");
+            sink.write("fourth\n");
+        }
+
+        assertEquals("fourth\n", Files.readString(file));
+        assertEquals("third\n", Files.readString(directory.resolve("server.log.1")));
+        assertEquals("second\n", Files.readString(directory.resolve("server.log.2")));
+        assertFalse(Files.exists(directory.resolve("server.log.3")));
+    }
+
+    @Test
+    public void testAppendsToExistingFile() throws IOException {
+        Path file = directory.resolve("server.log");
+        Files.writeString(file, "old\n");
+        try (RollingFileLogSink sink = new RollingFileLogSink(file, 1024, 2)) {
+            sink.write("new\n");
+        }
+
+        assertEquals("old\nnew\n", Files.readString(file));
+    }
+}
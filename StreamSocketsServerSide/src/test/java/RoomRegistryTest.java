@@ -0,0 +1,53 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RoomRegistryTest {
+
+    @Test
+    public void testEmptyRoomIsRemovedButLobbyIsKept() {
+        RoomRegistry rooms = new RoomRegistry(2, 16, new ServerMetrics(List.of()), 16, null);
+        TestSession alice = new TestSession(1);
+
+        rooms.join(alice, RoomRegistry.LOBBY);
+        rooms.leave(alice);
+        Room room = rooms.join(alice, "games");
+        assertSame(room, rooms.getRoom(alice));
+        assertEquals(2, rooms.getRoomCount());
+
+        assertSame(room, rooms.leave(alice));
+        assertNull(rooms.getRoom(alice));
+        assertEquals(1, rooms.getRoomCount());
+    }
+
+    @Test
+    public void testFanOutReachesOnlyOtherMembersOfTheRoom() {
+        RoomRegistry rooms = new RoomRegistry(2, 16, new ServerMetrics(List.of()), 16, null);
+        TestSession alice = new TestSession(1);
+        TestSession bob = new TestSession(2);
+        TestSession carol = new TestSession(3);
+        Room games = rooms.join(alice, "games");
+        rooms.join(bob, "games");
+        rooms.join(carol, RoomRegistry.LOBBY);
+
+        games.fanOut(OutboundMessage.notice("hello"), alice.getConnectionId());
+
+        assertTrue(alice.received.isEmpty());
+        assertEquals(1, bob.received.size());
+        assertTrue(carol.received.isEmpty());
+    }
+
+    @Test
+    public void testRoomNamesAreValidated() {
+        assertTrue(RoomRegistry.isValidName("games"));
+        assertFalse(RoomRegistry.isValidName(""));
+        assertFalse(RoomRegistry.isValidName("two words"));
+        assertFalse(RoomRegistry.isValidName("x".repeat(33)));
+    }
+}
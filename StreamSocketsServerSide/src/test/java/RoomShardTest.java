@@ -0,0 +1,62 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RoomShardTest {
+
+    @Test
+    public void testDropsBroadcastsBeyondCapacityButKeepsOtherTasks() throws InterruptedException {
+        RoomShard shard = new RoomShard("test-shard", 2);
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        List<String> ran = new CopyOnWriteArrayList<>();
+        shard.execute(() -> {
+            try {
+                blocked.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        assertTrue(shard.offer(() -> ran.add("first")));
+        assertTrue(shard.offer(() -> ran.add("second")));
+        assertFalse(shard.offer(() -> ran.add("dropped")));
+        shard.execute(() -> ran.add("replay"));
+        assertEquals(2, shard.getQueuedBroadcasts());
+        shard.execute(done::countDown);
+        blocked.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of("first", "second", "replay"), ran);
+        assertEquals(0, shard.getQueuedBroadcasts());
+        assertTrue(shard.offer(() -> ran.add("third")));
+    }
+
+    @Test
+    public void testRoomCountsBroadcastsItDrops() {
+        ServerMetrics metrics = new ServerMetrics(List.of());
+        RoomShard shard = new RoomShard("test-shard", 1);
+        CountDownLatch blocked = new CountDownLatch(1);
+        shard.execute(() -> {
+            try {
+                blocked.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        Room room = new Room("games", shard, metrics, 0, null);
+
+        room.broadcast(OutboundMessage.notice("one"), Room.NO_SENDER);
+        room.broadcast(OutboundMessage.notice("two"), Room.NO_SENDER);
+        blocked.countDown();
+
+        assertEquals(1, metrics.getDroppedBroadcasts());
+    }
+}
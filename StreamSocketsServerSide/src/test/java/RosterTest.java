@@ -0,0 +1,194 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RosterTest {
+
+    private static final ServerLog LOG = new ServerLog(text -> { }, 16, false, 1);
+
+    @Test
+    public void testDescribesOnlineClientsByAliasOrIP() {
+        Roster roster = new Roster(60_000, LOG);
+        TestSession alice = new TestSession(1, "10.0.0.1");
+        TestSession bob = new TestSession(2, "10.0.0.2");
+        TestSession carol = new TestSession(3, "10.0.0.3");
+
+        roster.add(alice);
+        roster.add(bob);
+        roster.add(carol);
+        roster.rename(alice, "alice");
+        roster.rename(bob, " Bob\t");
+        roster.remove(carol);
+
+        assertEquals("ONLINE (2): alice, Bob", roster.describe());
+        roster.stop();
+    }
+
+    @Test
+    public void testFindsClientsByAliasOrConnectionId() {
+        Roster roster = new Roster(60_000, LOG);
+        TestSession alice = new TestSession(1, "10.0.0.1");
+        TestSession bob = new TestSession(2, "10.0.0.2");
+        roster.add(alice);
+        roster.add(bob);
+        roster.rename(alice, "alice");
+
+        assertSame(alice, roster.find("ALICE"));
+        assertSame(bob, roster.find("#2"));
+        assertNull(roster.find("10.0.0.2"));
+        assertNull(roster.find("#x"));
+
+        assertTrue(roster.rename(bob, "bob"));
+        assertSame(bob, roster.find("bob"));
+        roster.remove(bob);
+        assertNull(roster.find("bob"));
+        assertNull(roster.find("#2"));
+
+        roster.rename(alice, "alicia");
+        assertNull(roster.find("alice"));
+        assertSame(alice, roster.find("alicia"));
+        assertEquals("alicia", roster.getAlias(alice));
+        roster.stop();
+    }
+
+    @Test
+    public void testRefusesAliasHeldByAnotherClientUntilItIsFreed() {
+        Roster roster = new Roster(60_000, LOG);
+        TestSession bob = new TestSession(1, "10.0.0.1");
+        TestSession impostor = new TestSession(2, "10.0.0.2");
+        roster.add(bob);
+        roster.add(impostor);
+        roster.rename(bob, "bob");
+
+        assertFalse(roster.rename(impostor, "BOB"));
+        assertSame(bob, roster.find("bob"));
+        assertEquals("10.0.0.2", roster.getAlias(impostor));
+        assertTrue(roster.rename(bob, "Bob"));
+        assertSame(bob, roster.find("bob"));
+
+        roster.rename(bob, "robert");
+        assertTrue(roster.rename(impostor, "bob"));
+        assertSame(impostor, roster.find("bob"));
+        assertFalse(roster.rename(bob, "bob"));
+        roster.remove(impostor);
+        assertTrue(roster.rename(bob, "bob"));
+        assertSame(bob, roster.find("bob"));
+        roster.stop();
+    }
+
+    @Test
+    public void testSendsSnapshotThenOnlyChangesOncePerFlush() {
+        Roster roster = new Roster(60_000, LOG);
+        TestSession alice = new TestSession(1, "10.0.0.1");
+        TestSession bob = new TestSession(2, "10.0.0.2");
+        roster.add(alice);
+        roster.rename(alice, "alice");
+
+        roster.subscribe(alice);
+        roster.add(bob);
+        roster.rename(bob, "bob");
+        roster.remove(bob);
+        roster.flush();
+        roster.flush();
+
+        assertEquals(List.of("/roster\tsnapshot\t1\t1/1\t+1 alice", "/roster\tdelta\t2\t1/1\t+2 10.0.0.2\t+2 bob\t-2"), alice.texts());
+        roster.stop();
+    }
+
+    @Test
+    public void testSnapshotIncludesChangesNotFlushedYet() {
+        Roster roster = new Roster(60_000, LOG);
+        TestSession alice = new TestSession(1, "10.0.0.1");
+        TestSession bob = new TestSession(2, "10.0.0.2");
+        roster.add(alice);
+        roster.subscribe(alice);
+
+        roster.add(bob);
+        roster.subscribe(bob);
+
+        assertEquals(List.of("/roster\tsnapshot\t1\t1/1\t+1 10.0.0.1", "/roster\tdelta\t2\t1/1\t+2 10.0.0.2"), alice.texts());
+        assertEquals(List.of("/roster\tsnapshot\t2\t1/1\t+1 10.0.0.1\t+2 10.0.0.2"), sorted(bob.texts()));
+        roster.stop();
+    }
+
+    @Test
+    public void testSplitsLongRosterIntoNumberedParts() {
+        List<String> entries = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            entries.add("+" + i + " member-with-a-long-alias-" + i);
+        }
+
+        List<OutboundMessage> messages = Roster.messages("snapshot", 7, entries);
+
+        assertTrue(messages.size() > 1);
+        assertTrue(messages.get(0).getBody().startsWith("/roster\tsnapshot\t7\t1/" + messages.size() + "\t+0 "));
+        int count = 0;
+        for (int i = 0; i < messages.size(); i++) {
+            String[] fields = messages.get(i).getBody().split("\t");
+            assertEquals(List.of("/roster", "snapshot", "7", (i + 1) + "/" + messages.size()), List.of(fields).subList(0, 4));
+            assertTrue(messages.get(i).encode(WireProtocol.BINARY).remaining() < 64 * 1024);
+            count += fields.length - 4;
+        }
+        assertEquals(entries.size(), count);
+    }
+
+    @Test
+    public void testKeepsSendingChangesAfterAFailure() throws InterruptedException {
+        List<String> logged = new CopyOnWriteArrayList<>();
+        ServerLog log = new ServerLog(logged::add, 16, false, 1);
+        Roster roster = new Roster(20, log);
+        AtomicBoolean failed = new AtomicBoolean();
+        TestSession subscriber = new TestSession(1, "10.0.0.1") {
+            @Override
+            public void sendMessage(OutboundMessage message) {
+                if (message.getBody().contains("delta") && !failed.getAndSet(true)) {
+                    throw new IllegalStateException("queue is gone");
+                }
+                super.sendMessage(message);
+            }
+        };
+        roster.subscribe(subscriber);
+        roster.add(new TestSession(2, "10.0.0.2"));
+        Thread.sleep(100);
+
+        roster.add(new TestSession(3, "10.0.0.3"));
+
+        assertTrue(await(() -> subscriber.texts().stream().anyMatch(text -> text.contains("+3 10.0.0.3"))));
+        roster.stop();
+        log.close();
+        assertTrue(String.join("", logged).contains("java.lang.IllegalStateException: queue is gone"));
+    }
+
+    private static List<String> sorted(List<String> snapshots) {
+        List<String> sorted = new ArrayList<>();
+        for (String snapshot : snapshots) {
+            String[] fields = snapshot.split("\t");
+            List<String> entries = new ArrayList<>(List.of(fields).subList(4, fields.length));
+            Collections.sort(entries);
+            sorted.add(String.join("\t", List.of(fields).subList(0, 4)) + "\t" + String.join("\t", entries));
+        }
+        return sorted;
+    }
+
+    private static boolean await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            Thread.sleep(20);
+        }
+        return true;
+    }
+}
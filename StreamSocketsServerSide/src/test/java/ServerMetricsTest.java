@@ -0,0 +1,54 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ServerMetricsTest {
+
+    @Test
+    public void testQueueDepthsAreReadFromConnectedClients() {
+        ServerMetrics metrics = new ServerMetrics(List.of(session(1, 0), session(2, 5), session(3, 2000)));
+
+        assertEquals(3, metrics.getConnectedClients());
+        assertEquals(2005, metrics.getQueuedMessages());
+        assertEquals(2000, metrics.getMaxQueueDepth());
+
+        String scrape = metrics.scrape();
+        assertTrue(scrape.contains("chat_client_queue_depth_bucket{le=\"0\"} 1\n"));
+        assertTrue(scrape.contains("chat_client_queue_depth_bucket{le=\"16\"} 2\n"));
+        assertTrue(scrape.contains("chat_client_queue_depth_bucket{le=\"+Inf\"} 3\n"));
+    }
+
+    @Test
+    public void testFanOutTimeIsBucketedCumulatively() {
+        ServerMetrics metrics = new ServerMetrics(List.of());
+        metrics.onBroadcast(500);
+        metrics.onBroadcast(1024);
+        metrics.onBroadcast(3000);
+
+        String scrape = metrics.scrape();
+        assertTrue(scrape.contains("chat_broadcast_fanout_seconds_bucket{le=\"1.024E-6\"} 2\n"));
+        assertTrue(scrape.contains("chat_broadcast_fanout_seconds_bucket{le=\"4.096E-6\"} 3\n"));
+        assertTrue(scrape.contains("chat_broadcast_fanout_seconds_count 3\n"));
+        assertEquals(3, metrics.getBroadcasts());
+    }
+
+    @Test
+    public void testDroppedMessagesOfRemovedClientsAreKept() {
+        ServerMetrics metrics = new ServerMetrics(List.of());
+
+        TestSession removed = new TestSession(1);
+        removed.droppedMessages = 7;
+        metrics.onClientRemoved(removed);
+
+        assertEquals(7, metrics.getDroppedMessages());
+    }
+
+    private static ClientSession session(long connectionId, int queueDepth) {
+        TestSession session = new TestSession(connectionId);
+        session.queueDepth = queueDepth;
+        return session;
+    }
+}
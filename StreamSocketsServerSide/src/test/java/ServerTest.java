@@ -0,0 +1,155 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.function.BooleanSupplier;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ServerTest {
+
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    @Test
+    public void testDrainWritesQueuedMessagesAndHintBeforeClosingThreaded() throws IOException, InterruptedException {
+        assertDrainWritesQueuedMessagesAndHintBeforeClosing(ServerMode.THREADED);
+    }
+
+    @Test
+    public void testDrainWritesQueuedMessagesAndHintBeforeClosingNio() throws IOException, InterruptedException {
+        assertDrainWritesQueuedMessagesAndHintBeforeClosing(ServerMode.NIO);
+    }
+
+    private static void assertDrainWritesQueuedMessagesAndHintBeforeClosing(ServerMode mode) throws IOException, InterruptedException {
+        Server server = startServer(mode);
+        try (Socket sender = connect(server); Socket receiver = connect(server)) {
+            BufferedReader in = reader(receiver);
+            assertTrue(await(() -> server.getMetrics().getConnectedClients() == 2));
+            PrintWriter out = new PrintWriter(sender.getOutputStream(), true, StandardCharsets.UTF_8);
+            out.println("before the restart");
+            assertTrue(await(() -> server.getMetrics().getMessagesIn() == 1));
+
+            server.drain(TIMEOUT_MILLIS);
+
+            String line;
+            boolean sawMessage = false;
+            while ((line = in.readLine()) != null && !line.startsWith(WireProtocol.RECONNECT)) {
+                sawMessage |= line.endsWith("before the restart");
+            }
+            assertTrue(sawMessage);
+            assertTrue(line != null && line.startsWith(WireProtocol.RECONNECT + " "));
+            assertNull(in.readLine());
+            assertTrue(await(() -> server.getMetrics().getConnectedClients() == 0));
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void testSendDirectReachesHolderOfAliasAndReportsTakenAndUnknownOnes() throws IOException, InterruptedException {
+        Server server = startServer(ServerMode.THREADED);
+        try (Socket alice = connect(server); Socket bob = connect(server)) {
+            BufferedReader aliceIn = reader(alice);
+            BufferedReader bobIn = reader(bob);
+            PrintWriter aliceOut = new PrintWriter(alice.getOutputStream(), true, StandardCharsets.UTF_8);
+            PrintWriter bobOut = new PrintWriter(bob.getOutputStream(), true, StandardCharsets.UTF_8);
+            aliceOut.println("/alias alice");
+            aliceOut.println("wwhhoo");
+            assertTrue(readUntil(aliceIn, "ONLINE (").contains("alice"));
+
+            bobOut.println("/alias Alice");
+            bobOut.println("/msg alice hi there");
+            bobOut.println("/msg nobody hi");
+            bobOut.println("/msg alice");
+
+            assertEquals("ALIAS TAKEN: Alice", readUntil(bobIn, "ALIAS TAKEN"));
+            String direct = readUntil(aliceIn, "DM from ");
+            assertTrue(direct.startsWith("DM from ") && !direct.startsWith("DM from Alice"), direct);
+            assertTrue(direct.endsWith(": hi there"));
+            assertEquals("NO SUCH CLIENT: nobody", readUntil(bobIn, "NO SUCH CLIENT"));
+            assertEquals("USAGE: /msg <alias|#id> <message>", readUntil(bobIn, "USAGE"));
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    private static String readUntil(BufferedReader in, String marker) throws IOException {
+        String line;
+        while ((line = in.readLine()) != null && !line.contains(marker)) {
+            // skip notices and other clients' messages
+        }
+        assertTrue(line != null, "connection closed before " + marker);
+        return line;
+    }
+
+    @Test
+    public void testTlsConnectionBeyondLimitIsClosedBeforeHandshake(@TempDir Path directory) throws Exception {
+        Path keystore = TestKeystore.create(directory);
+        Properties properties = new Properties();
+        properties.setProperty("tls.keystore", keystore.toString());
+        properties.setProperty("tls.keystore-password", new String(TestKeystore.PASSWORD));
+        properties.setProperty("server.max-connections", "1");
+        Server server = startServer(ServerMode.THREADED, properties);
+        SSLSocketFactory factory = TestKeystore.trustingClient(keystore).getSocketFactory();
+        try (SSLSocket admitted = (SSLSocket) factory.createSocket("localhost", server.getPort())) {
+            admitted.startHandshake();
+            assertTrue(await(() -> server.getMetrics().getConnectedClients() == 1));
+
+            try (SSLSocket rejected = (SSLSocket) factory.createSocket("localhost", server.getPort())) {
+                rejected.setSoTimeout((int) TIMEOUT_MILLIS);
+                IOException failure = assertThrows(IOException.class, rejected::startHandshake);
+                // Plaintext bytes in place of a ServerHello would fail as an unrecognized message
+                assertFalse(String.valueOf(failure.getMessage()).contains("nrecognized"), failure.toString());
+            }
+            assertEquals(1, server.getMetrics().getConnectionsRejected());
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    private static Server startServer(ServerMode mode) throws IOException {
+        return startServer(mode, new Properties());
+    }
+
+    private static Server startServer(ServerMode mode, Properties properties) throws IOException {
+        Server server = new Server(0, mode, new ServerConfiguration(properties));
+        Thread thread = new Thread(server::run, "test-server");
+        thread.setDaemon(true);
+        thread.start();
+        return server;
+    }
+
+    private static Socket connect(Server server) throws IOException {
+        Socket socket = new Socket("localhost", server.getPort());
+        socket.setSoTimeout((int) TIMEOUT_MILLIS);
+        return socket;
+    }
+
+    private static BufferedReader reader(Socket socket) throws IOException {
+        return new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+    }
+
+    private static boolean await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            Thread.sleep(20);
+        }
+        return true;
+    }
+}
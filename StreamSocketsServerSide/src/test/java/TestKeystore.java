@@ -0,0 +1,57 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+
+/**
+ * A self-signed EC P-256 key for localhost, generated with {@code keytool}, for tests that need TLS,
+ * and a client context that trusts it.
+ */
+final class TestKeystore {
+
+    static final char[] PASSWORD = "changeit".toCharArray();
+
+    private TestKeystore() {
+    }
+
+    /**
+     * Generates the keystore.
+     *
+     * @param directory The directory to write it to.
+     * @return The PKCS12 keystore, protected by {@link #PASSWORD}.
+     */
+    static Path create(Path directory) throws IOException, InterruptedException {
+        Path keystore = directory.resolve("server.p12");
+        Process keytool = new ProcessBuilder(Path.of(System.getProperty("java.home"), "bin", "keytool").toString(),
+                "-genkeypair", "-alias", "server", "-keyalg", "EC", "-groupname", "secp256r1", "-dname", "CN=localhost",
+                "-ext", "SAN=dns:localhost,ip:127.0.0.1", "-validity", "1", "-storetype", "PKCS12",
+                "-keystore", keystore.toString(), "-storepass", new String(PASSWORD), "-keypass", new String(PASSWORD))
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        if (keytool.waitFor() != 0) {
+            throw new IOException("keytool failed");
+        }
+        return keystore;
+    }
+
+    /**
+     * @param keystore The keystore from {@link #create(Path)}.
+     * @return A client context that trusts the keystore's certificate.
+     */
+    static SSLContext trustingClient(Path keystore) throws IOException, GeneralSecurityException {
+        KeyStore trusted = KeyStore.getInstance("PKCS12");
+        try (InputStream in = Files.newInputStream(keystore)) {
+            trusted.load(in, PASSWORD);
+        }
+        TrustManagerFactory trustManagers = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagers.init(trusted);
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(null, trustManagers.getTrustManagers(), null);
+        return context;
+    }
+}
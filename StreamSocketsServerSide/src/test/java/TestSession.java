@@ -0,0 +1,87 @@
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * A client session for tests. It records the messages sent to it instead of writing them to a
+ * socket, and remembers being disconnected or drained. Tests that need another reaction to a
+ * message override {@link #sendMessage(OutboundMessage)}.
+ */
+class TestSession implements ClientSession {
+
+    final List<OutboundMessage> received = new CopyOnWriteArrayList<>();
+    final CountDownLatch disconnected = new CountDownLatch(1);
+    final CountDownLatch drained = new CountDownLatch(1);
+    volatile long lastActivity = System.nanoTime();
+    volatile int queueDepth;
+    volatile long droppedMessages;
+    private final long connectionId;
+    private final String clientIP;
+    private volatile boolean sequenceNumbers;
+
+    TestSession(long connectionId) {
+        this(connectionId, "127.0.0.1");
+    }
+
+    TestSession(long connectionId, String clientIP) {
+        this.connectionId = connectionId;
+        this.clientIP = clientIP;
+    }
+
+    /**
+     * @return The text of every message received so far, in order.
+     */
+    List<String> texts() {
+        return received.stream().map(OutboundMessage::toText).toList();
+    }
+
+    @Override
+    public String getClientIP() {
+        return clientIP;
+    }
+
+    @Override
+    public long getConnectionId() {
+        return connectionId;
+    }
+
+    @Override
+    public void sendMessage(OutboundMessage message) {
+        received.add(message);
+    }
+
+    @Override
+    public long getDroppedMessages() {
+        return droppedMessages;
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    @Override
+    public void enableSequenceNumbers() {
+        sequenceNumbers = true;
+    }
+
+    @Override
+    public boolean hasSequenceNumbers() {
+        return sequenceNumbers;
+    }
+
+    @Override
+    public long getLastActivity() {
+        return lastActivity;
+    }
+
+    @Override
+    public void disconnect() {
+        disconnected.countDown();
+    }
+
+    @Override
+    public void drain() {
+        drained.countDown();
+    }
+}
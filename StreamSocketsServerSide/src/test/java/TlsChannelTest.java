@@ -0,0 +1,126 @@
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSocket;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+public class TlsChannelTest {
+
+    @TempDir
+    static Path directory;
+    private static Path keystore;
+
+    @BeforeAll
+    public static void createKeystore() throws IOException, InterruptedException {
+        keystore = TestKeystore.create(directory);
+    }
+
+    @Test
+    public void testEchoesBytesOverNonBlockingChannel() throws Exception {
+        TlsContext server = new TlsContext(keystore, TestKeystore.PASSWORD, new String[] {"TLSv1.3"}, 60);
+        try (ServerSocketChannel listener = listen()) {
+            byte[] message = "x".repeat(40_000).getBytes(StandardCharsets.ISO_8859_1);
+            try (SSLSocket client = connect(trustingClient(), listener)) {
+                SSLEngine engine = server.createEngine();
+                CompletableFuture<Void> echo = CompletableFuture.runAsync(() -> echo(listener, engine, message.length));
+
+                client.getOutputStream().write(message);
+                byte[] received = new byte[message.length];
+                new DataInputStream(client.getInputStream()).readFully(received);
+                echo.join();
+
+                assertArrayEquals(message, received);
+                assertEquals("TLSv1.3", engine.getSession().getProtocol());
+            }
+        }
+    }
+
+    @Test
+    public void testResumesSessionOnReconnect() throws Exception {
+        TlsContext server = new TlsContext(keystore, TestKeystore.PASSWORD, new String[] {"TLSv1.3"}, 60);
+        SSLContext client = trustingClient();
+        try (ServerSocketChannel listener = listen()) {
+            long first = handshake(server, client, listener);
+            TimeUnit.MILLISECONDS.sleep(20);
+            long resumed = handshake(server, client, listener);
+            TimeUnit.MILLISECONDS.sleep(20);
+            long fresh = handshake(server, trustingClient(), listener);
+
+            // A resumed session keeps the creation time of the session it resumes
+            assertEquals(first, resumed);
+            assertNotEquals(first, fresh);
+        }
+    }
+
+    /**
+     * Connects, exchanges one byte each way, so that the client has received its session ticket,
+     * and disconnects.
+     *
+     * @return The creation time of the server's session.
+     */
+    private static long handshake(TlsContext server, SSLContext client, ServerSocketChannel listener) throws IOException {
+        try (SSLSocket socket = connect(client, listener)) {
+            SSLEngine engine = server.createEngine();
+            CompletableFuture<Void> echo = CompletableFuture.runAsync(() -> echo(listener, engine, 1));
+            socket.getOutputStream().write('!');
+            assertEquals('!', socket.getInputStream().read());
+            echo.join();
+            return engine.getSession().getCreationTime();
+        }
+    }
+
+    /**
+     * Accepts a connection and echoes the given number of bytes back over a non-blocking TLS channel.
+     */
+    private static void echo(ServerSocketChannel listener, SSLEngine engine, int length) {
+        try (SocketChannel channel = listener.accept()) {
+            channel.configureBlocking(false);
+            TlsChannel tls = new TlsChannel(channel, engine);
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            while (buffer.hasRemaining()) {
+                if (tls.read(buffer) == -1) {
+                    throw new IOException("Closed after " + buffer.position() + " bytes");
+                }
+                Thread.onSpinWait();
+            }
+            buffer.flip();
+            while (buffer.hasRemaining() || !tls.flush()) {
+                tls.write(buffer);
+            }
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private static ServerSocketChannel listen() throws IOException {
+        return ServerSocketChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    }
+
+    private static SSLSocket connect(SSLContext client, ServerSocketChannel listener) throws IOException {
+        int port = ((InetSocketAddress) listener.getLocalAddress()).getPort();
+        return (SSLSocket) client.getSocketFactory().createSocket("localhost", port);
+    }
+
+    private static SSLContext trustingClient() throws IOException, GeneralSecurityException {
+        return TestKeystore.trustingClient(keystore);
+    }
+}
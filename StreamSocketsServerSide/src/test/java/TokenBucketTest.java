@@ -0,0 +1,36 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TokenBucketTest {
+
+    private static final long MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void testAllowsBurstThenWaitsForRefill() {
+        TokenBucket bucket = new TokenBucket(100, 3);
+        long now = System.nanoTime();
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, bucket.tryAcquire(now));
+        }
+        long wait = bucket.tryAcquire(now);
+        assertTrue(wait > 9 * MILLI && wait <= 10 * MILLI);
+
+        assertEquals(0, bucket.tryAcquire(now + 10 * MILLI));
+        assertTrue(bucket.tryAcquire(now + 10 * MILLI) > 0);
+    }
+
+    @Test
+    public void testDoesNotSaveUpMoreThanBurst() {
+        TokenBucket bucket = new TokenBucket(100, 2);
+        long later = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+
+        assertEquals(0, bucket.tryAcquire(later));
+        assertEquals(0, bucket.tryAcquire(later));
+        assertTrue(bucket.tryAcquire(later) > 0);
+    }
+}
@@ -0,0 +1,151 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class WriteBatchTest {
+
+    private static final FlushPolicy FLUSH_POLICY = new FlushPolicy(64 * 1024, 64, 0);
+
+    @Test
+    public void testStagedBatchSurvivesPartialWrites() throws Exception {
+        BufferPool pool = new BufferPool(1024, 4);
+        ServerMetrics metrics = new ServerMetrics(List.of());
+        WriteBatch batch = new WriteBatch(FLUSH_POLICY, metrics, pool);
+        String expected = addLines(batch, 10);
+
+        // Accepts at most 100 bytes per call, as a congested non-blocking channel might
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        WritableByteChannel channel = new WritableByteChannel() {
+            @Override
+            public int write(ByteBuffer src) {
+                int count = Math.min(100, src.remaining());
+                for (int i = 0; i < count; i++) {
+                    received.write(src.get());
+                }
+                return count;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        while (!batch.isEmpty()) {
+            batch.writeTo(channel);
+        }
+
+        assertEquals(expected, received.toString(StandardCharsets.UTF_8));
+        assertEquals(10, metrics.getMessagesOut());
+        assertEquals(expected.length(), metrics.getBytesOut());
+        assertFalse(batch.isFull());
+        assertEquals(4 * 1024, pool.getAllocatedBytes());
+    }
+
+    @Test
+    public void testStagesBatchInSeveralBuffersWrittenWithOneGatheringWrite() throws Exception {
+        BufferPool pool = new BufferPool(1024, 4);
+        ServerMetrics metrics = new ServerMetrics(List.of());
+        WriteBatch batch = new WriteBatch(FLUSH_POLICY, metrics, pool);
+        String expected = addLines(batch, 10);
+        RecordingChannel channel = new RecordingChannel();
+
+        batch.writeTo(channel);
+
+        assertTrue(batch.isEmpty());
+        assertEquals(1, channel.writes);
+        assertEquals(3, channel.gathered);
+        assertEquals(expected, channel.received.toString(StandardCharsets.UTF_8));
+        assertEquals(10, metrics.getMessagesOut());
+
+        // The staging buffers went back to the pool, so the next batch needs no new slab
+        addLines(batch, 10);
+        batch.writeTo(channel);
+        assertEquals(4 * 1024, pool.getAllocatedBytes());
+    }
+
+    @Test
+    public void testClearReleasesStagingBuffersOfUnfinishedBatch() throws Exception {
+        BufferPool pool = new BufferPool(1024, 4);
+        WriteBatch batch = new WriteBatch(FLUSH_POLICY, new ServerMetrics(List.of()), pool);
+        addLines(batch, 10);
+        RecordingChannel channel = new RecordingChannel();
+        channel.limit = 500;
+
+        batch.writeTo(channel);
+        assertFalse(batch.isEmpty());
+        batch.clear();
+
+        assertTrue(batch.isEmpty());
+        for (int i = 0; i < 4; i++) {
+            pool.acquire();
+        }
+        assertEquals(4 * 1024, pool.getAllocatedBytes());
+    }
+
+    private static String addLines(WriteBatch batch, int count) {
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            String line = i + ":" + "x".repeat(300) + "\n";
+            lines.append(line);
+            batch.add(ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8)));
+        }
+        return lines.toString();
+    }
+
+    /**
+     * A gathering channel that records its writes and accepts up to a limit per call.
+     */
+    private static final class RecordingChannel implements GatheringByteChannel {
+
+        final ByteArrayOutputStream received = new ByteArrayOutputStream();
+        int limit = Integer.MAX_VALUE;
+        int writes;
+        int gathered;
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) {
+            writes++;
+            gathered = length;
+            long written = 0;
+            for (int i = offset; i < offset + length && written < limit; i++) {
+                while (srcs[i].hasRemaining() && written < limit) {
+                    received.write(srcs[i].get());
+                    written++;
+                }
+            }
+            return written;
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs) {
+            return write(srcs, 0, srcs.length);
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            return (int) write(new ByteBuffer[] {src}, 0, 1);
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,179 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.List;
+
+/**
+ * Builds chat server objects for the benchmarks without real client connections.
+ * Lives in the default package next to the server's classes; the benchmarks themselves
+ * reach it through {@code benchmarks.DefaultPackage}.
+ */
+public final class ChatFixtures {
+
+    private ChatFixtures() {
+    }
+
+    /**
+     * Creates a server bound to an ephemeral port that never accepts, with the given number of
+     * in-memory clients already in the lobby.
+     *
+     * @param recipients The number of connected clients.
+     * @return The server.
+     * @throws IOException If the server socket cannot be bound.
+     */
+    public static Server newServer(int recipients) throws IOException {
+        Server server = new Server(0, ServerMode.THREADED, new ServerConfiguration());
+        for (int i = 0; i < recipients; i++) {
+            server.getRooms().join(newSession(i + 1), RoomRegistry.LOBBY);
+        }
+        return server;
+    }
+
+    /**
+     * Creates a room with the given number of in-memory members whose broadcasts run on the
+     * calling thread instead of a shard thread, so a benchmark measures the fan-out itself.
+     *
+     * @param recipients The number of members.
+     * @return The room.
+     */
+    public static Room newRoom(int recipients) {
+        ServerConfiguration configuration = new ServerConfiguration();
+        Room room = new Room("benchmark", RoomShard.callerRuns(), new ServerMetrics(List.of()), configuration.getHistoryMessages(), null);
+        for (int i = 0; i < recipients; i++) {
+            room.add(newSession(i + 1));
+        }
+        return room;
+    }
+
+    /**
+     * Creates an in-memory client that is not connected to any server.
+     *
+     * @param connectionId The connection ID of the client.
+     * @return The client session.
+     */
+    public static ClientSession newSession(long connectionId) {
+        return new QueueSession(connectionId);
+    }
+
+    /**
+     * Creates a blocking client handler in the server's lobby that reads the given bytes as if a
+     * client had sent them, and then sees the end of the stream.
+     *
+     * @param server The server the handler broadcasts to.
+     * @param input  The bytes the client sends.
+     * @return The handler; {@link ClientHandler#run()} reads the whole input.
+     * @throws IOException If the handler cannot be created.
+     */
+    public static ClientHandler newLineReader(Server server, byte[] input) throws IOException {
+        ServerConfiguration configuration = new ServerConfiguration();
+        OutboundQueue<OutboundMessage> outbound = new OutboundQueue<>(configuration.getOutboundCapacity(), configuration.getOverflowPolicy());
+        ClientHandler handler = new ClientHandler(new InMemorySocket(new ByteArrayInputStream(input)), 0, server, outbound, configuration.getFlushPolicy());
+        server.getRooms().join(handler, RoomRegistry.LOBBY);
+        return handler;
+    }
+
+    /**
+     * A client that queues each message the way a real handler does and immediately takes it
+     * off again, as its writer would, so the queue never fills up during a benchmark.
+     */
+    private static final class QueueSession implements ClientSession {
+
+        private final long connectionId;
+        private final OutboundQueue<OutboundMessage> outbound;
+
+        private QueueSession(long connectionId) {
+            ServerConfiguration configuration = new ServerConfiguration();
+            this.connectionId = connectionId;
+            this.outbound = new OutboundQueue<>(configuration.getOutboundCapacity(), configuration.getOverflowPolicy());
+        }
+
+        @Override
+        public String getClientIP() {
+            return "127.0.0.1";
+        }
+
+        @Override
+        public long getConnectionId() {
+            return connectionId;
+        }
+
+        @Override
+        public void sendMessage(OutboundMessage message) {
+            outbound.offer(message);
+            outbound.poll();
+        }
+
+        @Override
+        public long getDroppedMessages() {
+            return outbound.getDroppedMessages();
+        }
+
+        @Override
+        public int getQueueDepth() {
+            return outbound.size();
+        }
+
+        @Override
+        public void enableSequenceNumbers() {
+        }
+
+        @Override
+        public boolean hasSequenceNumbers() {
+            return false;
+        }
+
+        @Override
+        public long getLastActivity() {
+            return 0;
+        }
+
+        @Override
+        public void disconnect() {
+        }
+
+        @Override
+        public void drain() {
+        }
+    }
+
+    /**
+     * An unconnected socket whose streams are in memory.
+     */
+    private static final class InMemorySocket extends Socket {
+
+        private final InputStream in;
+        private boolean closed;
+
+        private InMemorySocket(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return in;
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return OutputStream.nullOutputStream();
+        }
+
+        @Override
+        public InetAddress getInetAddress() {
+            return InetAddress.getLoopbackAddress();
+        }
+
+        @Override
+        public synchronized void close() {
+            closed = true;
+        }
+
+        @Override
+        public boolean isClosed() {
+            return closed;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.invoke.MethodHandle;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of a broadcast in one {@code Room} for a text line fanned out to a number of
+ * members. The room runs its broadcasts on the calling thread instead of a shard thread. Each
+ * recipient queues the message on a real {@code OutboundQueue} and takes it off again. The
+ * measurement therefore covers parsing the line, the fan-out loop and one enqueue per recipient,
+ * but no thread hand-off and no socket writes. The console log is discarded, because its cost
+ * depends on where standard output goes rather than on the server.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BroadcastBenchmark {
+
+    private static final MethodHandle NEW_ROOM = DefaultPackage.staticMethod("ChatFixtures", "newRoom",
+            DefaultPackage.type("Room"), int.class);
+    private static final MethodHandle NEW_SESSION = DefaultPackage.staticMethod("ChatFixtures", "newSession",
+            DefaultPackage.type("ClientSession"), long.class);
+    private static final MethodHandle FROM_TEXT_LINE = DefaultPackage.staticMethod("OutboundMessage", "fromTextLine",
+            DefaultPackage.type("OutboundMessage"), String.class, String.class);
+    private static final MethodHandle BROADCAST = DefaultPackage.method("Room", "broadcast",
+            void.class, DefaultPackage.type("OutboundMessage"), DefaultPackage.type("ClientSession"));
+
+    @Param({"10", "100", "1000"})
+    public int recipients;
+
+    private Object room;
+    private Object sender;
+    private String line;
+
+    @Setup
+    public void setUp() throws Throwable {
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        room = (Object) NEW_ROOM.invokeExact(recipients);
+        sender = (Object) NEW_SESSION.invokeExact(0L);
+        line = UUID.randomUUID() + "|[alice]: are we still meeting at three?";
+    }
+
+    @Benchmark
+    public void broadcastMessage() throws Throwable {
+        Object message = (Object) FROM_TEXT_LINE.invokeExact("127.0.0.1", line);
+        BROADCAST.invokeExact(room, message, sender);
+    }
+}
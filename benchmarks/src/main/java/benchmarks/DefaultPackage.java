@@ -0,0 +1,112 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * Looks up members of the chat modules' classes, which live in the default package.
+ * JMH refuses benchmarks in the default package, and classes in a named package cannot refer to
+ * default-package classes by name, so the benchmarks reach them through method handles instead.
+ * Stored in {@code static final} fields, the handles are constants to the JIT and
+ * {@link MethodHandle#invokeExact} calls through them are inlined like direct calls.
+ * Every default-package type in a handle's signature is adapted to {@link Object}.
+ */
+final class DefaultPackage {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+
+    private DefaultPackage() {
+    }
+
+    /**
+     * Loads a default-package class.
+     *
+     * @param className The simple name of the class.
+     * @return The class.
+     */
+    static Class<?> type(String className) {
+        try {
+            return Class.forName(className);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Class not on the benchmark classpath: " + className, e);
+        }
+    }
+
+    /**
+     * Looks up a public constructor.
+     *
+     * @param className  The simple name of the class.
+     * @param parameters The constructor's parameter types.
+     * @return A handle returning the new instance.
+     */
+    static MethodHandle constructor(String className, Class<?>... parameters) {
+        try {
+            return erase(LOOKUP.findConstructor(type(className), MethodType.methodType(void.class, parameters)));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("No such constructor in " + className, e);
+        }
+    }
+
+    /**
+     * Looks up a public static method.
+     *
+     * @param className  The simple name of the class declaring the method.
+     * @param name       The method name.
+     * @param returnType The method's return type.
+     * @param parameters The method's parameter types.
+     * @return A handle taking the method's parameters.
+     */
+    static MethodHandle staticMethod(String className, String name, Class<?> returnType, Class<?>... parameters) {
+        try {
+            return erase(LOOKUP.findStatic(type(className), name, MethodType.methodType(returnType, parameters)));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("No such method " + className + "." + name, e);
+        }
+    }
+
+    /**
+     * Looks up a public instance method.
+     *
+     * @param className  The simple name of the class declaring the method.
+     * @param name       The method name.
+     * @param returnType The method's return type.
+     * @param parameters The method's parameter types.
+     * @return A handle taking the receiver followed by the method's parameters.
+     */
+    static MethodHandle method(String className, String name, Class<?> returnType, Class<?>... parameters) {
+        try {
+            return erase(LOOKUP.findVirtual(type(className), name, MethodType.methodType(returnType, parameters)));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("No such method " + className + "." + name, e);
+        }
+    }
+
+    /**
+     * Adapts every default-package type in a handle's signature to {@link Object}, so that
+     * callers in a named package can use {@link MethodHandle#invokeExact}.
+     *
+     * @param handle The handle to adapt.
+     * @return The adapted handle.
+     */
+    private static MethodHandle erase(MethodHandle handle) {
+        MethodType type = handle.type();
+        for (int i = 0; i < type.parameterCount(); i++) {
+            if (isDefaultPackage(type.parameterType(i))) {
+                type = type.changeParameterType(i, Object.class);
+            }
+        }
+        if (isDefaultPackage(type.returnType())) {
+            type = type.changeReturnType(Object.class);
+        }
+        return handle.asType(type);
+    }
+
+    /**
+     * @param type A type in a method signature.
+     * @return true if the type is a class in the default package.
+     */
+    private static boolean isDefaultPackage(Class<?> type) {
+        return !type.isPrimitive() && !type.isArray() && type.getPackageName().isEmpty();
+    }
+}
@@ -0,0 +1,65 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.invoke.MethodHandle;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lines per second read by a blocking {@code ClientHandler}: each invocation runs a handler over
+ * an in-memory stream of {@value #LINES} chat lines until end of stream. Every line goes through
+ * {@code Server.broadcastMessage} to the lobby's shard thread, with no other clients in the lobby,
+ * so the fan-out itself costs nothing here (see {@link BroadcastBenchmark}). Creating and closing the handler is amortised
+ * over the lines. The server's console log is discarded.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LineReadingBenchmark {
+
+    private static final int LINES = 1000;
+    private static final MethodHandle NEW_SERVER = DefaultPackage.staticMethod("ChatFixtures", "newServer",
+            DefaultPackage.type("Server"), int.class);
+    private static final MethodHandle NEW_LINE_READER = DefaultPackage.staticMethod("ChatFixtures", "newLineReader",
+            DefaultPackage.type("ClientHandler"), DefaultPackage.type("Server"), byte[].class);
+
+    private Object server;
+    private byte[] input;
+
+    @Setup
+    public void setUp() throws Throwable {
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        server = (Object) NEW_SERVER.invokeExact(0);
+
+        UUID clientUUID = UUID.randomUUID();
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < LINES; i++) {
+            lines.append(clientUUID).append("|[alice]: message number ").append(i).append('\n');
+        }
+        input = lines.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void readLines() throws Throwable {
+        Runnable clientHandler = (Runnable) (Object) NEW_LINE_READER.invokeExact(server, input);
+        clientHandler.run();
+    }
+}
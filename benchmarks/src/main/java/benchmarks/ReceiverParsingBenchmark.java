@@ -0,0 +1,86 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.invoke.MethodHandle;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Per-line cost of the client's decision what to display for a received text line.
+ * {@link #regexAndSplit()} is the original {@code MessageReceiver} logic, kept here as the baseline;
+ * {@link #senderIdParser()} is the in-place {@code SenderIdParser}. Run with {@code -prof gc}
+ * to get the bytes allocated per line ({@code gc.alloc.rate.norm}).
+ *
+ * <p>The baseline also compared the sender UUID with the client's own. The server no longer
+ * echoes a client's messages back, so the receiver has dropped that check; "other" lines are the
+ * like-for-like comparison.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReceiverParsingBenchmark {
+
+    private static final String UUID_REGEX = "^[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}";
+    private static final MethodHandle HAS_SENDER_ID = DefaultPackage.staticMethod("SenderIdParser", "hasSenderId", boolean.class, String.class);
+    private static final MethodHandle EXTRACT_MESSAGE = DefaultPackage.staticMethod("SenderIdParser", "extractMessage", String.class, String.class);
+
+    /**
+     * other: a chat line from another client; notice: a server line.
+     */
+    @Param({"other", "notice"})
+    public String lineKind;
+
+    private UUID clientUUID;
+    private Pattern uuidPattern;
+    private String line;
+
+    @Setup
+    public void setUp() {
+        clientUUID = UUID.randomUUID();
+        uuidPattern = Pattern.compile(UUID_REGEX);
+        line = switch (lineKind) {
+            case "other" -> UUID.randomUUID() + "|[bob]: are we still meeting at three?";
+            default -> "CLIENT CONNECTED: 192.168.1.17";
+        };
+    }
+
+    /**
+     * @return The text that would be displayed, or null if the line is suppressed.
+     */
+    @Benchmark
+    public String regexAndSplit() {
+        if (uuidPattern.matcher(line).find()) {
+            if (!line.split("\\|", 2)[0].equals(clientUUID.toString())) {
+                return line.split("\\|", 2)[1];
+            }
+            return null;
+        }
+        return line;
+    }
+
+    /**
+     * @return The text that would be displayed.
+     */
+    @Benchmark
+    public String senderIdParser() throws Throwable {
+        if ((boolean) HAS_SENDER_ID.invokeExact(line)) {
+            return (String) EXTRACT_MESSAGE.invokeExact(line);
+        }
+        return line;
+    }
+}
@@ -0,0 +1,287 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandle;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManagerFactory;
+
+/**
+ * What TLS costs on localhost compared with plaintext. The server side is the server's own
+ * {@code TlsContext} and {@code TlsChannel}, on a blocking channel served by a background thread;
+ * the client side is a JDK {@link SSLSocket}, as in the chat client.
+ *
+ * <p>{@link #connect} measures the time to connect, exchange one byte each way and disconnect:
+ * in plaintext, with a full TLS 1.3 handshake, and with a handshake resumed from the session
+ * ticket of the previous connection. {@link #echo} measures round trips of a message over one
+ * open connection, encrypted and decrypted on both sides, against plaintext.</p>
+ *
+ * <p>The server's key is an EC P-256 key in a keystore generated with {@code keytool}.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TlsBenchmark {
+
+    private static final char[] PASSWORD = "changeit".toCharArray();
+    private static final MethodHandle NEW_TLS_CONTEXT = DefaultPackage.constructor("TlsContext",
+            Path.class, char[].class, String[].class, int.class);
+    private static final MethodHandle CREATE_ENGINE = DefaultPackage.method("TlsContext", "createEngine", SSLEngine.class);
+    private static final MethodHandle NEW_TLS_CHANNEL = DefaultPackage.constructor("TlsChannel",
+            SocketChannel.class, SSLEngine.class);
+
+    /**
+     * A server that answers every connection's first byte and closes it.
+     */
+    @State(Scope.Thread)
+    public static class Handshakes {
+
+        @Param({"plaintext", "full", "resumed"})
+        public String connection;
+
+        private Endpoints endpoints;
+
+        @Setup
+        public void setUp() throws Throwable {
+            endpoints = new Endpoints(!connection.equals("plaintext"), 1);
+            if (!connection.equals("plaintext")) {
+                boolean forget = connection.equals("full");
+                long first = endpoints.connectOnce(forget);
+                TimeUnit.MILLISECONDS.sleep(20);
+                // A resumed session keeps the creation time of the session it resumes
+                if ((endpoints.connectOnce(forget) == first) == forget) {
+                    throw new IllegalStateException(forget ? "The TLS session was resumed" : "The TLS session was not resumed");
+                }
+            }
+        }
+
+        @TearDown
+        public void tearDown() throws InterruptedException, IOException {
+            endpoints.close();
+        }
+    }
+
+    /**
+     * A server that echoes everything over one open connection.
+     */
+    @State(Scope.Thread)
+    public static class Stream {
+
+        @Param({"plaintext", "tls"})
+        public String transport;
+
+        @Param({"128", "16384"})
+        public int messageBytes;
+
+        private Endpoints endpoints;
+        private Socket socket;
+        private OutputStream out;
+        private DataInputStream in;
+        private byte[] message;
+        private byte[] received;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Throwable {
+            endpoints = new Endpoints(transport.equals("tls"), Long.MAX_VALUE);
+            socket = endpoints.open();
+            out = socket.getOutputStream();
+            in = new DataInputStream(socket.getInputStream());
+            message = new byte[messageBytes];
+            Arrays.fill(message, (byte) 'x');
+            received = new byte[messageBytes];
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws InterruptedException, IOException {
+            socket.close();
+            endpoints.close();
+        }
+    }
+
+    @Benchmark
+    public long connect(Handshakes state) throws IOException {
+        return state.endpoints.connectOnce(state.connection.equals("full"));
+    }
+
+    @Benchmark
+    public byte[] echo(Stream state) throws IOException {
+        state.out.write(state.message);
+        state.out.flush();
+        state.in.readFully(state.received);
+        return state.received;
+    }
+
+    /**
+     * A listening socket with a thread that serves one connection at a time, echoing at most a
+     * given number of bytes, and a client that connects to it.
+     */
+    private static final class Endpoints {
+
+        private final ServerSocketChannel listener;
+        private final Object tlsContext;
+        private final SSLContext client;
+        private final long echoBytes;
+        private final Thread server;
+
+        Endpoints(boolean tls, long echoBytes) throws Throwable {
+            this.listener = ServerSocketChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 128);
+            this.echoBytes = echoBytes;
+            if (tls) {
+                Path keystore = createKeystore();
+                this.tlsContext = (Object) NEW_TLS_CONTEXT.invokeExact(keystore, PASSWORD, new String[] {"TLSv1.3"}, 3600);
+                this.client = trusting(keystore);
+            } else {
+                this.tlsContext = null;
+                this.client = null;
+            }
+            this.server = new Thread(this::serve, "tls-benchmark-server");
+            server.setDaemon(true);
+            server.start();
+        }
+
+        /**
+         * Opens a connection and, with TLS, completes the handshake.
+         */
+        Socket open() throws IOException {
+            int port = ((InetSocketAddress) listener.getLocalAddress()).getPort();
+            Socket socket = client == null ? new Socket() : client.getSocketFactory().createSocket();
+            socket.setTcpNoDelay(true);
+            socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+            if (socket instanceof SSLSocket tlsSocket) {
+                tlsSocket.startHandshake();
+            }
+            return socket;
+        }
+
+        /**
+         * Connects, exchanges one byte each way and disconnects. The client has received its session
+         * ticket by the time the answer arrives, since the server sends the ticket first.
+         *
+         * @param forget true to invalidate the session, so that the next connection cannot resume it.
+         * @return The creation time of the TLS session, or 0 in plaintext.
+         */
+        long connectOnce(boolean forget) throws IOException {
+            try (Socket socket = open()) {
+                socket.getOutputStream().write('!');
+                if (socket.getInputStream().read() != '!') {
+                    throw new IOException("No answer from the server");
+                }
+                if (socket instanceof SSLSocket tlsSocket) {
+                    if (forget) {
+                        tlsSocket.getSession().invalidate();
+                    }
+                    return tlsSocket.getSession().getCreationTime();
+                }
+                return 0;
+            }
+        }
+
+        /**
+         * Accepts connections until the listening socket is closed.
+         */
+        private void serve() {
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            while (listener.isOpen()) {
+                try (SocketChannel accepted = listener.accept()) {
+                    accepted.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                    ByteChannel channel = tlsContext == null ? accepted
+                            : (ByteChannel) (Object) NEW_TLS_CHANNEL.invokeExact(accepted, (SSLEngine) CREATE_ENGINE.invokeExact(tlsContext));
+                    try (channel) {
+                        echo(channel, buffer);
+                    }
+                } catch (IOException e) {
+                    // the client went away, or the listener was closed
+                } catch (Throwable e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+
+        /**
+         * Echoes what the client sends until it disconnects or the echo limit is reached.
+         */
+        private void echo(ByteChannel channel, ByteBuffer buffer) throws IOException {
+            long echoed = 0;
+            while (echoed < echoBytes) {
+                buffer.clear();
+                int count = channel.read(buffer);
+                if (count == -1) {
+                    return;
+                }
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                echoed += count;
+            }
+        }
+
+        void close() throws InterruptedException, IOException {
+            listener.close();
+            server.join(TimeUnit.SECONDS.toMillis(5));
+        }
+
+        private static Path createKeystore() throws IOException, InterruptedException {
+            Path directory = Files.createTempDirectory("tls-benchmark");
+            Path keystore = directory.resolve("server.p12");
+            keystore.toFile().deleteOnExit();
+            directory.toFile().deleteOnExit();
+            Process keytool = new ProcessBuilder(Path.of(System.getProperty("java.home"), "bin", "keytool").toString(),
+                    "-genkeypair", "-alias", "server", "-keyalg", "EC", "-groupname", "secp256r1", "-dname", "CN=localhost",
+                    "-ext", "SAN=ip:127.0.0.1", "-validity", "1", "-storetype", "PKCS12",
+                    "-keystore", keystore.toString(), "-storepass", new String(PASSWORD), "-keypass", new String(PASSWORD))
+                    .redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+            if (keytool.waitFor() != 0) {
+                throw new IOException("keytool failed");
+            }
+            return keystore;
+        }
+
+        private static SSLContext trusting(Path keystore) throws Exception {
+            KeyStore trusted = KeyStore.getInstance("PKCS12");
+            try (InputStream in = Files.newInputStream(keystore)) {
+                trusted.load(in, PASSWORD);
+            }
+            TrustManagerFactory trustManagers = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+            trustManagers.init(trusted);
+            SSLContext context = SSLContext.getInstance("TLS");
+            context.init(null, trustManagers.getTrustManagers(), null);
+            return context;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ * A fixed-size log-linear histogram of latencies in microseconds.
+ * Values below 64 µs are counted exactly; larger values fall into one of 32 buckets per power
+ * of two, so every reported percentile is within about 3% of the true value. Recording never
+ * allocates, which keeps the measuring thread from disturbing the measurement.
+ * Not thread-safe; each histogram is owned by one thread.
+ */
+public class LatencyHistogram {
+
+    private static final int LINEAR_LIMIT = 64;
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 40;
+    private final long[] counts;
+    private long totalCount;
+    private long maxValue;
+
+    /**
+     * Constructs an empty histogram.
+     */
+    public LatencyHistogram() {
+        this.counts = new long[LINEAR_LIMIT + (MAX_EXPONENT - 6 + 1) * SUB_BUCKETS];
+    }
+
+    /**
+     * Records a single latency.
+     *
+     * @param micros the latency in microseconds; negative values are recorded as 0.
+     */
+    public void record(long micros) {
+        long value = Math.max(0, micros);
+        counts[indexOf(value)]++;
+        totalCount++;
+        maxValue = Math.max(maxValue, value);
+    }
+
+    /**
+     * @return the number of recorded values.
+     */
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * @return the largest recorded value in microseconds.
+     */
+    public long getMaxValue() {
+        return maxValue;
+    }
+
+    /**
+     * Returns the value below which the given share of recorded values falls.
+     *
+     * @param percentile the percentile, between 0 and 100.
+     * @return the upper bound of the bucket holding the percentile in microseconds, or 0 if empty.
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * totalCount));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), maxValue);
+            }
+        }
+        return maxValue;
+    }
+
+    /**
+     * Maps a value to its bucket.
+     *
+     * @param value the non-negative value.
+     * @return the bucket index.
+     */
+    private static int indexOf(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        int exponent = Math.min(63 - Long.numberOfLeadingZeros(value), MAX_EXPONENT);
+        int subBucket = (int) ((value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+        return LINEAR_LIMIT + (exponent - 6) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Returns the largest value that falls into a bucket.
+     *
+     * @param index the bucket index.
+     * @return the bucket's upper bound.
+     */
+    private static long upperBoundOf(int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+        int exponent = (index - LINEAR_LIMIT) / SUB_BUCKETS + 6;
+        long subBucket = (index - LINEAR_LIMIT) % SUB_BUCKETS;
+        long bucketWidth = 1L << (exponent - SUB_BUCKET_BITS);
+        return (1L << exponent) + (subBucket + 1) * bucketWidth - 1;
+    }
+}
@@ -0,0 +1,119 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * One simulated chat client of the {@link LoadGenerator}.
+ * Sends chat lines in the {@code Client} module's text format whose message text is the time,
+ * in nanoseconds since the start of the run, at which the line was written, and turns every such
+ * line received from another simulated client into an end-to-end latency sample.
+ */
+public class LoadConnection {
+
+    private static final int MAX_LINE_LENGTH = 1024;
+    private final SocketChannel channel;
+    private final UUID clientUUID;
+    private final String alias;
+    private final long startNanos;
+    private final byte[] line;
+    private int lineLength;
+
+    /**
+     * Constructs a simulated client on an open, connected channel.
+     *
+     * @param channel    the channel connected to the server.
+     * @param index      the number of the client, used for its alias.
+     * @param startNanos the {@link System#nanoTime()} at the start of the run, shared by all clients.
+     */
+    public LoadConnection(SocketChannel channel, int index, long startNanos) {
+        this.channel = channel;
+        this.clientUUID = UUID.randomUUID();
+        this.alias = "loadgen-" + index;
+        this.startNanos = startNanos;
+        this.line = new byte[MAX_LINE_LENGTH];
+    }
+
+    /**
+     * @return the channel connected to the server.
+     */
+    public SocketChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * Writes one timestamped chat line. Called only by the sending thread.
+     * Spins if the socket send buffer is full, so a server that stops reading shows up as
+     * a drop in the sent message rate.
+     *
+     * @throws IOException if the write fails.
+     */
+    public void sendTimestampedLine() throws IOException {
+        String chatLine = MessageSender.formatChatLine(clientUUID, alias, Long.toString(System.nanoTime() - startNanos)) + "\n";
+        ByteBuffer bytes = ByteBuffer.wrap(chatLine.getBytes(StandardCharsets.ISO_8859_1));
+        while (bytes.hasRemaining()) {
+            if (channel.write(bytes) == 0) {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    /**
+     * Assembles lines from received bytes and records a latency sample for each timestamped line.
+     * Lines that are not timestamped chat lines, such as connection notices, are skipped.
+     * Called only by the receiving thread.
+     *
+     * @param received  the bytes read from the channel.
+     * @param latencies the histogram to record the samples in.
+     * @return the number of latency samples recorded.
+     */
+    public int receive(ByteBuffer received, LatencyHistogram latencies) {
+        int samples = 0;
+        while (received.hasRemaining()) {
+            byte b = received.get();
+            if (b == '\n') {
+                long sentNanos = parseTimestamp();
+                if (sentNanos >= 0) {
+                    latencies.record((System.nanoTime() - startNanos - sentNanos) / 1000);
+                    samples++;
+                }
+                lineLength = 0;
+            } else if (lineLength < MAX_LINE_LENGTH) {
+                line[lineLength++] = b;
+            }
+        }
+        return samples;
+    }
+
+    /**
+     * Parses the timestamp of a received "senderIP: UUID|[alias]: nanos" line in place.
+     *
+     * @return the timestamp, or -1 if the line does not end in "]: " followed by digits.
+     */
+    private long parseTimestamp() {
+        int start = lineLength;
+        while (start > 0 && line[start - 1] >= '0' && line[start - 1] <= '9') {
+            start--;
+        }
+        if (start == lineLength || start < 3 || line[start - 1] != ' ' || line[start - 2] != ':' || line[start - 3] != ']') {
+            return -1;
+        }
+        long value = 0;
+        for (int i = start; i < lineLength; i++) {
+            value = value * 10 + (line[i] - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Closes the connection, ignoring errors.
+     */
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // the run is over; nothing left to report
+        }
+    }
+}
@@ -0,0 +1,273 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load generator that simulates many chat clients against a chat server on localhost.
+ * Opens the given number of connections, lets each of them send timestamped chat lines in the
+ * {@code Client} module's text format at a fixed rate, and measures how long every broadcast takes
+ * to reach each of the other clients. All clients live in this process and share one clock, so
+ * the latencies are end to end: from the sender's socket write to the receiver's socket read.
+ *
+ * <p>Usage:
+ * <pre>
+ *     java LoadGenerator (DEFAULT_PORT=2000, clients=100, rate=1, duration=30)
+ *     java LoadGenerator &lt;port&gt; &lt;clients&gt; &lt;messages/s per client&gt; &lt;duration seconds&gt;
+ * </pre>
+ * If the system property {@code loadgen.max-p99-micros} is set, the run fails with exit code 1 when
+ * the p99 latency exceeds it, or when deliveries are missing, so the tool can gate regressions.
+ * </p>
+ */
+public class LoadGenerator {
+
+    private static final String SERVER_HOST = "127.0.0.1";
+    private static final int DEFAULT_PORT = 2000;
+    private static final int DEFAULT_CLIENTS = 100;
+    private static final double DEFAULT_RATE = 1.0;
+    private static final int DEFAULT_DURATION_SECONDS = 30;
+    private static final long QUIET_PERIOD_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long MAX_SETTLE_NANOS = TimeUnit.SECONDS.toNanos(30);
+    private static final long SEND_TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private final int port;
+    private final int clientCount;
+    private final double messagesPerSecondPerClient;
+    private final int durationSeconds;
+    private final long startNanos;
+    private final List<LoadConnection> connections;
+    private final LatencyHistogram latencies;
+    private final AtomicBoolean receiving;
+    private volatile long lastReceiveNanos;
+    private volatile long receivedSamples;
+    private long sentMessages;
+
+    /**
+     * Constructs a load generator.
+     *
+     * @param port                       the port of the chat server on localhost.
+     * @param clientCount                the number of simulated clients.
+     * @param messagesPerSecondPerClient how many messages each client sends per second.
+     * @param durationSeconds            for how long the clients send messages.
+     */
+    public LoadGenerator(int port, int clientCount, double messagesPerSecondPerClient, int durationSeconds) {
+        this.port = port;
+        this.clientCount = clientCount;
+        this.messagesPerSecondPerClient = messagesPerSecondPerClient;
+        this.durationSeconds = durationSeconds;
+        this.startNanos = System.nanoTime();
+        this.connections = new ArrayList<>(clientCount);
+        this.latencies = new LatencyHistogram();
+        this.receiving = new AtomicBoolean(true);
+    }
+
+    /**
+     * Runs the load test and prints the report.
+     *
+     * @return true if the run met the configured latency and delivery limits, false otherwise.
+     * @throws IOException          if the server cannot be reached.
+     * @throws InterruptedException if the run is interrupted.
+     */
+    public boolean run() throws IOException, InterruptedException {
+        double connectSeconds = connectClients();
+        System.out.printf(Locale.ROOT, "Connections: %d in %.2f s (%.0f connections/s)%n",
+                clientCount, connectSeconds, clientCount / connectSeconds);
+
+        Selector selector = Selector.open();
+        for (LoadConnection connection : connections) {
+            connection.getChannel().configureBlocking(false);
+            connection.getChannel().register(selector, SelectionKey.OP_READ, connection);
+        }
+        Thread receiver = new Thread(() -> receive(selector), "loadgen-receiver");
+        receiver.start();
+
+        awaitQuiet();
+        long receivedBeforeSending = receivedSamples;
+
+        long sendNanos = sendMessages();
+        awaitQuiet();
+
+        receiving.set(false);
+        selector.wakeup();
+        receiver.join();
+        selector.close();
+        connections.forEach(LoadConnection::close);
+
+        return report(sendNanos, receivedSamples - receivedBeforeSending);
+    }
+
+    /**
+     * Opens all connections one after the other.
+     *
+     * @return the time it took in seconds.
+     * @throws IOException if a connection cannot be established.
+     */
+    private double connectClients() throws IOException {
+        InetSocketAddress server = new InetSocketAddress(SERVER_HOST, port);
+        long start = System.nanoTime();
+        for (int i = 0; i < clientCount; i++) {
+            SocketChannel channel = SocketChannel.open(server);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            connections.add(new LoadConnection(channel, i, startNanos));
+        }
+        return (System.nanoTime() - start) / 1e9;
+    }
+
+    /**
+     * Sends messages round robin over all clients so that the total rate is met on average,
+     * checking once per millisecond how many messages are due.
+     *
+     * @return the time spent sending in nanoseconds.
+     * @throws IOException if a write fails.
+     */
+    private long sendMessages() throws IOException {
+        double messagesPerNano = messagesPerSecondPerClient * clientCount / 1e9;
+        long durationNanos = TimeUnit.SECONDS.toNanos(durationSeconds);
+        long start = System.nanoTime();
+        int next = 0;
+
+        long elapsed;
+        while ((elapsed = System.nanoTime() - start) < durationNanos) {
+            long due = (long) (elapsed * messagesPerNano);
+            while (sentMessages < due) {
+                connections.get(next).sendTimestampedLine();
+                next = (next + 1) % clientCount;
+                sentMessages++;
+            }
+            LockSupport.parkNanos(SEND_TICK_NANOS);
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Receiver loop: reads from every readable connection and records latency samples until stopped.
+     *
+     * @param selector the selector all connections are registered with.
+     */
+    private void receive(Selector selector) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+        try {
+            while (receiving.get()) {
+                selector.select(key -> {
+                    LoadConnection connection = (LoadConnection) key.attachment();
+                    buffer.clear();
+                    try {
+                        if (connection.getChannel().read(buffer) == -1) {
+                            key.cancel();
+                            return;
+                        }
+                    } catch (IOException e) {
+                        System.out.println("Connection lost: " + e.getMessage());
+                        key.cancel();
+                        return;
+                    }
+                    buffer.flip();
+                    receivedSamples += connection.receive(buffer, latencies);
+                    lastReceiveNanos = System.nanoTime();
+                }, 100);
+            }
+        } catch (IOException e) {
+            System.out.println("Receiver terminated: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Waits until nothing has been received for a second, so that connection notices or
+     * the last broadcasts have been delivered, but no longer than 30 seconds.
+     *
+     * @throws InterruptedException if the wait is interrupted.
+     */
+    private void awaitQuiet() throws InterruptedException {
+        long deadline = System.nanoTime() + MAX_SETTLE_NANOS;
+        lastReceiveNanos = System.nanoTime();
+        while (System.nanoTime() - lastReceiveNanos < QUIET_PERIOD_NANOS && System.nanoTime() < deadline) {
+            Thread.sleep(100);
+        }
+    }
+
+    /**
+     * Prints the throughput and latency report and checks it against the configured limits.
+     *
+     * @param sendNanos       the time spent sending in nanoseconds.
+     * @param receivedSamples the number of timestamped lines received.
+     * @return true if the run met the limits, false otherwise.
+     */
+    private boolean report(long sendNanos, long receivedSamples) {
+        double sendSeconds = sendNanos / 1e9;
+        long expectedDeliveries = sentMessages * (clientCount - 1);
+        long p99 = latencies.getValueAtPercentile(99.0);
+
+        System.out.printf(Locale.ROOT, "Sent: %d messages in %.1f s (%.0f messages/s)%n",
+                sentMessages, sendSeconds, sentMessages / sendSeconds);
+        System.out.printf(Locale.ROOT, "Received: %d of %d expected deliveries (%.0f deliveries/s)%n",
+                receivedSamples, expectedDeliveries, receivedSamples / sendSeconds);
+        System.out.printf(Locale.ROOT, "Latency (us): p50=%d p99=%d p999=%d max=%d%n",
+                latencies.getValueAtPercentile(50.0), p99, latencies.getValueAtPercentile(99.9), latencies.getMaxValue());
+
+        String maxP99 = System.getProperty("loadgen.max-p99-micros");
+        if (maxP99 == null) {
+            return true;
+        }
+        boolean passed = p99 <= Long.parseLong(maxP99) && receivedSamples >= expectedDeliveries;
+        System.out.println(passed ? "PASSED" : "FAILED: p99 above " + maxP99 + " us or deliveries missing");
+        return passed;
+    }
+
+    /**
+     * Entry point. Parses the arguments, runs the load test and sets the exit code.
+     *
+     * @param args command-line arguments: port, clients, messages per second per client and duration.
+     */
+    public static void main(String[] args) {
+        int port = args.length > 0 ? parseIntOrDefault(args[0], DEFAULT_PORT) : DEFAULT_PORT;
+        int clients = args.length > 1 ? parseIntOrDefault(args[1], DEFAULT_CLIENTS) : DEFAULT_CLIENTS;
+        double rate = DEFAULT_RATE;
+        if (args.length > 2) {
+            try {
+                rate = Double.parseDouble(args[2]);
+            } catch (NumberFormatException e) {
+                System.out.println("Invalid rate. Using default");
+            }
+        }
+        int duration = args.length > 3 ? parseIntOrDefault(args[3], DEFAULT_DURATION_SECONDS) : DEFAULT_DURATION_SECONDS;
+
+        try {
+            boolean passed = new LoadGenerator(port, Math.max(2, clients), rate, duration).run();
+            System.exit(passed ? 0 : 1);
+        } catch (IOException e) {
+            System.out.println("No server connection: " + e.getMessage());
+            System.exit(2);
+        } catch (InterruptedException e) {
+            System.out.println("Interrupted. Shutting down.");
+            System.exit(2);
+        }
+    }
+
+    /**
+     * Parses a positive integer argument.
+     *
+     * @param arg          the argument.
+     * @param defaultValue the value to use if the argument is invalid.
+     * @return the parsed value, or the default.
+     */
+    private static int parseIntOrDefault(String arg, int defaultValue) {
+        try {
+            int value = Integer.parseInt(arg);
+            if (value > 0) {
+                return value;
+            }
+        } catch (NumberFormatException e) {
+            // fall through to the default
+        }
+        System.out.println("Invalid argument " + arg + ". Using default");
+        return defaultValue;
+    }
+}
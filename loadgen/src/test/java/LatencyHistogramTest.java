@@ -0,0 +1,36 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testSmallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 50; i++) {
+            histogram.record(i);
+        }
+
+        assertEquals(25, histogram.getValueAtPercentile(50.0));
+        assertEquals(50, histogram.getValueAtPercentile(100.0));
+        assertEquals(50, histogram.getTotalCount());
+    }
+
+    @Test
+    public void testLargeValuesAreWithinRelativeError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100_000; i++) {
+            histogram.record(i);
+        }
+
+        assertWithinRelativeError(50_000, histogram.getValueAtPercentile(50.0));
+        assertWithinRelativeError(99_000, histogram.getValueAtPercentile(99.0));
+        assertWithinRelativeError(99_900, histogram.getValueAtPercentile(99.9));
+        assertEquals(100_000, histogram.getMaxValue());
+    }
+
+    private static void assertWithinRelativeError(long expected, long actual) {
+        assertTrue(Math.abs(actual - expected) <= expected * 0.04, "expected about " + expected + " but was " + actual);
+    }
+}